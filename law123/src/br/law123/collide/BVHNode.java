@@ -182,6 +182,9 @@ public class BVHNode<T extends Bounding> {
 
         // If we're both at leaf nodes, then we have a potential contact
         if (isLeaf() && other.isLeaf()) {
+            // Bodies that are both asleep can't collide with each other.
+            if (CollideUtils.isAsleep(body, other.body)) return 0;
+
             contacts[0].getBody()[0] = body;
             contacts[0].getBody()[1] = other.body;
             return 1;
@@ -1,10 +1,20 @@
 package br.law123.collide;
 
 import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
 import br.law123.rigidbody.contact.Contact;
 
 public class CollideUtils {
 
+    /**
+     * Checks if a collision between the two given bodies can be
+     * skipped because neither of them is awake. Either body can be
+     * null, for scenery that isn't simulated.
+     */
+    public static boolean isAsleep(RigidBody one, RigidBody two) {
+        return (one == null || !one.getAwake()) && (two == null || !two.getAwake());
+    }
+
     public static double transformToAxis(CollisionBox box, Vector3 axis) {
         return box.getHalfSize().getX() * Math.abs(axis.mult(box.getAxis(0))) //
                + box.getHalfSize().getY() * Math.abs(axis.mult(box.getAxis(1))) //
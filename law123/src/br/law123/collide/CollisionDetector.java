@@ -20,6 +20,9 @@ public class CollisionDetector {
         // Make sure we have contacts
         if (data.getContactsLeft() <= 0) return 0;
 
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(sphere.getBody(), null)) return 0;
+
         // Cache the sphere position
         Vector3 position = sphere.getAxis(3);
 
@@ -45,6 +48,9 @@ public class CollisionDetector {
         // Make sure we have contacts
         if (data.getContactsLeft() <= 0) return 0;
 
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(sphere.getBody(), null)) return 0;
+
         // Cache the sphere position
         Vector3 position = sphere.getAxis(3);
 
@@ -80,6 +86,9 @@ public class CollisionDetector {
         // Make sure we have contacts
         if (data.getContactsLeft() <= 0) return 0;
 
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(one.getBody(), two.getBody())) return 0;
+
         // Cache the sphere positions
         Vector3 positionOne = one.getAxis(3);
         Vector3 positionTwo = two.getAxis(3);
@@ -116,6 +125,9 @@ public class CollisionDetector {
         // Make sure we have contacts
         if (data.getContactsLeft() <= 0) return 0;
 
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(box.getBody(), null)) return 0;
+
         // Check for intersection
         if (!IntersectionTests.boxAndHalfSpace(box, plane)) {
             return 0;
@@ -165,6 +177,9 @@ public class CollisionDetector {
     }
 
     public static int boxAndBox(CollisionBox one, CollisionBox two, CollisionData data) {
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(one.getBody(), two.getBody())) return 0;
+
         //if (!IntersectionTests::boxAndBox(one, two)) return 0;
 
         // Find the vector between the two centres
@@ -265,6 +280,9 @@ public class CollisionDetector {
     }
 
     public static int boxAndPoint(CollisionBox box, Vector3 point, CollisionData data) {
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(box.getBody(), null)) return 0;
+
         // Transform the point into box coordinates
         Vector3 relPt = box.getTransform().transformInverse(point);
 
@@ -306,6 +324,9 @@ public class CollisionDetector {
     }
 
     public static boolean boxAndSphere(CollisionBox box, CollisionSphere sphere, CollisionData data) {
+        // Sleeping bodies are left where they are
+        if (CollideUtils.isAsleep(box.getBody(), sphere.getBody())) return false;
+
         // Transform the centre of the sphere into box coordinates
         Vector3 centre = sphere.getAxis(3);
         Vector3 relCentre = box.getTransform().transformInverse(centre);
@@ -0,0 +1,358 @@
+package br.law123.collide;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over a set of points, used to find the points near a
+ * position, or all the pairs of points closer than some distance,
+ * without testing every point against every other.
+ *
+ * Space is divided into cubic cells. The grid doesn't store the cells
+ * themselves: each cell is hashed into a fixed number of buckets, and
+ * the points are sorted by bucket with a counting sort, so building the
+ * grid takes time in proportion to the number of points and creates no
+ * objects once its arrays are big enough. The grid keeps a copy of the
+ * positions and cell coordinates in bucket order, so the points of a
+ * bucket are next to each other in memory. Points that share a bucket
+ * but not a cell are told apart by their cell coordinates, so a query
+ * never returns a point twice.
+ *
+ * The points are given as an array with three values per point, like
+ * the positions of a ParticleSystem. The positions are copied when the
+ * grid is built, so the array can be changed afterwards; queries see
+ * the points as they were at the last build. Queries don't change the
+ * grid, so any number of threads can query it at once.
+ */
+public class HashGrid {
+
+    /**
+     * Holds the size of the cells.
+     */
+    private double cellSize;
+
+    /**
+     * Holds the number of buckets minus one. The number of buckets is a
+     * power of two.
+     */
+    private int bucketMask;
+
+    /**
+     * Holds where each bucket starts in sorted. The points of bucket b
+     * are the entries from bucketStart[b] to bucketStart[b + 1].
+     */
+    private int[] bucketStart = new int[1];
+
+    /**
+     * Holds the points sorted by bucket.
+     */
+    private int[] sorted = new int[0];
+
+    /**
+     * Holds the cell coordinates and the position of each point, three
+     * values per point, in the same order as sorted.
+     */
+    private int[] sortedCell = new int[0];
+
+    private double[] sortedPosition = new double[0];
+
+    /**
+     * Holds the bucket of each point.
+     */
+    private int[] bucket = new int[0];
+
+    /**
+     * Holds the number of points.
+     */
+    private int count;
+
+    /**
+     * Called for each pair of points found by findPairs.
+     */
+    public interface PairVisitor {
+
+        /**
+         * Visits the pair of points i and j, which are the given
+         * squared distance apart. i is always lower than j.
+         */
+        void visit(int i, int j, double distanceSquared);
+    }
+
+    /**
+     * Creates a grid with the given cell size.
+     */
+    public HashGrid(double cellSize) {
+        setCellSize(cellSize);
+    }
+
+    /**
+     * Sets the size of the cells. Queries are fastest when the cells
+     * are about as big as the query radius. Takes effect when the grid
+     * is next built.
+     */
+    public void setCellSize(double cellSize) {
+        if (!(cellSize > 0)) throw new IllegalArgumentException("cellSize <= 0");
+        this.cellSize = cellSize;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    /**
+     * Returns the number of points in the grid.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Builds the grid over the first count points of the given array,
+     * which holds three values per point. The array is copied, so it can
+     * be changed afterwards.
+     */
+    public void build(double[] positions, int count) {
+        this.count = count;
+
+        // Use about two buckets per point.
+        int buckets = Integer.highestOneBit(Math.max(16, 2 * count - 1)) << 1;
+        bucketMask = buckets - 1;
+        if (bucketStart.length < buckets + 1) bucketStart = new int[buckets + 1];
+        if (sorted.length < count) {
+            sorted = new int[count];
+            bucket = new int[count];
+            sortedCell = new int[3 * count];
+            sortedPosition = new double[3 * count];
+        }
+
+        Arrays.fill(bucketStart, 0, buckets + 1, 0);
+        double inverseSize = 1 / cellSize;
+        for (int i = 0; i < count; i++) {
+            int x = (int) Math.floor(positions[3 * i] * inverseSize);
+            int y = (int) Math.floor(positions[3 * i + 1] * inverseSize);
+            int z = (int) Math.floor(positions[3 * i + 2] * inverseSize);
+            bucket[i] = hash(x, y, z);
+            bucketStart[bucket[i] + 1]++;
+        }
+        for (int b = 0; b < buckets; b++) {
+            bucketStart[b + 1] += bucketStart[b];
+        }
+
+        // Place the points, using the start of each bucket as its fill
+        // pointer, then move the starts back.
+        for (int i = 0; i < count; i++) {
+            int k = bucketStart[bucket[i]]++;
+            sorted[k] = i;
+            for (int c = 0; c < 3; c++) {
+                double v = positions[3 * i + c];
+                sortedPosition[3 * k + c] = v;
+                sortedCell[3 * k + c] = (int) Math.floor(v * inverseSize);
+            }
+        }
+        for (int b = buckets; b > 0; b--) {
+            bucketStart[b] = bucketStart[b - 1];
+        }
+        bucketStart[0] = 0;
+    }
+
+    /**
+     * Finds the points closer than the given radius to the given
+     * position. Fills as many of them as fit into the result array and
+     * returns how many there are, which may be more than fitted.
+     */
+    public int query(double x, double y, double z, double radius, int[] result) {
+        double inverseSize = 1 / cellSize;
+        int minX = (int) Math.floor((x - radius) * inverseSize);
+        int maxX = (int) Math.floor((x + radius) * inverseSize);
+        int minY = (int) Math.floor((y - radius) * inverseSize);
+        int maxY = (int) Math.floor((y + radius) * inverseSize);
+        int minZ = (int) Math.floor((z - radius) * inverseSize);
+        int maxZ = (int) Math.floor((z + radius) * inverseSize);
+        double radiusSquared = radius * radius;
+
+        int found = 0;
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    int b = hash(cx, cy, cz);
+                    for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                        if (sortedCell[3 * k] != cx || sortedCell[3 * k + 1] != cy || sortedCell[3 * k + 2] != cz) continue;
+                        double dx = sortedPosition[3 * k] - x;
+                        double dy = sortedPosition[3 * k + 1] - y;
+                        double dz = sortedPosition[3 * k + 2] - z;
+                        if (dx * dx + dy * dy + dz * dz >= radiusSquared) continue;
+                        if (found < result.length) result[found] = sorted[k];
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the points at least inner and less than outer away from the
+     * given position, in the same way as query. Only the cells that
+     * reach into the shell are searched, so a thin shell around a large
+     * empty ball costs little.
+     */
+    public int queryShell(double x, double y, double z, double inner, double outer, int[] result) {
+        double inverseSize = 1 / cellSize;
+        double outerSquared = outer * outer;
+        double innerSquared = inner * inner;
+        int minX = (int) Math.floor((x - outer) * inverseSize);
+        int maxX = (int) Math.floor((x + outer) * inverseSize);
+        int minY = (int) Math.floor((y - outer) * inverseSize);
+        int maxY = (int) Math.floor((y + outer) * inverseSize);
+
+        int found = 0;
+        for (int cx = minX; cx <= maxX; cx++) {
+            double nearX = gap(x, cx * cellSize, (cx + 1) * cellSize);
+            double farX = Math.max(Math.abs(x - cx * cellSize), Math.abs(x - (cx + 1) * cellSize));
+            for (int cy = minY; cy <= maxY; cy++) {
+                double nearY = gap(y, cy * cellSize, (cy + 1) * cellSize);
+                double farY = Math.max(Math.abs(y - cy * cellSize), Math.abs(y - (cy + 1) * cellSize));
+                double near = nearX * nearX + nearY * nearY;
+                if (near >= outerSquared) continue;
+
+                // The column reaches the shell over this span of z...
+                double reach = Math.sqrt(outerSquared - near);
+                int fromZ = (int) Math.floor((z - reach) * inverseSize);
+                int toZ = (int) Math.floor((z + reach) * inverseSize);
+
+                // ... except for the cells wholly inside the inner ball.
+                int holeFrom = 0, holeTo = -1;
+                double far = farX * farX + farY * farY;
+                if (far < innerSquared) {
+                    double hole = Math.sqrt(innerSquared - far);
+                    holeFrom = (int) Math.ceil((z - hole) * inverseSize);
+                    holeTo = (int) Math.floor((z + hole) * inverseSize) - 1;
+                }
+
+                for (int cz = fromZ; cz <= toZ; cz++) {
+                    if (cz >= holeFrom && cz <= holeTo) {
+                        cz = holeTo;
+                        continue;
+                    }
+                    int b = hash(cx, cy, cz);
+                    for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                        if (sortedCell[3 * k] != cx || sortedCell[3 * k + 1] != cy || sortedCell[3 * k + 2] != cz) continue;
+                        double dx = sortedPosition[3 * k] - x;
+                        double dy = sortedPosition[3 * k + 1] - y;
+                        double dz = sortedPosition[3 * k + 2] - z;
+                        double d2 = dx * dx + dy * dy + dz * dz;
+                        if (d2 >= outerSquared || d2 < innerSquared) continue;
+                        if (found < result.length) result[found] = sorted[k];
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds the points inside the given box, in the same way as query.
+     */
+    public int queryBox(double minX, double minY, double minZ, double maxX, double maxY, double maxZ, int[] result) {
+        double inverseSize = 1 / cellSize;
+        int fromX = (int) Math.floor(minX * inverseSize), toX = (int) Math.floor(maxX * inverseSize);
+        int fromY = (int) Math.floor(minY * inverseSize), toY = (int) Math.floor(maxY * inverseSize);
+        int fromZ = (int) Math.floor(minZ * inverseSize), toZ = (int) Math.floor(maxZ * inverseSize);
+
+        int found = 0;
+        for (int cx = fromX; cx <= toX; cx++) {
+            for (int cy = fromY; cy <= toY; cy++) {
+                for (int cz = fromZ; cz <= toZ; cz++) {
+                    int b = hash(cx, cy, cz);
+                    for (int k = bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                        if (sortedCell[3 * k] != cx || sortedCell[3 * k + 1] != cy || sortedCell[3 * k + 2] != cz) continue;
+                        double px = sortedPosition[3 * k];
+                        double py = sortedPosition[3 * k + 1];
+                        double pz = sortedPosition[3 * k + 2];
+                        if (px < minX || px > maxX || py < minY || py > maxY || pz < minZ || pz > maxZ) continue;
+                        if (found < result.length) result[found] = sorted[k];
+                        found++;
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Finds every pair of points closer than the given distance, and
+     * passes each pair to the visitor once. The order the pairs are
+     * visited in only depends on the points.
+     */
+    public void findPairs(double distance, PairVisitor visitor) {
+        findPairs(0, count, distance, visitor);
+    }
+
+    /**
+     * Finds the pairs of points closer than the given distance that are
+     * found from the points from (inclusive) to to (exclusive) of the
+     * grid's own order, which runs from 0 to getCount(). Searching
+     * ranges that cover the whole grid finds every pair once, and
+     * different ranges can be searched on different threads at the same
+     * time.
+     *
+     * Each pair is only found from one of its points: from the point in
+     * the lower cell, or the earlier point when both are in the same
+     * cell. So only half of the neighbouring cells are searched.
+     */
+    public void findPairs(int from, int to, double distance, PairVisitor visitor) {
+        int reach = (int) Math.ceil(distance / cellSize);
+        double distanceSquared = distance * distance;
+        for (int s = from; s < to; s++) {
+            double x = sortedPosition[3 * s];
+            double y = sortedPosition[3 * s + 1];
+            double z = sortedPosition[3 * s + 2];
+            int ix = sortedCell[3 * s];
+            int iy = sortedCell[3 * s + 1];
+            int iz = sortedCell[3 * s + 2];
+            int i = sorted[s];
+            for (int cx = ix; cx <= ix + reach; cx++) {
+                for (int cy = cx == ix ? iy : iy - reach; cy <= iy + reach; cy++) {
+                    for (int cz = cx == ix && cy == iy ? iz : iz - reach; cz <= iz + reach; cz++) {
+                        boolean own = cx == ix && cy == iy && cz == iz;
+                        int b = hash(cx, cy, cz);
+                        for (int k = own ? s + 1 : bucketStart[b]; k < bucketStart[b + 1]; k++) {
+                            if (sortedCell[3 * k] != cx || sortedCell[3 * k + 1] != cy || sortedCell[3 * k + 2] != cz) continue;
+                            double dx = sortedPosition[3 * k] - x;
+                            double dy = sortedPosition[3 * k + 1] - y;
+                            double dz = sortedPosition[3 * k + 2] - z;
+                            double d2 = dx * dx + dy * dy + dz * dz;
+                            if (d2 >= distanceSquared) continue;
+                            int j = sorted[k];
+                            if (i < j) {
+                                visitor.visit(i, j, d2);
+                            } else {
+                                visitor.visit(j, i, d2);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how far the value is outside the given span, or zero if it
+     * is inside.
+     */
+    private static double gap(double value, double min, double max) {
+        if (value < min) return min - value;
+        if (value > max) return value - max;
+        return 0;
+    }
+
+    /**
+     * Returns the bucket of the given cell. The hash is linear, so cells
+     * next to each other along x fall into neighbouring buckets, and
+     * searching around points in bucket order stays in the same part of
+     * the arrays.
+     */
+    private int hash(int x, int y, int z) {
+        return (x + y * 19349663 + z * 83492791) & bucketMask;
+    }
+}
@@ -0,0 +1,175 @@
+package br.law123.core;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Chooses how many iterations to give a contact resolver, from the
+ * number of iterations that were actually needed in earlier frames.
+ *
+ * A fixed rule such as four iterations per contact gives far too many
+ * iterations to sets of contacts that converge quickly, such as bodies
+ * resting on the ground, and each unused iteration is still a scan
+ * through all the contacts once the resolver starts running out of
+ * work. The controller keeps, for each set of contacts, a history of
+ * the iterations used per contact. Each set is identified by a key
+ * chosen by the caller, such as the first body of an island. The next
+ * limit is then the expected number of iterations plus some headroom.
+ *
+ * The history rises at once when more iterations are needed, and falls
+ * slowly when fewer are. When a resolution uses every iteration it was
+ * given, the true need is unknown, so the next limit is doubled, up to
+ * the maximum number of iterations per contact.
+ */
+public class AdaptiveIterationController {
+
+    /**
+     * Holds the history of one set of contacts.
+     */
+    private static class History {
+
+        /**
+         * Holds the expected number of iterations per contact.
+         */
+        double perContact;
+
+        /**
+         * Holds the last frame in which the set was resolved.
+         */
+        int lastFrame;
+    }
+
+    /**
+     * Holds the weight given to a new measurement when fewer iterations
+     * were needed than expected.
+     */
+    private static final double decay = 0.2;
+
+    /**
+     * Holds the number of frames a history is kept for after its set of
+     * contacts was last resolved.
+     */
+    private static final int keepFrames = 60;
+
+    /**
+     * Holds the history of each set of contacts.
+     */
+    private final Map<Object, History> history = new HashMap<Object, History>();
+
+    /**
+     * Holds the number of iterations per contact given to sets with no
+     * history.
+     */
+    private double initialPerContact;
+
+    /**
+     * Holds the largest number of iterations per contact ever given.
+     */
+    private double maxPerContact;
+
+    /**
+     * Holds the smallest number of iterations ever given.
+     */
+    private int minIterations;
+
+    /**
+     * Holds the factor applied to the expected number of iterations,
+     * to leave room for frames that need more than usual.
+     */
+    private double headroom = 1.5;
+
+    /**
+     * Holds the current frame number.
+     */
+    private int frame;
+
+    /**
+     * Creates a controller that starts each new set of contacts with the
+     * given number of iterations per contact, and never gives more than
+     * the given maximum per contact.
+     */
+    public AdaptiveIterationController(double initialPerContact, double maxPerContact) {
+        this(initialPerContact, maxPerContact, 4);
+    }
+
+    public AdaptiveIterationController(double initialPerContact, double maxPerContact, int minIterations) {
+        this.initialPerContact = initialPerContact;
+        this.maxPerContact = maxPerContact;
+        this.minIterations = minIterations;
+    }
+
+    /**
+     * Sets the factor applied to the expected number of iterations.
+     */
+    public void setHeadroom(double headroom) {
+        this.headroom = headroom;
+    }
+
+    /**
+     * Gets the factor applied to the expected number of iterations.
+     */
+    public double getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Returns the number of iterations to give to the set of contacts
+     * with the given key, which has the given number of contacts this
+     * frame.
+     */
+    public int getIterations(Object key, int numContacts) {
+        History h = history.get(key);
+        double perContact = (h == null) ? initialPerContact : Math.min(maxPerContact, h.perContact * headroom);
+        return clamp((int) Math.ceil(perContact * numContacts), numContacts);
+    }
+
+    /**
+     * Records the number of iterations a set of contacts used, given the
+     * number of iterations it was allowed.
+     */
+    public void record(Object key, int numContacts, int iterationsUsed, int iterations) {
+        if (numContacts <= 0) return;
+
+        History h = history.get(key);
+        if (h == null) {
+            h = new History();
+            h.perContact = initialPerContact;
+            history.put(key, h);
+        }
+        h.lastFrame = frame;
+
+        double used = (double) iterationsUsed / numContacts;
+        if (iterationsUsed >= iterations) {
+            // We ran out, so we don't know how many were needed.
+            h.perContact = Math.min(maxPerContact, Math.max(h.perContact, used) * 2);
+        } else if (used > h.perContact) {
+            h.perContact = used;
+        } else {
+            h.perContact += (used - h.perContact) * decay;
+        }
+    }
+
+    /**
+     * Moves on to the next frame, forgetting the sets of contacts that
+     * haven't been resolved for a while.
+     */
+    public void endFrame() {
+        frame++;
+        for (Iterator<History> it = history.values().iterator(); it.hasNext();) {
+            if (frame - it.next().lastFrame > keepFrames) it.remove();
+        }
+    }
+
+    /**
+     * Forgets all history.
+     */
+    public void reset() {
+        history.clear();
+    }
+
+    private int clamp(int iterations, int numContacts) {
+        int max = (int) Math.ceil(maxPerContact * numContacts);
+        return Math.max(minIterations, Math.min(max, iterations));
+    }
+}
@@ -164,6 +164,30 @@ public class Matrix3 {
         return new Vector3(vector.getX() * data[0] + vector.getY() * data[3] + vector.getZ() * data[6], vector.getX() * data[1] + vector.getY() * data[4] + vector.getZ() * data[7], vector.getX() * data[2] + vector.getY() * data[5] + vector.getZ() * data[8]);
     }
 
+    /**
+     * Transforms the given vector by this matrix, storing the result in
+     * the given result vector. The result can be the same vector as the
+     * one transformed.
+     */
+    public void transform(Vector3 vector, Vector3 result) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        result.set(x * data[0] + y * data[1] + z * data[2], x * data[3] + y * data[4] + z * data[5], x * data[6] + y * data[7] + z * data[8]);
+    }
+
+    /**
+     * Transforms the given vector by the transpose of this matrix,
+     * storing the result in the given result vector. The result can be
+     * the same vector as the one transformed.
+     */
+    public void transformTranspose(Vector3 vector, Vector3 result) {
+        double x = vector.getX();
+        double y = vector.getY();
+        double z = vector.getZ();
+        result.set(x * data[0] + y * data[3] + z * data[6], x * data[1] + y * data[4] + z * data[7], x * data[2] + y * data[5] + z * data[8]);
+    }
+
     /**
      * Gets a vector representing one row in the matrix.
      * 
@@ -215,6 +239,50 @@ public class Matrix3 {
         data[8] = (t4 - t8) * t17;
     }
 
+    /**
+     * Sets the matrix to be the inverse of the given symmetric matrix.
+     * Only the upper triangle of the given matrix is read, so this is
+     * cheaper than setInverse and gives an exactly symmetric result.
+     * 
+     * @param m The symmetric matrix to invert and use to set this.
+     */
+    public void setSymmetricInverse(Matrix3 m) {
+        double a = m.data[0], b = m.data[1], c = m.data[2];
+        double d = m.data[4], e = m.data[5];
+        double f = m.data[8];
+
+        // The cofactors, which are symmetric too.
+        double c0 = d * f - e * e;
+        double c1 = c * e - b * f;
+        double c2 = b * e - c * d;
+
+        // Make sure the determinant is non-zero.
+        double det = a * c0 + b * c1 + c * c2;
+        if (det == 0.0) return;
+        double invDet = 1 / det;
+
+        double c4 = a * f - c * c;
+        double c5 = b * c - a * e;
+        double c8 = a * d - b * b;
+
+        data[0] = c0 * invDet;
+        data[1] = c1 * invDet;
+        data[2] = c2 * invDet;
+        data[3] = data[1];
+        data[4] = c4 * invDet;
+        data[5] = c5 * invDet;
+        data[6] = data[2];
+        data[7] = data[5];
+        data[8] = c8 * invDet;
+    }
+
+    /**
+     * Sets the matrix to be a copy of the given matrix.
+     */
+    public void set(Matrix3 m) {
+        System.arraycopy(m.data, 0, data, 0, 9);
+    }
+
     /** Returns a new matrix containing the inverse of this matrix. */
     public Matrix3 inverse() {
         Matrix3 result = new Matrix3();
@@ -154,11 +154,11 @@ public class Quaternion {
      *            The quaternion by which to multiply.
      */
     public void multToMe(Quaternion multiplier) {
-        Quaternion q = new Quaternion(this);
-        r = q.r * multiplier.r - q.i * multiplier.i - q.j * multiplier.j - q.k * multiplier.k;
-        i = q.r * multiplier.i + q.i * multiplier.r + q.j * multiplier.k - q.k * multiplier.j;
-        j = q.r * multiplier.j + q.j * multiplier.r + q.k * multiplier.i - q.i * multiplier.k;
-        k = q.r * multiplier.k + q.k * multiplier.r + q.i * multiplier.j - q.j * multiplier.i;
+        double qr = r, qi = i, qj = j, qk = k;
+        r = qr * multiplier.r - qi * multiplier.i - qj * multiplier.j - qk * multiplier.k;
+        i = qr * multiplier.i + qi * multiplier.r + qj * multiplier.k - qk * multiplier.j;
+        j = qr * multiplier.j + qj * multiplier.r + qk * multiplier.i - qi * multiplier.k;
+        k = qr * multiplier.k + qk * multiplier.r + qi * multiplier.j - qj * multiplier.i;
     }
 
     /**
@@ -172,12 +172,19 @@ public class Quaternion {
      *            The amount of the vector to add.
      */
     public void addScaledVector(Vector3 vector, double scale) {
-        Quaternion q = new Quaternion(0, vector.getX() * scale, vector.getY() * scale, vector.getZ() * scale);
-        q.multToMe(this);
-        r += q.r * (0.5);
-        i += q.i * (0.5);
-        j += q.j * (0.5);
-        k += q.k * (0.5);
+        // This is the product of the quaternion (0, vector * scale) with
+        // this one, written out so no temporary quaternion is needed.
+        double qi = vector.getX() * scale;
+        double qj = vector.getY() * scale;
+        double qk = vector.getZ() * scale;
+        double dr = -qi * i - qj * j - qk * k;
+        double di = qi * r + qj * k - qk * j;
+        double dj = qj * r + qk * i - qi * k;
+        double dk = qk * r + qi * j - qj * i;
+        r += dr * (0.5);
+        i += di * (0.5);
+        j += dj * (0.5);
+        k += dk * (0.5);
     }
 
     public void rotateByVector(Vector3 vector) {
@@ -84,6 +84,20 @@ public class Vector3 {
 			z = value;
 	}
 
+	/** Sets this vector to the value of the given vector. */
+	public void set(Vector3 v) {
+		x = v.x;
+		y = v.y;
+		z = v.z;
+	}
+
+	/** Sets the components of this vector. */
+	public void set(double x, double y, double z) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
 	/** Adds the given vector to this. */
 	public void sumToMe(Vector3 v) {
 		x += v.x;
@@ -151,6 +165,19 @@ public class Vector3 {
 				* vector.z, x * vector.y - y * vector.x);
 	}
 
+	/**
+	 * Sets this vector to the vector product of the two given vectors, without
+	 * creating a new vector. Either vector can be this vector.
+	 */
+	public void setVectorProduct(Vector3 a, Vector3 b) {
+		double vx = a.y * b.z - a.z * b.y;
+		double vy = a.z * b.x - a.x * b.z;
+		double vz = a.x * b.y - a.y * b.x;
+		x = vx;
+		y = vy;
+		z = vz;
+	}
+
 	/**
 	 * Updates this vector to be the vector product of its current value and the
 	 * given vector.
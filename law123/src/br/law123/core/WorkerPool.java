@@ -0,0 +1,158 @@
+package br.law123.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * A fixed set of worker threads that can run a task over a range of
+ * indices in parallel. The range is always split in the same way for
+ * the same number of items, so work that only depends on the index
+ * gives the same results from run to run.
+ *
+ * The calling thread takes part in the work, so a pool of n threads
+ * only starts n - 1 background threads. The background threads are
+ * daemons, so a pool that isn't shut down doesn't keep the program
+ * running.
+ */
+public class WorkerPool {
+
+    /**
+     * A task that can be run over part of a range of indices.
+     */
+    public interface RangeTask {
+
+        /**
+         * Runs the task for the indices from (inclusive) to to
+         * (exclusive). The worker number is in the range 0 to the number
+         * of threads of the pool, and can be used to pick per-thread
+         * scratch data.
+         */
+        void run(int worker, int from, int to);
+    }
+
+    /**
+     * Holds the total number of threads that do the work, including
+     * the calling thread.
+     */
+    private final int threads;
+
+    /**
+     * Holds the executor running the background threads, or null if
+     * the pool only uses the calling thread.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Creates a pool with one thread for each available processor.
+     */
+    public WorkerPool() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates a pool that splits its work between the given number of
+     * threads.
+     */
+    public WorkerPool(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+        this.threads = threads;
+        if (threads > 1) {
+            executor = Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+
+                private int count;
+
+                @Override
+                public synchronized Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "law123-worker-" + (++count));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * Returns the number of threads the work is split between.
+     */
+    public int getThreadCount() {
+        return threads;
+    }
+
+    /**
+     * Runs the given task over the indices from 0 to count, split into
+     * contiguous chunks, one per thread. Returns when every chunk is
+     * done. Any exception thrown by the task is thrown again here.
+     */
+    public void run(int count, RangeTask task) {
+        run(count, 1, task);
+    }
+
+    /**
+     * Runs the given task over the indices from 0 to count, like
+     * {@link #run(int, RangeTask)}, but never gives a thread fewer than
+     * minChunk indices, so small ranges don't pay for waking up
+     * threads that have almost nothing to do.
+     */
+    public void run(int count, int minChunk, final RangeTask task) {
+        if (count <= 0) return;
+
+        int chunks = Math.min(threads, (count + minChunk - 1) / Math.max(1, minChunk));
+        if (chunks <= 1) {
+            task.run(0, 0, count);
+            return;
+        }
+
+        final CountDownLatch done = new CountDownLatch(chunks - 1);
+        final Throwable[] failure = new Throwable[1];
+        for (int w = 1; w < chunks; w++) {
+            final int worker = w;
+            final int from = (int) ((long) count * w / chunks);
+            final int to = (int) ((long) count * (w + 1) / chunks);
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run(worker, from, to);
+                    } catch (Throwable t) {
+                        synchronized (failure) {
+                            if (failure[0] == null) failure[0] = t;
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        // The calling thread does the first chunk itself, and always
+        // waits for the others so no worker outlives the call.
+        try {
+            task.run(0, 0, count / chunks);
+        } finally {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for workers", e);
+            }
+        }
+
+        synchronized (failure) {
+            if (failure[0] instanceof RuntimeException) throw (RuntimeException) failure[0];
+            if (failure[0] instanceof Error) throw (Error) failure[0];
+            if (failure[0] != null) throw new IllegalStateException(failure[0]);
+        }
+    }
+
+    /**
+     * Stops the background threads. The pool can't be used afterwards.
+     */
+    public void shutdown() {
+        if (executor != null) executor.shutdown();
+    }
+}
@@ -0,0 +1,320 @@
+package br.law123.forcegenerator;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout shared by the compiled force kernels: a fixed set of
+ * registrations, laid out so that each force generator class is run in
+ * a loop of its own.
+ *
+ * The registrations are first put into a RegistryLayout, which
+ * numbers the bodies in the order they were first registered, groups
+ * the registrations by the class of their generator, and puts each
+ * group in body order. The registrations of each bulk generator are
+ * gathered into a list of body indices, and the generator is called
+ * with all of them. The kernel is run over blocks of bodies, each
+ * generator in turn on the bodies of a block, so the bodies are visited
+ * once while they are in the cache, and the generators called in a row
+ * are all of the same class.
+ *
+ * When the registrations of each body were already made one after
+ * another, the registry visits each body once anyway, and grouping by
+ * class only costs more; the kernel then runs the registrations in the
+ * order they were made.
+ *
+ * A kernel is a snapshot of the registry it was compiled from, and has
+ * to be compiled again when the registry changes. Each body gets the
+ * same forces as from the registry, though they may be added up in a
+ * different order.
+ *
+ * @param <B> the type of the bodies.
+ * @param <G> the type of the force generators.
+ */
+abstract class CompiledKernel<B, G> {
+
+    /**
+     * Holds the number of bodies in a block.
+     */
+    private static final int BLOCK = 256;
+
+    /**
+     * Holds the bodies, in the order they were first registered.
+     */
+    final B[] bodies;
+
+    /**
+     * True if the registrations are run a class at a time, false if
+     * they are run in the order they were made.
+     */
+    private final boolean grouped;
+
+    /**
+     * Holds the number of blocks of bodies.
+     */
+    private final int blockCount;
+
+    /**
+     * Holds the bulk generators, and the indices of the bodies of each.
+     */
+    private final Object[] bulkGenerators;
+
+    private final int[][] bulkIndices;
+
+    /**
+     * Holds, for each bulk generator, where the indices of each block of
+     * bodies start.
+     */
+    private final int[][] bulkBlockStart;
+
+    /**
+     * Holds the other registrations, grouped by generator class: the
+     * generator and the index of the body of each, and where each group
+     * starts. When the registrations aren't grouped, these hold all of
+     * them, in the order they were made.
+     */
+    private final Object[] generators;
+
+    private final int[] indices;
+
+    private final int[] groupStart;
+
+    private final Class<?>[] groupTypes;
+
+    /**
+     * Holds, for each group, where the registrations of each block of
+     * bodies start.
+     */
+    private final int[][] groupBlockStart;
+
+    /**
+     * Lays out the given registrations, given as parallel lists of
+     * bodies and generators.
+     */
+    @SuppressWarnings("unchecked")
+    CompiledKernel(List<B> registeredBodies, List<G> registeredGenerators) {
+        int count = registeredBodies.size();
+        RegistryLayout<B, G> layout = new RegistryLayout<B, G>();
+        for (int r = 0; r < count; r++) {
+            layout.add(registeredBodies.get(r), registeredGenerators.get(r));
+        }
+        int groupCount = layout.sortGroups();
+
+        bodies = newBodies(layout.getOrdinalCount());
+        for (int g = 0; g < groupCount; g++) {
+            Object[] groupBodies = layout.getGroupBodies(g);
+            int[] ordinals = layout.getGroupOrdinals(g);
+            for (int i = 0; i < layout.getGroupSize(g); i++) {
+                bodies[ordinals[i]] = (B) groupBodies[i];
+            }
+        }
+        blockCount = (bodies.length + BLOCK - 1) / BLOCK;
+
+        grouped = !groupedByBody(registeredBodies, layout);
+        if (!grouped) {
+            bulkGenerators = new Object[0];
+            bulkIndices = new int[0][];
+            bulkBlockStart = new int[0][];
+            generators = registeredGenerators.toArray();
+            indices = new int[count];
+            for (int r = 0; r < count; r++) {
+                indices[r] = layout.getOrdinal(registeredBodies.get(r));
+            }
+            groupStart = new int[] { 0, count };
+            groupTypes = new Class<?>[0];
+            groupBlockStart = new int[0][];
+            return;
+        }
+
+        // Split the bulk classes by generator, keeping body order, and
+        // lay the other classes out one after another.
+        List<Object> bulk = new ArrayList<Object>();
+        List<int[]> bulkLists = new ArrayList<int[]>();
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        int single = 0;
+        for (int g = 0; g < groupCount; g++) {
+            if (layout.getGroupSize(g) == 0) continue;
+            if (isBulk((G) layout.getGroupGenerators(g)[0])) {
+                splitBulk(layout, g, bulk, bulkLists);
+            } else {
+                types.add(layout.getGroupType(g));
+                single += layout.getGroupSize(g);
+            }
+        }
+
+        bulkGenerators = bulk.toArray();
+        bulkIndices = bulkLists.toArray(new int[bulkLists.size()][]);
+        bulkBlockStart = new int[bulkGenerators.length][];
+        for (int b = 0; b < bulkGenerators.length; b++) {
+            bulkBlockStart[b] = blockStarts(bulkIndices[b], 0, bulkIndices[b].length);
+        }
+
+        generators = new Object[single];
+        indices = new int[single];
+        groupTypes = types.toArray(new Class<?>[types.size()]);
+        groupStart = new int[groupTypes.length + 1];
+        int place = 0, t = 0;
+        for (int g = 0; g < groupCount; g++) {
+            int size = layout.getGroupSize(g);
+            if (size == 0 || isBulk((G) layout.getGroupGenerators(g)[0])) continue;
+            groupStart[t++] = place;
+            System.arraycopy(layout.getGroupGenerators(g), 0, generators, place, size);
+            System.arraycopy(layout.getGroupOrdinals(g), 0, indices, place, size);
+            place += size;
+        }
+        groupStart[groupTypes.length] = place;
+        groupBlockStart = new int[groupTypes.length][];
+        for (int g = 0; g < groupTypes.length; g++) {
+            groupBlockStart[g] = blockStarts(indices, groupStart[g], groupStart[g + 1]);
+        }
+    }
+
+    /**
+     * Returns true if the registrations of each body follow one another,
+     * and bodies have more than one registration on average.
+     */
+    private static <B> boolean groupedByBody(List<B> registeredBodies, RegistryLayout<B, ?> layout) {
+        int count = registeredBodies.size();
+        int runs = 0;
+        for (int r = 0; r < count; r++) {
+            if (r == 0 || registeredBodies.get(r) != registeredBodies.get(r - 1)) runs++;
+        }
+        return runs == layout.getOrdinalCount() && runs < count;
+    }
+
+    /**
+     * Adds the generators of the given bulk group to the given list, in
+     * the order they are first met, with the body indices of each.
+     */
+    private static void splitBulk(RegistryLayout<?, ?> layout, int group, List<Object> bulk, List<int[]> bulkLists) {
+        int size = layout.getGroupSize(group);
+        Object[] generators = layout.getGroupGenerators(group);
+        int[] ordinals = layout.getGroupOrdinals(group);
+
+        Map<Object, int[]> counts = new IdentityHashMap<Object, int[]>();
+        int first = bulk.size();
+        for (int i = 0; i < size; i++) {
+            int[] n = counts.get(generators[i]);
+            if (n == null) {
+                n = new int[] { bulk.size(), 0 };
+                counts.put(generators[i], n);
+                bulk.add(generators[i]);
+            }
+            n[1]++;
+        }
+        for (int b = first; b < bulk.size(); b++) {
+            bulkLists.add(new int[counts.get(bulk.get(b))[1]]);
+        }
+        int[] filled = new int[bulk.size() - first];
+        for (int i = 0; i < size; i++) {
+            int b = counts.get(generators[i])[0];
+            bulkLists.get(b)[filled[b - first]++] = ordinals[i];
+        }
+    }
+
+    /**
+     * Returns where the entries of each block start among the given
+     * sorted body indices, from index from to index to, with one more
+     * entry for where the last block ends.
+     */
+    private int[] blockStarts(int[] sorted, int from, int to) {
+        int[] starts = new int[blockCount + 1];
+        int i = from;
+        for (int k = 0; k < blockCount; k++) {
+            starts[k] = i;
+            while (i < to && sorted[i] < (k + 1) * BLOCK) {
+                i++;
+            }
+        }
+        starts[blockCount] = to;
+        return starts;
+    }
+
+    /**
+     * Returns an array for the given number of bodies.
+     */
+    abstract B[] newBodies(int count);
+
+    /**
+     * Returns true if the given generator can take all its bodies in
+     * one call.
+     */
+    abstract boolean isBulk(G generator);
+
+    /**
+     * Applies the given bulk generator to the given bodies.
+     */
+    abstract void updateBulk(G generator, B[] bodies, int[] indices, int from, int to, double duration);
+
+    /**
+     * Applies the given generator to the given body.
+     */
+    abstract void update(G generator, B body, double duration);
+
+    /**
+     * Applies each of the given generators to the body with the same
+     * index in indices. This loop is kept apart from update, so the
+     * virtual machine profiles the calls of the two layouts apart.
+     */
+    abstract void updateInOrder(Object[] generators, B[] bodies, int[] indices, double duration);
+
+    /**
+     * Returns the number of bodies.
+     */
+    public int getBodyCount() {
+        return bodies.length;
+    }
+
+    /**
+     * Returns true if the generators are run a class at a time, false if
+     * they are run in the order they were registered, because the
+     * registrations of each body were made one after another.
+     */
+    public boolean isGrouped() {
+        return grouped;
+    }
+
+    /**
+     * Returns the number of generators that take all their bodies in
+     * one call.
+     */
+    public int getBulkCount() {
+        return bulkGenerators.length;
+    }
+
+    /**
+     * Returns the number of generator classes run one body at a time.
+     */
+    public int getGroupCount() {
+        return groupTypes.length;
+    }
+
+    /**
+     * Calls all the force generators to update the forces of their
+     * bodies. The bodies are taken a block at a time, so they are still
+     * in the cache for every generator that acts on them; within a
+     * block the bulk generators run first, then the other generators
+     * one class at a time.
+     */
+    @SuppressWarnings("unchecked")
+    public void updateForces(double duration) {
+        if (!grouped) {
+            updateInOrder(generators, bodies, indices, duration);
+            return;
+        }
+        for (int k = 0; k < blockCount; k++) {
+            for (int b = 0; b < bulkGenerators.length; b++) {
+                int[] starts = bulkBlockStart[b];
+                if (starts[k] < starts[k + 1]) updateBulk((G) bulkGenerators[b], bodies, bulkIndices[b], starts[k], starts[k + 1], duration);
+            }
+            for (int g = 0; g < groupTypes.length; g++) {
+                int[] starts = groupBlockStart[g];
+                for (int i = starts[k]; i < starts[k + 1]; i++) {
+                    update((G) generators[i], bodies[indices[i]], duration);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package br.law123.forcegenerator;
+
+import java.util.List;
+
+import br.law123.forcegenerator.rigidbody.BulkForceGenerator;
+import br.law123.forcegenerator.rigidbody.ForceGenerator;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * The registrations of a ForceRegistry, compiled by ForceKernelCompiler
+ * so that each force generator class runs in a loop of its own, and
+ * each BulkForceGenerator is called once for all its bodies.
+ */
+public class ForceKernel extends CompiledKernel<RigidBody, ForceGenerator> {
+
+    ForceKernel(List<RigidBody> bodies, List<ForceGenerator> generators) {
+        super(bodies, generators);
+    }
+
+    @Override
+    RigidBody[] newBodies(int count) {
+        return new RigidBody[count];
+    }
+
+    @Override
+    boolean isBulk(ForceGenerator generator) {
+        return generator instanceof BulkForceGenerator;
+    }
+
+    @Override
+    void updateBulk(ForceGenerator generator, RigidBody[] bodies, int[] indices, int from, int to, double duration) {
+        ((BulkForceGenerator) generator).updateForces(bodies, indices, from, to, duration);
+    }
+
+    @Override
+    void update(ForceGenerator generator, RigidBody body, double duration) {
+        generator.updateForce(body, duration);
+    }
+
+    @Override
+    void updateInOrder(Object[] generators, RigidBody[] bodies, int[] indices, double duration) {
+        for (int i = 0; i < generators.length; i++) {
+            ((ForceGenerator) generators[i]).updateForce(bodies[indices[i]], duration);
+        }
+    }
+}
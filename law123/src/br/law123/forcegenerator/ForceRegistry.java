@@ -1,9 +1,12 @@
 package br.law123.forcegenerator;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import br.law123.core.WorkerPool;
 import br.law123.forcegenerator.rigidbody.ForceGenerator;
+import br.law123.rigidbody.ForceAccumulator;
 import br.law123.rigidbody.RigidBody;
 
 /**
@@ -16,12 +19,56 @@ public class ForceRegistry {
      */
     private final List<ForceRegistration> registrations = new ArrayList<ForceRegistration>();
 
+    /**
+     * Holds the buffers the forces are added to when the generators run
+     * on several threads, and the number of parts the registrations are
+     * cut into for them.
+     */
+    private final ForceAccumulator accumulator = new ForceAccumulator();
+
+    private int partitions = 16;
+
+    /**
+     * True if the registrations changed since their bodies were last
+     * bound to the accumulator.
+     */
+    private boolean bodiesDirty = true;
+
+    /**
+     * Holds the duration of the update being run on the pool.
+     */
+    private double taskDuration;
+
+    /**
+     * Holds the task that runs a range of partitions.
+     */
+    private final WorkerPool.RangeTask partitionTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            int count = registrations.size();
+            for (int p = from; p < to; p++) {
+                accumulator.open(p);
+                try {
+                    int end = (int) ((long) count * (p + 1) / partitions);
+                    for (int r = (int) ((long) count * p / partitions); r < end; r++) {
+                        ForceRegistration i = registrations.get(r);
+                        i.getFg().updateForce(i.getBody(), taskDuration);
+                    }
+                } finally {
+                    accumulator.close();
+                }
+            }
+        }
+    };
+
     /**
      * Registers the given force generator to apply to the
      * given body.
      */
     public void add(RigidBody body, ForceGenerator fg) {
         registrations.add(new ForceRegistration(body, fg));
+        bodiesDirty = true;
     }
 
     /**
@@ -39,9 +86,18 @@ public class ForceRegistry {
         }
         if (remove != null) {
             registrations.remove(remove);
+            bodiesDirty = true;
         }
     }
 
+    /**
+     * Returns the registrations, in the order they were registered. The
+     * list can't be changed; use add and remove.
+     */
+    public List<ForceRegistration> getRegistrations() {
+        return Collections.unmodifiableList(registrations);
+    }
+
     /**
      * Clears all registrations from the registry. This will
      * not delete the bodies or the force generators
@@ -49,6 +105,22 @@ public class ForceRegistry {
      */
     public void clear() {
         registrations.clear();
+        bodiesDirty = true;
+    }
+
+    /**
+     * Sets the number of parts the registrations are cut into when they
+     * are run on several threads. The forces only depend on this, not
+     * on the number of threads. It should be a few times the number of
+     * threads.
+     */
+    public void setPartitionCount(int partitions) {
+        if (partitions < 1) throw new IllegalArgumentException("There must be at least one partition");
+        this.partitions = partitions;
+    }
+
+    public int getPartitionCount() {
+        return partitions;
     }
 
     /**
@@ -60,4 +132,59 @@ public class ForceRegistry {
             i.getFg().updateForce(i.getBody(), duration);
         }
     }
+
+    /**
+     * Calls all the force generators on the threads of the given pool.
+     *
+     * The registrations are cut into a fixed number of contiguous parts,
+     * which are shared out between the threads. The forces and torques
+     * added to the bodies of the registrations while a part runs are
+     * collected in a buffer of its own, so generators of the same body,
+     * or springs pulling on both their ends, can run at the same time.
+     * Once every part is done, the buffers are added to the bodies one
+     * part after another, so the bodies get the same forces whatever the
+     * number of threads, though they may differ in the last bits from
+     * {@link #updateForces(double)}.
+     *
+     * Force generators must only add force to bodies that are
+     * registered; adding force to any other body throws an
+     * IllegalStateException. They must not change any state shared
+     * between calls, their own or anyone else's. Gravity, Spring, Aero,
+     * AngledAero, AeroControl, Explosion, Buoyancy and HullBuoyancy are
+     * safe, as long as their settings aren't changed during the update,
+     * and a WaterSurface they read is only moved on or covered
+     * beforehand. A Spring only pushes on the body it is registered
+     * for, so its other end needs a registration of its own.
+     */
+    public void updateForces(double duration, WorkerPool pool) {
+        if (pool == null || pool.getThreadCount() == 1) {
+            updateForces(duration);
+            return;
+        }
+        if (!bodiesDirty) {
+            // A body may have been bound to another registry since.
+            for (ForceRegistration i : registrations) {
+                if (accumulator.isBound(i.getBody())) continue;
+                bodiesDirty = true;
+                break;
+            }
+        }
+        if (bodiesDirty) rebind();
+        accumulator.prepare(partitions);
+
+        taskDuration = duration;
+        pool.run(partitions, 1, partitionTask);
+        accumulator.reduce(partitions);
+    }
+
+    /**
+     * Binds the bodies of the registrations to the accumulator again.
+     */
+    private void rebind() {
+        accumulator.unbindAll();
+        for (ForceRegistration i : registrations) {
+            accumulator.bind(i.getBody());
+        }
+        bodiesDirty = false;
+    }
 }
@@ -0,0 +1,22 @@
+package br.law123.forcegenerator;
+
+import br.law123.forcegenerator.rigidbody.ForceGenerator;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Holds force generators and the bodies they apply to, for scenes that
+ * add and remove many registrations while they run, such as thrusters
+ * that fire for a moment or bodies passing through drag zones.
+ *
+ * Unlike ForceRegistry, each registration is given a handle, and is
+ * removed by its handle in constant time. The generators are run one
+ * class at a time, and the bodies of each class in the order they were
+ * first registered, rather than in the order of registration.
+ */
+public class IndexedForceRegistry extends IndexedRegistry<RigidBody, ForceGenerator> {
+
+    @Override
+    void update(ForceGenerator generator, RigidBody body, double duration) {
+        generator.updateForce(body, duration);
+    }
+}
@@ -0,0 +1,21 @@
+package br.law123.forcegenerator;
+
+import br.law123.forcegenerator.particle.ParticleForceGenerator;
+import br.law123.particle.Particle;
+
+/**
+ * Holds force generators and the particles they apply to, for scenes
+ * that add and remove many registrations while they run.
+ *
+ * Unlike ParticleForceRegistry, each registration is given a handle,
+ * and is removed by its handle in constant time. The generators are run
+ * one class at a time, and the particles of each class in the order
+ * they were first registered, rather than in the order of registration.
+ */
+public class IndexedParticleForceRegistry extends IndexedRegistry<Particle, ParticleForceGenerator> {
+
+    @Override
+    void update(ParticleForceGenerator generator, Particle particle, double duration) {
+        generator.updateForce(particle, duration);
+    }
+}
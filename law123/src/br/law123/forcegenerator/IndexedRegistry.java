@@ -0,0 +1,106 @@
+package br.law123.forcegenerator;
+
+/**
+ * The bookkeeping shared by the indexed force registries: registrations
+ * known by handles, grouped by the class of their force generator, and
+ * run in the order of their bodies.
+ *
+ * The registrations are kept in a RegistryLayout. Each registration
+ * gets a handle when it is added, and is removed by that handle, so
+ * adding and removing take constant time however many registrations
+ * there are. The registrations of each generator class
+ * are kept together in dense arrays; removing one moves the last of its
+ * group into its place.
+ *
+ * Every body is given an ordinal the first time it is registered. Before
+ * a group is run, its registrations are sorted by the ordinal of their
+ * body if they were changed, so the bodies are visited in the same order
+ * every frame, and bodies created together are visited together.
+ *
+ * @param <B> the type of the bodies.
+ * @param <G> the type of the force generators.
+ */
+abstract class IndexedRegistry<B, G> {
+
+    /**
+     * Holds the registrations.
+     */
+    private final RegistryLayout<B, G> layout = new RegistryLayout<B, G>();
+
+    /**
+     * Applies the given generator to the given body.
+     */
+    abstract void update(G generator, B body, double duration);
+
+    /**
+     * Registers the given force generator to apply to the given body,
+     * and returns the handle of the registration.
+     */
+    public int add(B body, G generator) {
+        return layout.add(body, generator);
+    }
+
+    /**
+     * Removes the registration with the given handle. The handle may be
+     * given to a later registration. Removing a handle that isn't in use
+     * has no effect.
+     */
+    public void remove(int handle) {
+        layout.remove(handle);
+    }
+
+    /**
+     * Returns true if the given handle belongs to a registration.
+     */
+    public boolean contains(int handle) {
+        return layout.contains(handle);
+    }
+
+    /**
+     * Returns the body of the registration with the given handle.
+     */
+    public B getBody(int handle) {
+        return layout.getBody(handle);
+    }
+
+    /**
+     * Returns the force generator of the registration with the given
+     * handle.
+     */
+    public G getGenerator(int handle) {
+        return layout.getGenerator(handle);
+    }
+
+    /**
+     * Returns the number of registrations.
+     */
+    public int size() {
+        return layout.size();
+    }
+
+    /**
+     * Clears all registrations from the registry. Handles given out
+     * before are no longer valid.
+     */
+    public void clear() {
+        layout.clear();
+    }
+
+    /**
+     * Calls all the force generators to update the forces of their
+     * bodies, one generator class at a time, in body order within each
+     * class.
+     */
+    @SuppressWarnings("unchecked")
+    public void updateForces(double duration) {
+        int groupCount = layout.sortGroups();
+        for (int g = 0; g < groupCount; g++) {
+            Object[] bodies = layout.getGroupBodies(g);
+            Object[] generators = layout.getGroupGenerators(g);
+            int count = layout.getGroupSize(g);
+            for (int i = 0; i < count; i++) {
+                update((G) generators[i], (B) bodies[i], duration);
+            }
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package br.law123.forcegenerator;
+
+import java.util.List;
+
+import br.law123.forcegenerator.particle.BulkParticleForceGenerator;
+import br.law123.forcegenerator.particle.ParticleForceGenerator;
+import br.law123.particle.Particle;
+
+/**
+ * The registrations of a ParticleForceRegistry, compiled by
+ * ForceKernelCompiler so that each force generator class runs in a loop
+ * of its own, and each BulkParticleForceGenerator is called once for
+ * all its particles.
+ */
+public class ParticleForceKernel extends CompiledKernel<Particle, ParticleForceGenerator> {
+
+    ParticleForceKernel(List<Particle> particles, List<ParticleForceGenerator> generators) {
+        super(particles, generators);
+    }
+
+    @Override
+    Particle[] newBodies(int count) {
+        return new Particle[count];
+    }
+
+    @Override
+    boolean isBulk(ParticleForceGenerator generator) {
+        return generator instanceof BulkParticleForceGenerator;
+    }
+
+    @Override
+    void updateBulk(ParticleForceGenerator generator, Particle[] particles, int[] indices, int from, int to, double duration) {
+        ((BulkParticleForceGenerator) generator).updateForces(particles, indices, from, to, duration);
+    }
+
+    @Override
+    void update(ParticleForceGenerator generator, Particle particle, double duration) {
+        generator.updateForce(particle, duration);
+    }
+
+    @Override
+    void updateInOrder(Object[] generators, Particle[] particles, int[] indices, double duration) {
+        for (int i = 0; i < generators.length; i++) {
+            ((ParticleForceGenerator) generators[i]).updateForce(particles[indices[i]], duration);
+        }
+    }
+}
@@ -1,8 +1,14 @@
 package br.law123.forcegenerator;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import br.law123.core.WorkerPool;
 import br.law123.forcegenerator.particle.ParticleForceGenerator;
 import br.law123.particle.Particle;
 
@@ -18,12 +24,57 @@ public class ParticleForceRegistry
      */
     protected final List<ParticleForceRegistration> registrations = new ArrayList<ParticleForceRegistration>();
 
+    /**
+     * Holds the registrations grouped by particle, as indices into the
+     * list of registrations. The registrations of group g are the
+     * entries from groupStart[g] to groupStart[g + 1], in the order they
+     * were registered.
+     */
+    private int[] groupRegistrations = new int[0];
+
+    /**
+     * Holds where each group starts in groupRegistrations.
+     */
+    private int[] groupStart = new int[1];
+
+    /**
+     * Holds the number of groups.
+     */
+    private int groupCount;
+
+    /**
+     * True if the registrations changed since they were last grouped.
+     */
+    private boolean groupsDirty = true;
+
+    /**
+     * Holds the duration of the update being run on the pool.
+     */
+    private double taskDuration;
+
+    /**
+     * Holds the task that updates a range of groups.
+     */
+    private final WorkerPool.RangeTask groupTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int g = from; g < to; g++) {
+                for (int r = groupStart[g]; r < groupStart[g + 1]; r++) {
+                    ParticleForceRegistration i = registrations.get(groupRegistrations[r]);
+                    i.getFg().updateForce(i.getParticle(), taskDuration);
+                }
+            }
+        }
+    };
+
     /**
      * Registers the given force generator to apply to the
      * given particle.
      */
     public void add(Particle particle, ParticleForceGenerator fg) {
         registrations.add(new ParticleForceRegistration(particle, fg));
+        groupsDirty = true;
     }
 
     /**
@@ -41,9 +92,30 @@ public class ParticleForceRegistry
         }
         if (remove != null) {
             registrations.remove(remove);
+            groupsDirty = true;
         }
     }
 
+    /**
+     * Removes all the given registrations from the registry, in one pass
+     * over it. Registrations are matched by identity.
+     */
+    public void removeAll(Collection<ParticleForceRegistration> remove) {
+        if (remove.isEmpty()) return;
+        Collection<ParticleForceRegistration> set = Collections.newSetFromMap(new IdentityHashMap<ParticleForceRegistration, Boolean>());
+        set.addAll(remove);
+        registrations.removeAll(set);
+        groupsDirty = true;
+    }
+
+    /**
+     * Returns the registrations, in the order they were registered. The
+     * list can't be changed; use add and remove.
+     */
+    public List<ParticleForceRegistration> getRegistrations() {
+        return Collections.unmodifiableList(registrations);
+    }
+
     /**
      * Clears all registrations from the registry. This will
      * not delete the particles or the force generators
@@ -51,6 +123,7 @@ public class ParticleForceRegistry
      */
     public void clear() {
         registrations.clear();
+        groupsDirty = true;
     }
 
     /**
@@ -62,4 +135,72 @@ public class ParticleForceRegistry
             i.getFg().updateForce(i.getParticle(), duration);
         }
     }
+
+    /**
+     * Calls all the force generators on the threads of the given pool.
+     *
+     * The registrations are split by particle, so every registration of
+     * a particle is run by the same thread, in the order they were
+     * registered. No two threads ever add to the same particle, and each
+     * particle ends up with exactly the same force as from
+     * {@link #updateForces(double)}. Force generators must only add
+     * force to the particle they are called for, and must not change
+     * any shared state of their own. Reading the state of a particle of
+     * a ParticleSystem writes it into the particle's own vectors, so
+     * such a particle must only be read by the generators registered
+     * for it.
+     *
+     * If a registration is changed in place to point at another
+     * particle, call {@link #regroup()} before the next update.
+     */
+    public void updateForces(double duration, WorkerPool pool) {
+        if (pool == null || pool.getThreadCount() == 1) {
+            updateForces(duration);
+            return;
+        }
+        if (groupsDirty) regroup();
+
+        taskDuration = duration;
+        pool.run(groupCount, 64, groupTask);
+    }
+
+    /**
+     * Groups the registrations by particle again. This is done
+     * automatically when registrations are added or removed.
+     */
+    public void regroup() {
+        int count = registrations.size();
+        Map<Particle, Integer> groupOf = new IdentityHashMap<Particle, Integer>();
+        int[] registrationGroup = new int[count];
+
+        // Number the particles in the order they are first met, and
+        // count the registrations of each.
+        groupCount = 0;
+        int[] sizes = new int[Math.max(1, count)];
+        for (int r = 0; r < count; r++) {
+            Particle particle = registrations.get(r).getParticle();
+            Integer group = groupOf.get(particle);
+            if (group == null) {
+                group = groupCount++;
+                groupOf.put(particle, group);
+            }
+            registrationGroup[r] = group;
+            sizes[group]++;
+        }
+
+        if (groupStart.length < groupCount + 1) groupStart = new int[groupCount + 1];
+        if (groupRegistrations.length < count) groupRegistrations = new int[count];
+        groupStart[0] = 0;
+        for (int g = 0; g < groupCount; g++) {
+            groupStart[g + 1] = groupStart[g] + sizes[g];
+        }
+
+        // Place the registrations, keeping their order within a group.
+        Arrays.fill(sizes, 0);
+        for (int r = 0; r < count; r++) {
+            int group = registrationGroup[r];
+            groupRegistrations[groupStart[group] + sizes[group]++] = r;
+        }
+        groupsDirty = false;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,328 @@
+package br.law123.forcegenerator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The layout of a set of registrations of force generators to bodies:
+ * registrations known by handles, grouped by the class of their force
+ * generator, and kept in the order of their bodies. The indexed force
+ * registries keep their registrations in one, and the compiled kernels
+ * lay themselves out from one.
+ *
+ * Each registration gets a handle when it is added, and is removed by
+ * that handle, so adding and removing take constant time however many
+ * registrations there are. The registrations of each generator class
+ * are kept together in dense arrays; removing one moves the last of its
+ * group into its place.
+ *
+ * Every body is given an ordinal the first time it is registered. When
+ * the groups are sorted, the registrations of each group that was
+ * changed are put in the order of the ordinals of their bodies, so the
+ * bodies are visited in the same order every frame, and bodies created
+ * together are visited together.
+ *
+ * @param <B> the type of the bodies.
+ * @param <G> the type of the force generators.
+ */
+final class RegistryLayout<B, G> {
+
+    /**
+     * Holds the registrations of one generator class.
+     */
+    private static final class Group {
+
+        final Class<?> type;
+
+        Object[] bodies = new Object[8];
+
+        Object[] generators = new Object[8];
+
+        int[] handles = new int[8];
+
+        int[] ordinals = new int[8];
+
+        int count;
+
+        /**
+         * True if the registrations are no longer in body order.
+         */
+        boolean unsorted;
+
+        Group(Class<?> type) {
+            this.type = type;
+        }
+    }
+
+    /**
+     * Holds the groups, in the order their classes were first
+     * registered, and the group of each class.
+     */
+    private final List<Group> groups = new ArrayList<Group>();
+
+    private final Map<Class<?>, Group> groupOf = new IdentityHashMap<Class<?>, Group>();
+
+    /**
+     * Holds, for each handle, its group and its place in the group. Free
+     * handles have no group.
+     */
+    private Group[] handleGroup = new Group[16];
+
+    private int[] handlePlace = new int[16];
+
+    /**
+     * Holds the free handles below handleCount, as a stack.
+     */
+    private int[] free = new int[16];
+
+    private int freeCount;
+
+    /**
+     * Holds one more than the highest handle ever given out.
+     */
+    private int handleCount;
+
+    /**
+     * Holds, for each body, its ordinal and the number of its
+     * registrations.
+     */
+    private final Map<Object, int[]> bodyOrdinal = new IdentityHashMap<Object, int[]>();
+
+    private int nextOrdinal;
+
+    /**
+     * Holds the registrations in the order of a sort, and a copy of a
+     * group's arrays while it is put in that order.
+     */
+    private long[] sortKeys = new long[0];
+
+    private Object[] scratch = new Object[0];
+
+    private int[] intScratch = new int[0];
+
+    /**
+     * Registers the given force generator to apply to the given body,
+     * and returns the handle of the registration.
+     */
+    int add(B body, G generator) {
+        Group group = groupOf.get(generator.getClass());
+        if (group == null) {
+            group = new Group(generator.getClass());
+            groupOf.put(group.type, group);
+            groups.add(group);
+        }
+
+        int[] ordinal = bodyOrdinal.get(body);
+        if (ordinal == null) {
+            ordinal = new int[] { nextOrdinal++, 0 };
+            bodyOrdinal.put(body, ordinal);
+        }
+        ordinal[1]++;
+
+        int handle;
+        if (freeCount > 0) {
+            handle = free[--freeCount];
+        } else {
+            if (handleCount == handleGroup.length) {
+                handleGroup = Arrays.copyOf(handleGroup, 2 * handleCount);
+                handlePlace = Arrays.copyOf(handlePlace, 2 * handleCount);
+                free = Arrays.copyOf(free, 2 * handleCount);
+            }
+            handle = handleCount++;
+        }
+
+        if (group.count == group.handles.length) {
+            int capacity = 2 * group.count;
+            group.bodies = Arrays.copyOf(group.bodies, capacity);
+            group.generators = Arrays.copyOf(group.generators, capacity);
+            group.handles = Arrays.copyOf(group.handles, capacity);
+            group.ordinals = Arrays.copyOf(group.ordinals, capacity);
+        }
+        int place = group.count++;
+        group.bodies[place] = body;
+        group.generators[place] = generator;
+        group.handles[place] = handle;
+        group.ordinals[place] = ordinal[0];
+        if (place > 0 && group.ordinals[place - 1] > ordinal[0]) group.unsorted = true;
+
+        handleGroup[handle] = group;
+        handlePlace[handle] = place;
+        return handle;
+    }
+
+    /**
+     * Removes the registration with the given handle. The handle may be
+     * given to a later registration. Removing a handle that isn't in use
+     * has no effect.
+     */
+    void remove(int handle) {
+        if (handle < 0 || handle >= handleCount || handleGroup[handle] == null) return;
+        Group group = handleGroup[handle];
+        int place = handlePlace[handle];
+
+        Object body = group.bodies[place];
+        int[] ordinal = bodyOrdinal.get(body);
+        if (--ordinal[1] == 0) bodyOrdinal.remove(body);
+
+        int last = --group.count;
+        if (place != last) {
+            group.bodies[place] = group.bodies[last];
+            group.generators[place] = group.generators[last];
+            group.handles[place] = group.handles[last];
+            group.ordinals[place] = group.ordinals[last];
+            handlePlace[group.handles[place]] = place;
+            group.unsorted = true;
+        }
+        group.bodies[last] = null;
+        group.generators[last] = null;
+
+        handleGroup[handle] = null;
+        free[freeCount++] = handle;
+    }
+
+    /**
+     * Returns true if the given handle belongs to a registration.
+     */
+    boolean contains(int handle) {
+        return handle >= 0 && handle < handleCount && handleGroup[handle] != null;
+    }
+
+    /**
+     * Returns the body of the registration with the given handle.
+     */
+    @SuppressWarnings("unchecked")
+    B getBody(int handle) {
+        return (B) handleGroup[handle].bodies[handlePlace[handle]];
+    }
+
+    /**
+     * Returns the force generator of the registration with the given
+     * handle.
+     */
+    @SuppressWarnings("unchecked")
+    G getGenerator(int handle) {
+        return (G) handleGroup[handle].generators[handlePlace[handle]];
+    }
+
+    /**
+     * Returns the number of registrations.
+     */
+    int size() {
+        return handleCount - freeCount;
+    }
+
+    /**
+     * Clears all registrations from the registry. Handles given out
+     * before are no longer valid.
+     */
+    void clear() {
+        for (Group group : groups) {
+            Arrays.fill(group.bodies, 0, group.count, null);
+            Arrays.fill(group.generators, 0, group.count, null);
+            group.count = 0;
+            group.unsorted = false;
+        }
+        Arrays.fill(handleGroup, 0, handleCount, null);
+        handleCount = 0;
+        freeCount = 0;
+        bodyOrdinal.clear();
+    }
+
+    /**
+     * Puts the registrations of every group in body order, and returns
+     * the number of groups.
+     */
+    int sortGroups() {
+        for (Group group : groups) {
+            if (group.unsorted) sort(group);
+        }
+        return groups.size();
+    }
+
+    /**
+     * Return the class, the number of registrations, and the bodies,
+     * generators and body ordinals of the registrations of the given
+     * group.
+     */
+    Class<?> getGroupType(int group) {
+        return groups.get(group).type;
+    }
+
+    int getGroupSize(int group) {
+        return groups.get(group).count;
+    }
+
+    Object[] getGroupBodies(int group) {
+        return groups.get(group).bodies;
+    }
+
+    Object[] getGroupGenerators(int group) {
+        return groups.get(group).generators;
+    }
+
+    int[] getGroupOrdinals(int group) {
+        return groups.get(group).ordinals;
+    }
+
+    /**
+     * Returns the ordinal of the given body, or -1 if it has no
+     * registration.
+     */
+    int getOrdinal(Object body) {
+        int[] ordinal = bodyOrdinal.get(body);
+        return ordinal == null ? -1 : ordinal[0];
+    }
+
+    /**
+     * Returns one more than the highest ordinal given to a body. In a
+     * registry that was only ever added to, this is the number of
+     * bodies.
+     */
+    int getOrdinalCount() {
+        return nextOrdinal;
+    }
+
+    /**
+     * Puts the registrations of the given group in body order, keeping
+     * the order of the registrations of each body.
+     */
+    private void sort(Group group) {
+        int n = group.count;
+        if (sortKeys.length < n) {
+            sortKeys = new long[n];
+            scratch = new Object[n];
+            intScratch = new int[n];
+        }
+        for (int i = 0; i < n; i++) {
+            sortKeys[i] = ((long) group.ordinals[i] << 32) | i;
+        }
+        Arrays.sort(sortKeys, 0, n);
+
+        permute(group.bodies, n);
+        permute(group.generators, n);
+        permute(group.handles, n);
+        permute(group.ordinals, n);
+        for (int i = 0; i < n; i++) {
+            handlePlace[group.handles[i]] = i;
+        }
+        Arrays.fill(scratch, 0, n, null);
+        group.unsorted = false;
+    }
+
+    private void permute(Object[] values, int n) {
+        System.arraycopy(values, 0, scratch, 0, n);
+        for (int i = 0; i < n; i++) {
+            values[i] = scratch[(int) sortKeys[i]];
+        }
+    }
+
+    private void permute(int[] values, int n) {
+        System.arraycopy(values, 0, intScratch, 0, n);
+        for (int i = 0; i < n; i++) {
+            values[i] = intScratch[(int) sortKeys[i]];
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package br.law123.forcegenerator.field;
+
+import br.law123.core.Vector3;
+
+/**
+ * A field that pulls bodies towards a point, or pushes them away from
+ * it, like gravity towards a planet or a magnet.
+ *
+ * The acceleration falls off with the square of the distance from the
+ * point. So that bodies passing through the point aren't flung away,
+ * the field is softened: within about the softening distance of the
+ * point the pull fades to zero instead of growing without bound.
+ * Bodies further away than the range are left alone, unless the range
+ * is zero.
+ */
+public class AttractorField implements ForceField {
+
+    /** Holds the point bodies are pulled towards. */
+    private double cx, cy, cz;
+
+    /**
+     * Holds the acceleration at unit distance. A negative strength
+     * pushes bodies away.
+     */
+    private double strength;
+
+    private double softening = 0.1;
+
+    private double range;
+
+    /** Creates an attractor at the given point with the given strength. */
+    public AttractorField(Vector3 centre, double strength) {
+        setCentre(centre);
+        this.strength = strength;
+    }
+
+    public void setCentre(Vector3 centre) {
+        cx = centre.getX();
+        cy = centre.getY();
+        cz = centre.getZ();
+    }
+
+    public Vector3 getCentre() {
+        return new Vector3(cx, cy, cz);
+    }
+
+    public void setStrength(double strength) {
+        this.strength = strength;
+    }
+
+    public double getStrength() {
+        return strength;
+    }
+
+    public void setSoftening(double softening) {
+        this.softening = softening;
+    }
+
+    public double getSoftening() {
+        return softening;
+    }
+
+    /**
+     * Sets the distance beyond which bodies aren't affected, or zero for
+     * no limit.
+     */
+    public void setRange(double range) {
+        this.range = range;
+    }
+
+    public double getRange() {
+        return range;
+    }
+
+    @Override
+    public void apply(double[] position, double[] velocity, double[] inverseMass, double[] force, int from, int to) {
+        double s2 = softening * softening;
+        double range2 = range > 0 ? range * range : Double.POSITIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            int k = 3 * i;
+            double dx = cx - position[k];
+            double dy = cy - position[k + 1];
+            double dz = cz - position[k + 2];
+            double d2 = dx * dx + dy * dy + dz * dz;
+            double im = inverseMass[i];
+
+            // The pull along d is strength * |d| / (|d|^2 + s^2)^(3/2),
+            // scaled by the mass, and zero out of range or at the point.
+            double r2 = d2 + s2;
+            double scale = d2 <= range2 && im > 0 && r2 > 0 ? strength / (im * r2 * Math.sqrt(r2)) : 0;
+            force[k] += dx * scale;
+            force[k + 1] += dy * scale;
+            force[k + 2] += dz * scale;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package br.law123.forcegenerator.field;
+
+import br.law123.core.Vector3;
+
+/**
+ * A field that slows bodies down in proportion to their speed and to
+ * the square of their speed, like ParticleDrag.
+ *
+ * The speed is measured against the air, which can be given a wind
+ * velocity, so the same field also pushes resting bodies downwind.
+ */
+public class DragField implements ForceField {
+
+    /**
+     * Holds a vector for each thread to read the wind into, since the
+     * field may be applied to several ranges of bodies at once.
+     */
+    private static final ThreadLocal<double[]> AIR = new ThreadLocal<double[]>() {
+
+        @Override
+        protected double[] initialValue() {
+            return new double[3];
+        }
+    };
+
+    /** Holds the velocity drag coefficient. */
+    private double k1;
+
+    /** Holds the velocity squared drag coefficient. */
+    private double k2;
+
+    /** Holds the velocity of the air. */
+    private double wx, wy, wz;
+
+    /** Holds the field the wind is read from, if any. */
+    private WindField windField;
+
+    /** Creates the field with the given coefficients, in still air. */
+    public DragField(double k1, double k2) {
+        this.k1 = k1;
+        this.k2 = k2;
+    }
+
+    public void setCoefficients(double k1, double k2) {
+        this.k1 = k1;
+        this.k2 = k2;
+    }
+
+    public double getK1() {
+        return k1;
+    }
+
+    public double getK2() {
+        return k2;
+    }
+
+    /** Sets the velocity of the air. */
+    public void setWind(Vector3 wind) {
+        wx = wind.getX();
+        wy = wind.getY();
+        wz = wind.getZ();
+    }
+
+    public Vector3 getWind() {
+        return new Vector3(wx, wy, wz);
+    }
+
+    /**
+     * Sets the field to read the velocity of the air from, at each body,
+     * on top of the wind, or null for the wind alone.
+     */
+    public void setWindField(WindField windField) {
+        this.windField = windField;
+    }
+
+    public WindField getWindField() {
+        return windField;
+    }
+
+    @Override
+    public void apply(double[] position, double[] velocity, double[] inverseMass, double[] force, int from, int to) {
+        double[] air = windField != null ? AIR.get() : null;
+        for (int i = from; i < to; i++) {
+            int k = 3 * i;
+            double vx = velocity[k] - wx;
+            double vy = velocity[k + 1] - wy;
+            double vz = velocity[k + 2] - wz;
+            if (air != null) {
+                windField.sample(position[k], position[k + 1], position[k + 2], air, 0);
+                vx -= air[0];
+                vy -= air[1];
+                vz -= air[2];
+            }
+
+            // The drag is k1 * |v| + k2 * |v|^2 along -v / |v|, which is
+            // -v * (k1 + k2 * |v|), with no division.
+            double drag = k1 + k2 * Math.sqrt(vx * vx + vy * vy + vz * vz);
+            force[k] -= vx * drag;
+            force[k + 1] -= vy * drag;
+            force[k + 2] -= vz * drag;
+        }
+    }
+}
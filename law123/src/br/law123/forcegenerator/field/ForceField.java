@@ -0,0 +1,20 @@
+package br.law123.forcegenerator.field;
+
+/**
+ * A force that acts the same way on everything in the world, such as
+ * gravity or drag, so it needs no registration per body.
+ *
+ * A field works on flat arrays rather than on bodies, so a world can
+ * apply it to all its bodies in one pass. Vectors are stored three
+ * values per body, so the x coordinate of the position of body i is at
+ * position[3 * i], followed by y and z.
+ */
+public interface ForceField {
+
+    /**
+     * Adds the force of this field to the bodies from index from to
+     * index to, given their positions, velocities and inverse masses.
+     * Bodies of infinite mass have an inverse mass of zero.
+     */
+    void apply(double[] position, double[] velocity, double[] inverseMass, double[] force, int from, int to);
+}
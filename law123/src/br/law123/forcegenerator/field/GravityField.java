@@ -0,0 +1,39 @@
+package br.law123.forcegenerator.field;
+
+import br.law123.core.Vector3;
+
+/**
+ * A field that gives every body of finite mass the same acceleration.
+ */
+public class GravityField implements ForceField {
+
+    /** Holds the acceleration due to gravity. */
+    private double gx, gy, gz;
+
+    /** Creates the field with the given acceleration. */
+    public GravityField(Vector3 gravity) {
+        setGravity(gravity);
+    }
+
+    public void setGravity(Vector3 gravity) {
+        gx = gravity.getX();
+        gy = gravity.getY();
+        gz = gravity.getZ();
+    }
+
+    public Vector3 getGravity() {
+        return new Vector3(gx, gy, gz);
+    }
+
+    @Override
+    public void apply(double[] position, double[] velocity, double[] inverseMass, double[] force, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double im = inverseMass[i];
+            double mass = im > 0 ? 1 / im : 0;
+            int k = 3 * i;
+            force[k] += gx * mass;
+            force[k + 1] += gy * mass;
+            force[k + 2] += gz * mass;
+        }
+    }
+}
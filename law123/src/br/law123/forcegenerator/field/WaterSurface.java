@@ -0,0 +1,409 @@
+package br.law123.forcegenerator.field;
+
+import java.util.Arrays;
+
+/**
+ * Describes the surface of a body of water: a level plane parallel to
+ * the XZ plane, with any number of waves running across it.
+ *
+ * Each wave is a sine wave travelling in its own direction, at the speed
+ * of a wave of its length in deep water. The height at a point is the
+ * level plus the sum of the waves there, which costs a sine per wave.
+ *
+ * Where many floating objects read the height every step, the surface
+ * can be cut into square tiles of square cells, and heights are read by
+ * bilinear interpolation between the corners of the cell they fall in.
+ * The heights at the corners are worked out once a step, by calling
+ * cover() for the area around each floating object after the surface
+ * is moved on, so the points of a hull, and of boats close together,
+ * share their corners. Heights outside the covered cells are worked out
+ * from every wave, as without the cache. Tiles that weren't covered in
+ * a step are dropped when the surface is moved on. The cache pays off
+ * once there are more points than corners to work out, with hulls
+ * sampled at many points or boats close together, and more so the more
+ * waves there are. A surface without waves is never cached.
+ *
+ * Reading heights never changes the surface, so they can be read from
+ * several threads at once. Moving the surface on, changing its waves
+ * and covering it must be done on one thread, while no height is read.
+ */
+public class WaterSurface {
+
+    /**
+     * Holds the heights at the corners of one tile, the step each was
+     * worked out for, and the last step the tile was covered in.
+     */
+    private static final class Tile {
+
+        int tx, tz;
+
+        double[] heights;
+
+        long[] stamps;
+
+        long step;
+    }
+
+    /**
+     * Holds the acceleration due to gravity, which sets the speed of the
+     * waves.
+     */
+    private static final double G = 9.81;
+
+    /**
+     * Holds the height of the water when it is still.
+     */
+    private double level;
+
+    /**
+     * Holds the waves: their amplitude, wave number, direction,
+     * angular frequency and phase.
+     */
+    private double[] amplitude = new double[4];
+
+    private double[] waveNumber = new double[4];
+
+    private double[] directionX = new double[4];
+
+    private double[] directionZ = new double[4];
+
+    private double[] frequency = new double[4];
+
+    private double[] phase = new double[4];
+
+    private int waveCount;
+
+    /**
+     * Holds how long the waves have been running, and the number of the
+     * current step.
+     */
+    private double time;
+
+    private long step;
+
+    /**
+     * Holds the size of the tiles, and the number of cells along each of
+     * their edges.
+     */
+    private final double tileSize;
+
+    private final boolean cached;
+
+    private final int resolution;
+
+    private final double cellSize;
+
+    /**
+     * Holds the tiles in an open addressed table keyed by their
+     * coordinates, a second table to move them into when some are
+     * dropped, and the tiles that can be used again.
+     */
+    private Tile[] table = new Tile[64];
+
+    private Tile[] back = new Tile[64];
+
+    private int tileCount;
+
+    private Tile[] spare = new Tile[16];
+
+    private int spareCount;
+
+    /**
+     * Creates a still surface at the given height, whose heights are
+     * always worked out from every wave.
+     */
+    public WaterSurface(double level) {
+        this.level = level;
+        this.tileSize = 0;
+        this.resolution = 0;
+        this.cellSize = 0;
+        this.cached = false;
+    }
+
+    /**
+     * Creates a still surface at the given height, cached in tiles of
+     * the given size, cut into the given number of cells along each
+     * edge. The cells should be well under half the shortest wavelength.
+     */
+    public WaterSurface(double level, double tileSize, int resolution) {
+        if (resolution < 1) throw new IllegalArgumentException("A tile needs at least one cell");
+        this.level = level;
+        this.tileSize = tileSize;
+        this.resolution = resolution;
+        this.cellSize = tileSize / resolution;
+        this.cached = true;
+    }
+
+    public void setLevel(double level) {
+        this.level = level;
+        step++;
+    }
+
+    public double getLevel() {
+        return level;
+    }
+
+    public double getTime() {
+        return time;
+    }
+
+    public int getWaveCount() {
+        return waveCount;
+    }
+
+    /**
+     * Adds a wave of the given amplitude and wavelength, travelling in
+     * the given direction across the XZ plane.
+     */
+    public void addWave(double amplitude, double wavelength, double directionX, double directionZ) {
+        addWave(amplitude, wavelength, directionX, directionZ, 0);
+    }
+
+    /**
+     * Adds a wave of the given amplitude and wavelength, travelling in
+     * the given direction across the XZ plane, starting at the given
+     * phase.
+     */
+    public void addWave(double amplitude, double wavelength, double directionX, double directionZ, double phase) {
+        double length = Math.sqrt(directionX * directionX + directionZ * directionZ);
+        if (length == 0) throw new IllegalArgumentException("A wave needs a direction");
+        if (waveCount == this.amplitude.length) {
+            int capacity = 2 * waveCount;
+            this.amplitude = Arrays.copyOf(this.amplitude, capacity);
+            waveNumber = Arrays.copyOf(waveNumber, capacity);
+            this.directionX = Arrays.copyOf(this.directionX, capacity);
+            this.directionZ = Arrays.copyOf(this.directionZ, capacity);
+            frequency = Arrays.copyOf(frequency, capacity);
+            this.phase = Arrays.copyOf(this.phase, capacity);
+        }
+        double k = 2 * Math.PI / wavelength;
+        this.amplitude[waveCount] = amplitude;
+        waveNumber[waveCount] = k;
+        this.directionX[waveCount] = directionX / length;
+        this.directionZ[waveCount] = directionZ / length;
+        frequency[waveCount] = Math.sqrt(G * k);
+        this.phase[waveCount] = phase;
+        waveCount++;
+        step++;
+    }
+
+    /**
+     * Removes all the waves, leaving the water still.
+     */
+    public void clearWaves() {
+        waveCount = 0;
+        step++;
+    }
+
+    /**
+     * Moves the waves on by the given duration. The cache is emptied
+     * until cover() is called again, and tiles that weren't covered
+     * since the last call are dropped.
+     */
+    public void advance(double duration) {
+        time += duration;
+        dropUnused();
+        step++;
+    }
+
+    /**
+     * Returns the height of the water at the given point, worked out
+     * from every wave, without the cache.
+     */
+    public double evaluate(double x, double z) {
+        double h = level;
+        for (int w = 0; w < waveCount; w++) {
+            double along = directionX[w] * x + directionZ[w] * z;
+            h += amplitude[w] * Math.sin(waveNumber[w] * along - frequency[w] * time + phase[w]);
+        }
+        return h;
+    }
+
+    /**
+     * Returns the height of the water at the given point, from the cache
+     * if its cell was covered in the current step.
+     */
+    public double getHeight(double x, double z) {
+        if (waveCount == 0) return level;
+        if (!cached) return evaluate(x, z);
+
+        double fx = x / tileSize;
+        double fz = z / tileSize;
+        int tx = (int) Math.floor(fx);
+        int tz = (int) Math.floor(fz);
+        Tile tile = find(tx, tz);
+        if (tile == null) return evaluate(x, z);
+
+        // Find the cell and how far across it the point is.
+        double cx = (fx - tx) * resolution;
+        double cz = (fz - tz) * resolution;
+        int i = Math.min((int) cx, resolution - 1);
+        int j = Math.min((int) cz, resolution - 1);
+        double u = cx - i, v = cz - j;
+
+        int row = resolution + 1;
+        int c = i + row * j;
+        long[] stamps = tile.stamps;
+        if (stamps[c] != step || stamps[c + 1] != step || stamps[c + row] != step || stamps[c + row + 1] != step) return evaluate(x, z);
+
+        double[] heights = tile.heights;
+        double h0 = heights[c] + (heights[c + 1] - heights[c]) * u;
+        double h1 = heights[c + row] + (heights[c + row + 1] - heights[c + row]) * u;
+        return h0 + (h1 - h0) * v;
+    }
+
+    /**
+     * Works out the heights at the corners of every cell that overlaps
+     * the given rectangle of the XZ plane, for the current step, so
+     * heights read in it come from the cache. Corners already worked out
+     * in this step are kept. Call this after the surface is moved on,
+     * and before the heights are read.
+     */
+    public void cover(double minX, double minZ, double maxX, double maxZ) {
+        if (!cached || waveCount == 0) return;
+        int x0 = cell(minX), x1 = cell(maxX);
+        int z0 = cell(minZ), z1 = cell(maxZ);
+        int row = resolution + 1;
+        for (int tz = tileOf(z0); tz <= tileOf(z1); tz++) {
+            int j0 = Math.max(0, z0 - tz * resolution);
+            int j1 = Math.min(resolution, z1 + 1 - tz * resolution);
+            for (int tx = tileOf(x0); tx <= tileOf(x1); tx++) {
+                int i0 = Math.max(0, x0 - tx * resolution);
+                int i1 = Math.min(resolution, x1 + 1 - tx * resolution);
+                Tile tile = tile(tx, tz);
+                for (int j = j0; j <= j1; j++) {
+                    for (int i = i0; i <= i1; i++) {
+                        int c = i + row * j;
+                        if (tile.stamps[c] == step) continue;
+                        tile.heights[c] = evaluate(tile.tx * tileSize + i * cellSize, tile.tz * tileSize + j * cellSize);
+                        tile.stamps[c] = step;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the height of the water under each of the given points,
+     * from index from to index to, into out. The points hold three
+     * values each, of which the second is ignored; out holds one value
+     * per point.
+     */
+    public void getHeights(double[] points, int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            out[i] = getHeight(points[3 * i], points[3 * i + 2]);
+        }
+    }
+
+    /**
+     * Returns the cell the given coordinate falls in, counted along one
+     * axis across all the tiles, found the same way getHeight finds it.
+     */
+    private int cell(double x) {
+        double f = x / tileSize;
+        int t = (int) Math.floor(f);
+        return t * resolution + Math.min((int) ((f - t) * resolution), resolution - 1);
+    }
+
+    /**
+     * Returns the tile the given cell, counted along one axis, falls in.
+     */
+    private int tileOf(int cell) {
+        return cell >= 0 ? cell / resolution : -((-cell - 1) / resolution) - 1;
+    }
+
+    /**
+     * Returns the tile with the given coordinates, or null if there is
+     * none.
+     */
+    private Tile find(int tx, int tz) {
+        int mask = table.length - 1;
+        int slot = hash(tx, tz) & mask;
+        Tile tile;
+        while ((tile = table[slot]) != null) {
+            if (tile.tx == tx && tile.tz == tz) return tile;
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the tile with the given coordinates, adding it if there is
+     * none, marked as covered in the current step.
+     */
+    private Tile tile(int tx, int tz) {
+        int mask = table.length - 1;
+        int slot = hash(tx, tz) & mask;
+        Tile tile;
+        while ((tile = table[slot]) != null) {
+            if (tile.tx == tx && tile.tz == tz) break;
+            slot = (slot + 1) & mask;
+        }
+        if (tile == null) {
+            if (2 * (tileCount + 1) > table.length) {
+                rehash(2 * table.length);
+                return tile(tx, tz);
+            }
+            tile = spareCount > 0 ? spare[--spareCount] : new Tile();
+            if (tile.heights == null) {
+                tile.heights = new double[(resolution + 1) * (resolution + 1)];
+                tile.stamps = new long[tile.heights.length];
+            }
+            Arrays.fill(tile.stamps, -1);
+            tile.tx = tx;
+            tile.tz = tz;
+            table[slot] = tile;
+            tileCount++;
+        }
+        tile.step = step;
+        return tile;
+    }
+
+    /**
+     * Drops the tiles that weren't covered in the current step, keeping
+     * them to use again.
+     */
+    private void dropUnused() {
+        if (tileCount == 0) return;
+        Tile[] old = table;
+        table = back;
+        back = old;
+        tileCount = 0;
+        for (int k = 0; k < old.length; k++) {
+            Tile tile = old[k];
+            if (tile == null) continue;
+            old[k] = null;
+            if (tile.step == step) {
+                insert(tile);
+            } else {
+                if (spareCount == spare.length) spare = Arrays.copyOf(spare, 2 * spareCount);
+                spare[spareCount++] = tile;
+            }
+        }
+    }
+
+    private void rehash(int capacity) {
+        Tile[] old = table;
+        table = new Tile[capacity];
+        back = new Tile[capacity];
+        tileCount = 0;
+        for (Tile tile : old) {
+            if (tile != null) insert(tile);
+        }
+    }
+
+    private void insert(Tile tile) {
+        int mask = table.length - 1;
+        int slot = hash(tile.tx, tile.tz) & mask;
+        while (table[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = tile;
+        tileCount++;
+    }
+
+    private static int hash(int tx, int tz) {
+        int h = tx * 0x9E3779B1 + tz * 0x85EBCA77;
+        return h ^ (h >>> 16);
+    }
+}
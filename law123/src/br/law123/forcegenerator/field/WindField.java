@@ -0,0 +1,294 @@
+package br.law123.forcegenerator.field;
+
+import br.law123.core.Vector3;
+
+/**
+ * Holds the velocity of the air over a region of the world, so wind can
+ * vary from place to place: gusts, turbulence, and the blast of an
+ * explosion.
+ *
+ * The velocity is kept at the corners of a coarse grid of cubic cells
+ * and read anywhere by trilinear interpolation. Outside the grid the
+ * velocity at its nearest edge is used. Every step the air carries its
+ * own velocity along with it, worked out semi-Lagrangian style: each
+ * corner takes the velocity found where its air was a step ago. This
+ * is stable for any step, and cheap on a coarse grid, though it doesn't
+ * keep the air from piling up the way a full fluid solver would. Gusts
+ * die down towards the ambient wind at the given rate.
+ *
+ * Drag fields, ParticleDrag, Aero and AeroBatch can all read the wind
+ * from a field.
+ */
+public class WindField {
+
+    /**
+     * Holds a vector for each thread to sample into, so a field can be
+     * read from several threads at once without allocating.
+     */
+    private static final ThreadLocal<double[]> AIR = new ThreadLocal<double[]>() {
+
+        @Override
+        protected double[] initialValue() {
+            return new double[3];
+        }
+    };
+
+    /**
+     * Holds the number of corners along each axis, the size of the
+     * cells and the position of the lowest corner.
+     */
+    private final int nx, ny, nz;
+
+    private final double cellSize;
+
+    private final double ox, oy, oz;
+
+    /**
+     * Holds the velocity at each corner, three values per corner, with x
+     * changing fastest, and room for the next step's velocity.
+     */
+    private double[] velocity;
+
+    private double[] next;
+
+    /**
+     * Holds the wind the air settles back to, and how much of a gust is
+     * left after a second.
+     */
+    private double ax, ay, az;
+
+    private double decay = 0.5;
+
+    /**
+     * Holds how strong the random turbulence is, and the state of the
+     * generator behind it.
+     */
+    private double turbulence;
+
+    private long seed = 0x2545F4914F6CDD1DL;
+
+    /**
+     * Creates a field with the given number of corners along each axis,
+     * at least two, with cells of the given size, whose lowest corner is
+     * at the given point. The air starts still.
+     */
+    public WindField(int nx, int ny, int nz, double cellSize, Vector3 origin) {
+        if (nx < 2 || ny < 2 || nz < 2) throw new IllegalArgumentException("A wind field needs at least two corners along each axis");
+        this.nx = nx;
+        this.ny = ny;
+        this.nz = nz;
+        this.cellSize = cellSize;
+        ox = origin.getX();
+        oy = origin.getY();
+        oz = origin.getZ();
+        velocity = new double[3 * nx * ny * nz];
+        next = new double[velocity.length];
+    }
+
+    /**
+     * Sets the wind the air settles back to, and sets the whole field to
+     * it.
+     */
+    public void setAmbient(Vector3 ambient) {
+        ax = ambient.getX();
+        ay = ambient.getY();
+        az = ambient.getZ();
+        for (int k = 0; k < velocity.length; k += 3) {
+            velocity[k] = ax;
+            velocity[k + 1] = ay;
+            velocity[k + 2] = az;
+        }
+    }
+
+    public Vector3 getAmbient() {
+        return new Vector3(ax, ay, az);
+    }
+
+    /**
+     * Sets how much of a gust is left after a second, from zero, for
+     * gusts that stop at once, to one, for gusts that never die down.
+     */
+    public void setDecay(double decay) {
+        this.decay = decay;
+    }
+
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * Sets how strong the turbulence is: roughly how much the speed of
+     * the air wanders, at random, in a second.
+     */
+    public void setTurbulence(double turbulence) {
+        this.turbulence = turbulence;
+    }
+
+    public double getTurbulence() {
+        return turbulence;
+    }
+
+    /**
+     * Adds the given velocity to the air within the given radius of the
+     * given point, fading out towards the radius, like a gust.
+     */
+    public void addGust(Vector3 centre, double radius, Vector3 gust) {
+        addImpulse(centre.getX(), centre.getY(), centre.getZ(), radius, gust.getX(), gust.getY(), gust.getZ(), 0);
+    }
+
+    /**
+     * Pushes the air within the given radius of the given point straight
+     * away from it at up to the given speed, fading out towards the
+     * radius, like the blast of an explosion. A negative speed draws the
+     * air in.
+     */
+    public void addBlast(Vector3 centre, double radius, double speed) {
+        addImpulse(centre.getX(), centre.getY(), centre.getZ(), radius, 0, 0, 0, speed);
+    }
+
+    private void addImpulse(double cx, double cy, double cz, double radius, double gx, double gy, double gz, double speed) {
+        // Only visit the corners in the box around the sphere.
+        int x0 = Math.max(0, (int) Math.ceil((cx - radius - ox) / cellSize));
+        int x1 = Math.min(nx - 1, (int) Math.floor((cx + radius - ox) / cellSize));
+        int y0 = Math.max(0, (int) Math.ceil((cy - radius - oy) / cellSize));
+        int y1 = Math.min(ny - 1, (int) Math.floor((cy + radius - oy) / cellSize));
+        int z0 = Math.max(0, (int) Math.ceil((cz - radius - oz) / cellSize));
+        int z1 = Math.min(nz - 1, (int) Math.floor((cz + radius - oz) / cellSize));
+        double r2 = radius * radius;
+        for (int k = z0; k <= z1; k++) {
+            for (int j = y0; j <= y1; j++) {
+                for (int i = x0; i <= x1; i++) {
+                    double dx = ox + i * cellSize - cx;
+                    double dy = oy + j * cellSize - cy;
+                    double dz = oz + k * cellSize - cz;
+                    double d2 = dx * dx + dy * dy + dz * dz;
+                    if (d2 >= r2) continue;
+
+                    // Fade out smoothly towards the radius.
+                    double f = 1 - d2 / r2;
+                    f *= f;
+                    int c = 3 * (i + nx * (j + ny * k));
+                    velocity[c] += f * gx;
+                    velocity[c + 1] += f * gy;
+                    velocity[c + 2] += f * gz;
+                    if (speed != 0 && d2 > 0) {
+                        double s = f * speed / Math.sqrt(d2);
+                        velocity[c] += s * dx;
+                        velocity[c + 1] += s * dy;
+                        velocity[c + 2] += s * dz;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the air on by the given duration: carries the velocity along
+     * with the air, lets gusts die down, and stirs in turbulence.
+     */
+    public void step(double duration) {
+        double keep = Math.pow(decay, duration);
+        double stir = turbulence * Math.sqrt(duration);
+        for (int k = 0, c = 0; k < nz; k++) {
+            for (int j = 0; j < ny; j++) {
+                for (int i = 0; i < nx; i++, c += 3) {
+                    // Find where this corner's air was a step ago, and take
+                    // the velocity there.
+                    double x = ox + i * cellSize - velocity[c] * duration;
+                    double y = oy + j * cellSize - velocity[c + 1] * duration;
+                    double z = oz + k * cellSize - velocity[c + 2] * duration;
+                    sample(x, y, z, next, c);
+
+                    next[c] = ax + (next[c] - ax) * keep;
+                    next[c + 1] = ay + (next[c + 1] - ay) * keep;
+                    next[c + 2] = az + (next[c + 2] - az) * keep;
+                    if (stir > 0) {
+                        next[c] += stir * noise();
+                        next[c + 1] += stir * noise();
+                        next[c + 2] += stir * noise();
+                    }
+                }
+            }
+        }
+        double[] swap = velocity;
+        velocity = next;
+        next = swap;
+    }
+
+    /**
+     * Returns a random number from -1 to 1, from a xorshift generator, so
+     * the field is the same every run.
+     */
+    private double noise() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return (seed >> 11) * 0x1.0p-52;
+    }
+
+    /**
+     * Writes the velocity of the air at the given point into out.
+     */
+    public void sample(Vector3 point, Vector3 out) {
+        double[] air = AIR.get();
+        sample(point.getX(), point.getY(), point.getZ(), air, 0);
+        out.setX(air[0]);
+        out.setY(air[1]);
+        out.setZ(air[2]);
+    }
+
+    /**
+     * Writes the velocity of the air at each of the given points, from
+     * index from to index to, into out. Both arrays hold three values
+     * per point.
+     */
+    public void sample(double[] points, int from, int to, double[] out) {
+        for (int i = from; i < to; i++) {
+            sample(points[3 * i], points[3 * i + 1], points[3 * i + 2], out, 3 * i);
+        }
+    }
+
+    /**
+     * Writes the velocity of the air at the given point into out, from
+     * the given offset. Every other way of reading the field comes
+     * through here.
+     */
+    public void sample(double x, double y, double z, double[] out, int offset) {
+        // Find the cell and how far across it the point is, staying
+        // inside the grid.
+        double fx = clamp((x - ox) / cellSize, nx - 1);
+        double fy = clamp((y - oy) / cellSize, ny - 1);
+        double fz = clamp((z - oz) / cellSize, nz - 1);
+        int i = Math.min((int) fx, nx - 2);
+        int j = Math.min((int) fy, ny - 2);
+        int k = Math.min((int) fz, nz - 2);
+        double tx = fx - i, ty = fy - j, tz = fz - k;
+
+        int c = 3 * (i + nx * (j + ny * k));
+        out[offset] = interpolate(c, tx, ty, tz);
+        out[offset + 1] = interpolate(c + 1, tx, ty, tz);
+        out[offset + 2] = interpolate(c + 2, tx, ty, tz);
+    }
+
+    /**
+     * Interpolates one component of the velocity across the cell whose
+     * lowest corner holds it at index c.
+     */
+    private double interpolate(int c, double tx, double ty, double tz) {
+        int sx = 3, sy = 3 * nx, sz = 3 * nx * ny;
+        double[] v = velocity;
+        double x00 = v[c] + (v[c + sx] - v[c]) * tx;
+        double x10 = v[c + sy] + (v[c + sy + sx] - v[c + sy]) * tx;
+        double x01 = v[c + sz] + (v[c + sz + sx] - v[c + sz]) * tx;
+        double x11 = v[c + sz + sy] + (v[c + sz + sy + sx] - v[c + sz + sy]) * tx;
+        double y0 = x00 + (x10 - x00) * ty;
+        double y1 = x01 + (x11 - x01) * ty;
+        return y0 + (y1 - y0) * tz;
+    }
+
+    private static double clamp(double value, int max) {
+        if (value < 0) return 0;
+        if (value > max) return max;
+        return value;
+    }
+}
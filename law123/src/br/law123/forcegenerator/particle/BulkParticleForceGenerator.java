@@ -0,0 +1,23 @@
+package br.law123.forcegenerator.particle;
+
+import br.law123.particle.Particle;
+
+/**
+ * A force generator that can apply its force to many particles in one
+ * call.
+ *
+ * When a particle force registry is compiled into a
+ * ParticleForceKernel, all the particles registered with one bulk
+ * generator are handed to it together, so it runs its own loop over
+ * them instead of being called once per particle through the interface.
+ */
+public interface BulkParticleForceGenerator extends ParticleForceGenerator {
+
+    /**
+     * Applies the force to the particles whose indices into the given
+     * table are the entries of indices from index from to index to. The
+     * indices are in order, and an index is given twice if it was
+     * registered twice.
+     */
+    void updateForces(Particle[] particles, int[] indices, int from, int to, double duration);
+}
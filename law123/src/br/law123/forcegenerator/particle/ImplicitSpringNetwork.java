@@ -0,0 +1,782 @@
+package br.law123.forcegenerator.particle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.forcegenerator.ParticleForceRegistration;
+import br.law123.forcegenerator.ParticleForceRegistry;
+import br.law123.particle.Particle;
+import br.law123.particle.world.ParticleForceStage;
+
+/**
+ * Applies a network of springs, such as a cloth or a soft body, with
+ * implicit (backward Euler) integration, so stiff springs stay stable
+ * at large time steps.
+ *
+ * Applied explicitly, a spring's force comes from where the particles
+ * are at the start of the step, and a stiff spring overshoots unless
+ * the step is tiny. Here the change in velocity dv of the particles is
+ * chosen so the spring forces at the end of the step agree with it:
+ *
+ * (M - h D - h^2 K) dv = h (f + h K v)
+ *
+ * where h is the duration, M the masses, f the spring forces, and K and
+ * D how the forces change with position and velocity. The system is
+ * solved by preconditioned conjugate gradients without ever building
+ * the matrix: multiplying by it is a pass over the springs of each
+ * particle. Every pass works on each particle on its own, and sums are
+ * added up in blocks of a fixed size, so the passes are split between
+ * the threads of the world's worker pool and the result doesn't depend
+ * on the number of threads. Each solve starts from the last step's
+ * answer, which is usually close.
+ *
+ * Unlike other force stages the network changes the velocities of its
+ * particles directly rather than adding a force, so the positions the
+ * world integrates next move with the new velocity, as backward Euler
+ * needs. Other forces are still added explicitly by the world.
+ *
+ * Particles that can't move, and fixed anchor points, hold the ends of
+ * springs but are never moved. A spring can also be one-sided: it pulls
+ * its first particle towards the second, which it doesn't affect, like
+ * a ParticleSpring registered for one end only.
+ */
+public class ImplicitSpringNetwork implements ParticleForceStage {
+
+    /**
+     * Holds the number of particles whose sums are added up together.
+     */
+    private static final int BLOCK = 256;
+
+    /**
+     * Holds the particles of the network, and the index of each.
+     */
+    private Particle[] particles = new Particle[16];
+
+    private int particleCount;
+
+    private final Map<Particle, Integer> indexOf = new IdentityHashMap<Particle, Integer>();
+
+    /**
+     * Holds the springs: the indices of their ends, the second being -1
+     * for springs to an anchor point, and the anchor.
+     */
+    private int[] springA = new int[16];
+
+    private int[] springB = new int[16];
+
+    private Vector3[] anchor = new Vector3[16];
+
+    private double[] stiffness = new double[16];
+
+    private double[] restLength = new double[16];
+
+    private double[] damping = new double[16];
+
+    /**
+     * Holds which springs only pull, like bungees, and which springs
+     * move their second particle too.
+     */
+    private boolean[] slack = new boolean[16];
+
+    private boolean[] twoSided = new boolean[16];
+
+    private int springCount;
+
+    /**
+     * Holds, for each spring this step, its direction from the second
+     * end to the first, its force on the first end along that
+     * direction, and its share of the matrix: alpha n n^T + beta I,
+     * where alphaK is the part of alpha without damping.
+     */
+    private double[] normal = new double[48];
+
+    private double[] force = new double[16];
+
+    private double[] alpha = new double[16];
+
+    private double[] alphaK = new double[16];
+
+    private double[] beta = new double[16];
+
+    /**
+     * Holds the springs of each particle: the entries from
+     * incidenceStart[i] to incidenceStart[i + 1] are twice the spring
+     * index, plus one where the particle is the second end.
+     */
+    private int[] incidenceStart = new int[1];
+
+    private int[] incidence = new int[0];
+
+    private boolean incidenceDirty = true;
+
+    /**
+     * Holds the state of the particles this step, three values per
+     * particle, and their masses. Particles that aren't moved have a
+     * mass of zero.
+     */
+    private double[] position = new double[48];
+
+    private double[] velocity = new double[48];
+
+    private double[] mass = new double[16];
+
+    /**
+     * Holds the vectors of the solve: the right hand side, the diagonal
+     * of the matrix, the answer, and the residual, preconditioned
+     * residual, search direction and product of the conjugate gradient
+     * method.
+     */
+    private double[] rhs = new double[48];
+
+    private double[] diagonal = new double[48];
+
+    private double[] dv = new double[48];
+
+    private double[] r = new double[48];
+
+    private double[] z = new double[48];
+
+    private double[] p = new double[48];
+
+    private double[] q = new double[48];
+
+    /**
+     * Holds the sums of each block.
+     */
+    private double[] blockSum1 = new double[1];
+
+    private double[] blockSum2 = new double[1];
+
+    private double[] blockSum3 = new double[1];
+
+    private double tolerance = 1e-4;
+
+    private int maxIterations = 50;
+
+    private int iterationsUsed;
+
+    private double residual;
+
+    /**
+     * Holds the duration and the step sizes of the pass being run.
+     */
+    private double taskDuration;
+
+    private double stepSize;
+
+    private double directionScale;
+
+    private final WorkerPool.RangeTask loadTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int i = from; i < to; i++) {
+                Particle particle = particles[i];
+                Vector3 x = particle.getPosition();
+                Vector3 v = particle.getVelocity();
+                int k = 3 * i;
+                position[k] = x.getX();
+                position[k + 1] = x.getY();
+                position[k + 2] = x.getZ();
+                velocity[k] = v.getX();
+                velocity[k + 1] = v.getY();
+                velocity[k + 2] = v.getZ();
+                boolean moved = particle.getInverseMass() > 0 && incidenceStart[i + 1] > incidenceStart[i];
+                mass[i] = moved ? particle.getMass() : 0;
+                if (!moved) clear(i);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask springTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double h = taskDuration;
+            for (int s = from; s < to; s++) {
+                int a = springA[s];
+                int b = springB[s];
+                double bx, by, bz, ux, uy, uz;
+                ux = velocity[3 * a];
+                uy = velocity[3 * a + 1];
+                uz = velocity[3 * a + 2];
+                if (b >= 0) {
+                    bx = position[3 * b];
+                    by = position[3 * b + 1];
+                    bz = position[3 * b + 2];
+                    ux -= velocity[3 * b];
+                    uy -= velocity[3 * b + 1];
+                    uz -= velocity[3 * b + 2];
+                } else {
+                    bx = anchor[s].getX();
+                    by = anchor[s].getY();
+                    bz = anchor[s].getZ();
+                }
+                double dx = position[3 * a] - bx;
+                double dy = position[3 * a + 1] - by;
+                double dz = position[3 * a + 2] - bz;
+                double length = Math.sqrt(dx * dx + dy * dy + dz * dz);
+
+                int k = 3 * s;
+                if (length < 1e-12 || (slack[s] && length <= restLength[s])) {
+                    // The spring has no direction, or is a slack bungee.
+                    normal[k] = normal[k + 1] = normal[k + 2] = 0;
+                    force[s] = alpha[s] = alphaK[s] = beta[s] = 0;
+                    continue;
+                }
+                double nx = dx / length, ny = dy / length, nz = dz / length;
+                normal[k] = nx;
+                normal[k + 1] = ny;
+                normal[k + 2] = nz;
+
+                double k1 = stiffness[s];
+                double c = damping[s];
+                force[s] = -k1 * (length - restLength[s]) - c * (nx * ux + ny * uy + nz * uz);
+
+                // Across the spring the stiffness is k (1 - rest / length),
+                // which is left out when the spring is compressed, so the
+                // matrix stays positive definite.
+                double t = Math.max(0, 1 - restLength[s] / length);
+                double h2k = h * h * k1;
+                alphaK[s] = h2k * (1 - t);
+                beta[s] = h2k * t;
+                alpha[s] = alphaK[s] + h * c;
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask setupTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double h = taskDuration;
+            for (int block = from; block < to; block++) {
+                double rz = 0, rr = 0, bb = 0;
+                int end = Math.min(particleCount, (block + 1) * BLOCK);
+                for (int i = block * BLOCK; i < end; i++) {
+                    int k = 3 * i;
+                    if (mass[i] == 0) continue;
+
+                    // Work out the right hand side and the diagonal.
+                    double m = mass[i];
+                    double bx = 0, by = 0, bz = 0;
+                    double gx = m, gy = m, gz = m;
+                    for (int e = incidenceStart[i]; e < incidenceStart[i + 1]; e++) {
+                        int s = incidence[e] >> 1;
+                        int other = otherEnd(s, incidence[e]);
+                        double ux = velocity[k], uy = velocity[k + 1], uz = velocity[k + 2];
+                        if (other >= 0) {
+                            ux -= velocity[3 * other];
+                            uy -= velocity[3 * other + 1];
+                            uz -= velocity[3 * other + 2];
+                        }
+                        int n3 = 3 * s;
+                        double nx = normal[n3], ny = normal[n3 + 1], nz = normal[n3 + 2];
+                        double f = (incidence[e] & 1) == 0 ? h * force[s] : -h * force[s];
+                        double dot = alphaK[s] * (nx * ux + ny * uy + nz * uz);
+                        bx += f * nx - dot * nx - beta[s] * ux;
+                        by += f * ny - dot * ny - beta[s] * uy;
+                        bz += f * nz - dot * nz - beta[s] * uz;
+                        gx += alpha[s] * nx * nx + beta[s];
+                        gy += alpha[s] * ny * ny + beta[s];
+                        gz += alpha[s] * nz * nz + beta[s];
+                    }
+                    rhs[k] = bx;
+                    rhs[k + 1] = by;
+                    rhs[k + 2] = bz;
+                    diagonal[k] = gx;
+                    diagonal[k + 1] = gy;
+                    diagonal[k + 2] = gz;
+                    bb += bx * bx + by * by + bz * bz;
+                }
+
+                // Start from the last answer: r = b - A dv.
+                for (int i = block * BLOCK; i < end; i++) {
+                    if (mass[i] == 0) continue;
+                    multiply(dv, q, i);
+                    for (int k = 3 * i; k < 3 * i + 3; k++) {
+                        r[k] = rhs[k] - q[k];
+                        z[k] = r[k] / diagonal[k];
+                        p[k] = z[k];
+                        rz += r[k] * z[k];
+                        rr += r[k] * r[k];
+                    }
+                }
+                blockSum1[block] = rz;
+                blockSum2[block] = rr;
+                blockSum3[block] = bb;
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask multiplyTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int block = from; block < to; block++) {
+                double pq = 0;
+                int end = Math.min(particleCount, (block + 1) * BLOCK);
+                for (int i = block * BLOCK; i < end; i++) {
+                    if (mass[i] == 0) continue;
+                    multiply(p, q, i);
+                    int k = 3 * i;
+                    pq += p[k] * q[k] + p[k + 1] * q[k + 1] + p[k + 2] * q[k + 2];
+                }
+                blockSum1[block] = pq;
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask updateTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double a = stepSize;
+            for (int block = from; block < to; block++) {
+                double rz = 0, rr = 0;
+                int end = Math.min(particleCount, (block + 1) * BLOCK);
+                for (int k = 3 * block * BLOCK; k < 3 * end; k++) {
+                    dv[k] += a * p[k];
+                    r[k] -= a * q[k];
+                    z[k] = r[k] / diagonal[k];
+                    rz += r[k] * z[k];
+                    rr += r[k] * r[k];
+                }
+                blockSum1[block] = rz;
+                blockSum2[block] = rr;
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask directionTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double b = directionScale;
+            for (int k = 3 * from; k < 3 * to; k++) {
+                p[k] = z[k] + b * p[k];
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask storeTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (mass[i] == 0) continue;
+                int k = 3 * i;
+                particles[i].setVelocity(velocity[k] + dv[k], velocity[k + 1] + dv[k + 1], velocity[k + 2] + dv[k + 2]);
+            }
+        }
+    };
+
+    /**
+     * Adds a spring between the two given particles, which pulls and
+     * pushes both of them. Returns the index of the spring.
+     */
+    public int addSpring(Particle a, Particle b, double springConstant, double restLength) {
+        return addSpring(a, b, springConstant, restLength, 0);
+    }
+
+    /**
+     * Adds a spring between the two given particles, with the given
+     * damping against their relative speed along it. Returns the index
+     * of the spring.
+     */
+    public int addSpring(Particle a, Particle b, double springConstant, double restLength, double damping) {
+        return add(index(a), index(b), null, springConstant, restLength, damping, false, true);
+    }
+
+    /**
+     * Adds a spring that pulls the given particle towards the other, or
+     * pushes it away, without affecting the other. Returns the index of
+     * the spring.
+     */
+    public int addOneSidedSpring(Particle particle, Particle other, double springConstant, double restLength) {
+        return add(index(particle), index(other), null, springConstant, restLength, 0, false, false);
+    }
+
+    /**
+     * Adds a spring from the given particle to the given point. The
+     * point is kept, not copied, so moving it moves the spring's end.
+     * Returns the index of the spring.
+     */
+    public int addAnchoredSpring(Particle particle, Vector3 anchor, double springConstant, double restLength) {
+        return add(index(particle), -1, anchor, springConstant, restLength, 0, false, false);
+    }
+
+    /**
+     * Adds a bungee between the two given particles: a spring that only
+     * pulls, when it is longer than its rest length. Returns the index
+     * of the spring.
+     */
+    public int addBungee(Particle a, Particle b, double springConstant, double restLength) {
+        return add(index(a), index(b), null, springConstant, restLength, 0, true, true);
+    }
+
+    /**
+     * Adds a bungee from the given particle to the given point. Returns
+     * the index of the spring.
+     */
+    public int addAnchoredBungee(Particle particle, Vector3 anchor, double springConstant, double restLength) {
+        return add(index(particle), -1, anchor, springConstant, restLength, 0, true, false);
+    }
+
+    /**
+     * Sets the damping of the given spring, against the relative speed
+     * of its ends along it.
+     */
+    public void setDamping(int spring, double damping) {
+        this.damping[spring] = damping;
+    }
+
+    public double getDamping(int spring) {
+        return damping[spring];
+    }
+
+    public void setSpringConstant(int spring, double springConstant) {
+        stiffness[spring] = springConstant;
+    }
+
+    public double getSpringConstant(int spring) {
+        return stiffness[spring];
+    }
+
+    public void setRestLength(int spring, double restLength) {
+        this.restLength[spring] = restLength;
+    }
+
+    public double getRestLength(int spring) {
+        return restLength[spring];
+    }
+
+    public int getSpringCount() {
+        return springCount;
+    }
+
+    /**
+     * Removes every spring and particle.
+     */
+    public void clear() {
+        Arrays.fill(particles, 0, particleCount, null);
+        Arrays.fill(anchor, 0, springCount, null);
+        particleCount = 0;
+        springCount = 0;
+        indexOf.clear();
+        incidenceDirty = true;
+    }
+
+    /**
+     * Takes the springs and bungees out of the given registry and adds
+     * them to the network instead: every ParticleSpring, ParticleBungee,
+     * ParticleAnchoredSpring and ParticleAnchoredBungee. A spring
+     * registered once for each of its ends, with the same constants,
+     * becomes one spring between them; one registered for one end only
+     * becomes a one-sided spring. Other registrations are left alone.
+     *
+     * ParticleSpring pulls even when it is compressed; in the network it
+     * pushes back, like a real spring.
+     */
+    public void gather(ParticleForceRegistry registry) {
+        List<ParticleForceRegistration> taken = new ArrayList<ParticleForceRegistration>();
+
+        // Springs between particles wait here, under the particle they
+        // are registered for, until the registration for their other end
+        // is found.
+        Map<Particle, List<ParticleForceRegistration>> waiting = new IdentityHashMap<Particle, List<ParticleForceRegistration>>();
+        List<ParticleForceRegistration> order = new ArrayList<ParticleForceRegistration>();
+        Map<ParticleForceRegistration, Boolean> matched = new IdentityHashMap<ParticleForceRegistration, Boolean>();
+
+        for (ParticleForceRegistration registration : registry.getRegistrations()) {
+            Particle particle = registration.getParticle();
+            ParticleForceGenerator fg = registration.getFg();
+            if (fg instanceof ParticleAnchoredSpring) {
+                ParticleAnchoredSpring spring = (ParticleAnchoredSpring) fg;
+                boolean bungee = fg instanceof ParticleAnchoredBungee;
+                add(index(particle), -1, spring.getAnchor(), spring.getSpringConstant(), spring.getRestLength(), 0, bungee, false);
+                taken.add(registration);
+            } else if (fg instanceof ParticleSpring || fg instanceof ParticleBungee) {
+                Particle other = otherOf(fg);
+                ParticleForceRegistration match = null;
+                List<ParticleForceRegistration> candidates = waiting.get(other);
+                if (candidates != null) {
+                    for (ParticleForceRegistration candidate : candidates) {
+                        if (sameSpring(candidate.getFg(), fg) && otherOf(candidate.getFg()) == particle) {
+                            match = candidate;
+                            break;
+                        }
+                    }
+                }
+                if (match != null) {
+                    candidates.remove(match);
+                    matched.put(match, Boolean.TRUE);
+                    add(index(other), index(particle), null, constantOf(fg), restLengthOf(fg), 0, fg instanceof ParticleBungee, true);
+                } else {
+                    List<ParticleForceRegistration> list = waiting.get(particle);
+                    if (list == null) {
+                        list = new ArrayList<ParticleForceRegistration>();
+                        waiting.put(particle, list);
+                    }
+                    list.add(registration);
+                    order.add(registration);
+                }
+                taken.add(registration);
+            }
+        }
+
+        // What is left has no partner.
+        for (ParticleForceRegistration registration : order) {
+            if (matched.containsKey(registration)) continue;
+            ParticleForceGenerator fg = registration.getFg();
+            add(index(registration.getParticle()), index(otherOf(fg)), null, constantOf(fg), restLengthOf(fg), 0, fg instanceof ParticleBungee, false);
+        }
+        registry.removeAll(taken);
+    }
+
+    private static Particle otherOf(ParticleForceGenerator fg) {
+        return fg instanceof ParticleSpring ? ((ParticleSpring) fg).getOther() : ((ParticleBungee) fg).getOther();
+    }
+
+    private static double constantOf(ParticleForceGenerator fg) {
+        return fg instanceof ParticleSpring ? ((ParticleSpring) fg).getSpringConstant() : ((ParticleBungee) fg).getSpringConstant();
+    }
+
+    private static double restLengthOf(ParticleForceGenerator fg) {
+        return fg instanceof ParticleSpring ? ((ParticleSpring) fg).getRestLength() : ((ParticleBungee) fg).getRestLength();
+    }
+
+    private static boolean sameSpring(ParticleForceGenerator a, ParticleForceGenerator b) {
+        return a.getClass() == b.getClass() && constantOf(a) == constantOf(b) && restLengthOf(a) == restLengthOf(b);
+    }
+
+    /**
+     * Sets the residual, relative to the right hand side, at which the
+     * solve stops.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Returns the number of conjugate gradient iterations of the last
+     * step.
+     */
+    public int getIterationsUsed() {
+        return iterationsUsed;
+    }
+
+    /**
+     * Returns the residual the last step ended with, relative to the
+     * right hand side.
+     */
+    public double getResidual() {
+        return residual;
+    }
+
+    @Override
+    public void updateForces(double duration, WorkerPool pool) {
+        if (springCount == 0) return;
+        if (incidenceDirty) buildIncidence();
+        taskDuration = duration;
+
+        int blocks = (particleCount + BLOCK - 1) / BLOCK;
+        run(pool, particleCount, 256, loadTask);
+        run(pool, springCount, 256, springTask);
+        run(pool, blocks, 1, setupTask);
+
+        double rz = sum(blockSum1, blocks);
+        double rr = sum(blockSum2, blocks);
+        double bb = sum(blockSum3, blocks);
+        double threshold = tolerance * tolerance * bb;
+
+        iterationsUsed = 0;
+        if (bb == 0) {
+            // Nothing pushes the network, so the answer is no change,
+            // whatever the last step's answer started from.
+            Arrays.fill(dv, 0, 3 * particleCount, 0);
+            rr = 0;
+        }
+        while (iterationsUsed < maxIterations && rr > threshold) {
+            run(pool, blocks, 1, multiplyTask);
+            double pq = sum(blockSum1, blocks);
+            if (!(pq > 0)) break;
+
+            stepSize = rz / pq;
+            run(pool, blocks, 1, updateTask);
+            double rzNext = sum(blockSum1, blocks);
+            rr = sum(blockSum2, blocks);
+            iterationsUsed++;
+
+            directionScale = rzNext / rz;
+            rz = rzNext;
+            run(pool, particleCount, 256, directionTask);
+        }
+        residual = bb > 0 ? Math.sqrt(rr / bb) : 0;
+
+        run(pool, particleCount, 256, storeTask);
+    }
+
+    /**
+     * Works out the product of the matrix and the given vector for the
+     * given particle. Particles that aren't moved must be zero in the
+     * vector.
+     */
+    private void multiply(double[] y, double[] out, int i) {
+        int k = 3 * i;
+        double m = mass[i];
+        double ox = m * y[k], oy = m * y[k + 1], oz = m * y[k + 2];
+        for (int e = incidenceStart[i]; e < incidenceStart[i + 1]; e++) {
+            int s = incidence[e] >> 1;
+            double dx = y[k], dy = y[k + 1], dz = y[k + 2];
+            if (twoSided[s]) {
+                int o = 3 * otherEnd(s, incidence[e]);
+                dx -= y[o];
+                dy -= y[o + 1];
+                dz -= y[o + 2];
+            }
+            int n3 = 3 * s;
+            double nx = normal[n3], ny = normal[n3 + 1], nz = normal[n3 + 2];
+            double dot = alpha[s] * (nx * dx + ny * dy + nz * dz);
+            ox += dot * nx + beta[s] * dx;
+            oy += dot * ny + beta[s] * dy;
+            oz += dot * nz + beta[s] * dz;
+        }
+        out[k] = ox;
+        out[k + 1] = oy;
+        out[k + 2] = oz;
+    }
+
+    /**
+     * Returns the particle at the other end of the given spring from the
+     * end given by the incidence entry, or -1 for an anchor.
+     */
+    private int otherEnd(int spring, int entry) {
+        return (entry & 1) == 0 ? springB[spring] : springA[spring];
+    }
+
+    private void clear(int i) {
+        for (int k = 3 * i; k < 3 * i + 3; k++) {
+            rhs[k] = dv[k] = r[k] = z[k] = p[k] = q[k] = 0;
+            diagonal[k] = 1;
+        }
+    }
+
+    private static double sum(double[] values, int count) {
+        double total = 0;
+        for (int i = 0; i < count; i++) {
+            total += values[i];
+        }
+        return total;
+    }
+
+    private static void run(WorkerPool pool, int count, int minChunk, WorkerPool.RangeTask task) {
+        if (pool == null) {
+            task.run(0, 0, count);
+        } else {
+            pool.run(count, minChunk, task);
+        }
+    }
+
+    private int index(Particle particle) {
+        Integer index = indexOf.get(particle);
+        if (index != null) return index;
+
+        if (particleCount == particles.length) {
+            int capacity = 2 * particleCount;
+            particles = Arrays.copyOf(particles, capacity);
+            mass = Arrays.copyOf(mass, capacity);
+            position = Arrays.copyOf(position, 3 * capacity);
+            velocity = Arrays.copyOf(velocity, 3 * capacity);
+            rhs = Arrays.copyOf(rhs, 3 * capacity);
+            diagonal = Arrays.copyOf(diagonal, 3 * capacity);
+            dv = Arrays.copyOf(dv, 3 * capacity);
+            r = Arrays.copyOf(r, 3 * capacity);
+            z = Arrays.copyOf(z, 3 * capacity);
+            p = Arrays.copyOf(p, 3 * capacity);
+            q = Arrays.copyOf(q, 3 * capacity);
+        }
+        int blocks = (particleCount + BLOCK) / BLOCK;
+        if (blockSum1.length < blocks) {
+            blockSum1 = new double[2 * blocks];
+            blockSum2 = new double[2 * blocks];
+            blockSum3 = new double[2 * blocks];
+        }
+        particles[particleCount] = particle;
+        Arrays.fill(dv, 3 * particleCount, 3 * particleCount + 3, 0);
+        indexOf.put(particle, particleCount);
+        incidenceDirty = true;
+        return particleCount++;
+    }
+
+    private int add(int a, int b, Vector3 anchor, double springConstant, double restLength, double damping, boolean slack, boolean twoSided) {
+        if (springCount == springA.length) {
+            int capacity = 2 * springCount;
+            springA = Arrays.copyOf(springA, capacity);
+            springB = Arrays.copyOf(springB, capacity);
+            this.anchor = Arrays.copyOf(this.anchor, capacity);
+            stiffness = Arrays.copyOf(stiffness, capacity);
+            this.restLength = Arrays.copyOf(this.restLength, capacity);
+            this.damping = Arrays.copyOf(this.damping, capacity);
+            this.slack = Arrays.copyOf(this.slack, capacity);
+            this.twoSided = Arrays.copyOf(this.twoSided, capacity);
+            normal = Arrays.copyOf(normal, 3 * capacity);
+            force = Arrays.copyOf(force, capacity);
+            alpha = Arrays.copyOf(alpha, capacity);
+            alphaK = Arrays.copyOf(alphaK, capacity);
+            beta = Arrays.copyOf(beta, capacity);
+        }
+        int s = springCount++;
+        springA[s] = a;
+        springB[s] = b;
+        this.anchor[s] = anchor;
+        stiffness[s] = springConstant;
+        this.restLength[s] = restLength;
+        this.damping[s] = damping;
+        this.slack[s] = slack;
+        this.twoSided[s] = twoSided;
+        incidenceDirty = true;
+        return s;
+    }
+
+    /**
+     * Lists the springs of each particle again.
+     */
+    private void buildIncidence() {
+        if (incidenceStart.length < particleCount + 1) incidenceStart = new int[particleCount + 1];
+        Arrays.fill(incidenceStart, 0, particleCount + 1, 0);
+        for (int s = 0; s < springCount; s++) {
+            incidenceStart[springA[s] + 1]++;
+            if (twoSided[s]) incidenceStart[springB[s] + 1]++;
+        }
+        for (int i = 0; i < particleCount; i++) {
+            incidenceStart[i + 1] += incidenceStart[i];
+        }
+
+        int total = incidenceStart[particleCount];
+        if (incidence.length < total) incidence = new int[total];
+        int[] next = Arrays.copyOf(incidenceStart, particleCount);
+        for (int s = 0; s < springCount; s++) {
+            incidence[next[springA[s]]++] = 2 * s;
+            if (twoSided[s]) incidence[next[springB[s]]++] = 2 * s + 1;
+        }
+        incidenceDirty = false;
+    }
+}
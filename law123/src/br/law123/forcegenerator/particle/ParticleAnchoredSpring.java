@@ -42,6 +42,14 @@ class ParticleAnchoredSpring extends BaseParticleForceGenerator {
         return anchor;
     }
 
+    double getSpringConstant() {
+        return springConstant;
+    }
+
+    double getRestLength() {
+        return restLength;
+    }
+
     /** Set the spring's properties. */
 
     /** Applies the spring force to the given particle. */
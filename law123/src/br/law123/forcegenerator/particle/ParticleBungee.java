@@ -28,6 +28,19 @@ class ParticleBungee extends BaseParticleForceGenerator {
         this.restLength = restLength;
     }
 
+    /** Returns the particle at the other end. */
+    Particle getOther() {
+        return other;
+    }
+
+    double getSpringConstant() {
+        return springConstant;
+    }
+
+    double getRestLength() {
+        return restLength;
+    }
+
     /** Applies the spring force to the given particle. */
     @Override
     public void updateForce(Particle particle, double duration) {
@@ -1,6 +1,7 @@
 package br.law123.forcegenerator.particle;
 
 import br.law123.core.Vector3;
+import br.law123.forcegenerator.field.WaterSurface;
 import br.law123.particle.Particle;
 
 /**
@@ -32,6 +33,11 @@ class ParticleBuoyancy extends BaseParticleForceGenerator {
      */
     private double liquidDensity;
 
+    /**
+     * The surface the water height is read from, if any.
+     */
+    private WaterSurface surface;
+
     /** Creates a new buoyancy force with the given parameters. */
     public ParticleBuoyancy(double maxDepth, double volume, double waterHeight) {
         this(maxDepth, volume, waterHeight, 1000.0f);
@@ -45,11 +51,21 @@ class ParticleBuoyancy extends BaseParticleForceGenerator {
         this.liquidDensity = liquidDensity;
     }
 
+    /**
+     * Sets the surface to read the height of the water from, under the
+     * particle, or null for the flat water height.
+     */
+    public void setWaterSurface(WaterSurface surface) {
+        this.surface = surface;
+    }
+
     /** Applies the buoyancy force to the given particle. */
     @Override
     public void updateForce(Particle particle, double duration) {
         // Calculate the submersion depth
-        double depth = particle.getPosition().getY();
+        Vector3 position = particle.getPosition();
+        double depth = position.getY();
+        double waterHeight = surface == null ? this.waterHeight : surface.getHeight(position.getX(), position.getZ());
 
         // Check if we're out of the water
         if (depth >= waterHeight + maxDepth) return;
@@ -1,13 +1,26 @@
 package br.law123.forcegenerator.particle;
 
 import br.law123.core.Vector3;
+import br.law123.forcegenerator.field.WindField;
 import br.law123.particle.Particle;
 
 /**
  * A force generator that applies a drag force. One instance
  * can be used for multiple particles.
  */
-class ParticleDrag extends BaseParticleForceGenerator {
+class ParticleDrag extends BaseParticleForceGenerator implements BulkParticleForceGenerator {
+
+    /**
+     * Holds a vector for each thread to read the wind into, since one
+     * generator may be run for several particles at once.
+     */
+    private static final ThreadLocal<double[]> AIR = new ThreadLocal<double[]>() {
+
+        @Override
+        protected double[] initialValue() {
+            return new double[3];
+        }
+    };
 
     /** Holds the velocity drag coeffificent. */
     private double k1;
@@ -15,6 +28,9 @@ class ParticleDrag extends BaseParticleForceGenerator {
     /** Holds the velocity squared drag coeffificent. */
     private double k2;
 
+    /** Holds the field the velocity of the air is read from, if any. */
+    private WindField windField;
+
     /** Creates the generator with the given coefficients. */
 
     public ParticleDrag(double k1, double k2) {
@@ -22,20 +38,51 @@ class ParticleDrag extends BaseParticleForceGenerator {
         this.k2 = k2;
     }
 
+    /**
+     * Sets the field to read the velocity of the air from, or null for
+     * still air.
+     */
+    public void setWindField(WindField windField) {
+        this.windField = windField;
+    }
+
     /** Applies the drag force to the given particle. */
     @Override
     public void updateForce(Particle particle, double duration) {
-        Vector3 force = new Vector3();
-        particle.getVelocity(force);
+        drag(particle, windField == null ? null : AIR.get());
+    }
+
+    /** Applies the drag force to the given particles. */
+    @Override
+    public void updateForces(Particle[] particles, int[] indices, int from, int to, double duration) {
+        double[] air = windField == null ? null : AIR.get();
+        for (int i = from; i < to; i++) {
+            drag(particles[indices[i]], air);
+        }
+    }
+
+    /**
+     * Applies the drag force to the given particle, reading the wind
+     * into air if there is a wind field.
+     */
+    private void drag(Particle particle, double[] air) {
+        Vector3 velocity = particle.getVelocity();
+        double vx = velocity.getX(), vy = velocity.getY(), vz = velocity.getZ();
+        if (windField != null) {
+            // Drag works against the speed through the air.
+            Vector3 position = particle.getPosition();
+            windField.sample(position.getX(), position.getY(), position.getZ(), air, 0);
+            vx -= air[0];
+            vy -= air[1];
+            vz -= air[2];
+        }
 
-        // Calculate the total drag coefficient
-        double dragCoeff = force.magnitude();
-        dragCoeff = k1 * dragCoeff + k2 * dragCoeff * dragCoeff;
+        // Calculate the total drag coefficient, divided by the speed so
+        // it can scale the velocity rather than its direction
+        double dragCoeff = k1 + k2 * Math.sqrt(vx * vx + vy * vy + vz * vz);
 
         // Calculate the final force and apply it
-        force.normalise();
-        force.multToMe(-dragCoeff);
-        particle.addForce(force);
+        particle.addForce(-vx * dragCoeff, -vy * dragCoeff, -vz * dragCoeff);
     }
 
 }
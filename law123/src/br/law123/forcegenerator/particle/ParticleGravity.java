@@ -7,7 +7,7 @@ import br.law123.particle.Particle;
  * A force generator that applies a gravitational force. One instance
  * can be used for multiple particles.
  */
-class ParticleGravity extends BaseParticleForceGenerator {
+class ParticleGravity extends BaseParticleForceGenerator implements BulkParticleForceGenerator {
 
     /** Holds the acceleration due to gravity. */
     private Vector3 gravity;
@@ -24,6 +24,19 @@ class ParticleGravity extends BaseParticleForceGenerator {
         if (!particle.hasFiniteMass()) return;
 
         // Apply the mass-scaled force to the particle
-        particle.addForce(gravity.mult(particle.getMass()));
+        double mass = particle.getMass();
+        particle.addForce(gravity.getX() * mass, gravity.getY() * mass, gravity.getZ() * mass);
+    }
+
+    /** Applies the gravitational force to the given particles. */
+    @Override
+    public void updateForces(Particle[] particles, int[] indices, int from, int to, double duration) {
+        double gx = gravity.getX(), gy = gravity.getY(), gz = gravity.getZ();
+        for (int i = from; i < to; i++) {
+            Particle particle = particles[indices[i]];
+            if (!particle.hasFiniteMass()) continue;
+            double mass = particle.getMass();
+            particle.addForce(gx * mass, gy * mass, gz * mass);
+        }
     }
 }
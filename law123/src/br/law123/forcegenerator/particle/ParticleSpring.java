@@ -25,6 +25,19 @@ class ParticleSpring extends BaseParticleForceGenerator {
         this.restLength = restLength;
     }
 
+    /** Returns the particle at the other end. */
+    Particle getOther() {
+        return other;
+    }
+
+    double getSpringConstant() {
+        return springConstant;
+    }
+
+    double getRestLength() {
+        return restLength;
+    }
+
     /** Applies the spring force to the given particle. */
 
     @Override
@@ -2,6 +2,7 @@ package br.law123.forcegenerator.rigidbody;
 
 import br.law123.core.Matrix3;
 import br.law123.core.Vector3;
+import br.law123.forcegenerator.field.WindField;
 import br.law123.rigidbody.RigidBody;
 
 /**
@@ -29,6 +30,12 @@ public class Aero extends BaseForceGenerator {
      */
     private final Vector3 windspeed;
 
+    /**
+     * Holds the field the velocity of the air at the surface is read
+     * from, if any.
+     */
+    private WindField windField;
+
     /**
      * Creates a new aerodynamic force generator with the
      * given properties.
@@ -39,6 +46,20 @@ public class Aero extends BaseForceGenerator {
         this.windspeed = windspeed;
     }
 
+    /**
+     * Sets the field to read the velocity of the air from, at the
+     * surface. Moving air counts against the body's velocity, and the
+     * windspeed vector is still added as before. Pass null to go back to
+     * the windspeed vector alone.
+     */
+    public void setWindField(WindField windField) {
+        this.windField = windField;
+    }
+
+    public WindField getWindField() {
+        return windField;
+    }
+
     /**
      * Applies the force to the given rigid body.
      */
@@ -53,9 +74,14 @@ public class Aero extends BaseForceGenerator {
      * only it takes an explicit tensor.
      */
     protected void updateForceFromTensor(RigidBody body, double duration, Matrix3 tensor) { //TODO analisar
-        // Calculate total velocity (windspeed and body's velocity).
-        Vector3 velocity = body.getVelocity();
-        velocity.sumToMe(windspeed);
+        // Calculate total velocity (windspeed and body's velocity),
+        // without changing the body's own velocity.
+        Vector3 velocity = body.getVelocity().sum(windspeed);
+        if (windField != null) {
+            Vector3 air = new Vector3();
+            windField.sample(body.getPointInWorldSpace(position), air);
+            velocity.subToMe(air);
+        }
 
         // Calculate the velocity in body coordinates
         Vector3 bodyVel = body.getTransform().transformInverseDirection(velocity);
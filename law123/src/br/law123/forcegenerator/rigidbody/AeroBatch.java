@@ -0,0 +1,183 @@
+package br.law123.forcegenerator.rigidbody;
+
+import java.util.Arrays;
+
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.forcegenerator.field.WindField;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Applies the aerodynamic forces of many aircraft, each a rigid body
+ * with the surfaces of an AeroModel.
+ *
+ * Registering an Aero for every surface of every aircraft transforms
+ * the velocity of the aircraft into body space once per surface, and
+ * its force back once per surface. Here the velocity of each aircraft
+ * is brought into body space once, the forces and torques of all its
+ * surfaces are added up in body space, and the total is brought back
+ * and applied once. Nothing is allocated.
+ *
+ * The velocity of the air past an aircraft is the velocity of the
+ * aircraft plus the wind, as for Aero; the body's velocity is only
+ * read. Aircraft are worked out on their own, so the batch can be split
+ * between the threads of a WorkerPool, as long as no body is in the
+ * batch twice.
+ */
+public class AeroBatch {
+
+    /**
+     * Holds the aircraft: the body, model, and where its control
+     * settings start.
+     */
+    private RigidBody[] bodies = new RigidBody[16];
+
+    private AeroModel[] models = new AeroModel[16];
+
+    private int[] controlStart = new int[17];
+
+    private int count;
+
+    /**
+     * Holds the control settings of all the aircraft.
+     */
+    private double[] settings = new double[16];
+
+    /**
+     * Holds the wind, shared with whatever moves it.
+     */
+    private final Vector3 windspeed;
+
+    /**
+     * Holds the field the velocity of the air is read from, at the
+     * centre of each aircraft, if any.
+     */
+    private WindField windField;
+
+    /**
+     * Holds room for the force, torque and air velocity of each worker.
+     */
+    private double[][] out = new double[1][9];
+
+    private final WorkerPool.RangeTask task = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            apply(from, to, out[worker]);
+        }
+    };
+
+    /**
+     * Creates a batch in the given wind. The vector is kept, not
+     * copied, so changes to it are felt by every aircraft.
+     */
+    public AeroBatch(Vector3 windspeed) {
+        this.windspeed = windspeed;
+    }
+
+    /**
+     * Adds an aircraft, with its controls at rest, and returns its index.
+     */
+    public int add(RigidBody body, AeroModel model) {
+        if (count == bodies.length) {
+            bodies = Arrays.copyOf(bodies, 2 * count);
+            models = Arrays.copyOf(models, 2 * count);
+            controlStart = Arrays.copyOf(controlStart, 2 * count + 1);
+        }
+        int start = controlStart[count];
+        int end = start + model.getControlCount();
+        if (settings.length < end) settings = Arrays.copyOf(settings, Math.max(end, 2 * settings.length));
+        Arrays.fill(settings, start, end, 0);
+
+        bodies[count] = body;
+        models[count] = model;
+        controlStart[count + 1] = end;
+        return count++;
+    }
+
+    /**
+     * Sets the field to read the velocity of the air from, once per
+     * aircraft at its centre of mass, so all of an aircraft's surfaces
+     * feel the same air. Moving air counts against the aircraft's
+     * velocity, and the windspeed vector is still added. Pass null to
+     * go back to the windspeed vector alone.
+     */
+    public void setWindField(WindField windField) {
+        this.windField = windField;
+    }
+
+    public WindField getWindField() {
+        return windField;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public RigidBody getBody(int aircraft) {
+        return bodies[aircraft];
+    }
+
+    /**
+     * Sets the given control of the given aircraft, from -1 to 1 as for
+     * AeroControl.setControl. Settings beyond that are held at the
+     * extreme.
+     */
+    public void setControl(int aircraft, int control, double value) {
+        settings[controlStart[aircraft] + control] = value;
+    }
+
+    public double getControl(int aircraft, int control) {
+        return settings[controlStart[aircraft] + control];
+    }
+
+    /**
+     * Applies the forces of every aircraft.
+     */
+    public void updateForces(double duration) {
+        apply(0, count, out[0]);
+    }
+
+    /**
+     * Applies the forces of every aircraft on the threads of the given
+     * pool.
+     */
+    public void updateForces(double duration, WorkerPool pool) {
+        if (pool == null) {
+            updateForces(duration);
+            return;
+        }
+        if (out.length < pool.getThreadCount()) out = new double[pool.getThreadCount()][9];
+        pool.run(count, 64, task);
+    }
+
+    private void apply(int from, int to, double[] out) {
+        double wx = windspeed.getX(), wy = windspeed.getY(), wz = windspeed.getZ();
+        for (int a = from; a < to; a++) {
+            RigidBody body = bodies[a];
+            double[] m = body.getTransform().getData();
+            Vector3 v = body.getVelocity();
+            double vx = v.getX() + wx, vy = v.getY() + wy, vz = v.getZ() + wz;
+            if (windField != null) {
+                Vector3 p = body.getPosition();
+                windField.sample(p.getX(), p.getY(), p.getZ(), out, 6);
+                vx -= out[6];
+                vy -= out[7];
+                vz -= out[8];
+            }
+
+            // Bring the velocity into body space.
+            double ux = vx * m[0] + vy * m[4] + vz * m[8];
+            double uy = vx * m[1] + vy * m[5] + vz * m[9];
+            double uz = vx * m[2] + vy * m[6] + vz * m[10];
+
+            models[a].evaluate(ux, uy, uz, settings, controlStart[a], out);
+
+            // Bring the force and the torque back into world space. The
+            // torque of a body-space force at a body-space point is the
+            // body-space torque turned the same way.
+            body.addForce(m[0] * out[0] + m[1] * out[1] + m[2] * out[2], m[4] * out[0] + m[5] * out[1] + m[6] * out[2], m[8] * out[0] + m[9] * out[1] + m[10] * out[2]);
+            body.addTorque(m[0] * out[3] + m[1] * out[4] + m[2] * out[5], m[4] * out[3] + m[5] * out[4] + m[6] * out[5], m[8] * out[3] + m[9] * out[4] + m[10] * out[5]);
+        }
+    }
+}
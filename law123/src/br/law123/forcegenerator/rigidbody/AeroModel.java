@@ -0,0 +1,135 @@
+package br.law123.forcegenerator.rigidbody;
+
+import java.util.Arrays;
+
+import br.law123.core.Matrix3;
+import br.law123.core.Vector3;
+
+/**
+ * Describes the aerodynamic surfaces of a kind of aircraft: the wings,
+ * tail-planes and rudders that Aero and AeroControl describe one at a
+ * time. A model is shared by every aircraft of its kind; the setting of
+ * each control surface belongs to the aircraft, in an AeroBatch.
+ *
+ * Each surface has a tensor and a position in body space. A control
+ * surface has tensors for its two extremes too, and is interpolated
+ * between them by its control setting in the same way as AeroControl.
+ */
+public class AeroModel {
+
+    /**
+     * Holds the tensors of the surfaces, nine values each, row by row.
+     * For control surfaces, the differences from the resting tensor to
+     * the tensors at the maximum and minimum settings are held too; for
+     * other surfaces they are zero.
+     */
+    private double[] tensor = new double[0];
+
+    private double[] toMax = new double[0];
+
+    private double[] toMin = new double[0];
+
+    /**
+     * Holds the position of each surface in body space, three values
+     * per surface.
+     */
+    private double[] position = new double[0];
+
+    /**
+     * Holds the control of each surface, or -1 for fixed surfaces.
+     */
+    private int[] control = new int[0];
+
+    private int surfaceCount;
+
+    private int controlCount;
+
+    /**
+     * Adds a fixed surface with the given tensor and position, like
+     * Aero. Returns the index of the surface.
+     */
+    public int addSurface(Matrix3 tensor, Vector3 position) {
+        return add(tensor, tensor, tensor, position, -1);
+    }
+
+    /**
+     * Adds a control surface, like AeroControl, and returns the index of
+     * its control, which is the number of control surfaces added before.
+     */
+    public int addControlSurface(Matrix3 base, Matrix3 min, Matrix3 max, Vector3 position) {
+        add(base, min, max, position, controlCount);
+        return controlCount++;
+    }
+
+    public int getSurfaceCount() {
+        return surfaceCount;
+    }
+
+    /**
+     * Returns the number of control surfaces, which is the number of
+     * control settings each aircraft of this model has.
+     */
+    public int getControlCount() {
+        return controlCount;
+    }
+
+    private int add(Matrix3 base, Matrix3 min, Matrix3 max, Vector3 position, int control) {
+        int s = surfaceCount++;
+        tensor = Arrays.copyOf(tensor, 9 * surfaceCount);
+        toMax = Arrays.copyOf(toMax, 9 * surfaceCount);
+        toMin = Arrays.copyOf(toMin, 9 * surfaceCount);
+        this.position = Arrays.copyOf(this.position, 3 * surfaceCount);
+        this.control = Arrays.copyOf(this.control, surfaceCount);
+        for (int i = 0; i < 9; i++) {
+            tensor[9 * s + i] = base.getData(i);
+            toMax[9 * s + i] = max.getData(i) - base.getData(i);
+            toMin[9 * s + i] = min.getData(i) - base.getData(i);
+        }
+        this.position[3 * s] = position.getX();
+        this.position[3 * s + 1] = position.getY();
+        this.position[3 * s + 2] = position.getZ();
+        this.control[s] = control;
+        return s;
+    }
+
+    /**
+     * Works out the force and torque of all the surfaces, in body space,
+     * for the given velocity of the air past the body in body space and
+     * the given control settings, starting at the given offset. Writes
+     * the force and then the torque into out.
+     */
+    void evaluate(double ux, double uy, double uz, double[] settings, int offset, double[] out) {
+        double fx = 0, fy = 0, fz = 0, tx = 0, ty = 0, tz = 0;
+        for (int s = 0; s < surfaceCount; s++) {
+            int t = 9 * s;
+            double sx = tensor[t] * ux + tensor[t + 1] * uy + tensor[t + 2] * uz;
+            double sy = tensor[t + 3] * ux + tensor[t + 4] * uy + tensor[t + 5] * uz;
+            double sz = tensor[t + 6] * ux + tensor[t + 7] * uy + tensor[t + 8] * uz;
+
+            if (control[s] >= 0) {
+                // Move towards the maximum or minimum tensor by as much as
+                // the control is set, up to all the way.
+                double setting = settings[offset + control[s]];
+                double[] towards = setting > 0 ? toMax : toMin;
+                double w = Math.min(1, Math.abs(setting));
+                sx += w * (towards[t] * ux + towards[t + 1] * uy + towards[t + 2] * uz);
+                sy += w * (towards[t + 3] * ux + towards[t + 4] * uy + towards[t + 5] * uz);
+                sz += w * (towards[t + 6] * ux + towards[t + 7] * uy + towards[t + 8] * uz);
+            }
+
+            double px = position[3 * s], py = position[3 * s + 1], pz = position[3 * s + 2];
+            fx += sx;
+            fy += sy;
+            fz += sz;
+            tx += py * sz - pz * sy;
+            ty += pz * sx - px * sz;
+            tz += px * sy - py * sx;
+        }
+        out[0] = fx;
+        out[1] = fy;
+        out[2] = fz;
+        out[3] = tx;
+        out[4] = ty;
+        out[5] = tz;
+    }
+}
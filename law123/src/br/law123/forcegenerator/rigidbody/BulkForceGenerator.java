@@ -0,0 +1,23 @@
+package br.law123.forcegenerator.rigidbody;
+
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * A force generator that can apply its force to many bodies in one
+ * call.
+ *
+ * When a force registry is compiled into a ForceKernel, all the bodies
+ * registered with one bulk generator are handed to it together, so it
+ * runs its own loop over them instead of being called once per body
+ * through the interface.
+ */
+public interface BulkForceGenerator extends ForceGenerator {
+
+    /**
+     * Applies the force to the bodies whose indices into the given
+     * table are the entries of indices from index from to index to. The
+     * indices are in order, and an index is given twice if it was
+     * registered twice.
+     */
+    void updateForces(RigidBody[] bodies, int[] indices, int from, int to, double duration);
+}
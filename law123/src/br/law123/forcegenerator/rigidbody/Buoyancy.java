@@ -1,6 +1,7 @@
 package br.law123.forcegenerator.rigidbody;
 
 import br.law123.core.Vector3;
+import br.law123.forcegenerator.field.WaterSurface;
 import br.law123.rigidbody.RigidBody;
 
 /**
@@ -36,6 +37,11 @@ class Buoyancy extends BaseForceGenerator {
      */
     private Vector3 centreOfBuoyancy;
 
+    /**
+     * The surface the water height is read from, if any.
+     */
+    private WaterSurface surface;
+
     public Buoyancy(Vector3 cOfB, double maxDepth, double volume, double waterHeight) {
         this(cOfB, maxDepth, volume, waterHeight, 1000.0f);
     }
@@ -49,6 +55,14 @@ class Buoyancy extends BaseForceGenerator {
         this.waterHeight = waterHeight;
     }
 
+    /**
+     * Sets the surface to read the height of the water from, under the
+     * centre of buoyancy, or null for the flat water height.
+     */
+    public void setWaterSurface(WaterSurface surface) {
+        this.surface = surface;
+    }
+
     /**
      * Applies the force to the given rigid body.
      */
@@ -59,6 +73,7 @@ class Buoyancy extends BaseForceGenerator {
         // Calculate the submersion depth
         Vector3 pointInWorld = body.getPointInWorldSpace(centreOfBuoyancy);
         double depth = pointInWorld.getY();
+        double waterHeight = surface == null ? this.waterHeight : surface.getHeight(pointInWorld.getX(), pointInWorld.getZ());
 
         // Check if we're out of the water
         if (depth >= waterHeight + maxDepth) return;
@@ -19,14 +19,14 @@ public class Explosion extends BaseForceGenerator implements ParticleForceGenera
      */
     private double timePassed;
 
-    // Properties of the explosion, these are public because
+    // Properties of the explosion, these have setters because
     // there are so many and providing a suitable constructor
     // would be cumbersome:
 
     /**
      * The location of the detonation of the weapon.
      */
-    private Vector3 detonation;
+    private Vector3 detonation = new Vector3();
 
     // ... Other Explosion code as before ...
 
@@ -117,7 +117,175 @@ public class Explosion extends BaseForceGenerator implements ParticleForceGenera
      * Creates a new explosion with sensible default values.
      */
     public Explosion() {
+        implosionMaxRadius = 8;
+        implosionMinRadius = 2;
+        implosionDuration = 0.1;
+        implosionForce = 100;
+        shockwaveSpeed = 50;
+        shockwaveThickness = 2;
+        peakConcussionForce = 2000;
+        concussionDuration = 0.5;
+        peakConvectionForce = 500;
+        chimneyRadius = 2;
+        chimneyHeight = 10;
+        convectionDuration = 3;
+    }
+
+    public double getTimePassed() {
+        return timePassed;
+    }
 
+    public void setTimePassed(double timePassed) {
+        this.timePassed = timePassed;
+    }
+
+    /**
+     * Moves the explosion on by the given time. The force generator
+     * methods don't move it on themselves, since they are called once for
+     * every body.
+     */
+    public void advance(double duration) {
+        timePassed += duration;
+    }
+
+    /**
+     * Returns true while any part of the explosion still applies force.
+     */
+    public boolean isActive() {
+        return timePassed < Math.max(implosionDuration + concussionDuration, convectionDuration);
+    }
+
+    public Vector3 getDetonation() {
+        return detonation;
+    }
+
+    public void setDetonation(Vector3 detonation) {
+        this.detonation = detonation;
+    }
+
+    public double getImplosionMaxRadius() {
+        return implosionMaxRadius;
+    }
+
+    public void setImplosionMaxRadius(double implosionMaxRadius) {
+        this.implosionMaxRadius = implosionMaxRadius;
+    }
+
+    public double getImplosionMinRadius() {
+        return implosionMinRadius;
+    }
+
+    public void setImplosionMinRadius(double implosionMinRadius) {
+        this.implosionMinRadius = implosionMinRadius;
+    }
+
+    public double getImplosionDuration() {
+        return implosionDuration;
+    }
+
+    public void setImplosionDuration(double implosionDuration) {
+        this.implosionDuration = implosionDuration;
+    }
+
+    public double getImplosionForce() {
+        return implosionForce;
+    }
+
+    public void setImplosionForce(double implosionForce) {
+        this.implosionForce = implosionForce;
+    }
+
+    public double getShockwaveSpeed() {
+        return shockwaveSpeed;
+    }
+
+    public void setShockwaveSpeed(double shockwaveSpeed) {
+        this.shockwaveSpeed = shockwaveSpeed;
+    }
+
+    public double getShockwaveThickness() {
+        return shockwaveThickness;
+    }
+
+    public void setShockwaveThickness(double shockwaveThickness) {
+        this.shockwaveThickness = shockwaveThickness;
+    }
+
+    public double getPeakConcussionForce() {
+        return peakConcussionForce;
+    }
+
+    public void setPeakConcussionForce(double peakConcussionForce) {
+        this.peakConcussionForce = peakConcussionForce;
+    }
+
+    public double getConcussionDuration() {
+        return concussionDuration;
+    }
+
+    public void setConcussionDuration(double concussionDuration) {
+        this.concussionDuration = concussionDuration;
+    }
+
+    public double getPeakConvectionForce() {
+        return peakConvectionForce;
+    }
+
+    public void setPeakConvectionForce(double peakConvectionForce) {
+        this.peakConvectionForce = peakConvectionForce;
+    }
+
+    public double getChimneyRadius() {
+        return chimneyRadius;
+    }
+
+    public void setChimneyRadius(double chimneyRadius) {
+        this.chimneyRadius = chimneyRadius;
+    }
+
+    public double getChimneyHeight() {
+        return chimneyHeight;
+    }
+
+    public void setChimneyHeight(double chimneyHeight) {
+        this.chimneyHeight = chimneyHeight;
+    }
+
+    public double getConvectionDuration() {
+        return convectionDuration;
+    }
+
+    public void setConvectionDuration(double convectionDuration) {
+        this.convectionDuration = convectionDuration;
+    }
+
+    /**
+     * Returns true while the implosion is pulling objects in.
+     */
+    boolean isImploding() {
+        return timePassed < implosionDuration;
+    }
+
+    /**
+     * Returns true while the concussion wave is travelling.
+     */
+    boolean isConcussing() {
+        return timePassed >= implosionDuration && timePassed < implosionDuration + concussionDuration;
+    }
+
+    /**
+     * Returns the distance of the centre of the concussion wave from
+     * the detonation.
+     */
+    double getShockwaveRadius() {
+        return shockwaveSpeed * (timePassed - implosionDuration);
+    }
+
+    /**
+     * Returns true while the convection chimney is lifting objects.
+     */
+    boolean isConvecting() {
+        return timePassed < convectionDuration;
     }
 
     /**
@@ -126,7 +294,17 @@ public class Explosion extends BaseForceGenerator implements ParticleForceGenera
      */
     @Override
     public void updateForce(RigidBody body, double duration) {
-
+        if (body.getInverseMass() <= 0) return;
+        Vector3 p = body.getPosition();
+        Vector3 v = body.getVelocity();
+        double dx = p.getX() - detonation.getX();
+        double dy = p.getY() - detonation.getY();
+        double dz = p.getZ() - detonation.getZ();
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double radial = distance > 0 ? radialForce(distance, (v.getX() * dx + v.getY() * dy + v.getZ() * dz) / distance) / distance : 0;
+        double up = convectionForce(dx, dy, dz);
+        if (radial == 0 && up == 0) return;
+        body.addForce(dx * radial, dy * radial + up, dz * radial);
     }
 
     /**
@@ -135,7 +313,17 @@ public class Explosion extends BaseForceGenerator implements ParticleForceGenera
      */
     @Override
     public void updateForce(Particle particle, double duration) {
-
+        if (particle.getInverseMass() <= 0) return;
+        Vector3 p = particle.getPosition();
+        Vector3 v = particle.getVelocity();
+        double dx = p.getX() - detonation.getX();
+        double dy = p.getY() - detonation.getY();
+        double dz = p.getZ() - detonation.getZ();
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        double radial = distance > 0 ? radialForce(distance, (v.getX() * dx + v.getY() * dy + v.getZ() * dz) / distance) / distance : 0;
+        double up = convectionForce(dx, dy, dz);
+        if (radial == 0 && up == 0) return;
+        particle.addForce(dx * radial, dy * radial + up, dz * radial);
     }
 
     /**
@@ -144,7 +332,48 @@ public class Explosion extends BaseForceGenerator implements ParticleForceGenera
      */
     @Override
     public void updateForce(Particle particle) {
+        updateForce(particle, 0);
+    }
 
+    /**
+     * Returns the force pushing an object at the given distance from
+     * the detonation, moving away from it at the given speed, outwards.
+     * Negative values pull it in.
+     */
+    private double radialForce(double distance, double outwardSpeed) {
+        double force = 0;
+
+        // The implosion pulls in everything in its ring.
+        if (isImploding() && distance > implosionMinRadius && distance < implosionMaxRadius) {
+            force -= implosionForce;
+        }
+
+        // The concussion wave pushes hardest at its centre, on objects
+        // that aren't already moving away with it, and fades as it
+        // dies down.
+        if (isConcussing()) {
+            double timeInWave = timePassed - implosionDuration;
+            double half = shockwaveThickness / 2;
+            double offset = Math.abs(distance - shockwaveSpeed * timeInWave);
+            if (offset < half) {
+                double falloff = 1 - offset / half;
+                double fade = 1 - timeInWave / concussionDuration;
+                double motion = Math.max(0, 1 - outwardSpeed / shockwaveSpeed);
+                force += peakConcussionForce * falloff * fade * motion;
+            }
+        }
+        return force;
     }
 
+    /**
+     * Returns the upward force of the convection chimney on an object
+     * at the given offset from the detonation. The force is strongest
+     * on the axis of the chimney near its base, and fades with time.
+     */
+    private double convectionForce(double dx, double dy, double dz) {
+        if (!isConvecting() || dy < 0 || dy >= chimneyHeight) return 0;
+        double axis = Math.sqrt(dx * dx + dz * dz);
+        if (axis >= chimneyRadius) return 0;
+        return peakConvectionForce * (1 - axis / chimneyRadius) * (1 - dy / chimneyHeight) * (1 - timePassed / convectionDuration);
+    }
 }
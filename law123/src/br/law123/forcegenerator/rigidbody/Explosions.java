@@ -0,0 +1,199 @@
+package br.law123.forcegenerator.rigidbody;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import br.law123.collide.HashGrid;
+import br.law123.core.Vector3;
+import br.law123.particle.Particle;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Applies any number of explosions to a set of rigid bodies and
+ * particles, without registering every explosion with every object.
+ *
+ * Each update the positions of the objects are put into a HashGrid,
+ * once for all the explosions. Each explosion then only looks at the
+ * objects in the part of space it acts on at that moment: the ring of
+ * the implosion, the shell of the concussion wave and the box around
+ * the convection chimney. So an explosion costs time in proportion to
+ * the objects it reaches, not to the objects in the scene. Explosions
+ * are moved on by the update and dropped when they are over.
+ */
+public class Explosions {
+
+    /**
+     * Holds the explosions under way.
+     */
+    private final List<Explosion> explosions = new ArrayList<Explosion>();
+
+    /**
+     * Holds the objects, bodies first and then particles in the grid.
+     */
+    private RigidBody[] bodies = new RigidBody[16];
+
+    private int bodyCount;
+
+    private Particle[] particles = new Particle[16];
+
+    private int particleCount;
+
+    /**
+     * Holds the positions of the objects, three values per object.
+     */
+    private double[] positions = new double[48];
+
+    private final HashGrid grid;
+
+    /**
+     * Holds the objects found for the current explosion, and the last
+     * explosion each object was found for, so objects found by two of
+     * its parts get its force once.
+     */
+    private int[] found = new int[256];
+
+    private int[] stamp = new int[16];
+
+    private int currentStamp;
+
+    /**
+     * Creates a set of explosions whose grid has cells of the given
+     * size. Cells about as big as the shock wave is thick work well.
+     */
+    public Explosions(double cellSize) {
+        grid = new HashGrid(cellSize);
+    }
+
+    /**
+     * Returns the list of explosions under way. Add an explosion to it
+     * to set it off.
+     */
+    public List<Explosion> getExplosions() {
+        return explosions;
+    }
+
+    public void add(Explosion explosion) {
+        explosions.add(explosion);
+    }
+
+    public void add(RigidBody body) {
+        if (bodyCount == bodies.length) bodies = Arrays.copyOf(bodies, 2 * bodyCount);
+        bodies[bodyCount++] = body;
+    }
+
+    public void add(Particle particle) {
+        if (particleCount == particles.length) particles = Arrays.copyOf(particles, 2 * particleCount);
+        particles[particleCount++] = particle;
+    }
+
+    /**
+     * Removes a body. The last body takes its place.
+     */
+    public void remove(RigidBody body) {
+        for (int i = 0; i < bodyCount; i++) {
+            if (bodies[i] != body) continue;
+            bodies[i] = bodies[--bodyCount];
+            bodies[bodyCount] = null;
+            return;
+        }
+    }
+
+    /**
+     * Removes a particle. The last particle takes its place.
+     */
+    public void remove(Particle particle) {
+        for (int i = 0; i < particleCount; i++) {
+            if (particles[i] != particle) continue;
+            particles[i] = particles[--particleCount];
+            particles[particleCount] = null;
+            return;
+        }
+    }
+
+    /**
+     * Applies the force of every explosion under way to the objects it
+     * reaches, then moves the explosions on by the given duration.
+     */
+    public void update(double duration) {
+        if (explosions.isEmpty()) return;
+        buildGrid();
+
+        for (int e = explosions.size() - 1; e >= 0; e--) {
+            Explosion explosion = explosions.get(e);
+            apply(explosion, duration);
+            explosion.advance(duration);
+            if (!explosion.isActive()) explosions.remove(e);
+        }
+    }
+
+    private void buildGrid() {
+        int count = bodyCount + particleCount;
+        if (stamp.length < count) {
+            positions = new double[3 * count];
+            stamp = new int[count];
+        }
+        for (int i = 0; i < bodyCount; i++) {
+            store(i, bodies[i].getPosition());
+        }
+        for (int i = 0; i < particleCount; i++) {
+            store(bodyCount + i, particles[i].getPosition());
+        }
+        grid.build(positions, count);
+    }
+
+    private void store(int index, Vector3 position) {
+        positions[3 * index] = position.getX();
+        positions[3 * index + 1] = position.getY();
+        positions[3 * index + 2] = position.getZ();
+    }
+
+    /**
+     * Applies the force of the given explosion to the objects in the
+     * parts of space it acts on.
+     */
+    private void apply(Explosion explosion, double duration) {
+        currentStamp++;
+        Vector3 d = explosion.getDetonation();
+        double x = d.getX(), y = d.getY(), z = d.getZ();
+
+        if (explosion.isImploding()) {
+            int n = grid.queryShell(x, y, z, explosion.getImplosionMinRadius(), explosion.getImplosionMaxRadius(), found);
+            if (n > found.length) n = grid.queryShell(x, y, z, explosion.getImplosionMinRadius(), explosion.getImplosionMaxRadius(), grow(n));
+            applyFound(explosion, n, duration);
+        }
+        if (explosion.isConcussing()) {
+            double radius = explosion.getShockwaveRadius();
+            double half = explosion.getShockwaveThickness() / 2;
+            double inner = Math.max(0, radius - half);
+            int n = grid.queryShell(x, y, z, inner, radius + half, found);
+            if (n > found.length) n = grid.queryShell(x, y, z, inner, radius + half, grow(n));
+            applyFound(explosion, n, duration);
+        }
+        if (explosion.isConvecting()) {
+            double r = explosion.getChimneyRadius();
+            double h = explosion.getChimneyHeight();
+            int n = grid.queryBox(x - r, y, z - r, x + r, y + h, z + r, found);
+            if (n > found.length) n = grid.queryBox(x - r, y, z - r, x + r, y + h, z + r, grow(n));
+            applyFound(explosion, n, duration);
+        }
+    }
+
+    private int[] grow(int size) {
+        found = new int[2 * size];
+        return found;
+    }
+
+    private void applyFound(Explosion explosion, int n, double duration) {
+        for (int k = 0; k < n; k++) {
+            int i = found[k];
+            if (stamp[i] == currentStamp) continue;
+            stamp[i] = currentStamp;
+            if (i < bodyCount) {
+                explosion.updateForce(bodies[i], duration);
+            } else {
+                explosion.updateForce(particles[i - bodyCount], duration);
+            }
+        }
+    }
+}
@@ -7,7 +7,7 @@ import br.law123.rigidbody.RigidBody;
  * A force generator that applies a gravitational force. One instance
  * can be used for multiple rigid bodies.
  */
-class Gravity extends BaseForceGenerator {
+class Gravity extends BaseForceGenerator implements BulkForceGenerator {
 
     /** Holds the acceleration due to gravity. */
     private Vector3 gravity;
@@ -26,6 +26,19 @@ class Gravity extends BaseForceGenerator {
         if (!body.hasFiniteMass()) return;
 
         // Apply the mass-scaled force to the body
-        body.addForce(gravity.mult(body.getMass()));
+        double mass = body.getMass();
+        body.addForce(gravity.getX() * mass, gravity.getY() * mass, gravity.getZ() * mass);
+    }
+
+    /** Applies the gravitational force to the given rigid bodies. */
+    @Override
+    public void updateForces(RigidBody[] bodies, int[] indices, int from, int to, double duration) {
+        double gx = gravity.getX(), gy = gravity.getY(), gz = gravity.getZ();
+        for (int i = from; i < to; i++) {
+            RigidBody body = bodies[indices[i]];
+            if (!body.hasFiniteMass()) continue;
+            double mass = body.getMass();
+            body.addForce(gx * mass, gy * mass, gz * mass);
+        }
     }
 }
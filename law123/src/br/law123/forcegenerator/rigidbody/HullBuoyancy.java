@@ -0,0 +1,158 @@
+package br.law123.forcegenerator.rigidbody;
+
+import java.util.Arrays;
+
+import br.law123.core.Vector3;
+import br.law123.forcegenerator.field.WaterSurface;
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * A force generator to float a hull on a water surface, sampled at any
+ * number of points.
+ *
+ * Floating a hull with a Buoyancy for each of its points adds every
+ * force at its own point, which transforms the point again. Here each
+ * point is brought into world space once, the height of the water under
+ * it is read from the surface, and the forces are added up into one
+ * force and one torque for the body.
+ *
+ * Each point buoys up like a Buoyancy: not at all above the water, with
+ * its full volume from its maximum depth below it, and in proportion
+ * in between. The points are given in body coordinates, and the
+ * generator keeps nothing between calls, so one hull can be registered
+ * for every boat of the same shape, even when the forces are run on
+ * several threads.
+ *
+ * With a cached surface, call cover() for each boat once the surface
+ * has been moved on, so the heights under the hull come from the cache.
+ */
+public class HullBuoyancy extends BaseForceGenerator {
+
+    /**
+     * Holds the sample points in body coordinates, three values per
+     * point, with the maximum depth and volume of each.
+     */
+    private double[] points = new double[24];
+
+    private double[] maxDepth = new double[8];
+
+    private double[] volume = new double[8];
+
+    private int count;
+
+    /**
+     * The surface of the water.
+     */
+    private final WaterSurface surface;
+
+    /**
+     * The density of the liquid. Pure water has a density of
+     * 1000kg per cubic meter.
+     */
+    private double liquidDensity;
+
+    public HullBuoyancy(WaterSurface surface) {
+        this(surface, 1000.0);
+    }
+
+    /** Creates a hull with no points on the given water. */
+    public HullBuoyancy(WaterSurface surface, double liquidDensity) {
+        this.surface = surface;
+        this.liquidDensity = liquidDensity;
+    }
+
+    /**
+     * Adds a sample point, given in body coordinates, with the depth at
+     * which it gives its full force and the volume it stands for.
+     * Returns the index of the point.
+     */
+    public int addPoint(Vector3 point, double maxDepth, double volume) {
+        if (count == this.volume.length) {
+            int capacity = 2 * count;
+            points = Arrays.copyOf(points, 3 * capacity);
+            this.maxDepth = Arrays.copyOf(this.maxDepth, capacity);
+            this.volume = Arrays.copyOf(this.volume, capacity);
+        }
+        points[3 * count] = point.getX();
+        points[3 * count + 1] = point.getY();
+        points[3 * count + 2] = point.getZ();
+        this.maxDepth[count] = maxDepth;
+        this.volume[count] = volume;
+        return count++;
+    }
+
+    public int getPointCount() {
+        return count;
+    }
+
+    public WaterSurface getWaterSurface() {
+        return surface;
+    }
+
+    public void setLiquidDensity(double liquidDensity) {
+        this.liquidDensity = liquidDensity;
+    }
+
+    public double getLiquidDensity() {
+        return liquidDensity;
+    }
+
+    /**
+     * Works out the water heights under the given body, as it stands,
+     * on the surface's cache, over the area its points span. Call this
+     * on one thread, after the surface is moved on and before the forces
+     * are updated.
+     */
+    public void cover(RigidBody body) {
+        if (count == 0) return;
+        double[] m = body.getTransform().getData();
+        double minX = Double.POSITIVE_INFINITY, minZ = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxZ = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < count; i++) {
+            double px = points[3 * i], py = points[3 * i + 1], pz = points[3 * i + 2];
+            double x = m[0] * px + m[1] * py + m[2] * pz + m[3];
+            double z = m[8] * px + m[9] * py + m[10] * pz + m[11];
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minZ = Math.min(minZ, z);
+            maxZ = Math.max(maxZ, z);
+        }
+        surface.cover(minX, minZ, maxX, maxZ);
+    }
+
+    /**
+     * Applies the force to the given rigid body.
+     */
+    @Override
+    public void updateForce(RigidBody body, double duration) {
+        if (count == 0) return;
+
+        double[] m = body.getTransform().getData();
+        double force = 0, torqueX = 0, torqueZ = 0;
+        for (int i = 0; i < count; i++) {
+            // Bring the point into world space, keeping its offset from
+            // the centre of mass for the torque.
+            double px = points[3 * i], py = points[3 * i + 1], pz = points[3 * i + 2];
+            double x = m[0] * px + m[1] * py + m[2] * pz + m[3];
+            double depth = m[4] * px + m[5] * py + m[6] * pz + m[7];
+            double z = m[8] * px + m[9] * py + m[10] * pz + m[11];
+            double waterHeight = surface.getHeight(x, z);
+            double d = maxDepth[i];
+
+            // Check if the point is out of the water
+            if (depth >= waterHeight + d) continue;
+
+            // Find how much of its volume is under water
+            double submerged = depth <= waterHeight - d ? 1 : (waterHeight + d - depth) / (2 * d);
+            double f = liquidDensity * volume[i] * submerged;
+
+            // The force is straight up, so its torque has no y part.
+            force += f;
+            torqueX -= (z - m[11]) * f;
+            torqueZ += (x - m[3]) * f;
+        }
+        if (force == 0) return;
+        body.addForce(0, force, 0);
+        body.addTorque(torqueX, 0, torqueZ);
+    }
+}
@@ -10,6 +10,10 @@ import br.law123.core.Vector3;
  * integrated forward through time, and have linear forces, and impulses applied
  * to it. The particle manages its state and allows access through a set of
  * methods.
+ * 
+ * A particle can also be a view onto a particle of a ParticleSystem. Its
+ * state is then held by the system: the getters return a copy of the
+ * current state, and the setters write to the system.
  */
 public class Particle {
 
@@ -94,6 +98,17 @@ public class Particle {
 
 	/* @} */
 
+	/**
+	 * Holds the system that holds the state of the particle, or null if
+	 * the particle holds its own state.
+	 */
+	private ParticleSystem system;
+
+	/**
+	 * Holds the handle of the particle in its system.
+	 */
+	private int handle = -1;
+
 	/**
 	 * @name Constructor and Destructor
 	 * 
@@ -123,6 +138,11 @@ public class Particle {
 	 * inaccurate in some cases.
 	 */
 	public void integrate(double duration) {
+		if (system != null) {
+			system.integrate(handle, handle + 1, duration);
+			return;
+		}
+
 		// We don't integrate things with zero mass.
 		if (inverseMass <= 0.0f)
 			return;
@@ -132,12 +152,10 @@ public class Particle {
 		// Update linear position.
 		position.addScaledVector(velocity, duration);
 
-		// Work out the acceleration from the force
-        Vector3 resultingAcc = new Vector3(acceleration);
-		resultingAcc.addScaledVector(forceAccum, inverseMass);
-
-		// Update linear velocity from the acceleration.
-		velocity.addScaledVector(resultingAcc, duration);
+		// Update linear velocity from the acceleration and the force,
+		// without building the resulting acceleration.
+		velocity.addScaledVector(acceleration, duration);
+		velocity.addScaledVector(forceAccum, inverseMass * duration);
 
 		// Impose drag.
 		velocity.multToMe(Math.pow(damping, duration));
@@ -169,7 +187,7 @@ public class Particle {
 	 */
 	public void setMass(double mass) {
 		assert (mass != 0);
-		this.inverseMass = 1.0 / mass;
+		setInverseMass(1.0 / mass);
 	}
 
 	/**
@@ -178,6 +196,7 @@ public class Particle {
 	 * @return The current mass of the particle.
 	 */
 	public double getMass() {
+		double inverseMass = getInverseMass();
 		if (inverseMass == 0) {
 			return Double.MAX_VALUE;
 		}
@@ -196,6 +215,10 @@ public class Particle {
 	 *          be called before trying to get any settings from the particle.
 	 */
 	public void setInverseMass(double inverseMass) {
+		if (system != null) {
+			system.setInverseMass(handle, inverseMass);
+			return;
+		}
 		this.inverseMass = inverseMass;
 	}
 
@@ -205,6 +228,9 @@ public class Particle {
 	 * @return The current inverse mass of the particle.
 	 */
     public double getInverseMass() {
+		if (system != null) {
+			return system.getInverseMass(handle);
+		}
 		return inverseMass;
 	}
 
@@ -212,13 +238,17 @@ public class Particle {
 	 * Returns true if the mass of the particle is not-infinite.
 	 */
 	public boolean hasFiniteMass() {
-		return inverseMass >= 0.0f;
+		return getInverseMass() >= 0.0f;
 	}
 
 	/**
 	 * Sets both the damping of the particle.
 	 */
 	public void setDamping(double damping) {
+		if (system != null) {
+			system.setDamping(handle, damping);
+			return;
+		}
 		this.damping = damping;
 	}
 
@@ -226,6 +256,9 @@ public class Particle {
 	 * Gets the current damping value.
 	 */
 	public double getDamping() {
+		if (system != null) {
+			return system.getDamping(handle);
+		}
 		return damping;
 	}
 
@@ -236,6 +269,10 @@ public class Particle {
 	 *            The new position of the particle.
 	 */
 	public void setPosition(Vector3 position) {
+		if (system != null) {
+			setPosition(position.getX(), position.getY(), position.getZ());
+			return;
+		}
 		this.position = position;
 	}
 
@@ -252,6 +289,10 @@ public class Particle {
 	 *            The z coordinate of the new position of the rigid body.
 	 */
 	public void setPosition(double x, double y, double z) {
+		if (system != null) {
+			system.setPosition(handle, x, y, z);
+			return;
+		}
 		position.setX(x);
 		position.setY(y);
 		position.setZ(z);
@@ -265,7 +306,7 @@ public class Particle {
 	 */
     @Deprecated
 	public void getPosition(Vector3 position) {
-        fillVector3(this.position, position);
+        fillVector3(getPosition(), position);
 	}
 
 	/**
@@ -274,6 +315,9 @@ public class Particle {
 	 * @return The position of the particle.
 	 */
 	public Vector3 getPosition() {
+		if (system != null) {
+			system.getPosition(handle, position);
+		}
 		return position;
 	}
 
@@ -284,6 +328,10 @@ public class Particle {
 	 *            The new velocity of the particle.
 	 */
 	public void setVelocity(Vector3 velocity) {
+		if (system != null) {
+			setVelocity(velocity.getX(), velocity.getY(), velocity.getZ());
+			return;
+		}
 		this.velocity = velocity;
 	}
 
@@ -300,6 +348,10 @@ public class Particle {
 	 *            The z coordinate of the new velocity of the rigid body.
 	 */
 	public void setVelocity(double x, double y, double z) {
+		if (system != null) {
+			system.setVelocity(handle, x, y, z);
+			return;
+		}
 		velocity.setX(x);
 		velocity.setY(y);
 		velocity.setZ(z);
@@ -314,7 +366,7 @@ public class Particle {
 	 */
     @Deprecated
 	public void getVelocity(Vector3 velocity) {
-        fillVector3(this.velocity, velocity);
+        fillVector3(getVelocity(), velocity);
 	}
 
 	/**
@@ -324,6 +376,9 @@ public class Particle {
 	 *         local space.
 	 */
 	public Vector3 getVelocity() {
+		if (system != null) {
+			system.getVelocity(handle, velocity);
+		}
 		return velocity;
 	}
 
@@ -334,6 +389,10 @@ public class Particle {
 	 *            The new acceleration of the particle.
 	 */
 	public void setAcceleration(Vector3 acceleration) {
+		if (system != null) {
+			setAcceleration(acceleration.getX(), acceleration.getY(), acceleration.getZ());
+			return;
+		}
 		this.acceleration = acceleration;
 	}
 
@@ -350,6 +409,10 @@ public class Particle {
 	 *            The z coordinate of the new acceleration of the rigid body.
 	 */
 	public void setAcceleration(double x, double y, double z) {
+		if (system != null) {
+			system.setAcceleration(handle, x, y, z);
+			return;
+		}
 		acceleration.setX(x);
 		acceleration.setY(y);
 		acceleration.setZ(z);
@@ -364,7 +427,7 @@ public class Particle {
 	 */
     @Deprecated
 	public void getAcceleration(Vector3 acceleration) {
-        fillVector3(this.acceleration, acceleration);
+        fillVector3(getAcceleration(), acceleration);
 	}
 
 	/**
@@ -374,6 +437,9 @@ public class Particle {
 	 *         world local space.
 	 */
 	public Vector3 getAcceleration() {
+		if (system != null) {
+			system.getAcceleration(handle, acceleration);
+		}
 		return acceleration;
 	}
 
@@ -391,9 +457,26 @@ public class Particle {
 	 * automatically after each integration step.
 	 */
 	public void clearAccumulator() {
+		if (system != null) {
+			system.clearAccumulator(handle);
+			return;
+		}
 		forceAccum.clear();
 	}
 
+	/**
+	 * Gets the force accumulated since the last integration.
+	 * 
+	 * @return The accumulated force. For a particle of a system this is
+	 *         a copy of the current value.
+	 */
+	public Vector3 getForceAccum() {
+		if (system != null) {
+			system.getForceAccum(handle, forceAccum);
+		}
+		return forceAccum;
+	}
+
 	/**
 	 * Adds the given force to the particle, to be applied at the next iteration
 	 * only.
@@ -402,7 +485,63 @@ public class Particle {
 	 *            The force to apply.
 	 */
 	public void addForce(Vector3 force) {
-		forceAccum.sumToMe(force);
+		addForce(force.getX(), force.getY(), force.getZ());
+	}
+
+	/**
+	 * Adds the given force to the particle by component, to be applied at
+	 * the next iteration only.
+	 */
+	public void addForce(double x, double y, double z) {
+		if (system != null) {
+			system.addForce(handle, x, y, z);
+			return;
+		}
+		forceAccum.setX(forceAccum.getX() + x);
+		forceAccum.setY(forceAccum.getY() + y);
+		forceAccum.setZ(forceAccum.getZ() + z);
+	}
+
+	/* @} */
+
+	/**
+	 * Returns the system holding the state of the particle, or null if
+	 * the particle holds its own state.
+	 */
+	public ParticleSystem getSystem() {
+		return system;
+	}
+
+	/**
+	 * Returns the handle of the particle in its system, or -1 if it
+	 * holds its own state.
+	 */
+	public int getHandle() {
+		return handle;
+	}
+
+	/**
+	 * Makes the particle a view onto the given particle of the system.
+	 * Called by the system, which has already copied the state.
+	 */
+	void bind(ParticleSystem system, int handle) {
+		this.system = system;
+		this.handle = handle;
+	}
+
+	/**
+	 * Copies the state back out of the system, so the particle holds it
+	 * again. Called by the system before it frees the handle.
+	 */
+	void unbind() {
+		getPosition();
+		getVelocity();
+		getAcceleration();
+		getForceAccum();
+		inverseMass = system.getInverseMass(handle);
+		damping = system.getDamping(handle);
+		system = null;
+		handle = -1;
 	}
 
     private void fillVector3(Vector3 origin, Vector3 destin) {
@@ -0,0 +1,459 @@
+package br.law123.particle;
+
+import java.util.Arrays;
+
+import br.law123.core.Vector3;
+
+/**
+ * Holds the state of many particles in flat arrays, one array per
+ * property, rather than in one object per particle.
+ *
+ * Each particle is known by an integer handle, which is its index in
+ * the arrays. Handles stay the same for the life of the particle, and
+ * the handles of destroyed particles are reused by later ones. Vector
+ * properties are stored three values per particle, so the x coordinate
+ * of the position of particle h is at position[3 * h], followed by y
+ * and z.
+ *
+ * Integrating the whole system is a single pass through the arrays,
+ * which is much kinder to the memory system than following the five
+ * objects behind each Particle. Particle objects can still be used as
+ * views onto particles of the system, so that force generators, links
+ * and contacts written for Particle keep working; see
+ * {@link #createParticle()} and {@link #add(Particle)}.
+ */
+public class ParticleSystem {
+
+    /**
+     * Holds the position of each particle, three values per particle.
+     */
+    private double[] position;
+
+    /**
+     * Holds the velocity of each particle, three values per particle.
+     */
+    private double[] velocity;
+
+    /**
+     * Holds the constant acceleration of each particle, three values
+     * per particle.
+     */
+    private double[] acceleration;
+
+    /**
+     * Holds the accumulated force of each particle, three values per
+     * particle.
+     */
+    private double[] forceAccum;
+
+    /**
+     * Holds the inverse mass of each particle. Unused slots have an
+     * inverse mass of zero, so integration passes over them.
+     */
+    private double[] inverseMass;
+
+    /**
+     * Holds the damping of each particle.
+     */
+    private double[] damping;
+
+    /**
+     * Holds, for each unused slot, the next unused slot, or -1 at the
+     * end of the free list. Slots in use hold -2.
+     */
+    private int[] nextFree;
+
+    /**
+     * Holds the first unused slot below size, or -1 if there is none.
+     */
+    private int freeHead = -1;
+
+    /**
+     * Holds one more than the highest slot ever used.
+     */
+    private int size;
+
+    /**
+     * Holds the number of particles in the system.
+     */
+    private int count;
+
+    /**
+     * Creates an empty system with room for a few particles. The
+     * system grows as needed.
+     */
+    public ParticleSystem() {
+        this(16);
+    }
+
+    /**
+     * Creates an empty system with room for the given number of
+     * particles before it has to grow.
+     */
+    public ParticleSystem(int capacity) {
+        capacity = Math.max(1, capacity);
+        position = new double[3 * capacity];
+        velocity = new double[3 * capacity];
+        acceleration = new double[3 * capacity];
+        forceAccum = new double[3 * capacity];
+        inverseMass = new double[capacity];
+        damping = new double[capacity];
+        nextFree = new int[capacity];
+    }
+
+    /**
+     * Creates a particle at rest at the origin, with infinite mass and
+     * no damping, and returns its handle.
+     */
+    public int create() {
+        int handle;
+        if (freeHead >= 0) {
+            handle = freeHead;
+            freeHead = nextFree[handle];
+        } else {
+            if (size == inverseMass.length) grow(2 * size);
+            handle = size++;
+        }
+        nextFree[handle] = -2;
+        damping[handle] = 1;
+        count++;
+        return handle;
+    }
+
+    /**
+     * Destroys the particle with the given handle. The handle may be
+     * given to a later particle.
+     */
+    public void destroy(int handle) {
+        checkAlive(handle);
+        clearSlot(handle);
+        nextFree[handle] = freeHead;
+        freeHead = handle;
+        count--;
+    }
+
+    /**
+     * Returns true if the given handle belongs to a particle of the
+     * system.
+     */
+    public boolean isAlive(int handle) {
+        return handle >= 0 && handle < size && nextFree[handle] == -2;
+    }
+
+    /**
+     * Creates a particle and returns a Particle object that reads and
+     * writes its state in this system.
+     */
+    public Particle createParticle() {
+        Particle particle = new Particle();
+        particle.bind(this, create());
+        return particle;
+    }
+
+    /**
+     * Moves the state of the given particle into the system. From then
+     * on the particle reads and writes its state in the system, and is
+     * integrated with it. Returns the handle of the particle.
+     */
+    public int add(Particle particle) {
+        if (particle.getSystem() != null) {
+            throw new IllegalArgumentException("Particle already belongs to a system");
+        }
+        int handle = create();
+        set(handle, position, particle.getPosition());
+        set(handle, velocity, particle.getVelocity());
+        set(handle, acceleration, particle.getAcceleration());
+        set(handle, forceAccum, particle.getForceAccum());
+        inverseMass[handle] = particle.getInverseMass();
+        damping[handle] = particle.getDamping();
+        particle.bind(this, handle);
+        return handle;
+    }
+
+    /**
+     * Moves the state of the given particle out of the system, and
+     * destroys its slot. The particle keeps its state and can be used
+     * on its own again.
+     */
+    public void remove(Particle particle) {
+        if (particle.getSystem() != this) {
+            throw new IllegalArgumentException("Particle doesn't belong to this system");
+        }
+        int handle = particle.getHandle();
+        particle.unbind();
+        destroy(handle);
+    }
+
+    /**
+     * Returns the number of particles in the system.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns one more than the highest handle in use. Every handle of
+     * the system is below this value, though some of the handles below
+     * it may be unused.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @name Bulk Functions
+     *
+     *       These functions work on a range of handles at once. Unused
+     *       slots in the range are left alone.
+     */
+    /* @{ */
+
+    /**
+     * Integrates every particle of the system forward in time by the
+     * given amount.
+     */
+    public void integrate(double duration) {
+        integrate(0, size, duration);
+    }
+
+    /**
+     * Integrates the particles with handles from (inclusive) to to
+     * (exclusive) forward in time, in the same way as
+     * {@link Particle#integrate(double)}, and clears their
+     * accumulated force. Ranges that don't overlap can be integrated on
+     * different threads at the same time.
+     */
+    public void integrate(int from, int to, double duration) {
+        assert (duration > 0.0);
+
+        final double[] position = this.position;
+        final double[] velocity = this.velocity;
+        final double[] acceleration = this.acceleration;
+        final double[] forceAccum = this.forceAccum;
+
+        // Most particles share the same damping, so only work out the
+        // drag again when it changes.
+        double lastDamping = 1;
+        double drag = 1;
+
+        for (int i = from; i < to; i++) {
+            double im = inverseMass[i];
+            int k = 3 * i;
+            if (im <= 0.0) {
+                // We don't integrate things with zero mass.
+                forceAccum[k] = forceAccum[k + 1] = forceAccum[k + 2] = 0;
+                continue;
+            }
+
+            if (damping[i] != lastDamping) {
+                lastDamping = damping[i];
+                drag = Math.pow(lastDamping, duration);
+            }
+
+            double vx = velocity[k];
+            double vy = velocity[k + 1];
+            double vz = velocity[k + 2];
+
+            // Update linear position.
+            position[k] += vx * duration;
+            position[k + 1] += vy * duration;
+            position[k + 2] += vz * duration;
+
+            // Update linear velocity from the acceleration and the
+            // force, then impose drag.
+            velocity[k] = (vx + (acceleration[k] + forceAccum[k] * im) * duration) * drag;
+            velocity[k + 1] = (vy + (acceleration[k + 1] + forceAccum[k + 1] * im) * duration) * drag;
+            velocity[k + 2] = (vz + (acceleration[k + 2] + forceAccum[k + 2] * im) * duration) * drag;
+
+            // Clear the forces.
+            forceAccum[k] = forceAccum[k + 1] = forceAccum[k + 2] = 0;
+        }
+    }
+
+    /**
+     * Clears the accumulated force of every particle.
+     */
+    public void clearAccumulators() {
+        Arrays.fill(forceAccum, 0, 3 * size, 0);
+    }
+
+    /**
+     * Sets the constant acceleration of every particle.
+     */
+    public void setAllAccelerations(double x, double y, double z) {
+        for (int k = 0; k < 3 * size; k += 3) {
+            acceleration[k] = x;
+            acceleration[k + 1] = y;
+            acceleration[k + 2] = z;
+        }
+    }
+
+    /**
+     * Returns the positions of the particles, three values per
+     * particle. The array is the system's own storage, so writing to it
+     * moves the particles; it is replaced when the system grows.
+     */
+    public double[] getPositions() {
+        return position;
+    }
+
+    /**
+     * Returns the velocities of the particles, like
+     * {@link #getPositions()}.
+     */
+    public double[] getVelocities() {
+        return velocity;
+    }
+
+    /**
+     * Returns the constant accelerations of the particles, like
+     * {@link #getPositions()}.
+     */
+    public double[] getAccelerations() {
+        return acceleration;
+    }
+
+    /**
+     * Returns the accumulated forces of the particles, like
+     * {@link #getPositions()}.
+     */
+    public double[] getForceAccums() {
+        return forceAccum;
+    }
+
+    /**
+     * Returns the inverse masses of the particles, one value per
+     * particle. Unused slots hold zero.
+     */
+    public double[] getInverseMasses() {
+        return inverseMass;
+    }
+
+    /**
+     * Returns the damping of the particles, one value per particle.
+     */
+    public double[] getDampings() {
+        return damping;
+    }
+
+    /* @} */
+
+    /**
+     * @name Accessor Functions for a Single Particle
+     */
+    /* @{ */
+
+    public void getPosition(int handle, Vector3 out) {
+        get(handle, position, out);
+    }
+
+    public void setPosition(int handle, double x, double y, double z) {
+        set(handle, position, x, y, z);
+    }
+
+    public void getVelocity(int handle, Vector3 out) {
+        get(handle, velocity, out);
+    }
+
+    public void setVelocity(int handle, double x, double y, double z) {
+        set(handle, velocity, x, y, z);
+    }
+
+    public void getAcceleration(int handle, Vector3 out) {
+        get(handle, acceleration, out);
+    }
+
+    public void setAcceleration(int handle, double x, double y, double z) {
+        set(handle, acceleration, x, y, z);
+    }
+
+    public void getForceAccum(int handle, Vector3 out) {
+        get(handle, forceAccum, out);
+    }
+
+    /**
+     * Adds the given force to the particle, to be applied at the next
+     * integration only.
+     */
+    public void addForce(int handle, double x, double y, double z) {
+        int k = 3 * handle;
+        forceAccum[k] += x;
+        forceAccum[k + 1] += y;
+        forceAccum[k + 2] += z;
+    }
+
+    public void clearAccumulator(int handle) {
+        set(handle, forceAccum, 0, 0, 0);
+    }
+
+    /**
+     * Copies the whole state of one particle over another's, so that
+     * users keeping their particles packed at the low handles can move
+     * a particle into a hole.
+     */
+    public void copy(int from, int to) {
+        System.arraycopy(position, 3 * from, position, 3 * to, 3);
+        System.arraycopy(velocity, 3 * from, velocity, 3 * to, 3);
+        System.arraycopy(acceleration, 3 * from, acceleration, 3 * to, 3);
+        System.arraycopy(forceAccum, 3 * from, forceAccum, 3 * to, 3);
+        inverseMass[to] = inverseMass[from];
+        damping[to] = damping[from];
+    }
+
+    public double getInverseMass(int handle) {
+        return inverseMass[handle];
+    }
+
+    public void setInverseMass(int handle, double inverseMass) {
+        this.inverseMass[handle] = inverseMass;
+    }
+
+    public double getDamping(int handle) {
+        return damping[handle];
+    }
+
+    public void setDamping(int handle, double damping) {
+        this.damping[handle] = damping;
+    }
+
+    /* @} */
+
+    private void get(int handle, double[] values, Vector3 out) {
+        int k = 3 * handle;
+        out.set(values[k], values[k + 1], values[k + 2]);
+    }
+
+    private void set(int handle, double[] values, Vector3 v) {
+        set(handle, values, v.getX(), v.getY(), v.getZ());
+    }
+
+    private void set(int handle, double[] values, double x, double y, double z) {
+        int k = 3 * handle;
+        values[k] = x;
+        values[k + 1] = y;
+        values[k + 2] = z;
+    }
+
+    private void clearSlot(int handle) {
+        set(handle, position, 0, 0, 0);
+        set(handle, velocity, 0, 0, 0);
+        set(handle, acceleration, 0, 0, 0);
+        set(handle, forceAccum, 0, 0, 0);
+        inverseMass[handle] = 0;
+        damping[handle] = 1;
+    }
+
+    private void checkAlive(int handle) {
+        if (!isAlive(handle)) throw new IllegalArgumentException("No particle with handle " + handle);
+    }
+
+    private void grow(int capacity) {
+        position = Arrays.copyOf(position, 3 * capacity);
+        velocity = Arrays.copyOf(velocity, 3 * capacity);
+        acceleration = Arrays.copyOf(acceleration, 3 * capacity);
+        forceAccum = Arrays.copyOf(forceAccum, 3 * capacity);
+        inverseMass = Arrays.copyOf(inverseMass, capacity);
+        damping = Arrays.copyOf(damping, capacity);
+        nextFree = Arrays.copyOf(nextFree, capacity);
+    }
+}
@@ -0,0 +1,14 @@
+package br.law123.particle.contact;
+
+/**
+ * A contact generator that knows the most contacts it can write in one
+ * call. The particle world uses this to reserve a slice of the contact
+ * array of the right size when it runs contact generators in parallel.
+ */
+public interface BoundedParticleContactGenerator extends ParticleContactGenerator {
+
+    /**
+     * Returns the most contacts a call to addContact can write.
+     */
+    int getMaxContacts();
+}
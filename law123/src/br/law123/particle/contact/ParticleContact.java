@@ -32,6 +32,12 @@ public class ParticleContact {
      */
     private Vector3 contactNormal;
 
+    /**
+     * Holds the normal set by components, so that contacts generated every
+     * frame don't need a new vector each time.
+     */
+    private final Vector3 ownNormal = new Vector3();
+
     /**
      * Holds the depth of penetration at the contact.
      */
@@ -47,6 +53,10 @@ public class ParticleContact {
         return particle;
     }
 
+    public double getRestitution() {
+        return restitution;
+    }
+
     public void setRestitution(double restitution) {
         this.restitution = restitution;
     }
@@ -59,6 +69,15 @@ public class ParticleContact {
         this.contactNormal = contactNormal;
     }
 
+    /**
+     * Sets the direction of the contact from its components, into a vector
+     * owned by the contact, so that no vector given earlier is changed.
+     */
+    public void setContactNormal(double x, double y, double z) {
+        ownNormal.set(x, y, z);
+        this.contactNormal = ownNormal;
+    }
+
     public double getPenetration() {
         return penetration;
     }
@@ -83,11 +102,17 @@ public class ParticleContact {
      * Calculates the separating velocity at this contact.
      */
     protected double calculateSeparatingVelocity() {
-        Vector3 relativeVelocity = new Vector3(particle[0].getVelocity());
+        Vector3 velocity = particle[0].getVelocity();
+        double x = velocity.getX();
+        double y = velocity.getY();
+        double z = velocity.getZ();
         if (particle[1] != null) {
-            relativeVelocity.subToMe(particle[1].getVelocity());
+            velocity = particle[1].getVelocity();
+            x -= velocity.getX();
+            y -= velocity.getY();
+            z -= velocity.getZ();
         }
-        return relativeVelocity.mult(contactNormal);
+        return x * contactNormal.getX() + y * contactNormal.getY() + z * contactNormal.getZ();
     }
 
     /**
@@ -108,11 +133,12 @@ public class ParticleContact {
         double newSepVelocity = -separatingVelocity * restitution;
 
         // Check the velocity build-up due to acceleration only
-        Vector3 accCausedVelocity = new Vector3(particle[0].getAcceleration());
+        Vector3 acceleration = particle[0].getAcceleration();
+        double accCausedSepVelocity = acceleration.mult(contactNormal);
         if (particle[1] != null) {
-            accCausedVelocity.subToMe(particle[1].getAcceleration());
+            accCausedSepVelocity -= particle[1].getAcceleration().mult(contactNormal);
         }
-        double accCausedSepVelocity = accCausedVelocity.mult(contactNormal) * duration;
+        accCausedSepVelocity *= duration;
 
         // If we've got a closing velocity due to acceleration build-up,
         // remove it from the new separating velocity
@@ -140,15 +166,12 @@ public class ParticleContact {
         // Calculate the impulse to apply
         double impulse = deltaVelocity / totalInverseMass;
 
-        // Find the amount of impulse per unit of inverse mass
-        Vector3 impulsePerIMass = contactNormal.mult(impulse);
-
         // Apply impulses: they are applied in the direction of the contact,
         // and are proportional to the inverse mass.
-        particle[0].setVelocity(particle[0].getVelocity().sum(impulsePerIMass.mult(particle[0].getInverseMass())));
+        addVelocity(particle[0], impulse * particle[0].getInverseMass());
         if (particle[1] != null) {
             // Particle 1 goes in the opposite direction
-            particle[1].setVelocity(particle[1].getVelocity().sum(impulsePerIMass.mult(-particle[1].getInverseMass())));
+            addVelocity(particle[1], -impulse * particle[1].getInverseMass());
         }
     }
 
@@ -156,6 +179,10 @@ public class ParticleContact {
      * Handles the interpenetration resolution for this contact.
      */
     private void resolveInterpenetration(double duration) {
+        // Nothing has moved yet.
+        particleMovement[0].clear();
+        particleMovement[1].clear();
+
         // If we don't have any penetration, skip this step.
         if (penetration <= 0) return;
 
@@ -170,21 +197,36 @@ public class ParticleContact {
         if (totalInverseMass <= 0) return;
 
         // Find the amount of penetration resolution per unit of inverse mass
-        Vector3 movePerIMass = contactNormal.mult((penetration / totalInverseMass));
+        double movePerIMass = penetration / totalInverseMass;
 
         // Calculate the the movement amounts
-        particleMovement[0] = movePerIMass.mult(particle[0].getInverseMass());
+        particleMovement[0].addScaledVector(contactNormal, movePerIMass * particle[0].getInverseMass());
         if (particle[1] != null) {
-            particleMovement[1] = movePerIMass.mult(-particle[1].getInverseMass());
-        } else {
-            particleMovement[1].clear();
+            particleMovement[1].addScaledVector(contactNormal, -movePerIMass * particle[1].getInverseMass());
         }
 
         // Apply the penetration resolution
-        particle[0].setPosition(particle[0].getPosition().sum(particleMovement[0]));
+        addPosition(particle[0], particleMovement[0]);
         if (particle[1] != null) {
-            particle[1].setPosition(particle[1].getPosition().sum(particleMovement[1]));
+            addPosition(particle[1], particleMovement[1]);
         }
     }
 
+    /**
+     * Adds the contact normal, scaled by the given amount, to the
+     * velocity of the given particle.
+     */
+    private void addVelocity(Particle p, double scale) {
+        Vector3 velocity = p.getVelocity();
+        p.setVelocity(velocity.getX() + contactNormal.getX() * scale, velocity.getY() + contactNormal.getY() * scale, velocity.getZ() + contactNormal.getZ() * scale);
+    }
+
+    /**
+     * Moves the given particle by the given amount.
+     */
+    private void addPosition(Particle p, Vector3 move) {
+        Vector3 position = p.getPosition();
+        p.setPosition(position.getX() + move.getX(), position.getY() + move.getY(), position.getZ() + move.getZ());
+    }
+
 }
@@ -0,0 +1,118 @@
+package br.law123.particle.contact;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import br.law123.particle.Particle;
+
+/**
+ * Holds, for a set of particle contacts, the list of contacts touching
+ * each particle, so the resolver only has to look at the contacts of
+ * the particles a resolution moved.
+ *
+ * Only particles that can move are indexed: particles with zero
+ * inverse mass are never changed by a contact, so the contacts
+ * sharing them don't need to be revisited.
+ */
+class ParticleContactAdjacency {
+
+    /**
+     * Holds the index of each moving particle.
+     */
+    private final Map<Particle, Integer> particleIndex = new IdentityHashMap<Particle, Integer>();
+
+    /**
+     * Holds the moving particles, in the order they were met.
+     */
+    Particle[] particles = new Particle[0];
+
+    /**
+     * Holds the number of moving particles.
+     */
+    int particleCount;
+
+    /**
+     * Holds the index of the two particles of each contact, or -1 for
+     * particles that can't move. The particles of contact i are at 2i
+     * and 2i + 1.
+     */
+    int[] contactParticles = new int[0];
+
+    /**
+     * Holds the contacts touching each particle. The contacts of
+     * particle p are the entries from particleContactStart[p] to
+     * particleContactStart[p + 1], in contact order.
+     */
+    int[] particleContacts = new int[0];
+
+    /**
+     * Holds where each particle starts in particleContacts.
+     */
+    int[] particleContactStart = new int[1];
+
+    /**
+     * Builds the lists for the given contacts.
+     */
+    void build(ParticleContact[] contacts, int numContacts) {
+        particleIndex.clear();
+        particleCount = 0;
+        if (contactParticles.length < 2 * numContacts) {
+            contactParticles = new int[2 * numContacts];
+        }
+        for (int i = 0; i < numContacts; i++) {
+            Particle[] particle = contacts[i].getParticle();
+            for (int b = 0; b < 2; b++) {
+                contactParticles[2 * i + b] = indexOf(particle[b]);
+            }
+        }
+
+        if (particleContactStart.length < particleCount + 1) {
+            particleContactStart = new int[particleCount + 1];
+        }
+        Arrays.fill(particleContactStart, 0, particleCount + 1, 0);
+        for (int i = 0; i < 2 * numContacts; i++) {
+            if (contactParticles[i] >= 0) particleContactStart[contactParticles[i] + 1]++;
+        }
+        for (int p = 0; p < particleCount; p++) {
+            particleContactStart[p + 1] += particleContactStart[p];
+        }
+        if (particleContacts.length < particleContactStart[particleCount]) {
+            particleContacts = new int[particleContactStart[particleCount]];
+        }
+
+        // Fill the lists, walking the contacts in order so each list is
+        // sorted. The start of each list is used as its fill pointer and
+        // moved back afterwards.
+        for (int i = 0; i < numContacts; i++) {
+            for (int b = 0; b < 2; b++) {
+                int p = contactParticles[2 * i + b];
+                // Skip the second side of a contact of a particle with itself.
+                if (p < 0 || (b == 1 && p == contactParticles[2 * i])) continue;
+                particleContacts[particleContactStart[p]++] = i;
+            }
+        }
+        for (int p = particleCount; p > 0; p--) {
+            particleContactStart[p] = particleContactStart[p - 1];
+        }
+        particleContactStart[0] = 0;
+    }
+
+    /**
+     * Returns the index of the given particle, giving it one if needed,
+     * or -1 if the particle can't be moved by contacts.
+     */
+    private int indexOf(Particle particle) {
+        if (particle == null || particle.getInverseMass() == 0) return -1;
+        Integer index = particleIndex.get(particle);
+        if (index == null) {
+            index = particleCount++;
+            particleIndex.put(particle, index);
+            if (particles.length < particleCount) {
+                particles = Arrays.copyOf(particles, 2 * particleCount);
+            }
+            particles[index] = particle;
+        }
+        return index;
+    }
+}
@@ -1,10 +1,23 @@
 package br.law123.particle.contact;
 
 import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.particle.Particle;
 
 /**
  * The contact resolution routine for particle contacts. One resolver instance
  * can be shared for the whole simulation.
+ * 
+ * The resolver keeps the contacts in a heap ordered by separating velocity,
+ * and the list of contacts touching each particle. After each resolution only
+ * the contacts of the two particles that moved are updated, so an iteration
+ * costs time in proportion to the number of neighbours rather than to the
+ * number of contacts.
+ * 
+ * The resolver can also work in Jacobi mode, where every contact is corrected
+ * at once from the same state and the corrections are averaged per particle.
+ * This needs more iterations, but each iteration can be split between the
+ * threads of a worker pool.
  */
 public class ParticleContactResolver {
 
@@ -19,6 +32,59 @@ public class ParticleContactResolver {
      */
     private int iterationsUsed;
 
+    /**
+     * Holds the relative improvement of the worst contact below which
+     * the resolver stops early, or zero to never stop early.
+     */
+    private double convergenceTolerance;
+
+    /**
+     * Holds the contacts touching each particle.
+     */
+    private final ParticleContactAdjacency adjacency = new ParticleContactAdjacency();
+
+    /**
+     * Holds the heap of contact indices, the position of each contact in
+     * the heap, and the key of each contact.
+     */
+    private int[] heap = new int[0];
+
+    private int[] heapPosition = new int[0];
+
+    private double[] key = new double[0];
+
+    private int heapSize;
+
+    /**
+     * Holds, for each contact, the last iteration stamp it was updated
+     * in, so contacts touching both moved particles are updated once.
+     */
+    private int[] visited = new int[0];
+
+    private int stamp;
+
+    /**
+     * True if contacts are resolved with averaged corrections.
+     */
+    private boolean jacobi;
+
+    /**
+     * Holds the number of iterations allowed in Jacobi mode. Each of
+     * these corrects every contact.
+     */
+    private int jacobiIterations = 16;
+
+    /**
+     * Holds the worker threads used in Jacobi mode, or null to use the
+     * calling thread.
+     */
+    private WorkerPool workerPool;
+
+    /**
+     * Holds the solver used in Jacobi mode, created when first needed.
+     */
+    private ParticleJacobiSolver jacobiSolver;
+
     /**
      * Creates a new contact resolver.
      */
@@ -33,6 +99,74 @@ public class ParticleContactResolver {
         this.iterations = iterations;
     }
 
+    /**
+     * Returns the number of iterations used in the last call to
+     * resolveContacts.
+     */
+    public int getIterationsUsed() {
+        return iterationsUsed;
+    }
+
+    /**
+     * Sets the relative improvement below which the resolver stops
+     * early. Every time the resolver has done as many iterations as
+     * there are contacts, the worst contact is compared with the worst
+     * contact at the last check, and if it has improved by less than
+     * this fraction the contacts are considered resolved. Zero, the
+     * default, disables the check.
+     */
+    public void setConvergenceTolerance(double convergenceTolerance) {
+        this.convergenceTolerance = convergenceTolerance;
+    }
+
+    /**
+     * Gets the relative improvement below which the resolver stops early.
+     */
+    public double getConvergenceTolerance() {
+        return convergenceTolerance;
+    }
+
+    /**
+     * Sets whether contacts are resolved with averaged corrections that
+     * can be computed in parallel, rather than worst first.
+     */
+    public void setJacobi(boolean jacobi) {
+        this.jacobi = jacobi;
+    }
+
+    /**
+     * Returns true if contacts are resolved with averaged corrections.
+     */
+    public boolean isJacobi() {
+        return jacobi;
+    }
+
+    /**
+     * Sets the number of iterations allowed in Jacobi mode. Each
+     * iteration corrects every contact, so this is much smaller than the
+     * number of iterations of the worst first mode.
+     */
+    public void setJacobiIterations(int jacobiIterations) {
+        this.jacobiIterations = jacobiIterations;
+    }
+
+    public int getJacobiIterations() {
+        return jacobiIterations;
+    }
+
+    /**
+     * Sets the worker threads used in Jacobi mode, or null to resolve
+     * on the calling thread. The result is the same for any number of
+     * threads.
+     */
+    public void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
     /**
      * Resolves a set of particle contacts for both penetration and velocity.
      * 
@@ -63,45 +197,163 @@ public class ParticleContactResolver {
      *            compensate for forces applied.
      */
     public void resolveContacts(ParticleContact[] contactArray, int numContacts, double duration) {
-        int i;
+        double windowResidual = 0;
 
         iterationsUsed = 0;
+        if (numContacts <= 0) return;
+
+        adjacency.build(contactArray, numContacts);
+        if (jacobi) {
+            if (jacobiSolver == null) jacobiSolver = new ParticleJacobiSolver(adjacency);
+            iterationsUsed = jacobiSolver.resolve(contactArray, numContacts, duration, jacobiIterations, convergenceTolerance, workerPool);
+            return;
+        }
+        buildHeap(contactArray, numContacts);
+
         while (iterationsUsed < iterations) {
             // Find the contact with the largest closing velocity;
-            double max = Double.MAX_VALUE;
-            int maxIndex = numContacts;
-            for (i = 0; i < numContacts; i++) {
-                double sepVel = contactArray[i].calculateSeparatingVelocity();
-                if (sepVel < max && (sepVel < 0 || contactArray[i].getPenetration() > 0)) {
-                    max = sepVel;
-                    maxIndex = i;
-                }
-            }
+            int maxIndex = heap[0];
+            double max = key[maxIndex];
 
             // Do we have anything worth resolving?
-            if (maxIndex == numContacts) break;
+            if (max == Double.POSITIVE_INFINITY) break;
+
+            // Stop if the worst contact has hardly improved since the
+            // last check.
+            if (convergenceTolerance > 0 && iterationsUsed % numContacts == 0) {
+                double residual = Math.max(-max, contactArray[maxIndex].getPenetration());
+                if (iterationsUsed > 0 && windowResidual - residual < convergenceTolerance * windowResidual) break;
+                windowResidual = residual;
+            }
 
             // Resolve this contact
-            contactArray[maxIndex].resolve(duration);
-
-            // Update the interpenetrations for all particles
-            Vector3[] move = contactArray[maxIndex].getParticleMovement();
-            for (i = 0; i < numContacts; i++) {
-                if (contactArray[i].getParticle()[0] == contactArray[maxIndex].getParticle()[0]) {
-                    contactArray[i].setPenetration(contactArray[i].getPenetration() - move[0].mult(contactArray[i].getContactNormal()));
-                } else if (contactArray[i].getParticle()[0] == contactArray[maxIndex].getParticle()[1]) {
-                    contactArray[i].setPenetration(contactArray[i].getPenetration() - move[1].mult(contactArray[i].getContactNormal()));
-                }
-                if (contactArray[i].getParticle()[1] != null) {
-                    if (contactArray[i].getParticle()[1] == contactArray[maxIndex].getParticle()[0]) {
-                        contactArray[i].setPenetration(contactArray[i].getPenetration() + move[0].mult(contactArray[i].getContactNormal()));
-                    } else if (contactArray[i].getParticle()[1] == contactArray[maxIndex].getParticle()[1]) {
-                        contactArray[i].setPenetration(contactArray[i].getPenetration() + move[1].mult(contactArray[i].getContactNormal()));
-                    }
+            ParticleContact resolved = contactArray[maxIndex];
+            resolved.resolve(duration);
+
+            // Update the interpenetrations and separating velocities of
+            // the contacts of the particles that moved, visiting each
+            // contact once.
+            stamp++;
+            for (int b = 0; b < 2; b++) {
+                int particle = adjacency.contactParticles[2 * maxIndex + b];
+                if (particle < 0) continue;
+                for (int k = adjacency.particleContactStart[particle]; k < adjacency.particleContactStart[particle + 1]; k++) {
+                    int i = adjacency.particleContacts[k];
+                    if (visited[i] == stamp) continue;
+                    visited[i] = stamp;
+                    updatePenetration(contactArray[i], resolved);
+                    updateKey(i, contactArray[i]);
                 }
             }
 
             iterationsUsed++;
         }
     }
+
+    /**
+     * Updates the penetration of the given contact for the movement of
+     * the particles of the contact that was just resolved.
+     */
+    private void updatePenetration(ParticleContact contact, ParticleContact resolved) {
+        Particle[] particle = contact.getParticle();
+        Particle[] moved = resolved.getParticle();
+        Vector3[] move = resolved.getParticleMovement();
+        Vector3 normal = contact.getContactNormal();
+        double penetration = contact.getPenetration();
+        if (particle[0] == moved[0]) {
+            penetration -= move[0].mult(normal);
+        } else if (particle[0] == moved[1]) {
+            penetration -= move[1].mult(normal);
+        }
+        if (particle[1] != null) {
+            if (particle[1] == moved[0]) {
+                penetration += move[0].mult(normal);
+            } else if (particle[1] == moved[1]) {
+                penetration += move[1].mult(normal);
+            }
+        }
+        contact.setPenetration(penetration);
+    }
+
+    /**
+     * Returns the key of the given contact in the heap: its separating
+     * velocity if it needs resolving, or infinity if it doesn't.
+     */
+    private static double keyOf(ParticleContact contact) {
+        double sepVel = contact.calculateSeparatingVelocity();
+        return (sepVel < 0 || contact.getPenetration() > 0) ? sepVel : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @name Contact Heap
+     *
+     *       The contacts are kept in a binary heap ordered by their key,
+     *       with ties going to the lower contact index, so the top of the
+     *       heap is always the contact a full scan would pick.
+     */
+    /* @{ */
+
+    private void buildHeap(ParticleContact[] contactArray, int numContacts) {
+        if (heap.length < numContacts) {
+            heap = new int[numContacts];
+            heapPosition = new int[numContacts];
+            key = new double[numContacts];
+            visited = new int[numContacts];
+            stamp = 0;
+        }
+        heapSize = numContacts;
+        for (int i = 0; i < numContacts; i++) {
+            key[i] = keyOf(contactArray[i]);
+            heap[i] = i;
+            heapPosition[i] = i;
+        }
+        for (int i = numContacts / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    private void updateKey(int contact, ParticleContact c) {
+        double old = key[contact];
+        key[contact] = keyOf(c);
+        if (key[contact] < old) {
+            siftUp(heapPosition[contact]);
+        } else if (key[contact] > old) {
+            siftDown(heapPosition[contact]);
+        }
+    }
+
+    private boolean before(int a, int b) {
+        return key[a] < key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUp(int pos) {
+        int contact = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) >> 1;
+            if (!before(contact, heap[parent])) break;
+            place(heap[parent], pos);
+            pos = parent;
+        }
+        place(contact, pos);
+    }
+
+    private void siftDown(int pos) {
+        int contact = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heapSize) break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) child++;
+            if (!before(heap[child], contact)) break;
+            place(heap[child], pos);
+            pos = child;
+        }
+        place(contact, pos);
+    }
+
+    private void place(int contact, int pos) {
+        heap[pos] = contact;
+        heapPosition[contact] = pos;
+    }
+
+    /* @} */
 }
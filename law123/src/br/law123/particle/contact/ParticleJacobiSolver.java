@@ -0,0 +1,342 @@
+package br.law123.particle.contact;
+
+import java.util.Arrays;
+
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.particle.Particle;
+
+/**
+ * Resolves a set of particle contacts with averaged (Jacobi) corrections,
+ * so that the work of each iteration can be split between threads.
+ *
+ * Each iteration works in two passes. First every contact works out,
+ * from the same copy of the particles' positions and velocities, the
+ * impulse and the movement it would apply on its own. Then every
+ * particle adds up the corrections of its contacts and applies their
+ * average. No contact sees another's correction half way through an
+ * iteration, and no two threads write the same particle, so both passes
+ * run in parallel, and the result doesn't depend on the number of
+ * threads.
+ *
+ * Averaging makes each iteration weaker than a pass of the sequential
+ * resolver, so more iterations are needed, but each of them can use
+ * every core. Rods and cables generate ordinary contacts, so they are
+ * resolved in the same way.
+ */
+class ParticleJacobiSolver {
+
+    /**
+     * Holds the moving particles and the contacts touching them.
+     */
+    private final ParticleContactAdjacency adjacency;
+
+    /**
+     * Holds, for each moving particle, the position at the start of
+     * the resolution, the current position and velocity, three values
+     * per particle, and the inverse mass.
+     */
+    private double[] startPosition = new double[0];
+
+    private double[] position = new double[0];
+
+    private double[] velocity = new double[0];
+
+    private double[] inverseMass = new double[0];
+
+    /**
+     * Holds, for each contact, the contact normal (three values per
+     * contact), the penetration at the start of the resolution, the
+     * total inverse mass, the separating velocity it should end with,
+     * and the part of the separating velocity coming from particles that
+     * can't move.
+     */
+    private double[] normal = new double[0];
+
+    private double[] startPenetration = new double[0];
+
+    private double[] totalInverseMass = new double[0];
+
+    private double[] targetVelocity = new double[0];
+
+    private double[] fixedVelocity = new double[0];
+
+    /**
+     * Holds, for each contact, the impulse and the movement per unit of
+     * inverse mass it asks for in the current iteration.
+     */
+    private double[] impulse = new double[0];
+
+    private double[] move = new double[0];
+
+    /**
+     * Holds the worst residual found by each worker in the current
+     * iteration.
+     */
+    private double[] workerResidual = new double[1];
+
+    private ParticleContact[] contacts;
+
+    private int numContacts;
+
+    private final WorkerPool.RangeTask loadTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int p = from; p < to; p++) {
+                Particle particle = adjacency.particles[p];
+                store(position, p, particle.getPosition());
+                store(velocity, p, particle.getVelocity());
+                store(startPosition, p, particle.getPosition());
+                inverseMass[p] = particle.getInverseMass();
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask contactTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double residual = 0;
+            for (int i = from; i < to; i++) {
+                impulse[i] = 0;
+                move[i] = 0;
+                if (totalInverseMass[i] <= 0) continue;
+
+                double sepVel = separatingVelocity(i);
+                if (sepVel < targetVelocity[i]) {
+                    impulse[i] = (targetVelocity[i] - sepVel) / totalInverseMass[i];
+                    residual = Math.max(residual, targetVelocity[i] - sepVel);
+                }
+                double penetration = penetration(i);
+                if (penetration > 0) {
+                    move[i] = penetration / totalInverseMass[i];
+                    residual = Math.max(residual, penetration);
+                }
+            }
+            workerResidual[worker] = Math.max(workerResidual[worker], residual);
+        }
+    };
+
+    private final WorkerPool.RangeTask particleTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            int[] contactParticles = adjacency.contactParticles;
+            for (int p = from; p < to; p++) {
+                double vx = 0, vy = 0, vz = 0, px = 0, py = 0, pz = 0;
+                int impulses = 0, moves = 0;
+                for (int k = adjacency.particleContactStart[p]; k < adjacency.particleContactStart[p + 1]; k++) {
+                    int i = adjacency.particleContacts[k];
+                    double side = contactParticles[2 * i] == p ? 1 : -1;
+                    if (impulse[i] != 0) {
+                        double scale = side * impulse[i];
+                        vx += normal[3 * i] * scale;
+                        vy += normal[3 * i + 1] * scale;
+                        vz += normal[3 * i + 2] * scale;
+                        impulses++;
+                    }
+                    if (move[i] != 0) {
+                        double scale = side * move[i];
+                        px += normal[3 * i] * scale;
+                        py += normal[3 * i + 1] * scale;
+                        pz += normal[3 * i + 2] * scale;
+                        moves++;
+                    }
+                }
+                if (impulses > 0) {
+                    double scale = inverseMass[p] / impulses;
+                    velocity[3 * p] += vx * scale;
+                    velocity[3 * p + 1] += vy * scale;
+                    velocity[3 * p + 2] += vz * scale;
+                }
+                if (moves > 0) {
+                    double scale = inverseMass[p] / moves;
+                    position[3 * p] += px * scale;
+                    position[3 * p + 1] += py * scale;
+                    position[3 * p + 2] += pz * scale;
+                }
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask saveTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int p = from; p < to; p++) {
+                Particle particle = adjacency.particles[p];
+                particle.setPosition(position[3 * p], position[3 * p + 1], position[3 * p + 2]);
+                particle.setVelocity(velocity[3 * p], velocity[3 * p + 1], velocity[3 * p + 2]);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask penetrationTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int i = from; i < to; i++) {
+                contacts[i].setPenetration(penetration(i));
+            }
+        }
+    };
+
+    ParticleJacobiSolver(ParticleContactAdjacency adjacency) {
+        this.adjacency = adjacency;
+    }
+
+    /**
+     * Resolves the given contacts, whose adjacency has already been
+     * built, with at most the given number of iterations. Returns the
+     * number of iterations used.
+     */
+    int resolve(ParticleContact[] contacts, int numContacts, double duration, int iterations, double convergenceTolerance, WorkerPool pool) {
+        this.contacts = contacts;
+        this.numContacts = numContacts;
+        int particleCount = adjacency.particleCount;
+        reserve(particleCount, numContacts, pool == null ? 1 : pool.getThreadCount());
+
+        run(pool, particleCount, 256, loadTask);
+        prepare(duration);
+
+        int used = 0;
+        double lastResidual = 0;
+        while (used < iterations) {
+            Arrays.fill(workerResidual, 0);
+            run(pool, numContacts, 256, contactTask);
+            double residual = 0;
+            for (double r : workerResidual) {
+                residual = Math.max(residual, r);
+            }
+
+            // Do we have anything worth resolving?
+            if (residual == 0) break;
+
+            // Stop if the worst contact has hardly improved.
+            if (convergenceTolerance > 0 && used > 0 && lastResidual - residual < convergenceTolerance * lastResidual) break;
+            lastResidual = residual;
+
+            run(pool, particleCount, 256, particleTask);
+            used++;
+        }
+
+        run(pool, particleCount, 256, saveTask);
+        run(pool, numContacts, 256, penetrationTask);
+        this.contacts = null;
+        return used;
+    }
+
+    /**
+     * Reads the contacts, working out the velocity each should end with
+     * in the same way as the sequential resolver. Particles that can't
+     * move aren't copied, so their part of the separating velocity is
+     * worked out here once.
+     */
+    private void prepare(double duration) {
+        int[] contactParticles = adjacency.contactParticles;
+        for (int i = 0; i < numContacts; i++) {
+            ParticleContact contact = contacts[i];
+            Particle[] particle = contact.getParticle();
+            Vector3 n = contact.getContactNormal();
+            normal[3 * i] = n.getX();
+            normal[3 * i + 1] = n.getY();
+            normal[3 * i + 2] = n.getZ();
+            startPenetration[i] = contact.getPenetration();
+
+            double total = particle[0].getInverseMass();
+            double fixed = 0;
+            if (contactParticles[2 * i] < 0) fixed += particle[0].getVelocity().mult(n);
+            if (particle[1] != null) {
+                total += particle[1].getInverseMass();
+                if (contactParticles[2 * i + 1] < 0) fixed -= particle[1].getVelocity().mult(n);
+            }
+            totalInverseMass[i] = total;
+            fixedVelocity[i] = fixed;
+
+            // Closing contacts bounce, and any other contact is only
+            // stopped from closing.
+            double sepVel = separatingVelocity(i);
+            double target = 0;
+            if (sepVel < 0) {
+                target = -sepVel * contact.getRestitution();
+                double accCausedSepVelocity = particle[0].getAcceleration().mult(n);
+                if (particle[1] != null) {
+                    accCausedSepVelocity -= particle[1].getAcceleration().mult(n);
+                }
+                accCausedSepVelocity *= duration;
+                if (accCausedSepVelocity < 0) {
+                    target = Math.max(0, target + contact.getRestitution() * accCausedSepVelocity);
+                }
+            }
+            targetVelocity[i] = target;
+        }
+    }
+
+    private double separatingVelocity(int i) {
+        double x = 0, y = 0, z = 0;
+        int a = adjacency.contactParticles[2 * i];
+        int b = adjacency.contactParticles[2 * i + 1];
+        if (a >= 0) {
+            x += velocity[3 * a];
+            y += velocity[3 * a + 1];
+            z += velocity[3 * a + 2];
+        }
+        if (b >= 0) {
+            x -= velocity[3 * b];
+            y -= velocity[3 * b + 1];
+            z -= velocity[3 * b + 2];
+        }
+        return fixedVelocity[i] + x * normal[3 * i] + y * normal[3 * i + 1] + z * normal[3 * i + 2];
+    }
+
+    private double penetration(int i) {
+        double x = 0, y = 0, z = 0;
+        int a = adjacency.contactParticles[2 * i];
+        int b = adjacency.contactParticles[2 * i + 1];
+        if (a >= 0) {
+            x += position[3 * a] - startPosition[3 * a];
+            y += position[3 * a + 1] - startPosition[3 * a + 1];
+            z += position[3 * a + 2] - startPosition[3 * a + 2];
+        }
+        if (b >= 0) {
+            x -= position[3 * b] - startPosition[3 * b];
+            y -= position[3 * b + 1] - startPosition[3 * b + 1];
+            z -= position[3 * b + 2] - startPosition[3 * b + 2];
+        }
+        return startPenetration[i] - (x * normal[3 * i] + y * normal[3 * i + 1] + z * normal[3 * i + 2]);
+    }
+
+    private void reserve(int particleCount, int numContacts, int threads) {
+        if (inverseMass.length < particleCount) {
+            startPosition = new double[3 * particleCount];
+            position = new double[3 * particleCount];
+            velocity = new double[3 * particleCount];
+            inverseMass = new double[particleCount];
+        }
+        if (impulse.length < numContacts) {
+            normal = new double[3 * numContacts];
+            startPenetration = new double[numContacts];
+            totalInverseMass = new double[numContacts];
+            targetVelocity = new double[numContacts];
+            fixedVelocity = new double[numContacts];
+            impulse = new double[numContacts];
+            move = new double[numContacts];
+        }
+        if (workerResidual.length != threads) workerResidual = new double[threads];
+    }
+
+    private static void store(double[] values, int index, Vector3 v) {
+        values[3 * index] = v.getX();
+        values[3 * index + 1] = v.getY();
+        values[3 * index + 2] = v.getZ();
+    }
+
+    private static void run(WorkerPool pool, int count, int minChunk, WorkerPool.RangeTask task) {
+        if (pool == null) {
+            if (count > 0) task.run(0, 0, count);
+        } else {
+            pool.run(count, minChunk, task);
+        }
+    }
+}
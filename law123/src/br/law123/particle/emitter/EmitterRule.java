@@ -0,0 +1,165 @@
+package br.law123.particle.emitter;
+
+import java.util.Arrays;
+
+import br.law123.core.Vector3;
+import br.law123.particle.Particle;
+import br.law123.random.Random;
+
+/**
+ * Describes a kind of particle an emitter spawns: how long it lives, how
+ * it starts moving, and the payloads it turns into when its life is
+ * over. A payload is another rule and a number of particles to spawn
+ * from it, starting where the expired particle was and with its
+ * velocity, so firework-style chains of effects are just rules whose
+ * payloads point at each other.
+ *
+ * Subclasses can carry extra data for rendering, such as a colour, and
+ * can override create to set up particles in their own way.
+ */
+public class EmitterRule {
+
+    /** The shortest and longest life of a particle. */
+    private double minLifetime;
+
+    private double maxLifetime;
+
+    /** The range of the starting velocity, relative to the parent. */
+    private final Vector3 minVelocity = new Vector3();
+
+    private final Vector3 maxVelocity = new Vector3();
+
+    /** Where particles without a parent start. */
+    private final Vector3 origin = new Vector3();
+
+    /** The constant acceleration of the particles. */
+    private final Vector3 acceleration = new Vector3();
+
+    private double mass = 1;
+
+    private double damping = 1;
+
+    /** The rules and sizes of the payloads. */
+    private EmitterRule[] payloadRules = new EmitterRule[0];
+
+    private int[] payloadSizes = new int[0];
+
+    /**
+     * Sets how long particles of this rule live, chosen at random
+     * between the two.
+     */
+    public void setLifetime(double minLifetime, double maxLifetime) {
+        this.minLifetime = minLifetime;
+        this.maxLifetime = maxLifetime;
+    }
+
+    public double getMinLifetime() {
+        return minLifetime;
+    }
+
+    public double getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    /**
+     * Sets the range of the starting velocity. Particles spawned from a
+     * parent add the parent's velocity to it.
+     */
+    public void setVelocity(Vector3 minVelocity, Vector3 maxVelocity) {
+        this.minVelocity.set(minVelocity);
+        this.maxVelocity.set(maxVelocity);
+    }
+
+    public Vector3 getMinVelocity() {
+        return minVelocity;
+    }
+
+    public Vector3 getMaxVelocity() {
+        return maxVelocity;
+    }
+
+    /**
+     * Sets where particles spawned without a parent start.
+     */
+    public void setOrigin(Vector3 origin) {
+        this.origin.set(origin);
+    }
+
+    public Vector3 getOrigin() {
+        return origin;
+    }
+
+    public void setAcceleration(Vector3 acceleration) {
+        this.acceleration.set(acceleration);
+    }
+
+    public Vector3 getAcceleration() {
+        return acceleration;
+    }
+
+    public void setMass(double mass) {
+        this.mass = mass;
+    }
+
+    public double getMass() {
+        return mass;
+    }
+
+    public void setDamping(double damping) {
+        this.damping = damping;
+    }
+
+    public double getDamping() {
+        return damping;
+    }
+
+    /**
+     * Adds a payload: when a particle of this rule expires, the given
+     * number of particles of the given rule are spawned from it.
+     */
+    public void addPayload(EmitterRule rule, int size) {
+        int n = payloadRules.length;
+        payloadRules = Arrays.copyOf(payloadRules, n + 1);
+        payloadSizes = Arrays.copyOf(payloadSizes, n + 1);
+        payloadRules[n] = rule;
+        payloadSizes[n] = size;
+    }
+
+    public int getPayloadCount() {
+        return payloadRules.length;
+    }
+
+    public EmitterRule getPayloadRule(int index) {
+        return payloadRules[index];
+    }
+
+    public int getPayloadSize(int index) {
+        return payloadSizes[index];
+    }
+
+    /**
+     * Sets up the given particle as a new particle of this rule, spawned
+     * from the given parent, or from the origin if the parent is null.
+     * Returns how long the particle should live.
+     */
+    public double create(Particle particle, Particle parent, Random random) {
+        double vx = random.randomReal((float) minVelocity.getX(), (float) maxVelocity.getX());
+        double vy = random.randomReal((float) minVelocity.getY(), (float) maxVelocity.getY());
+        double vz = random.randomReal((float) minVelocity.getZ(), (float) maxVelocity.getZ());
+        if (parent != null) {
+            // The position and velocity are based on the parent.
+            Vector3 p = parent.getPosition();
+            Vector3 v = parent.getVelocity();
+            particle.setPosition(p.getX(), p.getY(), p.getZ());
+            particle.setVelocity(vx + v.getX(), vy + v.getY(), vz + v.getZ());
+        } else {
+            particle.setPosition(origin.getX(), origin.getY(), origin.getZ());
+            particle.setVelocity(vx, vy, vz);
+        }
+        particle.setAcceleration(acceleration.getX(), acceleration.getY(), acceleration.getZ());
+        particle.setMass(mass);
+        particle.setDamping(damping);
+        particle.clearAccumulator();
+        return random.randomReal((float) minLifetime, (float) maxLifetime);
+    }
+}
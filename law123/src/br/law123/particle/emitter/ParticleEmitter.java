@@ -0,0 +1,306 @@
+package br.law123.particle.emitter;
+
+import br.law123.particle.Particle;
+import br.law123.particle.ParticleSystem;
+import br.law123.random.Random;
+
+/**
+ * Spawns short-lived particles from a fixed pool, such as sparks, smoke
+ * or fireworks, and retires them when their life is over.
+ *
+ * The particles in use are kept packed at the start of a ParticleSystem,
+ * so updating them is one pass over its arrays, and killing a particle
+ * moves the last particle into its place. Since particles move, each is
+ * known by a handle that doesn't change while it lives; free handles
+ * are kept on a stack. Spawning and killing a particle take constant
+ * time, and nothing is allocated after the emitter is built.
+ *
+ * Particles aren't checked one by one to see whether they have expired.
+ * Instead the emitter keeps a timing wheel: time is counted in ticks,
+ * and each particle is put into the wheel slot of the tick it expires
+ * on. Each tick only the particles in the wheel slot for that tick are
+ * looked at. Lives longer than a turn of the wheel stay in their slot
+ * until the wheel comes round to their tick.
+ *
+ * When a particle expires, the payloads of its rule are spawned from it
+ * before it is killed. If the pool is full, new particles are dropped.
+ */
+public class ParticleEmitter {
+
+    /**
+     * Holds the state of the particles. The particles in use have the
+     * handles from 0 to aliveCount in the system, which aren't the
+     * emitter's handles.
+     */
+    private final ParticleSystem system;
+
+    /**
+     * Holds a view onto each place of the system.
+     */
+    private final Particle[] places;
+
+    private int aliveCount;
+
+    /**
+     * Holds the handle of the particle in each place, and the place of
+     * each handle, or -1 for free handles.
+     */
+    private final int[] placeHandle;
+
+    private final int[] handlePlace;
+
+    /**
+     * Holds the free handles, as a stack.
+     */
+    private final int[] free;
+
+    private int freeCount;
+
+    /**
+     * Holds the rule each handle in use was spawned with.
+     */
+    private final EmitterRule[] rules;
+
+    /**
+     * Holds the length of a tick, the number of ticks that have passed,
+     * and the time passed since the last tick.
+     */
+    private final double tickLength;
+
+    private long tick;
+
+    private double sinceTick;
+
+    /**
+     * Holds the wheel: for each wheel slot, the first handle in it, and
+     * for each handle, the tick it expires on and its neighbours in its
+     * wheel slot. The number of wheel slots is a power of two.
+     */
+    private final int[] wheelHead;
+
+    private final int wheelMask;
+
+    private final long[] expiry;
+
+    private final int[] wheelNext;
+
+    private final int[] wheelPrevious;
+
+    private Random random = new Random();
+
+    /**
+     * Creates an emitter of the given capacity, with ticks of a sixtieth
+     * of a second and a wheel that turns every four seconds or so.
+     */
+    public ParticleEmitter(int capacity) {
+        this(capacity, 1.0 / 60, 256);
+    }
+
+    /**
+     * Creates an emitter of the given capacity, counting lives in ticks
+     * of the given length, with a wheel of the given number of slots,
+     * which is rounded up to a power of two.
+     */
+    public ParticleEmitter(int capacity, double tickLength, int wheelSize) {
+        if (!(tickLength > 0)) throw new IllegalArgumentException("tickLength <= 0");
+        this.tickLength = tickLength;
+        system = new ParticleSystem(capacity);
+        places = new Particle[capacity];
+        placeHandle = new int[capacity];
+        handlePlace = new int[capacity];
+        free = new int[capacity];
+        rules = new EmitterRule[capacity];
+        expiry = new long[capacity];
+        wheelNext = new int[capacity];
+        wheelPrevious = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            places[i] = system.createParticle();
+            handlePlace[i] = -1;
+
+            // Hand out the lowest handles first.
+            free[i] = capacity - 1 - i;
+        }
+        freeCount = capacity;
+
+        int size = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+        wheelHead = new int[size];
+        wheelMask = size - 1;
+        for (int i = 0; i < size; i++) {
+            wheelHead[i] = -1;
+        }
+    }
+
+    public void setRandom(Random random) {
+        this.random = random;
+    }
+
+    public Random getRandom() {
+        return random;
+    }
+
+    public int getCapacity() {
+        return places.length;
+    }
+
+    /**
+     * Returns the number of particles in use.
+     */
+    public int getAliveCount() {
+        return aliveCount;
+    }
+
+    /**
+     * Returns the handle of the given particle in use, from 0 to
+     * getAliveCount(). The order changes as particles are killed.
+     */
+    public int getAlive(int index) {
+        return placeHandle[index];
+    }
+
+    public boolean isAlive(int handle) {
+        return handlePlace[handle] >= 0;
+    }
+
+    /**
+     * Returns the particle with the given handle. The object returned
+     * stands for a place in the pool rather than for the particle, so it
+     * should not be kept once any particle is killed.
+     */
+    public Particle getParticle(int handle) {
+        return places[handlePlace[handle]];
+    }
+
+    /**
+     * Returns the rule the particle with the given handle was spawned
+     * with.
+     */
+    public EmitterRule getRule(int handle) {
+        return rules[handle];
+    }
+
+    /**
+     * Returns the system holding the particles. The particles in use
+     * are the ones with handles from 0 to getAliveCount(), in the same
+     * order as getAlive, so they can be drawn straight from its arrays.
+     */
+    public ParticleSystem getParticleSystem() {
+        return system;
+    }
+
+    /**
+     * Spawns a particle of the given rule from the given parent, or from
+     * the rule's origin if the parent is null. Returns its handle, or -1
+     * if the pool is full.
+     */
+    public int spawn(EmitterRule rule, Particle parent) {
+        if (freeCount == 0) return -1;
+        int handle = free[--freeCount];
+        int place = aliveCount++;
+        handlePlace[handle] = place;
+        placeHandle[place] = handle;
+        rules[handle] = rule;
+
+        double lifetime = rule.create(places[place], parent, random);
+        long ticks = Math.max(1, (long) Math.ceil((lifetime + sinceTick) / tickLength));
+        schedule(handle, tick + ticks);
+        return handle;
+    }
+
+    /**
+     * Spawns the given number of particles of the given rule from the
+     * given parent. Stops when the pool is full.
+     */
+    public void spawn(EmitterRule rule, int count, Particle parent) {
+        for (int i = 0; i < count; i++) {
+            if (spawn(rule, parent) < 0) return;
+        }
+    }
+
+    /**
+     * Ends the life of the particle with the given handle now, spawning
+     * its payloads.
+     */
+    public void expire(int handle) {
+        // New particles go after the ones in use, so the parent stays
+        // where it is while its payloads are spawned.
+        EmitterRule rule = rules[handle];
+        Particle particle = getParticle(handle);
+        for (int i = 0; i < rule.getPayloadCount(); i++) {
+            spawn(rule.getPayloadRule(i), rule.getPayloadSize(i), particle);
+        }
+        kill(handle);
+    }
+
+    /**
+     * Frees the handle of the given particle, without spawning its
+     * payloads. The last particle in use takes its place.
+     */
+    public void kill(int handle) {
+        int place = handlePlace[handle];
+        if (place < 0) return;
+        unschedule(handle);
+
+        int last = --aliveCount;
+        if (place != last) {
+            system.copy(last, place);
+            int moved = placeHandle[last];
+            placeHandle[place] = moved;
+            handlePlace[moved] = place;
+        }
+        system.setInverseMass(last, 0);
+        handlePlace[handle] = -1;
+        rules[handle] = null;
+        free[freeCount++] = handle;
+    }
+
+    /**
+     * Moves the particles in use forward by the given duration, then
+     * expires the particles whose life is over.
+     */
+    public void update(double duration) {
+        if (aliveCount > 0) system.integrate(0, aliveCount, duration);
+
+        sinceTick += duration;
+        while (sinceTick >= tickLength) {
+            sinceTick -= tickLength;
+            tick++;
+            expireTick(tick);
+        }
+    }
+
+    /**
+     * Expires the particles of the wheel slot for the given tick that
+     * are due on it.
+     */
+    private void expireTick(long now) {
+        int handle = wheelHead[(int) (now & wheelMask)];
+        while (handle >= 0) {
+            // Payloads are spawned into later ticks, and go to the head
+            // of their wheel slot, so they never end up after this point
+            // in the list.
+            int next = wheelNext[handle];
+            if (expiry[handle] <= now) expire(handle);
+            handle = next;
+        }
+    }
+
+    private void schedule(int handle, long when) {
+        int w = (int) (when & wheelMask);
+        expiry[handle] = when;
+        wheelPrevious[handle] = -1;
+        wheelNext[handle] = wheelHead[w];
+        if (wheelHead[w] >= 0) wheelPrevious[wheelHead[w]] = handle;
+        wheelHead[w] = handle;
+    }
+
+    private void unschedule(int handle) {
+        int next = wheelNext[handle];
+        int previous = wheelPrevious[handle];
+        if (previous >= 0) {
+            wheelNext[previous] = next;
+        } else {
+            wheelHead[(int) (expiry[handle] & wheelMask)] = next;
+        }
+        if (next >= 0) wheelPrevious[next] = previous;
+    }
+}
@@ -0,0 +1,326 @@
+package br.law123.particle.fluid;
+
+import java.util.Arrays;
+
+import br.law123.collide.HashGrid;
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.particle.Particle;
+import br.law123.particle.world.ParticleForceStage;
+
+/**
+ * Makes a group of particles behave like a fluid, using smoothed
+ * particle hydrodynamics (SPH).
+ *
+ * Each particle stands for a small volume of fluid. Every step, the
+ * density around each particle is worked out from its neighbours within
+ * the smoothing radius; the density gives a pressure, and the particles
+ * are pushed from high to low pressure and dragged towards the velocity
+ * of their neighbours by viscosity. The kernels are the usual ones from
+ * Muller et al.: poly6 for the density, spiky for the pressure and the
+ * viscosity kernel for viscosity.
+ *
+ * The particles keep their own state: the fluid reads their position,
+ * velocity and mass, and adds its forces to their force accumulators,
+ * so gravity, buoyancy and contacts work on them as on any other
+ * particle. Light fluids such as smoke are simply fluids with a low rest
+ * density and some upward force from the force registry.
+ *
+ * Particles that can't move take part with the mass of a fluid particle
+ * at rest, so they can be used to build walls, but aren't pushed.
+ *
+ * Neighbours are found with a HashGrid, and the density and force of
+ * every particle are worked out on their own, so both passes are split
+ * between the threads of the world's worker pool, and the forces don't
+ * depend on the number of threads.
+ */
+public class SphFluid implements ParticleForceStage {
+
+    /**
+     * Holds the particles of the fluid.
+     */
+    private Particle[] particles = new Particle[16];
+
+    private int count;
+
+    /**
+     * Holds the smoothing radius: the distance over which particles
+     * affect each other.
+     */
+    private double smoothingRadius;
+
+    /**
+     * Holds the density the fluid has at rest.
+     */
+    private double restDensity = 1000;
+
+    /**
+     * Holds how much pressure an increase in density gives.
+     */
+    private double stiffness = 3;
+
+    /**
+     * Holds the viscosity of the fluid.
+     */
+    private double viscosity = 3.5;
+
+    /**
+     * Holds, for each particle, the position and velocity (three values
+     * per particle), the mass used for the fluid, the density and the
+     * pressure.
+     */
+    private double[] position = new double[48];
+
+    private double[] velocity = new double[48];
+
+    private double[] mass = new double[16];
+
+    private double[] density = new double[16];
+
+    private double[] pressure = new double[16];
+
+    /**
+     * Holds, for each particle, where its neighbours start in the
+     * neighbour list of the worker that found them, and how many there
+     * are. The pool always gives the same range to the same worker, so
+     * the force pass finds the lists the density pass made.
+     */
+    private int[] neighbourStart = new int[16];
+
+    private int[] neighbourCount = new int[16];
+
+    /**
+     * Holds the neighbour lists of each worker, and a buffer for its
+     * queries.
+     */
+    private int[][] neighbours = new int[1][256];
+
+    private int[][] found = new int[1][64];
+
+    private final HashGrid grid = new HashGrid(1);
+
+    private final WorkerPool.RangeTask loadTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double restMass = restDensity * Math.pow(smoothingRadius / 2, 3);
+            for (int i = from; i < to; i++) {
+                Particle particle = particles[i];
+                Vector3 p = particle.getPosition();
+                position[3 * i] = p.getX();
+                position[3 * i + 1] = p.getY();
+                position[3 * i + 2] = p.getZ();
+                Vector3 v = particle.getVelocity();
+                velocity[3 * i] = v.getX();
+                velocity[3 * i + 1] = v.getY();
+                velocity[3 * i + 2] = v.getZ();
+                mass[i] = particle.getInverseMass() > 0 ? particle.getMass() : restMass;
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask densityTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double h = smoothingRadius;
+            double h2 = h * h;
+            double poly6 = 315 / (64 * Math.PI * Math.pow(h, 9));
+            int used = 0;
+            for (int i = from; i < to; i++) {
+                double x = position[3 * i];
+                double y = position[3 * i + 1];
+                double z = position[3 * i + 2];
+                int n = grid.query(x, y, z, h, found[worker]);
+                if (n > found[worker].length) {
+                    found[worker] = new int[2 * n];
+                    n = grid.query(x, y, z, h, found[worker]);
+                }
+                if (neighbours[worker].length < used + n) {
+                    neighbours[worker] = Arrays.copyOf(neighbours[worker], 2 * (used + n));
+                }
+                int[] list = neighbours[worker];
+                System.arraycopy(found[worker], 0, list, used, n);
+                neighbourStart[i] = used;
+                neighbourCount[i] = n;
+                used += n;
+
+                // The particle itself is among its neighbours.
+                double rho = 0;
+                for (int k = neighbourStart[i]; k < used; k++) {
+                    int j = list[k];
+                    double dx = position[3 * j] - x;
+                    double dy = position[3 * j + 1] - y;
+                    double dz = position[3 * j + 2] - z;
+                    double w = h2 - (dx * dx + dy * dy + dz * dz);
+                    rho += mass[j] * w * w * w;
+                }
+                rho *= poly6;
+                density[i] = rho;
+                pressure[i] = Math.max(0, stiffness * (rho - restDensity));
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask forceTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            double h = smoothingRadius;
+            double gradient = 45 / (Math.PI * Math.pow(h, 6));
+            int[] list = neighbours[worker];
+            for (int i = from; i < to; i++) {
+                Particle particle = particles[i];
+                if (particle.getInverseMass() <= 0) continue;
+
+                double x = position[3 * i];
+                double y = position[3 * i + 1];
+                double z = position[3 * i + 2];
+                double fx = 0, fy = 0, fz = 0;
+                int end = neighbourStart[i] + neighbourCount[i];
+                for (int k = neighbourStart[i]; k < end; k++) {
+                    int j = list[k];
+                    if (j == i) continue;
+                    double dx = x - position[3 * j];
+                    double dy = y - position[3 * j + 1];
+                    double dz = z - position[3 * j + 2];
+                    double r = Math.sqrt(dx * dx + dy * dy + dz * dz);
+                    double q = h - r;
+                    double share = mass[j] / density[j];
+
+                    // Pressure pushes along the line between the
+                    // particles, away from the neighbour.
+                    if (r > 0) {
+                        double push = share * (pressure[i] + pressure[j]) / 2 * q * q / r;
+                        fx += dx * push;
+                        fy += dy * push;
+                        fz += dz * push;
+                    }
+
+                    // Viscosity pulls towards the neighbour's velocity.
+                    double drag = share * viscosity * q;
+                    fx += (velocity[3 * j] - velocity[3 * i]) * drag;
+                    fy += (velocity[3 * j + 1] - velocity[3 * i + 1]) * drag;
+                    fz += (velocity[3 * j + 2] - velocity[3 * i + 2]) * drag;
+                }
+
+                // The sums are forces per unit volume.
+                double scale = gradient * mass[i] / density[i];
+                particle.addForce(fx * scale, fy * scale, fz * scale);
+            }
+        }
+    };
+
+    /**
+     * Creates a fluid whose particles affect each other over the given
+     * smoothing radius. The radius should be about twice the spacing of
+     * the particles at rest.
+     */
+    public SphFluid(double smoothingRadius) {
+        setSmoothingRadius(smoothingRadius);
+    }
+
+    /**
+     * Adds a particle to the fluid.
+     */
+    public void add(Particle particle) {
+        if (count == particles.length) {
+            int capacity = 2 * count;
+            particles = Arrays.copyOf(particles, capacity);
+            position = new double[3 * capacity];
+            velocity = new double[3 * capacity];
+            mass = new double[capacity];
+            density = new double[capacity];
+            pressure = new double[capacity];
+            neighbourStart = new int[capacity];
+            neighbourCount = new int[capacity];
+        }
+        particles[count++] = particle;
+    }
+
+    /**
+     * Removes a particle from the fluid. The last particle takes its
+     * place.
+     */
+    public void remove(Particle particle) {
+        for (int i = 0; i < count; i++) {
+            if (particles[i] != particle) continue;
+            particles[i] = particles[--count];
+            particles[count] = null;
+            return;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Particle getParticle(int index) {
+        return particles[index];
+    }
+
+    /**
+     * Returns the density around the given particle, as worked out in
+     * the last step.
+     */
+    public double getDensity(int index) {
+        return density[index];
+    }
+
+    public void setSmoothingRadius(double smoothingRadius) {
+        if (!(smoothingRadius > 0)) throw new IllegalArgumentException("smoothingRadius <= 0");
+        this.smoothingRadius = smoothingRadius;
+    }
+
+    public double getSmoothingRadius() {
+        return smoothingRadius;
+    }
+
+    public void setRestDensity(double restDensity) {
+        this.restDensity = restDensity;
+    }
+
+    public double getRestDensity() {
+        return restDensity;
+    }
+
+    public void setStiffness(double stiffness) {
+        this.stiffness = stiffness;
+    }
+
+    public double getStiffness() {
+        return stiffness;
+    }
+
+    public void setViscosity(double viscosity) {
+        this.viscosity = viscosity;
+    }
+
+    public double getViscosity() {
+        return viscosity;
+    }
+
+    @Override
+    public void updateForces(double duration, WorkerPool pool) {
+        if (count == 0) return;
+        int threads = pool == null ? 1 : pool.getThreadCount();
+        if (neighbours.length != threads) {
+            neighbours = new int[threads][256];
+            found = new int[threads][64];
+        }
+
+        run(pool, loadTask);
+        grid.setCellSize(smoothingRadius);
+        grid.build(position, count);
+        run(pool, densityTask);
+        run(pool, forceTask);
+    }
+
+    private void run(WorkerPool pool, WorkerPool.RangeTask task) {
+        if (pool == null) {
+            task.run(0, 0, count);
+        } else {
+            pool.run(count, 256, task);
+        }
+    }
+}
@@ -0,0 +1,540 @@
+package br.law123.particle.links;
+
+import java.util.Arrays;
+import java.util.List;
+
+import br.law123.particle.contact.ParticleContactGenerator;
+
+/**
+ * Enforces chains and trees of rods and cables exactly, by solving for
+ * all their constraint forces at once, instead of iterating over the
+ * links one at a time.
+ *
+ * The particles and links form a graph. Where a connected part of the
+ * graph has no loops, as in ropes, chains and the bridges of the demos,
+ * the system of equations for the link forces has the same shape as the
+ * tree, and can be solved in time proportional to its size by
+ * eliminating the leaves first and working back from the root (Baraff,
+ * "Linear-Time Dynamics using Lagrange Multipliers", 1996). Parts of the
+ * graph with loops, such as meshes, fall back to the iterative solver
+ * this class extends.
+ *
+ * Links to an anchor or to a particle that can't move are given a very
+ * small compliance, which keeps the elimination well defined without
+ * letting them stretch noticeably. Cables are only used when they are
+ * taut, and are dropped again if the solution would make them push.
+ * After each substep the velocities are projected too, so rigid links
+ * don't gain stretching velocity.
+ */
+public class ChainLinkSolver extends XpbdLinkSolver {
+
+    /**
+     * Holds the compliance given to links with a single moving
+     * particle.
+     */
+    private static final double PIN_COMPLIANCE = 1e-8;
+
+    /**
+     * Holds the most times the set of taut cables is changed in one
+     * solve.
+     */
+    private static final int MAX_ACTIVE_SET_ROUNDS = 4;
+
+    /**
+     * Holds whether each particle could move when the graph was built.
+     */
+    private boolean[] movable = new boolean[0];
+
+    /**
+     * Holds, for each particle, whether it belongs to a tree.
+     */
+    private boolean[] treeParticle = new boolean[0];
+
+    /**
+     * Holds, for each link, whether it belongs to a part of the graph
+     * without loops, and whether it belongs to one with loops.
+     */
+    private boolean[] treeLink = new boolean[0];
+
+    private boolean[] loopLink = new boolean[0];
+
+    /**
+     * Holds the nodes of the trees in elimination order, leaves first.
+     * Nodes below the number of particles are particles; the others are
+     * links, offset by the number of particles.
+     */
+    private int[] order = new int[0];
+
+    private int orderCount;
+
+    /**
+     * Holds the parent of each node, or -1 for roots, and the sign of
+     * the particle in the link of each particle-link edge to the
+     * parent.
+     */
+    private int[] parent = new int[0];
+
+    private double[] parentSign = new double[0];
+
+    /**
+     * Holds, for each link, the direction of the link (three values per
+     * link), its error, and whether it is used in the current solve.
+     */
+    private double[] direction = new double[0];
+
+    private double[] error = new double[0];
+
+    private boolean[] active = new boolean[0];
+
+    /**
+     * Holds the diagonal blocks during elimination: nine values for each
+     * particle, which end up as the inverse of the block, and one value
+     * for each link.
+     */
+    private double[] particleBlock = new double[0];
+
+    private double[] linkBlock = new double[0];
+
+    /**
+     * Holds the right hand side, and then the solution: three values
+     * for each particle, one for each link.
+     */
+    private double[] particleValue = new double[0];
+
+    private double[] linkValue = new double[0];
+
+    private final double[] u = new double[3];
+
+    public ChainLinkSolver(int substeps) {
+        super(substeps);
+    }
+
+    public ChainLinkSolver(int substeps, double compliance) {
+        super(substeps, compliance);
+    }
+
+    @Override
+    public void startStep(List<ParticleContactGenerator> generators) {
+        super.startStep(generators);
+        for (int p = 0; p < table.particleCount; p++) {
+            if (movable[p] != (table.inverseMass[p] > 0)) {
+                linksChanged();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Splits the link graph into trees and parts with loops, and orders
+     * the trees for elimination.
+     */
+    @Override
+    void linksChanged() {
+        int particles = table.particleCount;
+        int links = table.linkCount;
+        int nodes = particles + links;
+        reserve(particles, links);
+
+        for (int p = 0; p < particles; p++) {
+            movable[p] = table.inverseMass[p] > 0;
+        }
+
+        // Build the edges between links and their moving particles, and
+        // count nodes and edges in each connected part.
+        int[] find = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            find[n] = n;
+        }
+        int[] degree = new int[nodes];
+        for (int i = 0; i < links; i++) {
+            for (int end = 0; end < 2; end++) {
+                int p = end == 0 ? table.linkA[i] : table.linkB[i];
+                if (p < 0 || !movable[p]) continue;
+                degree[p]++;
+                degree[particles + i]++;
+                union(find, p, particles + i);
+            }
+        }
+        int[] nodeCount = new int[nodes];
+        int[] edgeCount = new int[nodes];
+        for (int n = 0; n < nodes; n++) {
+            if (degree[n] == 0) continue;
+            int root = root(find, n);
+            nodeCount[root]++;
+            edgeCount[root] += degree[n];
+        }
+        for (int i = 0; i < links; i++) {
+            int n = particles + i;
+            treeLink[i] = false;
+            loopLink[i] = false;
+            if (degree[n] == 0) continue;
+            int root = root(find, n);
+            // Every edge was counted from both of its ends.
+            if (edgeCount[root] / 2 == nodeCount[root] - 1) {
+                treeLink[i] = true;
+            } else {
+                loopLink[i] = true;
+            }
+        }
+
+        // List the edges of each node.
+        int[] start = new int[nodes + 1];
+        for (int n = 0; n < nodes; n++) {
+            start[n + 1] = start[n] + degree[n];
+        }
+        int[] neighbour = new int[start[nodes]];
+        double[] sign = new double[start[nodes]];
+        int[] fill = Arrays.copyOf(start, nodes);
+        for (int i = 0; i < links; i++) {
+            if (!treeLink[i]) continue;
+            for (int end = 0; end < 2; end++) {
+                int p = end == 0 ? table.linkA[i] : table.linkB[i];
+                if (p < 0 || !movable[p]) continue;
+                double s = end == 0 ? 1 : -1;
+                neighbour[fill[p]] = particles + i;
+                sign[fill[p]++] = s;
+                neighbour[fill[particles + i]] = p;
+                sign[fill[particles + i]++] = s;
+            }
+        }
+
+        // Walk each tree breadth first from a particle, then reverse
+        // the walk so leaves come first.
+        boolean[] seen = new boolean[nodes];
+        orderCount = 0;
+        for (int r = 0; r < particles; r++) {
+            if (seen[r] || fill[r] == start[r]) continue;
+            int first = orderCount;
+            seen[r] = true;
+            parent[r] = -1;
+            order[orderCount++] = r;
+            for (int k = first; k < orderCount; k++) {
+                int n = order[k];
+                for (int e = start[n]; e < fill[n]; e++) {
+                    int m = neighbour[e];
+                    if (seen[m]) continue;
+                    seen[m] = true;
+                    parent[m] = n;
+                    parentSign[m] = sign[e];
+                    order[orderCount++] = m;
+                }
+            }
+        }
+        for (int p = 0; p < particles; p++) {
+            treeParticle[p] = seen[p];
+        }
+        for (int a = 0, b = orderCount - 1; a < b; a++, b--) {
+            int t = order[a];
+            order[a] = order[b];
+            order[b] = t;
+        }
+    }
+
+    @Override
+    void solveLinks(double h) {
+        // Parts with loops use the iterative solver.
+        for (int k = 0; k < getIterations(); k++) {
+            for (int i = 0; i < table.linkCount; i++) {
+                if (loopLink[i]) solveLink(i, h);
+            }
+        }
+        if (orderCount == 0) return;
+
+        double alpha = getCompliance() / (h * h);
+        for (int k = 0; k < Math.max(1, getIterations()); k++) {
+            for (int i = 0; i < table.linkCount; i++) {
+                if (!treeLink[i]) continue;
+                measure(i);
+                active[i] = !table.cable[i] || error[i] > 0;
+            }
+
+            for (int round = 0; round < MAX_ACTIVE_SET_ROUNDS; round++) {
+                for (int i = 0; i < table.linkCount; i++) {
+                    if (treeLink[i]) linkValue[i] = -error[i] - alpha * getLambda(i);
+                }
+                solve(alpha);
+
+                // Drop cables that would push.
+                boolean changed = false;
+                for (int i = 0; i < table.linkCount; i++) {
+                    if (treeLink[i] && active[i] && table.cable[i] && getLambda(i) - linkValue[i] > 0) {
+                        active[i] = false;
+                        changed = true;
+                    }
+                }
+                if (!changed) break;
+            }
+
+            double[] position = table.position;
+            for (int p = 0; p < table.particleCount; p++) {
+                if (!treeParticle[p]) continue;
+                position[3 * p] += particleValue[3 * p];
+                position[3 * p + 1] += particleValue[3 * p + 1];
+                position[3 * p + 2] += particleValue[3 * p + 2];
+            }
+            for (int i = 0; i < table.linkCount; i++) {
+                if (treeLink[i] && active[i]) addLambda(i, -linkValue[i]);
+            }
+        }
+    }
+
+    @Override
+    void projectVelocities(double h) {
+        // Compliant links are meant to stretch.
+        if (orderCount == 0 || getCompliance() > 0) return;
+
+        double[] velocity = table.velocity;
+        for (int i = 0; i < table.linkCount; i++) {
+            if (!treeLink[i]) continue;
+            measure(i);
+            active[i] = !table.cable[i] || (error[i] > -1e-6 * table.length[i] && separation(i) > 0);
+        }
+        for (int round = 0; round < MAX_ACTIVE_SET_ROUNDS; round++) {
+            for (int i = 0; i < table.linkCount; i++) {
+                if (treeLink[i]) linkValue[i] = -separation(i);
+            }
+            solve(0);
+
+            boolean changed = false;
+            for (int i = 0; i < table.linkCount; i++) {
+                if (treeLink[i] && active[i] && table.cable[i] && -linkValue[i] > 0) {
+                    active[i] = false;
+                    changed = true;
+                }
+            }
+            if (!changed) break;
+        }
+        for (int p = 0; p < table.particleCount; p++) {
+            if (!treeParticle[p]) continue;
+            velocity[3 * p] += particleValue[3 * p];
+            velocity[3 * p + 1] += particleValue[3 * p + 1];
+            velocity[3 * p + 2] += particleValue[3 * p + 2];
+        }
+    }
+
+    /**
+     * Solves the tree system for the current link directions, active
+     * links and right hand side of the links, leaving the particle
+     * changes in particleValue and the link multipliers (negated) in
+     * linkValue.
+     */
+    private void solve(double alpha) {
+        int particles = table.particleCount;
+
+        // Set up the diagonal blocks and the right hand side.
+        for (int k = 0; k < orderCount; k++) {
+            int n = order[k];
+            if (n < particles) {
+                double mass = 1 / table.inverseMass[n];
+                Arrays.fill(particleBlock, 9 * n, 9 * n + 9, 0);
+                particleBlock[9 * n] = particleBlock[9 * n + 4] = particleBlock[9 * n + 8] = mass;
+                particleValue[3 * n] = particleValue[3 * n + 1] = particleValue[3 * n + 2] = 0;
+            } else {
+                int i = n - particles;
+                if (!active[i]) {
+                    linkBlock[i] = 1;
+                    linkValue[i] = 0;
+                } else {
+                    boolean pinned = table.linkB[i] < 0 || !movable[table.linkB[i]] || !movable[table.linkA[i]];
+                    linkBlock[i] = -(pinned ? Math.max(alpha, PIN_COMPLIANCE) : alpha);
+                }
+            }
+        }
+
+        // Eliminate the leaves into their parents.
+        for (int k = 0; k < orderCount; k++) {
+            int c = order[k];
+            int p = parent[c];
+            if (c < particles) {
+                invert(c);
+                if (p < 0) continue;
+                int i = p - particles;
+                if (!active[i]) continue;
+                edge(i, parentSign[c]);
+                multiply(c, u[0], u[1], u[2]);
+                double ux = u[0], uy = u[1], uz = u[2];
+                edge(i, parentSign[c]);
+                linkBlock[i] -= u[0] * ux + u[1] * uy + u[2] * uz;
+                linkValue[i] -= ux * particleValue[3 * c] + uy * particleValue[3 * c + 1] + uz * particleValue[3 * c + 2];
+            } else {
+                int i = c - particles;
+                if (p < 0 || !active[i]) continue;
+                double d = linkBlock[i];
+                edge(i, parentSign[c]);
+                for (int r = 0; r < 3; r++) {
+                    for (int s = 0; s < 3; s++) {
+                        particleBlock[9 * p + 3 * r + s] -= u[r] * u[s] / d;
+                    }
+                    particleValue[3 * p + r] -= u[r] * linkValue[i] / d;
+                }
+            }
+        }
+
+        // Work back from the roots.
+        for (int k = orderCount - 1; k >= 0; k--) {
+            int c = order[k];
+            int p = parent[c];
+            if (c < particles) {
+                double bx = particleValue[3 * c], by = particleValue[3 * c + 1], bz = particleValue[3 * c + 2];
+                if (p >= 0 && active[p - particles]) {
+                    edge(p - particles, parentSign[c]);
+                    double x = linkValue[p - particles];
+                    bx -= u[0] * x;
+                    by -= u[1] * x;
+                    bz -= u[2] * x;
+                }
+                multiply(c, bx, by, bz);
+                particleValue[3 * c] = u[0];
+                particleValue[3 * c + 1] = u[1];
+                particleValue[3 * c + 2] = u[2];
+            } else {
+                int i = c - particles;
+                if (!active[i]) {
+                    linkValue[i] = 0;
+                    continue;
+                }
+                double b = linkValue[i];
+                if (p >= 0) {
+                    edge(i, parentSign[c]);
+                    b -= u[0] * particleValue[3 * p] + u[1] * particleValue[3 * p + 1] + u[2] * particleValue[3 * p + 2];
+                }
+                linkValue[i] = b / linkBlock[i];
+            }
+        }
+    }
+
+    /**
+     * Measures the direction and error of the given link.
+     */
+    private void measure(int i) {
+        double[] position = table.position;
+        int a = table.linkA[i];
+        int b = table.linkB[i];
+        double dx, dy, dz;
+        if (b >= 0) {
+            dx = position[3 * a] - position[3 * b];
+            dy = position[3 * a + 1] - position[3 * b + 1];
+            dz = position[3 * a + 2] - position[3 * b + 2];
+        } else {
+            dx = position[3 * a] - table.anchor[3 * i];
+            dy = position[3 * a + 1] - table.anchor[3 * i + 1];
+            dz = position[3 * a + 2] - table.anchor[3 * i + 2];
+        }
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance == 0) {
+            direction[3 * i] = direction[3 * i + 1] = direction[3 * i + 2] = 0;
+            error[i] = 0;
+            return;
+        }
+        direction[3 * i] = dx / distance;
+        direction[3 * i + 1] = dy / distance;
+        direction[3 * i + 2] = dz / distance;
+        error[i] = distance - table.length[i];
+    }
+
+    /**
+     * Returns the speed at which the ends of the given link separate.
+     */
+    private double separation(int i) {
+        double[] velocity = table.velocity;
+        int a = table.linkA[i];
+        int b = table.linkB[i];
+        double vx = velocity[3 * a], vy = velocity[3 * a + 1], vz = velocity[3 * a + 2];
+        if (b >= 0) {
+            vx -= velocity[3 * b];
+            vy -= velocity[3 * b + 1];
+            vz -= velocity[3 * b + 2];
+        }
+        return vx * direction[3 * i] + vy * direction[3 * i + 1] + vz * direction[3 * i + 2];
+    }
+
+    /**
+     * Loads the block between the given link and one of its particles
+     * into u.
+     */
+    private void edge(int i, double sign) {
+        u[0] = sign * direction[3 * i];
+        u[1] = sign * direction[3 * i + 1];
+        u[2] = sign * direction[3 * i + 2];
+    }
+
+    /**
+     * Multiplies the given vector by the inverted block of the given
+     * particle, leaving the result in u.
+     */
+    private void multiply(int p, double x, double y, double z) {
+        int k = 9 * p;
+        u[0] = particleBlock[k] * x + particleBlock[k + 1] * y + particleBlock[k + 2] * z;
+        u[1] = particleBlock[k + 3] * x + particleBlock[k + 4] * y + particleBlock[k + 5] * z;
+        u[2] = particleBlock[k + 6] * x + particleBlock[k + 7] * y + particleBlock[k + 8] * z;
+    }
+
+    /**
+     * Replaces the block of the given particle with its inverse.
+     */
+    private void invert(int p) {
+        int k = 9 * p;
+        double[] m = particleBlock;
+        double c0 = m[k + 4] * m[k + 8] - m[k + 5] * m[k + 7];
+        double c1 = m[k + 5] * m[k + 6] - m[k + 3] * m[k + 8];
+        double c2 = m[k + 3] * m[k + 7] - m[k + 4] * m[k + 6];
+        double det = m[k] * c0 + m[k + 1] * c1 + m[k + 2] * c2;
+        double inv = 1 / det;
+        double i0 = c0 * inv;
+        double i1 = (m[k + 2] * m[k + 7] - m[k + 1] * m[k + 8]) * inv;
+        double i2 = (m[k + 1] * m[k + 5] - m[k + 2] * m[k + 4]) * inv;
+        double i3 = c1 * inv;
+        double i4 = (m[k] * m[k + 8] - m[k + 2] * m[k + 6]) * inv;
+        double i5 = (m[k + 2] * m[k + 3] - m[k] * m[k + 5]) * inv;
+        double i6 = c2 * inv;
+        double i7 = (m[k + 1] * m[k + 6] - m[k] * m[k + 7]) * inv;
+        double i8 = (m[k] * m[k + 4] - m[k + 1] * m[k + 3]) * inv;
+        m[k] = i0;
+        m[k + 1] = i1;
+        m[k + 2] = i2;
+        m[k + 3] = i3;
+        m[k + 4] = i4;
+        m[k + 5] = i5;
+        m[k + 6] = i6;
+        m[k + 7] = i7;
+        m[k + 8] = i8;
+    }
+
+    private void reserve(int particles, int links) {
+        int nodes = particles + links;
+        if (movable.length < particles) {
+            movable = new boolean[particles];
+            treeParticle = new boolean[particles];
+            particleBlock = new double[9 * particles];
+            particleValue = new double[3 * particles];
+        }
+        if (treeLink.length < links) {
+            treeLink = new boolean[links];
+            loopLink = new boolean[links];
+            direction = new double[3 * links];
+            error = new double[links];
+            active = new boolean[links];
+            linkBlock = new double[links];
+            linkValue = new double[links];
+        }
+        if (order.length < nodes) {
+            order = new int[nodes];
+            parent = new int[nodes];
+            parentSign = new double[nodes];
+        }
+    }
+
+    private static int root(int[] find, int n) {
+        while (find[n] != n) {
+            find[n] = find[find[n]];
+            n = find[n];
+        }
+        return n;
+    }
+
+    private static void union(int[] find, int a, int b) {
+        a = root(find, a);
+        b = root(find, b);
+        if (a != b) find[Math.max(a, b)] = Math.min(a, b);
+    }
+}
@@ -2,13 +2,13 @@ package br.law123.particle.links;
 
 import br.law123.core.Vector3;
 import br.law123.particle.Particle;
-import br.law123.particle.contact.ParticleContactGenerator;
+import br.law123.particle.contact.BoundedParticleContactGenerator;
 
 /**
  * Constraints are just like links, except they connect a particle to
  * an immovable anchor point.
  */
-abstract class ParticleConstraint implements ParticleContactGenerator {
+abstract class ParticleConstraint implements BoundedParticleContactGenerator {
 
     /**
      * Holds the particles connected by this constraint.
@@ -28,6 +28,14 @@ abstract class ParticleConstraint implements ParticleContactGenerator {
         this.particle = particle;
     }
 
+    /**
+     * A constraint generates at most one contact.
+     */
+    @Override
+    public int getMaxContacts() {
+        return 1;
+    }
+
     /**
      * Returns the current length of the link.
      */
@@ -2,7 +2,7 @@ package br.law123.particle.links;
 
 import br.law123.core.Vector3;
 import br.law123.particle.Particle;
-import br.law123.particle.contact.ParticleContactGenerator;
+import br.law123.particle.contact.BoundedParticleContactGenerator;
 
 /**
  * Links connect two particles together, generating a contact if
@@ -10,7 +10,7 @@ import br.law123.particle.contact.ParticleContactGenerator;
  * base class for cables and rods, and could be used as a base
  * class for springs with a limit to their extension..
  */
-public abstract class ParticleLink implements ParticleContactGenerator {
+public abstract class ParticleLink implements BoundedParticleContactGenerator {
 
     /**
      * Holds the pair of particles that are connected by this link.
@@ -29,4 +29,12 @@ public abstract class ParticleLink implements ParticleContactGenerator {
         return relativePos.magnitude();
     }
 
+    /**
+     * A link generates at most one contact.
+     */
+    @Override
+    public int getMaxContacts() {
+        return 1;
+    }
+
 }
@@ -0,0 +1,38 @@
+package br.law123.particle.links;
+
+import java.util.List;
+
+import br.law123.particle.contact.ParticleContactGenerator;
+
+/**
+ * A solver that enforces some particle links directly, instead of
+ * letting them generate contacts for the contact resolver.
+ *
+ * The particle world calls the solver twice a step. startStep is called
+ * after the force generators have run and before the particles are
+ * integrated, so the solver can read the state its particles start the
+ * step with. integrateAndSolve is called after the world has integrated
+ * the particles, and replaces the state of the solver's particles with
+ * its own integration, in which the links hold. Links the solver handles
+ * don't generate contacts.
+ */
+public interface ParticleLinkSolver {
+
+    /**
+     * Returns true if the solver enforces the given contact generator,
+     * so the world should not ask it for contacts.
+     */
+    boolean handles(ParticleContactGenerator generator);
+
+    /**
+     * Finds the links among the given contact generators, and reads
+     * the state of their particles, including their accumulated force.
+     */
+    void startStep(List<ParticleContactGenerator> generators);
+
+    /**
+     * Integrates the particles of the links forward in time by the
+     * given duration, enforcing the links.
+     */
+    void integrateAndSolve(double duration);
+}
@@ -0,0 +1,230 @@
+package br.law123.particle.links;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import br.law123.core.Vector3;
+import br.law123.particle.Particle;
+import br.law123.particle.contact.ParticleContactGenerator;
+
+/**
+ * Holds the rods, cables and their anchored variants found among a list
+ * of contact generators, as flat arrays, together with a copy of the
+ * state of the particles they link. This is what the link solvers work
+ * on.
+ *
+ * The table is only rebuilt when the links in the list change; lengths
+ * and anchors are read again every step, so they can be changed between
+ * steps.
+ */
+class ParticleLinkTable {
+
+    /**
+     * Holds the links, in the order they were found.
+     */
+    ParticleContactGenerator[] links = new ParticleContactGenerator[0];
+
+    /**
+     * Holds the number of links.
+     */
+    int linkCount;
+
+    /**
+     * Holds the two particles of each link, as indices into the
+     * particles. The second is -1 for links to an anchor.
+     */
+    int[] linkA = new int[0];
+
+    int[] linkB = new int[0];
+
+    /**
+     * Holds the anchor of each anchored link, three values per link.
+     */
+    double[] anchor = new double[0];
+
+    /**
+     * Holds the length of each link: the rod length, or the most a
+     * cable can stretch to.
+     */
+    double[] length = new double[0];
+
+    /**
+     * True for the links that can get shorter than their length
+     * (cables), false for the links that keep their length (rods).
+     */
+    boolean[] cable = new boolean[0];
+
+    /**
+     * Holds the index of each linked particle.
+     */
+    private final Map<Particle, Integer> particleIndex = new IdentityHashMap<Particle, Integer>();
+
+    /**
+     * Holds the linked particles.
+     */
+    Particle[] particles = new Particle[0];
+
+    /**
+     * Holds the number of linked particles.
+     */
+    int particleCount;
+
+    /**
+     * Holds, for each particle, the position, velocity and the
+     * acceleration from its constant acceleration and accumulated force,
+     * three values per particle, and its inverse mass and damping.
+     */
+    double[] position = new double[0];
+
+    double[] velocity = new double[0];
+
+    double[] acceleration = new double[0];
+
+    double[] inverseMass = new double[0];
+
+    double[] damping = new double[0];
+
+    /**
+     * Returns true if the given generator is a link the table can hold.
+     */
+    static boolean isLink(ParticleContactGenerator generator) {
+        return generator instanceof ParticleRod || generator instanceof ParticleCable || generator instanceof ParticleRodConstraint
+               || generator instanceof ParticleCableConstraint;
+    }
+
+    /**
+     * Finds the links among the given generators, rebuilding the table
+     * if they changed. Returns true if it was rebuilt.
+     */
+    boolean update(List<ParticleContactGenerator> generators) {
+        int count = 0;
+        boolean same = true;
+        for (ParticleContactGenerator g : generators) {
+            if (!isLink(g)) continue;
+            if (count >= linkCount || links[count] != g || !sameParticles(count)) same = false;
+            count++;
+        }
+        if (same && count == linkCount) {
+            readLinks();
+            return false;
+        }
+
+        linkCount = 0;
+        particleCount = 0;
+        particleIndex.clear();
+        if (links.length < count) {
+            links = new ParticleContactGenerator[count];
+            linkA = new int[count];
+            linkB = new int[count];
+            anchor = new double[3 * count];
+            length = new double[count];
+            cable = new boolean[count];
+        }
+        for (ParticleContactGenerator g : generators) {
+            if (!isLink(g)) continue;
+            links[linkCount] = g;
+            if (g instanceof ParticleLink) {
+                Particle[] particle = ((ParticleLink) g).getParticle();
+                linkA[linkCount] = indexOf(particle[0]);
+                linkB[linkCount] = indexOf(particle[1]);
+            } else {
+                linkA[linkCount] = indexOf(((ParticleConstraint) g).getParticle());
+                linkB[linkCount] = -1;
+            }
+            linkCount++;
+        }
+        Arrays.fill(links, linkCount, links.length, null);
+        readLinks();
+        return true;
+    }
+
+    /**
+     * Reads the state of the linked particles.
+     */
+    void load() {
+        for (int p = 0; p < particleCount; p++) {
+            Particle particle = particles[p];
+            double im = particle.getInverseMass();
+            Vector3 v = particle.getPosition();
+            set(position, p, v.getX(), v.getY(), v.getZ());
+            v = particle.getVelocity();
+            set(velocity, p, v.getX(), v.getY(), v.getZ());
+            v = particle.getAcceleration();
+            Vector3 f = particle.getForceAccum();
+            set(acceleration, p, v.getX() + f.getX() * im, v.getY() + f.getY() * im, v.getZ() + f.getZ() * im);
+            inverseMass[p] = im;
+            damping[p] = particle.getDamping();
+        }
+    }
+
+    /**
+     * Writes the position and velocity of the linked particles that can
+     * move back to them.
+     */
+    void store() {
+        for (int p = 0; p < particleCount; p++) {
+            if (inverseMass[p] <= 0) continue;
+            particles[p].setPosition(position[3 * p], position[3 * p + 1], position[3 * p + 2]);
+            particles[p].setVelocity(velocity[3 * p], velocity[3 * p + 1], velocity[3 * p + 2]);
+        }
+    }
+
+    private void readLinks() {
+        for (int i = 0; i < linkCount; i++) {
+            ParticleContactGenerator g = links[i];
+            if (g instanceof ParticleRod) {
+                length[i] = ((ParticleRod) g).getLength();
+                cable[i] = false;
+            } else if (g instanceof ParticleCable) {
+                length[i] = ((ParticleCable) g).getMaxLength();
+                cable[i] = true;
+            } else if (g instanceof ParticleRodConstraint) {
+                length[i] = ((ParticleRodConstraint) g).getLength();
+                cable[i] = false;
+            } else {
+                length[i] = ((ParticleCableConstraint) g).getMaxLength();
+                cable[i] = true;
+            }
+            if (g instanceof ParticleConstraint) {
+                Vector3 a = ((ParticleConstraint) g).getAnchor();
+                set(anchor, i, a.getX(), a.getY(), a.getZ());
+            }
+        }
+    }
+
+    private boolean sameParticles(int i) {
+        ParticleContactGenerator g = links[i];
+        if (g instanceof ParticleLink) {
+            Particle[] particle = ((ParticleLink) g).getParticle();
+            return particles[linkA[i]] == particle[0] && particles[linkB[i]] == particle[1];
+        }
+        return particles[linkA[i]] == ((ParticleConstraint) g).getParticle();
+    }
+
+    private int indexOf(Particle particle) {
+        Integer index = particleIndex.get(particle);
+        if (index == null) {
+            index = particleCount++;
+            particleIndex.put(particle, index);
+            if (particles.length < particleCount) {
+                int capacity = 2 * particleCount;
+                particles = Arrays.copyOf(particles, capacity);
+                position = Arrays.copyOf(position, 3 * capacity);
+                velocity = Arrays.copyOf(velocity, 3 * capacity);
+                acceleration = Arrays.copyOf(acceleration, 3 * capacity);
+                inverseMass = Arrays.copyOf(inverseMass, capacity);
+                damping = Arrays.copyOf(damping, capacity);
+            }
+            particles[index] = particle;
+        }
+        return index;
+    }
+
+    private static void set(double[] values, int index, double x, double y, double z) {
+        values[3 * index] = x;
+        values[3 * index + 1] = y;
+        values[3 * index + 2] = z;
+    }
+}
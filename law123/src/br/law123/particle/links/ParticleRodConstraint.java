@@ -14,6 +14,14 @@ class ParticleRodConstraint extends ParticleConstraint {
      */
     private double length;
 
+    public double getLength() {
+        return length;
+    }
+
+    public void setLength(double length) {
+        this.length = length;
+    }
+
     /**
      * Fills the given contact structure with the contact needed
      * to keep the rod from extending or compressing.
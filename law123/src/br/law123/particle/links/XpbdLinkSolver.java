@@ -0,0 +1,260 @@
+package br.law123.particle.links;
+
+import java.util.List;
+
+import br.law123.particle.contact.ParticleContactGenerator;
+
+/**
+ * Enforces rods, cables and their anchored variants with extended
+ * position based dynamics (XPBD), instead of contacts.
+ *
+ * Each step is split into substeps. In each substep the linked particles
+ * are moved with their velocity and acceleration, the links are enforced
+ * by moving the particles directly, and the velocities are worked out
+ * again from how far the particles actually moved. Small substeps
+ * converge much faster than iterating over the whole step, so long
+ * chains don't stretch and large frame steps stay stable.
+ *
+ * The compliance of the links is the inverse of their stiffness. With
+ * zero compliance rods are rigid; with a positive compliance they behave
+ * like stiff springs, and because compliance is measured in the same
+ * units whatever the step and the number of substeps, links keep the
+ * same stiffness when the frame step changes.
+ *
+ * Cables only pull, and their restitution is not used: the velocity
+ * along a cable that pulls tight is simply removed.
+ */
+public class XpbdLinkSolver implements ParticleLinkSolver {
+
+    /**
+     * Holds the links and the state of their particles.
+     */
+    final ParticleLinkTable table = new ParticleLinkTable();
+
+    /**
+     * Holds the compliance of the links.
+     */
+    private double compliance;
+
+    /**
+     * Holds the number of substeps per step.
+     */
+    private int substeps;
+
+    /**
+     * Holds the number of passes over the links per substep.
+     */
+    private int iterations = 1;
+
+    /**
+     * Holds the position of each particle at the start of the substep.
+     */
+    private double[] previous = new double[0];
+
+    /**
+     * Holds the Lagrange multiplier of each link in the current
+     * substep.
+     */
+    private double[] lambda = new double[0];
+
+    /**
+     * Creates a solver with rigid links and the given number of
+     * substeps per step.
+     */
+    public XpbdLinkSolver(int substeps) {
+        this(substeps, 0);
+    }
+
+    /**
+     * Creates a solver with the given number of substeps per step and
+     * link compliance.
+     */
+    public XpbdLinkSolver(int substeps, double compliance) {
+        setSubsteps(substeps);
+        this.compliance = compliance;
+    }
+
+    public void setCompliance(double compliance) {
+        this.compliance = compliance;
+    }
+
+    public double getCompliance() {
+        return compliance;
+    }
+
+    public void setSubsteps(int substeps) {
+        if (substeps < 1) throw new IllegalArgumentException("substeps < 1");
+        this.substeps = substeps;
+    }
+
+    public int getSubsteps() {
+        return substeps;
+    }
+
+    /**
+     * Sets the number of passes over the links in each substep. One is
+     * usually enough; more substeps are cheaper than more passes for the
+     * same stiffness.
+     */
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    @Override
+    public boolean handles(ParticleContactGenerator generator) {
+        return ParticleLinkTable.isLink(generator);
+    }
+
+    @Override
+    public void startStep(List<ParticleContactGenerator> generators) {
+        boolean changed = table.update(generators);
+        table.load();
+        if (changed) linksChanged();
+    }
+
+    /**
+     * Called when the set of links was rebuilt.
+     */
+    void linksChanged() {
+    }
+
+    @Override
+    public void integrateAndSolve(double duration) {
+        if (table.particleCount == 0) return;
+        if (previous.length < 3 * table.particleCount) previous = new double[3 * table.particleCount];
+        if (lambda.length < table.linkCount) lambda = new double[table.linkCount];
+
+        double h = duration / substeps;
+        for (int s = 0; s < substeps; s++) {
+            predict(h);
+            for (int i = 0; i < table.linkCount; i++) {
+                lambda[i] = 0;
+            }
+            solveLinks(h);
+            updateVelocities(h);
+            projectVelocities(h);
+        }
+        table.store();
+    }
+
+    /**
+     * Moves the particles forward by one substep, remembering where
+     * they started.
+     */
+    private void predict(double h) {
+        double[] position = table.position;
+        double[] velocity = table.velocity;
+        double[] acceleration = table.acceleration;
+        for (int p = 0; p < table.particleCount; p++) {
+            int k = 3 * p;
+            previous[k] = position[k];
+            previous[k + 1] = position[k + 1];
+            previous[k + 2] = position[k + 2];
+            if (table.inverseMass[p] <= 0) continue;
+
+            double drag = Math.pow(table.damping[p], h);
+            for (int c = k; c < k + 3; c++) {
+                velocity[c] = (velocity[c] + acceleration[c] * h) * drag;
+                position[c] += velocity[c] * h;
+            }
+        }
+    }
+
+    /**
+     * Moves the particles so that the links hold, at the end of a
+     * substep of the given length.
+     */
+    void solveLinks(double h) {
+        for (int k = 0; k < iterations; k++) {
+            for (int i = 0; i < table.linkCount; i++) {
+                solveLink(i, h);
+            }
+        }
+    }
+
+    /**
+     * Corrects the velocities worked out at the end of a substep. Does
+     * nothing here.
+     */
+    void projectVelocities(double h) {
+    }
+
+    /**
+     * Returns the Lagrange multiplier of the given link in the current
+     * substep.
+     */
+    double getLambda(int i) {
+        return lambda[i];
+    }
+
+    /**
+     * Adds to the Lagrange multiplier of the given link.
+     */
+    void addLambda(int i, double dLambda) {
+        lambda[i] += dLambda;
+    }
+
+    /**
+     * Moves the particles of the given link so that it holds.
+     */
+    void solveLink(int i, double h) {
+        double[] position = table.position;
+        int a = table.linkA[i];
+        int b = table.linkB[i];
+        double wa = Math.max(0, table.inverseMass[a]);
+        double wb = b >= 0 ? Math.max(0, table.inverseMass[b]) : 0;
+
+        double dx, dy, dz;
+        if (b >= 0) {
+            dx = position[3 * a] - position[3 * b];
+            dy = position[3 * a + 1] - position[3 * b + 1];
+            dz = position[3 * a + 2] - position[3 * b + 2];
+        } else {
+            dx = position[3 * a] - table.anchor[3 * i];
+            dy = position[3 * a + 1] - table.anchor[3 * i + 1];
+            dz = position[3 * a + 2] - table.anchor[3 * i + 2];
+        }
+        double distance = Math.sqrt(dx * dx + dy * dy + dz * dz);
+        if (distance == 0) return;
+
+        double c = distance - table.length[i];
+        if (table.cable[i] && c <= 0) return;
+
+        double alpha = compliance / (h * h);
+        double w = wa + wb + alpha;
+        if (w <= 0) return;
+        double dLambda = (-c - alpha * lambda[i]) / w;
+        lambda[i] += dLambda;
+
+        double scale = dLambda / distance;
+        dx *= scale;
+        dy *= scale;
+        dz *= scale;
+        position[3 * a] += dx * wa;
+        position[3 * a + 1] += dy * wa;
+        position[3 * a + 2] += dz * wa;
+        if (b >= 0) {
+            position[3 * b] -= dx * wb;
+            position[3 * b + 1] -= dy * wb;
+            position[3 * b + 2] -= dz * wb;
+        }
+    }
+
+    /**
+     * Works out the velocities from how far the particles moved.
+     */
+    private void updateVelocities(double h) {
+        double[] position = table.position;
+        double[] velocity = table.velocity;
+        for (int p = 0; p < table.particleCount; p++) {
+            if (table.inverseMass[p] <= 0) continue;
+            for (int k = 3 * p; k < 3 * p + 3; k++) {
+                velocity[k] = (position[k] - previous[k]) / h;
+            }
+        }
+    }
+}
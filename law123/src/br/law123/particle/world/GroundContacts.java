@@ -6,13 +6,20 @@ import br.law123.core.Core;
 import br.law123.core.Vector3;
 import br.law123.particle.Particle;
 import br.law123.particle.contact.ParticleContact;
-import br.law123.particle.contact.ParticleContactGenerator;
+import br.law123.particle.contact.BoundedParticleContactGenerator;
 
 /**
  * A contact generator that takes an STL vector of particle pointers and
- * collides them against the ground.
+ * collides them against the ground. For large groups of particles,
+ * ParticlePlaneContacts does the same over flat arrays.
  */
-public class GroundContacts implements ParticleContactGenerator {
+public class GroundContacts implements BoundedParticleContactGenerator {
+
+    /**
+     * Holds the normal shared by every ground contact. It is never
+     * changed, so contacts don't need their own copy.
+     */
+    private static final Vector3 UP = new Vector3(Core.UP);
 
     private List<Particle> particles;
 
@@ -28,6 +35,14 @@ public class GroundContacts implements ParticleContactGenerator {
         this.particles = aparticles;
     }
 
+    /**
+     * Every particle can touch the ground once.
+     */
+    @Override
+    public int getMaxContacts() {
+        return particles.size();
+    }
+
     @Override
     public int addContact(ParticleContact[] contact, int offset, int limit) {
         int count = 0;
@@ -35,7 +50,7 @@ public class GroundContacts implements ParticleContactGenerator {
         for (Particle p : particles) {
             double y = p.getPosition().getY();
             if (y < 0.0f) {
-                contact[i].setContactNormal(new Vector3(Core.UP));
+                contact[i].setContactNormal(UP);
                 contact[i].getParticle()[0] = p;
                 contact[i].getParticle()[1] = null;
                 contact[i].setPenetration(-y);
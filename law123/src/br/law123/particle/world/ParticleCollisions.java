@@ -0,0 +1,350 @@
+package br.law123.particle.world;
+
+import java.util.Arrays;
+
+import br.law123.collide.HashGrid;
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.particle.Particle;
+import br.law123.particle.contact.ParticleContact;
+import br.law123.particle.contact.ParticleContactGenerator;
+
+/**
+ * A contact generator that collides particles with each other, treating
+ * each particle as a sphere with its own radius and restitution.
+ *
+ * Rather than testing every pair, the particles are placed into a
+ * HashGrid every time contacts are generated, with cells as big as the
+ * largest pair of radii, and only particles in neighbouring cells are
+ * tested. Contacts are written straight into the contact array, and
+ * nothing is allocated once the arrays have grown to the number of
+ * particles.
+ *
+ * Given a worker pool, the pair search is cut into a fixed number of
+ * parts of the grid, shared out between the threads, and each part
+ * keeps the pairs it finds in a buffer of its own. The contacts are
+ * then written from the buffers in part order, so they come out exactly
+ * as from the search on one thread, whatever the number of threads.
+ *
+ * The restitution of a collision is the lower of the two particles'.
+ */
+public class ParticleCollisions implements ParticleContactGenerator {
+
+    /**
+     * Holds the particles, with their radius and restitution.
+     */
+    private Particle[] particles = new Particle[16];
+
+    private double[] radius = new double[16];
+
+    private double[] restitution = new double[16];
+
+    private int count;
+
+    /**
+     * Holds the positions of the particles, three values per particle,
+     * read at the start of each generation.
+     */
+    private double[] positions = new double[48];
+
+    private final HashGrid grid = new HashGrid(1);
+
+    private final Writer writer = new Writer();
+
+    /**
+     * Holds the number of parts the pair search is cut into on a pool,
+     * and the fewest particles worth searching on a pool.
+     */
+    private static final int PARTS = 64;
+
+    private static final int MIN_PARALLEL = 4096;
+
+    /**
+     * Holds the worker threads the pairs are searched on, or null to
+     * search them on the calling thread.
+     */
+    private WorkerPool workerPool;
+
+    /**
+     * Holds the pairs found by each part of the search.
+     */
+    private Part[] parts = new Part[0];
+
+    /**
+     * Holds the contact array, and the search distance, while the parts
+     * are run on the pool.
+     */
+    private ParticleContact[] taskContact;
+
+    private double taskDistance;
+
+    private final WorkerPool.RangeTask readTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            readPositions(from, to);
+        }
+    };
+
+    private final WorkerPool.RangeTask searchTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            int points = grid.getCount();
+            for (int p = from; p < to; p++) {
+                parts[p].size = 0;
+                grid.findPairs((int) ((long) points * p / PARTS), (int) ((long) points * (p + 1) / PARTS), taskDistance, parts[p]);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask writeTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int p = from; p < to; p++) {
+                parts[p].write(taskContact);
+            }
+        }
+    };
+
+    /**
+     * Adds a particle with the given radius and restitution, and returns
+     * its index.
+     */
+    public int add(Particle particle, double radius, double restitution) {
+        if (count == particles.length) {
+            int capacity = 2 * count;
+            particles = Arrays.copyOf(particles, capacity);
+            this.radius = Arrays.copyOf(this.radius, capacity);
+            this.restitution = Arrays.copyOf(this.restitution, capacity);
+            positions = Arrays.copyOf(positions, 3 * capacity);
+        }
+        particles[count] = particle;
+        this.radius[count] = radius;
+        this.restitution[count] = restitution;
+        return count++;
+    }
+
+    /**
+     * Removes the given particle. The last particle takes its index.
+     */
+    public void remove(Particle particle) {
+        for (int i = 0; i < count; i++) {
+            if (particles[i] != particle) continue;
+            count--;
+            particles[i] = particles[count];
+            radius[i] = radius[count];
+            restitution[i] = restitution[count];
+            particles[count] = null;
+            return;
+        }
+    }
+
+    /**
+     * Removes every particle.
+     */
+    public void clear() {
+        Arrays.fill(particles, 0, count, null);
+        count = 0;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public Particle getParticle(int index) {
+        return particles[index];
+    }
+
+    public double getRadius(int index) {
+        return radius[index];
+    }
+
+    public void setRadius(int index, double radius) {
+        this.radius[index] = radius;
+    }
+
+    public double getRestitution(int index) {
+        return restitution[index];
+    }
+
+    public void setRestitution(int index, double restitution) {
+        this.restitution[index] = restitution;
+    }
+
+    /**
+     * Sets the worker threads the pairs are searched on, or null to
+     * search them on the calling thread. This must not be the pool the
+     * world runs its contact generators on, since this generator would
+     * then wait for threads that are waiting for it.
+     */
+    public void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    @Override
+    public int addContact(ParticleContact[] contact, int offset, int limit) {
+        if (count < 2 || limit <= 0) return 0;
+
+        double maxRadius = 0;
+        for (int i = 0; i < count; i++) {
+            maxRadius = Math.max(maxRadius, radius[i]);
+        }
+        if (maxRadius <= 0) return 0;
+
+        // Each particle is read once, so they can be read on the pool.
+        boolean parallel = workerPool != null && workerPool.getThreadCount() > 1 && count >= MIN_PARALLEL;
+        if (parallel) {
+            workerPool.run(count, 1024, readTask);
+        } else {
+            readPositions(0, count);
+        }
+
+        grid.setCellSize(2 * maxRadius);
+        grid.build(positions, count);
+
+        if (parallel) {
+            return addContactParallel(contact, offset, limit, 2 * maxRadius);
+        }
+
+        writer.contact = contact;
+        writer.next = offset;
+        writer.end = offset + limit;
+        grid.findPairs(2 * maxRadius, writer);
+        writer.contact = null;
+        return writer.next - offset;
+    }
+
+    /**
+     * Reads the positions of the particles from from to to.
+     */
+    private void readPositions(int from, int to) {
+        for (int i = from; i < to; i++) {
+            Vector3 p = particles[i].getPosition();
+            positions[3 * i] = p.getX();
+            positions[3 * i + 1] = p.getY();
+            positions[3 * i + 2] = p.getZ();
+        }
+    }
+
+    /**
+     * Searches the parts of the grid on the pool, then gives each part
+     * the contacts that follow those of the parts before it, as long as
+     * they fit, and writes them on the pool.
+     */
+    private int addContactParallel(ParticleContact[] contact, int offset, int limit, double distance) {
+        if (parts.length < PARTS) {
+            parts = new Part[PARTS];
+            for (int p = 0; p < PARTS; p++) {
+                parts[p] = new Part();
+            }
+        }
+        taskDistance = distance;
+        workerPool.run(PARTS, 1, searchTask);
+
+        int next = offset;
+        int end = offset + limit;
+        for (int p = 0; p < PARTS; p++) {
+            Part part = parts[p];
+            part.start = next;
+            part.used = Math.min(part.size, end - next);
+            next += part.used;
+        }
+
+        taskContact = contact;
+        workerPool.run(PARTS, 1, writeTask);
+        taskContact = null;
+        return next - offset;
+    }
+
+    /**
+     * Returns true if particles i and j, the given squared distance
+     * apart, touch.
+     */
+    private boolean touch(int i, int j, double distanceSquared) {
+        double reach = radius[i] + radius[j];
+        return distanceSquared < reach * reach;
+    }
+
+    /**
+     * Fills the given contact between particles i and j, which touch at
+     * the given squared distance apart.
+     */
+    private void fill(ParticleContact c, int i, int j, double distanceSquared) {
+        double reach = radius[i] + radius[j];
+        double distance = Math.sqrt(distanceSquared);
+        if (distance > 0) {
+            double scale = 1 / distance;
+            c.setContactNormal((positions[3 * i] - positions[3 * j]) * scale, (positions[3 * i + 1] - positions[3 * j + 1]) * scale,
+                               (positions[3 * i + 2] - positions[3 * j + 2]) * scale);
+        } else {
+            // Particles in the same place are pushed apart vertically.
+            c.setContactNormal(0, 1, 0);
+        }
+        c.getParticle()[0] = particles[i];
+        c.getParticle()[1] = particles[j];
+        c.setPenetration(reach - distance);
+        c.setRestitution(Math.min(restitution[i], restitution[j]));
+    }
+
+    /**
+     * Turns the pairs found by the grid into contacts.
+     */
+    private class Writer implements HashGrid.PairVisitor {
+
+        ParticleContact[] contact;
+
+        int next;
+
+        int end;
+
+        @Override
+        public void visit(int i, int j, double distanceSquared) {
+            if (next >= end || !touch(i, j, distanceSquared)) return;
+            fill(contact[next++], i, j, distanceSquared);
+        }
+    }
+
+    /**
+     * Holds the touching pairs found by one part of the search, in the
+     * order they were found, and where its contacts go.
+     */
+    private class Part implements HashGrid.PairVisitor {
+
+        int[] pairs = new int[64];
+
+        double[] distances = new double[32];
+
+        int size;
+
+        int start;
+
+        int used;
+
+        @Override
+        public void visit(int i, int j, double distanceSquared) {
+            if (!touch(i, j, distanceSquared)) return;
+            if (size == distances.length) {
+                pairs = Arrays.copyOf(pairs, 4 * size);
+                distances = Arrays.copyOf(distances, 2 * size);
+            }
+            pairs[2 * size] = i;
+            pairs[2 * size + 1] = j;
+            distances[size++] = distanceSquared;
+        }
+
+        /**
+         * Writes the contacts this part was given room for.
+         */
+        void write(ParticleContact[] contact) {
+            for (int k = 0; k < used; k++) {
+                fill(contact[start + k], pairs[2 * k], pairs[2 * k + 1], distances[k]);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package br.law123.particle.world;
+
+import br.law123.core.WorkerPool;
+
+/**
+ * A force that is worked out for a whole group of particles at once,
+ * such as the pressure inside a fluid, rather than for each particle on
+ * its own like a force generator.
+ *
+ * The world runs its stages every step, after the force registry and
+ * before the particles are integrated. A stage adds its forces to the
+ * particles' force accumulators.
+ */
+public interface ParticleForceStage {
+
+    /**
+     * Adds the forces of this stage for a step of the given duration.
+     * The pool is the world's force worker pool, or null if forces are
+     * worked out on the calling thread.
+     */
+    void updateForces(double duration, WorkerPool pool);
+}
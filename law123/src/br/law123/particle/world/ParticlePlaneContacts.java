@@ -0,0 +1,201 @@
+package br.law123.particle.world;
+
+import java.util.Arrays;
+import java.util.List;
+
+import br.law123.core.Vector3;
+import br.law123.particle.Particle;
+import br.law123.particle.ParticleSystem;
+import br.law123.particle.contact.BoundedParticleContactGenerator;
+import br.law123.particle.contact.ParticleContact;
+
+/**
+ * A contact generator that collides a group of particles against a
+ * half-space, such as the ground.
+ *
+ * The generator works in two passes over flat arrays. First the height
+ * of every particle above the plane is worked out, reading straight
+ * from a ParticleSystem's arrays for particles that live in one, and
+ * the particles below the plane are packed into a list of indices
+ * without branching, so the loop is the same whichever particles
+ * touch. Then a contact is written for each packed index.
+ *
+ * Every contact points at the same normal vector, which belongs to the
+ * generator and is never changed while contacts use it, so no vector
+ * is created per contact.
+ */
+public class ParticlePlaneContacts implements BoundedParticleContactGenerator {
+
+    /**
+     * Holds the particles.
+     */
+    private Particle[] particles = new Particle[16];
+
+    private int count;
+
+    /**
+     * Holds the normal of the plane, shared by every contact.
+     */
+    private Vector3 normal = new Vector3(0, 1, 0);
+
+    /**
+     * Holds the distance of the plane from the origin along the normal.
+     */
+    private double offset;
+
+    /**
+     * Holds the radius of the particles, so they touch the plane when
+     * their centre is this far above it.
+     */
+    private double radius;
+
+    private double restitution = 0.2;
+
+    /**
+     * Holds how far each particle is above the plane, and the indices of
+     * the particles below it.
+     */
+    private double[] height = new double[16];
+
+    private int[] below = new int[16];
+
+    /**
+     * Creates a generator for the ground plane, y = 0.
+     */
+    public ParticlePlaneContacts() {
+    }
+
+    /**
+     * Creates a generator for the plane with the given normal, at the
+     * given distance from the origin along it.
+     */
+    public ParticlePlaneContacts(Vector3 normal, double offset) {
+        setPlane(normal, offset);
+    }
+
+    /**
+     * Sets the plane. The normal is copied and made unit length. Contacts
+     * written before this call keep the old normal.
+     */
+    public void setPlane(Vector3 normal, double offset) {
+        Vector3 n = new Vector3(normal);
+        n.normalise();
+        this.normal = n;
+        this.offset = offset;
+    }
+
+    public Vector3 getNormal() {
+        return normal;
+    }
+
+    public double getOffset() {
+        return offset;
+    }
+
+    public void setRadius(double radius) {
+        this.radius = radius;
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    public void setRestitution(double restitution) {
+        this.restitution = restitution;
+    }
+
+    public double getRestitution() {
+        return restitution;
+    }
+
+    /**
+     * Adds a particle.
+     */
+    public void add(Particle particle) {
+        if (count == particles.length) {
+            int capacity = 2 * count;
+            particles = Arrays.copyOf(particles, capacity);
+            height = new double[capacity];
+            below = new int[capacity];
+        }
+        particles[count++] = particle;
+    }
+
+    /**
+     * Adds every particle of the given list.
+     */
+    public void addAll(List<Particle> particles) {
+        for (Particle p : particles) {
+            add(p);
+        }
+    }
+
+    /**
+     * Removes a particle. The last particle takes its place.
+     */
+    public void remove(Particle particle) {
+        for (int i = 0; i < count; i++) {
+            if (particles[i] != particle) continue;
+            particles[i] = particles[--count];
+            particles[count] = null;
+            return;
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Every particle can touch the plane once.
+     */
+    @Override
+    public int getMaxContacts() {
+        return count;
+    }
+
+    @Override
+    public int addContact(ParticleContact[] contact, int offset, int limit) {
+        double nx = normal.getX(), ny = normal.getY(), nz = normal.getZ();
+        double level = this.offset + radius;
+
+        // Work out the heights, reading the arrays of the system the
+        // particles live in where there is one.
+        ParticleSystem system = null;
+        double[] position = null;
+        for (int i = 0; i < count; i++) {
+            Particle p = particles[i];
+            if (p.getSystem() != null) {
+                if (p.getSystem() != system) {
+                    system = p.getSystem();
+                    position = system.getPositions();
+                }
+                int k = 3 * p.getHandle();
+                height[i] = position[k] * nx + position[k + 1] * ny + position[k + 2] * nz - level;
+            } else {
+                Vector3 v = p.getPosition();
+                height[i] = v.getX() * nx + v.getY() * ny + v.getZ() * nz - level;
+            }
+        }
+
+        // Pack the particles below the plane. Every index is written, but
+        // the end of the list only moves on for the ones below.
+        int found = 0;
+        for (int i = 0; i < count; i++) {
+            below[found] = i;
+            found += height[i] < 0 ? 1 : 0;
+        }
+
+        int used = Math.min(found, limit);
+        for (int k = 0; k < used; k++) {
+            int i = below[k];
+            ParticleContact c = contact[offset + k];
+            c.setContactNormal(normal);
+            c.getParticle()[0] = particles[i];
+            c.getParticle()[1] = null;
+            c.setPenetration(-height[i]);
+            c.setRestitution(restitution);
+        }
+        return used;
+    }
+}
@@ -1,13 +1,21 @@
 package br.law123.particle.world;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import br.law123.core.AdaptiveIterationController;
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
 import br.law123.forcegenerator.ParticleForceRegistry;
+import br.law123.forcegenerator.field.ForceField;
 import br.law123.particle.Particle;
+import br.law123.particle.ParticleSystem;
+import br.law123.particle.contact.BoundedParticleContactGenerator;
 import br.law123.particle.contact.ParticleContact;
 import br.law123.particle.contact.ParticleContactGenerator;
 import br.law123.particle.contact.ParticleContactResolver;
+import br.law123.particle.links.ParticleLinkSolver;
 
 /**
  * Keeps track of a set of particles, and provides the means to
@@ -20,17 +28,55 @@ public class ParticleWorld {
      */
     private List<Particle> particles = new ArrayList<Particle>();
 
+    /**
+     * Holds the system whose particles are integrated in bulk, or null
+     * if every particle is integrated on its own.
+     */
+    private ParticleSystem particleSystem;
+
     /**
      * True if the world should calculate the number of iterations
      * to give the contact resolver at each frame.
      */
     private boolean calculateIterations;
 
+    /**
+     * Holds the controller that chooses the number of iterations when
+     * the world calculates them, or null to use twice the number of
+     * contacts.
+     */
+    private AdaptiveIterationController iterationController;
+
     /**
      * Holds the force generators for the particles in this world.
      */
     private ParticleForceRegistry registry = new ParticleForceRegistry();
 
+    /**
+     * Holds the force stages, run after the force registry.
+     */
+    private List<ParticleForceStage> forceStages = new ArrayList<ParticleForceStage>();
+
+    /**
+     * Holds the force fields, which act on every particle.
+     */
+    private List<ForceField> forceFields = new ArrayList<ForceField>();
+
+    /**
+     * Holds the state of the particles outside the particle system the
+     * force fields act on, and the forces of the fields, three values
+     * per particle.
+     */
+    private Particle[] fieldParticles = new Particle[16];
+
+    private double[] fieldPosition = new double[48];
+
+    private double[] fieldVelocity = new double[48];
+
+    private double[] fieldInverseMass = new double[16];
+
+    private double[] fieldForce = new double[48];
+
     /**
      * Holds the resolver for contacts.
      */
@@ -52,6 +98,91 @@ public class ParticleWorld {
      */
     private int maxContacts;
 
+    /**
+     * Holds the solver that enforces links directly, or null if links
+     * generate contacts like any other generator.
+     */
+    private ParticleLinkSolver linkSolver;
+
+    /**
+     * Holds the worker threads used to integrate the particles and
+     * resolve contacts in parallel, or null to do it on the calling
+     * thread.
+     */
+    private WorkerPool workerPool;
+
+    /**
+     * Holds the worker threads the force generators, force fields and
+     * force stages are run on, and the ones the contact generators are
+     * run on, or null to run them on the calling thread.
+     */
+    private WorkerPool forceWorkerPool;
+
+    private WorkerPool contactWorkerPool;
+
+    /**
+     * True if contacts generated in parallel must come out in exactly
+     * the order the serial step gives them.
+     */
+    private boolean deterministic;
+
+    /**
+     * Holds, for each contact generator, the start and size of its
+     * slice of the contact array, and the number of contacts it wrote,
+     * when generating contacts in parallel.
+     */
+    private int[] sliceStart = new int[0];
+
+    private int[] sliceSize = new int[0];
+
+    private int[] sliceUsed = new int[0];
+
+    /**
+     * Holds the duration of the step being run on the pool.
+     */
+    private double taskDuration;
+
+    /**
+     * Holds the tasks run on the pool.
+     */
+    private final WorkerPool.RangeTask systemTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            particleSystem.integrate(from, to, taskDuration);
+        }
+    };
+
+    private final WorkerPool.RangeTask fieldTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            applyForceFields(particleSystem, from, to);
+        }
+    };
+
+    private final WorkerPool.RangeTask particleTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int i = from; i < to; i++) {
+                Particle p = particles.get(i);
+                if (particleSystem != null && p.getSystem() == particleSystem) continue;
+                p.integrate(taskDuration);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask generatorTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int g = from; g < to; g++) {
+                sliceUsed[g] = sliceSize[g] > 0 ? contactGenerators.get(g).addContact(contacts, sliceStart[g], sliceSize[g]) : 0;
+            }
+        }
+    };
+
     /**
      * Creates a new particle simulator that can handle up to the
      * given number of contacts per frame. You can also optionally
@@ -85,6 +216,7 @@ public class ParticleWorld {
         //ParticleContact nextContact = contacts[i];
 
         for (ParticleContactGenerator g : contactGenerators) {
+            if (isSolved(g)) continue;
             int used = g.addContact(contacts, i, limit);
             limit -= used;
 
@@ -100,13 +232,129 @@ public class ParticleWorld {
         return maxContacts - limit;
     }
 
+    /**
+     * Calls the registered contact generators on the threads of the
+     * contact worker pool, each into its own slice of the contact array, and
+     * then packs the slices together in the order of the generators.
+     * Returns the number of generated contacts.
+     *
+     * Generators that say how many contacts they can write get a slice
+     * of that size; the rest of the array is shared evenly between the
+     * others. The slices only depend on the generators, never on the
+     * number of threads, so the result is the same for any pool. When a
+     * generator fills its slice it may have had more contacts to give:
+     * such generators are run again on the calling thread, into the
+     * space left at the end. If the world is deterministic, the whole
+     * generation is run again on the calling thread instead, so the
+     * contacts come out in the serial order.
+     *
+     * Contact generators run this way must not change any state they
+     * share with other generators.
+     */
+    public int generateContactsParallel() {
+        int count = contactGenerators.size();
+        if (contactWorkerPool == null || contactWorkerPool.getThreadCount() == 1 || count <= 1) {
+            return generateContacts();
+        }
+        if (sliceStart.length < count) {
+            sliceStart = new int[count];
+            sliceSize = new int[count];
+            sliceUsed = new int[count];
+        }
+
+        // Reserve the slices of the generators that know their size,
+        // then share what is left between the others.
+        int free = maxContacts;
+        int unbounded = 0;
+        for (int g = 0; g < count; g++) {
+            ParticleContactGenerator gen = contactGenerators.get(g);
+            if (isSolved(gen)) {
+                sliceSize[g] = 0;
+            } else if (gen instanceof BoundedParticleContactGenerator) {
+                sliceSize[g] = Math.min(free, ((BoundedParticleContactGenerator) gen).getMaxContacts());
+                free -= sliceSize[g];
+            } else {
+                sliceSize[g] = -1;
+                unbounded++;
+            }
+        }
+        int start = 0;
+        int share = 0;
+        for (int g = 0; g < count; g++) {
+            if (sliceSize[g] < 0) {
+                sliceSize[g] = free / unbounded + (share++ < free % unbounded ? 1 : 0);
+            }
+            sliceStart[g] = start;
+            start += sliceSize[g];
+        }
+
+        contactWorkerPool.run(count, 16, generatorTask);
+
+        // Pack the slices to the front of the array. Contacts are
+        // swapped rather than copied, so the array keeps one of each.
+        boolean truncated = false;
+        int used = 0;
+        for (int g = 0; g < count; g++) {
+            if (isTruncated(g)) {
+                truncated = true;
+                continue;
+            }
+            for (int k = sliceStart[g]; k < sliceStart[g] + sliceUsed[g]; k++, used++) {
+                ParticleContact contact = contacts[used];
+                contacts[used] = contacts[k];
+                contacts[k] = contact;
+            }
+        }
+        if (!truncated) return used;
+        if (deterministic) return generateContacts();
+
+        for (int g = 0; g < count && used < maxContacts; g++) {
+            if (isTruncated(g)) {
+                used += contactGenerators.get(g).addContact(contacts, used, maxContacts - used);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * Returns true if the given generator filled its slice without
+     * being sure it had nothing more to give.
+     */
+    private boolean isTruncated(int g) {
+        if (sliceUsed[g] < sliceSize[g]) return false;
+        ParticleContactGenerator gen = contactGenerators.get(g);
+        if (isSolved(gen)) return false;
+        return !(gen instanceof BoundedParticleContactGenerator) || sliceSize[g] < ((BoundedParticleContactGenerator) gen).getMaxContacts();
+    }
+
+    /**
+     * Returns true if the given generator is enforced by the link
+     * solver rather than by contacts.
+     */
+    private boolean isSolved(ParticleContactGenerator generator) {
+        return linkSolver != null && linkSolver.handles(generator);
+    }
+
     /**
      * Integrates all the particles in this world forward in time
      * by the given duration.
      */
     public void integrate(double duration) {
+        if (workerPool != null && workerPool.getThreadCount() > 1) {
+            taskDuration = duration;
+            if (particleSystem != null) {
+                workerPool.run(particleSystem.getSize(), 1024, systemTask);
+            }
+            workerPool.run(particles.size(), 256, particleTask);
+            return;
+        }
+
+        if (particleSystem != null) {
+            particleSystem.integrate(duration);
+        }
         for (Particle p : particles) {
-            // Remove all forces from the accumulator
+            // Particles of the system have already been integrated.
+            if (particleSystem != null && p.getSystem() == particleSystem) continue;
             p.integrate(duration);
         }
     }
@@ -116,19 +364,220 @@ public class ParticleWorld {
      */
     public void runPhysics(double duration) {
         // First apply the force generators
-        registry.updateForces(duration);
+        registry.updateForces(duration, forceWorkerPool);
+        applyForceFields();
+        for (ParticleForceStage stage : forceStages) {
+            stage.updateForces(duration, forceWorkerPool);
+        }
 
-        // Then integrate the objects
+        // Then integrate the objects, letting the link solver replace
+        // the motion of the linked particles with its own.
+        if (linkSolver != null) linkSolver.startStep(contactGenerators);
         integrate(duration);
+        if (linkSolver != null) linkSolver.integrateAndSolve(duration);
 
         // Generate contacts
-        int usedContacts = generateContacts();
+        int usedContacts = generateContactsParallel();
 
         // And process them
         if (usedContacts > 0) {
-            if (calculateIterations) resolver.setIterations(usedContacts * 2);
+            int iterations = usedContacts * 2;
+            if (calculateIterations) {
+                if (iterationController != null) iterations = iterationController.getIterations(this, usedContacts);
+                resolver.setIterations(iterations);
+            }
             resolver.resolveContacts(contacts, usedContacts, duration);
+            if (calculateIterations && iterationController != null) {
+                iterationController.record(this, usedContacts, resolver.getIterationsUsed(), iterations);
+            }
         }
+        if (iterationController != null) iterationController.endFrame();
+    }
+
+    /**
+     * Applies the force fields to every particle, one field at a time
+     * over the arrays of the particle system, and over copies of the
+     * state of the particles outside it.
+     */
+    private void applyForceFields() {
+        if (forceFields.isEmpty()) return;
+
+        if (particleSystem != null) {
+            if (forceWorkerPool != null && forceWorkerPool.getThreadCount() > 1) {
+                forceWorkerPool.run(particleSystem.getSize(), 1024, fieldTask);
+            } else {
+                applyForceFields(particleSystem, 0, particleSystem.getSize());
+            }
+        }
+
+        int count = 0;
+        for (Particle p : particles) {
+            if (particleSystem != null && p.getSystem() == particleSystem) continue;
+            if (count == fieldParticles.length) growFieldBuffers();
+            fieldParticles[count] = p;
+            Vector3 position = p.getPosition();
+            Vector3 velocity = p.getVelocity();
+            int k = 3 * count;
+            fieldPosition[k] = position.getX();
+            fieldPosition[k + 1] = position.getY();
+            fieldPosition[k + 2] = position.getZ();
+            fieldVelocity[k] = velocity.getX();
+            fieldVelocity[k + 1] = velocity.getY();
+            fieldVelocity[k + 2] = velocity.getZ();
+            fieldInverseMass[count] = p.getInverseMass();
+            fieldForce[k] = 0;
+            fieldForce[k + 1] = 0;
+            fieldForce[k + 2] = 0;
+            count++;
+        }
+        if (count == 0) return;
+
+        for (ForceField field : forceFields) {
+            field.apply(fieldPosition, fieldVelocity, fieldInverseMass, fieldForce, 0, count);
+        }
+        for (int i = 0; i < count; i++) {
+            fieldParticles[i].addForce(fieldForce[3 * i], fieldForce[3 * i + 1], fieldForce[3 * i + 2]);
+            fieldParticles[i] = null;
+        }
+    }
+
+    /**
+     * Applies the force fields to the given range of particles of the
+     * given system, straight on its arrays.
+     */
+    private void applyForceFields(ParticleSystem system, int from, int to) {
+        for (ForceField field : forceFields) {
+            field.apply(system.getPositions(), system.getVelocities(), system.getInverseMasses(), system.getForceAccums(), from, to);
+        }
+    }
+
+    private void growFieldBuffers() {
+        int capacity = 2 * fieldParticles.length;
+        fieldParticles = Arrays.copyOf(fieldParticles, capacity);
+        fieldPosition = Arrays.copyOf(fieldPosition, 3 * capacity);
+        fieldVelocity = Arrays.copyOf(fieldVelocity, 3 * capacity);
+        fieldInverseMass = Arrays.copyOf(fieldInverseMass, capacity);
+        fieldForce = Arrays.copyOf(fieldForce, 3 * capacity);
+    }
+
+    /**
+     * Sets the solver that enforces links directly, such as an
+     * XpbdLinkSolver, or null to let links generate contacts for the
+     * contact resolver. Contact generators the solver handles are kept in
+     * the list of contact generators, but no longer asked for contacts.
+     */
+    public void setLinkSolver(ParticleLinkSolver linkSolver) {
+        this.linkSolver = linkSolver;
+    }
+
+    /**
+     * Gets the solver that enforces links directly, if any.
+     */
+    public ParticleLinkSolver getLinkSolver() {
+        return linkSolver;
+    }
+
+    /**
+     * Sets the worker threads used to integrate the particles in
+     * parallel, or null to integrate them on the calling thread. The
+     * resolver also uses the pool when it is in Jacobi mode. Integration
+     * gives exactly the same results as the serial step on any number
+     * of threads. Forces and contacts are only generated on threads when
+     * a pool is given to setForceWorkerPool or setContactWorkerPool.
+     */
+    public void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+        resolver.setWorkerPool(workerPool);
+    }
+
+    /**
+     * Gets the worker threads used to integrate the particles, if any.
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Sets the worker threads used to run the force generators, force
+     * fields and force stages, or null to run them on the calling
+     * thread, which is the default. The forces are exactly the same as
+     * from the serial step.
+     *
+     * Only do this when every registered generator can run on several
+     * threads at once: see
+     * {@link br.law123.forcegenerator.ParticleForceRegistry#updateForces(double, WorkerPool)}.
+     * ParticleGravity, ParticleDrag, ParticleBuoyancy,
+     * ParticleAnchoredSpring, ParticleAnchoredBungee and
+     * ParticleFakeSpring only read the particle they act on, and are
+     * safe. ParticleSpring and ParticleBungee read the particle at their
+     * other end, which is only safe if it isn't a particle of a
+     * ParticleSystem: reading the state of such a particle writes it
+     * into the particle's own vectors. The force fields and stages in
+     * the library share their work out themselves and are safe.
+     */
+    public void setForceWorkerPool(WorkerPool forceWorkerPool) {
+        this.forceWorkerPool = forceWorkerPool;
+    }
+
+    public WorkerPool getForceWorkerPool() {
+        return forceWorkerPool;
+    }
+
+    /**
+     * Sets the worker threads used to run the contact generators, or
+     * null to run them on the calling thread, which is the default. Only
+     * do this when no generator changes state that another one reads or
+     * changes, counting reads of particles of a ParticleSystem as
+     * changes; see {@link #generateContactsParallel()}.
+     */
+    public void setContactWorkerPool(WorkerPool contactWorkerPool) {
+        this.contactWorkerPool = contactWorkerPool;
+    }
+
+    public WorkerPool getContactWorkerPool() {
+        return contactWorkerPool;
+    }
+
+    /**
+     * Sets whether contacts generated in parallel must come out in
+     * exactly the order of the serial step, even when a generator
+     * overflows its slice.
+     */
+    public void setDeterministic(boolean deterministic) {
+        this.deterministic = deterministic;
+    }
+
+    /**
+     * Returns true if contacts generated in parallel always come out
+     * in the order of the serial step.
+     */
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
+    /**
+     * Sets the controller that chooses the number of resolver iterations
+     * from the iterations needed in earlier frames. It is only used when
+     * the world was created without a fixed number of iterations. Pass
+     * null to go back to twice the number of contacts.
+     */
+    public void setIterationController(AdaptiveIterationController iterationController) {
+        this.iterationController = iterationController;
+    }
+
+    /**
+     * Gets the controller that chooses the number of resolver
+     * iterations, if any.
+     */
+    public AdaptiveIterationController getIterationController() {
+        return iterationController;
+    }
+
+    /**
+     * Returns the contact resolver.
+     */
+    public ParticleContactResolver getResolver() {
+        return resolver;
     }
 
     /**
@@ -138,12 +587,34 @@ public class ParticleWorld {
      * frame added.
      */
     public void startFrame() {
+        if (particleSystem != null) {
+            particleSystem.clearAccumulators();
+        }
         for (Particle p : particles) {
+            if (particleSystem != null && p.getSystem() == particleSystem) continue;
             // Remove all forces from the accumulator
             p.clearAccumulator();
         }
     }
 
+    /**
+     * Sets the system whose particles are integrated in bulk. Every
+     * particle of the system is integrated, whether or not it is in the
+     * list of particles; views onto the system's particles only need to
+     * be in the list if contact generators or force generators use it.
+     * Pass null to integrate every particle of the list on its own.
+     */
+    public void setParticleSystem(ParticleSystem particleSystem) {
+        this.particleSystem = particleSystem;
+    }
+
+    /**
+     * Gets the system whose particles are integrated in bulk, if any.
+     */
+    public ParticleSystem getParticleSystem() {
+        return particleSystem;
+    }
+
     /**
      * Returns the list of particles.
      */
@@ -168,4 +639,20 @@ public class ParticleWorld {
     public ParticleForceRegistry getForceRegistry() {
         return registry;
     }
+
+    /**
+     * Returns the list of force stages, which are run in order after the
+     * force registry.
+     */
+    public List<ParticleForceStage> getForceStages() {
+        return forceStages;
+    }
+
+    /**
+     * Returns the list of force fields, which act on every particle after
+     * the force registry has run and before the force stages.
+     */
+    public List<ForceField> getForceFields() {
+        return forceFields;
+    }
 }
@@ -12,6 +12,12 @@ import br.law123.core.Vector3;
 public class Random {
 
     static private int init_seed = 0;
+
+    /**
+     * Source of the real numbers, kept so that drawing one doesn't
+     * create a new generator.
+     */
+    private final java.util.Random real = new java.util.Random();
     
     /**
      * left bitwise rotation
@@ -86,7 +92,7 @@ public class Random {
      * Returns a random floating point number between 0 and 1.
      */
     public float randomReal() {
-        return new java.util.Random().nextFloat();
+        return real.nextFloat();
     }
 
     /**
@@ -0,0 +1,229 @@
+package br.law123.rigidbody;
+
+import java.util.Arrays;
+
+/**
+ * Collects the forces and torques that force generators add to rigid
+ * bodies while they run on several threads, and adds them to the bodies
+ * afterwards, in an order that doesn't depend on the threads.
+ *
+ * The work is cut into a fixed number of partitions, and each partition
+ * has a buffer of its own, with room for a force and a torque for every
+ * bound body. While a thread works on a partition, every force or
+ * torque it adds to a bound body goes to that partition's buffer rather
+ * than to the body, so threads never write to the same place. reduce()
+ * then adds the buffers up, one partition after another, and adds the
+ * totals to the bodies, waking every body that was given a force. As
+ * long as the partitions get the same work, the bodies get exactly the
+ * same forces however many threads there are.
+ *
+ * A body can be bound to one accumulator at a time. Adding a force to a
+ * body that isn't bound while a partition is open is an error.
+ */
+public class ForceAccumulator {
+
+    /**
+     * Holds the buffer of one partition: a force and a torque for each
+     * body, and the bodies given a force, in the order they were first
+     * given one.
+     */
+    private static final class Stripe {
+
+        final ForceAccumulator owner;
+
+        double[] values = new double[0];
+
+        boolean[] touched = new boolean[0];
+
+        int[] touchedList = new int[0];
+
+        int touchedCount;
+
+        Stripe(ForceAccumulator owner) {
+            this.owner = owner;
+        }
+
+        void ensure(int bodies) {
+            if (touched.length >= bodies) return;
+            values = Arrays.copyOf(values, 6 * bodies);
+            touched = Arrays.copyOf(touched, bodies);
+            touchedList = Arrays.copyOf(touchedList, bodies);
+        }
+    }
+
+    /**
+     * Holds the partition open on each thread, if any.
+     */
+    private static final ThreadLocal<Stripe> CURRENT = new ThreadLocal<Stripe>();
+
+    /**
+     * Holds the number of partitions open on any thread, so bodies only
+     * look for one while some are.
+     */
+    private static volatile int openCount;
+
+    /**
+     * Holds the bound bodies, by the index they were bound at.
+     */
+    private RigidBody[] bodies = new RigidBody[16];
+
+    private int bodyCount;
+
+    /**
+     * Holds the buffer of each partition.
+     */
+    private Stripe[] stripes = new Stripe[0];
+
+    /**
+     * Holds the totals of the bodies given a force, as they are added up.
+     */
+    private double[] totals = new double[0];
+
+    private boolean[] reduced = new boolean[0];
+
+    private int[] reducedList = new int[0];
+
+    /**
+     * Binds the given body to this accumulator, unbinding it from any
+     * other. Binding a body twice has no effect.
+     */
+    public void bind(RigidBody body) {
+        if (body.accumulator == this) return;
+        if (bodyCount == bodies.length) bodies = Arrays.copyOf(bodies, 2 * bodyCount);
+        bodies[bodyCount] = body;
+        body.accumulator = this;
+        body.accumulatorIndex = bodyCount++;
+    }
+
+    /**
+     * Unbinds all the bodies bound to this accumulator.
+     */
+    public void unbindAll() {
+        for (int i = 0; i < bodyCount; i++) {
+            if (bodies[i].accumulator == this) bodies[i].accumulator = null;
+            bodies[i] = null;
+        }
+        bodyCount = 0;
+    }
+
+    /**
+     * Returns true if the given body is bound to this accumulator.
+     */
+    public boolean isBound(RigidBody body) {
+        return body.accumulator == this;
+    }
+
+    public int getBodyCount() {
+        return bodyCount;
+    }
+
+    /**
+     * Makes room for the given number of partitions, with buffers for
+     * all the bodies bound so far. Call this before opening any
+     * partition.
+     */
+    public void prepare(int partitions) {
+        if (stripes.length < partitions) {
+            int old = stripes.length;
+            stripes = Arrays.copyOf(stripes, partitions);
+            for (int p = old; p < partitions; p++) {
+                stripes[p] = new Stripe(this);
+            }
+        }
+        for (Stripe stripe : stripes) {
+            stripe.ensure(bodyCount);
+        }
+        if (reduced.length < bodyCount) {
+            totals = new double[6 * bodyCount];
+            reduced = new boolean[bodyCount];
+            reducedList = new int[bodyCount];
+        }
+    }
+
+    /**
+     * Opens the given partition on the calling thread, so forces added
+     * to bound bodies from this thread go to its buffer, until close()
+     * is called.
+     */
+    public void open(int partition) {
+        CURRENT.set(stripes[partition]);
+        synchronized (ForceAccumulator.class) {
+            openCount++;
+        }
+    }
+
+    /**
+     * Closes the partition open on the calling thread.
+     */
+    public void close() {
+        CURRENT.remove();
+        synchronized (ForceAccumulator.class) {
+            openCount--;
+        }
+    }
+
+    /**
+     * Adds the buffers of the first given number of partitions to the
+     * bodies, in partition order, and clears them. Call this on one
+     * thread, once no partition is open.
+     */
+    public void reduce(int partitions) {
+        int count = 0;
+        for (int p = 0; p < partitions; p++) {
+            Stripe stripe = stripes[p];
+            double[] values = stripe.values;
+            for (int k = 0; k < stripe.touchedCount; k++) {
+                int b = stripe.touchedList[k];
+                int v = 6 * b;
+                if (!reduced[b]) {
+                    reduced[b] = true;
+                    reducedList[count++] = b;
+                    System.arraycopy(values, v, totals, v, 6);
+                } else {
+                    for (int c = 0; c < 6; c++) {
+                        totals[v + c] += values[v + c];
+                    }
+                }
+                Arrays.fill(values, v, v + 6, 0);
+                stripe.touched[b] = false;
+            }
+            stripe.touchedCount = 0;
+        }
+
+        for (int k = 0; k < count; k++) {
+            int b = reducedList[k];
+            int v = 6 * b;
+            RigidBody body = bodies[b];
+            body.addForce(totals[v], totals[v + 1], totals[v + 2]);
+            body.addTorque(totals[v + 3], totals[v + 4], totals[v + 5]);
+            reduced[b] = false;
+        }
+    }
+
+    /**
+     * Adds the given force and torque to the buffer of the partition
+     * open on the calling thread, if there is one, and returns true.
+     * Returns false if the force should go straight to the body.
+     */
+    static boolean collect(RigidBody body, double fx, double fy, double fz, double tx, double ty, double tz) {
+        if (openCount == 0) return false;
+        Stripe stripe = CURRENT.get();
+        if (stripe == null) return false;
+        if (body.accumulator != stripe.owner) throw new IllegalStateException("A force was added to a body that isn't bound to the force accumulator");
+
+        int b = body.accumulatorIndex;
+        if (!stripe.touched[b]) {
+            stripe.touched[b] = true;
+            stripe.touchedList[stripe.touchedCount++] = b;
+        }
+        double[] values = stripe.values;
+        int v = 6 * b;
+        values[v] += fx;
+        values[v + 1] += fy;
+        values[v + 2] += fz;
+        values[v + 3] += tx;
+        values[v + 4] += ty;
+        values[v + 5] += tz;
+        return true;
+    }
+}
@@ -7,6 +7,7 @@ import br.law123.core.Matrix3;
 import br.law123.core.Matrix4;
 import br.law123.core.Quaternion;
 import br.law123.core.Vector3;
+import br.law123.rigidbody.world.Island;
 
 /**
  * A rigid body is the basic simulation object in the physics core.
@@ -146,6 +147,26 @@ public class RigidBody {
      */
     private boolean canSleep = true;
 
+    /**
+     * Holds the island the body belonged to at the last island update, or
+     * null if the body is not managed by a world. Bodies in an island are not
+     * put to sleep individually: the island decides for all of its bodies
+     * together.
+     * 
+     * @see br.law123.rigidbody.world.IslandManager
+     */
+    private Island island;
+
+    /**
+     * Holds the force accumulator the body is bound to, if any, and the
+     * index it was bound at.
+     * 
+     * @see ForceAccumulator
+     */
+    ForceAccumulator accumulator;
+
+    int accumulatorIndex;
+
     /**
      * Holds a transform matrix for converting body space into world space and
      * vice versa. This can be achieved by calling the getPointIn*Space
@@ -286,8 +307,10 @@ public class RigidBody {
             motion = bias * motion + (1 - bias) * currentMotion;
 
             double sleepEpsilon = Core.get().getSleepEpsilon();
-            if (motion < sleepEpsilon) setAwake(false);
-            else if (motion > 10 * sleepEpsilon) motion = 10 * sleepEpsilon;
+            if (motion < sleepEpsilon) {
+                // Islands put their bodies to sleep as a whole.
+                if (island == null) setAwake(false);
+            } else if (motion > 10 * sleepEpsilon) motion = 10 * sleepEpsilon;
         }
     }
 
@@ -1041,6 +1064,52 @@ public class RigidBody {
         if (!canSleep && !isAwake) setAwake();
     }
 
+    /**
+     * Gets the recency weighted mean of the body's motion, as used to
+     * decide whether it can be put to sleep.
+     */
+    public double getMotion() {
+        return motion;
+    }
+
+    /**
+     * Returns true if the body is allowed to sleep and its motion has
+     * dropped below the global sleep epsilon. Bodies that are already
+     * asleep are always ready to sleep.
+     */
+    public boolean isReadyToSleep() {
+        if (!isAwake) return true;
+        return canSleep && motion < Core.get().getSleepEpsilon();
+    }
+
+    /**
+     * Gets the island the body was assigned to by the last island
+     * update, or null if it isn't managed by islands.
+     */
+    public Island getIsland() {
+        return island;
+    }
+
+    /**
+     * Sets the island of the body. This is called by the island manager
+     * and shouldn't normally need to be called manually.
+     */
+    public void setIsland(Island island) {
+        this.island = island;
+    }
+
+    /**
+     * Wakes the body up, together with every other body in its island if
+     * the island is sleeping.
+     */
+    public void wakeIsland() {
+        if (island != null && island.isSleeping()) {
+            island.setAwake();
+        } else {
+            setAwake();
+        }
+    }
+
     /* @} */
 
     /**
@@ -1109,10 +1178,23 @@ public class RigidBody {
      *            The force to apply.
      */
     public void addForce(Vector3 force) {
+        if (ForceAccumulator.collect(this, force.getX(), force.getY(), force.getZ(), 0, 0, 0)) return;
         forceAccum.sumToMe(force);
         isAwake = true;
     }
 
+    /**
+     * Adds the given force, given by component in world coordinates, to
+     * the centre of mass of the rigid body.
+     */
+    public void addForce(double x, double y, double z) {
+        if (ForceAccumulator.collect(this, x, y, z, 0, 0, 0)) return;
+        forceAccum.setX(forceAccum.getX() + x);
+        forceAccum.setY(forceAccum.getY() + y);
+        forceAccum.setZ(forceAccum.getZ() + z);
+        isAwake = true;
+    }
+
     /**
      * Adds the given force to the given point on the rigid body. Both the force
      * and the application point are given in world space. Because the force is
@@ -1127,12 +1209,17 @@ public class RigidBody {
      *            world-coordinates.
      */
     public void addForceAtPoint(Vector3 force, Vector3 point) {
-        // Convert to coordinates relative to center of mass.
-        Vector3 pt = point;
-        pt.subToMe(position);
+        // Convert to coordinates relative to center of mass, leaving the
+        // given point as it is, and take the torque about it.
+        double rx = point.getX() - position.getX(), ry = point.getY() - position.getY(), rz = point.getZ() - position.getZ();
+        double fx = force.getX(), fy = force.getY(), fz = force.getZ();
+        double tx = ry * fz - rz * fy, ty = rz * fx - rx * fz, tz = rx * fy - ry * fx;
+        if (ForceAccumulator.collect(this, fx, fy, fz, tx, ty, tz)) return;
 
         forceAccum.sumToMe(force);
-        torqueAccum.sumToMe(pt.rest(force));
+        torqueAccum.setX(torqueAccum.getX() + tx);
+        torqueAccum.setY(torqueAccum.getY() + ty);
+        torqueAccum.setZ(torqueAccum.getZ() + tz);
 
         isAwake = true;
     }
@@ -1164,10 +1251,23 @@ public class RigidBody {
      *            The torque to apply.
      */
     public void addTorque(Vector3 torque) {
+        if (ForceAccumulator.collect(this, 0, 0, 0, torque.getX(), torque.getY(), torque.getZ())) return;
         torqueAccum.sumToMe(torque);
         isAwake = true;
     }
 
+    /**
+     * Adds the given torque, given by component in world coordinates, to
+     * the rigid body.
+     */
+    public void addTorque(double x, double y, double z) {
+        if (ForceAccumulator.collect(this, 0, 0, 0, x, y, z)) return;
+        torqueAccum.setX(torqueAccum.getX() + x);
+        torqueAccum.setY(torqueAccum.getY() + y);
+        torqueAccum.setZ(torqueAccum.getZ() + z);
+        isAwake = true;
+    }
+
     /**
      * Sets the ant acceleration of the rigid body.
      * 
@@ -87,7 +87,7 @@ public class Contact {
      * Holds the closing velocity at the point of contact. This is set
      * when the calculateInternals function is run.
      */
-    protected Vector3 contactVelocity;
+    protected Vector3 contactVelocity = new Vector3();
 
     /**
      * Holds the required change in velocity for this contact to be
@@ -100,7 +100,7 @@ public class Contact {
      * centre of each body. This is set when the calculateInternals
      * function is run.
      */
-    protected Vector3[] relativeContactPosition = new Vector3[2];
+    protected Vector3[] relativeContactPosition = { new Vector3(), new Vector3() };
 
     public RigidBody[] getBody() {
         return body;
@@ -166,24 +166,28 @@ public class Contact {
      * the resolution algorithm tries to do any resolution. It should
      * never need to be called manually.
      */
-    protected void calculateInternals(double duration) {
+    protected void calculateInternals(double duration, ContactScratch scratch) {
         // Check if the first object is NULL, and swap if it is.
         if (body[0] == null) swapBodies();
         assert (body[0] != null);
 
         // Calculate an set of axis at the contact point.
-        calculateContactBasis();
+        calculateContactBasis(scratch);
 
         // Store the relative position of the contact relative to each body
-        relativeContactPosition[0] = contactPoint.sub(body[0].getPosition());
+        relativeContactPosition[0].set(contactPoint);
+        relativeContactPosition[0].subToMe(body[0].getPosition());
         if (body[1] != null) {
-            relativeContactPosition[1] = contactPoint.sub(body[1].getPosition());
+            relativeContactPosition[1].set(contactPoint);
+            relativeContactPosition[1].subToMe(body[1].getPosition());
         }
 
         // Find the relative velocity of the bodies at the contact point.
-        contactVelocity = calculateLocalVelocity(0, duration);
+        calculateLocalVelocity(0, duration, contactVelocity, scratch);
         if (body[1] != null) {
-            contactVelocity.subToMe(calculateLocalVelocity(1, duration));
+            Vector3 otherVelocity = scratch.otherVector;
+            calculateLocalVelocity(1, duration, otherVelocity, scratch);
+            contactVelocity.subToMe(otherVelocity);
         }
 
         // Calculate the desired change in velocity for resolution
@@ -221,13 +225,46 @@ public class Contact {
         boolean body0awake = body[0].getAwake();
         boolean body1awake = body[1].getAwake();
 
-        // Wake up only the sleeping one
+        // Wake up only the sleeping one, along with its island
         if (body0awake ^ body1awake) {
-            if (body0awake) body[1].setAwake();
-            else body[0].setAwake();
+            if (body0awake) body[1].wakeIsland();
+            else body[0].wakeIsland();
         }
     }
 
+    /**
+     * Updates the contact velocity after one of the bodies of this
+     * contact had its velocity and rotation changed by the resolution
+     * of another contact.
+     */
+    protected void updateVelocity(int bodyIndex, Vector3 velocityChange, Vector3 rotationChange, double duration, ContactScratch scratch) {
+        Vector3 deltaVel = scratch.vector;
+        deltaVel.setVectorProduct(rotationChange, relativeContactPosition[bodyIndex]);
+        deltaVel.sumToMe(velocityChange);
+        contactToWorld.transformTranspose(deltaVel, deltaVel);
+
+        // The sign of the change is negative if we're dealing
+        // with the second body in a contact.
+        contactVelocity.addScaledVector(deltaVel, bodyIndex == 1 ? -1 : 1);
+        calculateDesiredDeltaVelocity(duration);
+    }
+
+    /**
+     * Updates the penetration after one of the bodies of this contact
+     * was moved by the resolution of another contact.
+     */
+    protected void updatePenetration(int bodyIndex, Vector3 linearChange, Vector3 angularChange, ContactScratch scratch) {
+        Vector3 deltaPosition = scratch.vector;
+        deltaPosition.setVectorProduct(angularChange, relativeContactPosition[bodyIndex]);
+        deltaPosition.sumToMe(linearChange);
+
+        // The sign of the change is positive if we're
+        // dealing with the second body in a contact
+        // and negative otherwise (because we're
+        // subtracting the resolution)..
+        penetration += deltaPosition.scalarProduct(contactNormal) * (bodyIndex == 1 ? 1 : -1);
+    }
+
     /**
      * Calculates and sets the internal value for the desired delta
      * velocity.
@@ -238,11 +275,11 @@ public class Contact {
         double velocityFromAcc = 0;
 
         if (body[0].getAwake()) {
-            velocityFromAcc += body[0].getLastFrameAcceleration().mult(duration).mult(contactNormal);
+            velocityFromAcc += body[0].getLastFrameAcceleration().scalarProduct(contactNormal) * duration;
         }
 
         if (body[1] != null && body[1].getAwake()) {
-            velocityFromAcc -= body[1].getLastFrameAcceleration().mult(duration).mult(contactNormal);
+            velocityFromAcc -= body[1].getLastFrameAcceleration().scalarProduct(contactNormal) * duration;
         }
 
         // If the velocity is very slow, limit the restitution
@@ -257,25 +294,28 @@ public class Contact {
     }
 
     /**
-     * Calculates and returns the velocity of the contact
-     * point on the given body.
+     * Calculates the velocity of the contact point on the given body,
+     * in contact coordinates, and stores it in the given result vector.
      */
-    protected Vector3 calculateLocalVelocity(int bodyIndex, double duration) {
+    protected void calculateLocalVelocity(int bodyIndex, double duration, Vector3 result, ContactScratch scratch) {
         RigidBody thisBody = body[bodyIndex];
 
         // Work out the velocity of the contact point.
-        Vector3 velocity = thisBody.getRotation().rest(relativeContactPosition[bodyIndex]);
+        Vector3 velocity = scratch.vector;
+        velocity.setVectorProduct(thisBody.getRotation(), relativeContactPosition[bodyIndex]);
         velocity.sumToMe(thisBody.getVelocity());
 
         // Turn the velocity into contact-coordinates.
-        Vector3 contactVelocity = contactToWorld.transformTranspose(velocity);
+        contactToWorld.transformTranspose(velocity, result);
 
         // Calculate the ammount of velocity that is due to forces without
         // reactions.
-        Vector3 accVelocity = thisBody.getLastFrameAcceleration().mult(duration);
+        Vector3 accVelocity = scratch.vector;
+        accVelocity.set(thisBody.getLastFrameAcceleration());
+        accVelocity.multToMe(duration);
 
         // Calculate the velocity in contact-coordinates.
-        accVelocity = contactToWorld.transformTranspose(accVelocity);
+        contactToWorld.transformTranspose(accVelocity, accVelocity);
 
         // We ignore any component of acceleration in the contact normal
         // direction, we are only interested in planar acceleration
@@ -283,10 +323,7 @@ public class Contact {
 
         // Add the planar velocities - if there's enough friction they will
         // be removed during velocity resolution
-        contactVelocity.sumToMe(accVelocity);
-
-        // And return it
-        return contactVelocity;
+        result.sumToMe(accVelocity);
     }
 
     /**
@@ -300,10 +337,8 @@ public class Contact {
      * direction is generated from the contact normal, and the y and z
      * directionss are set so they are at right angles to it.
      */
-    protected void calculateContactBasis() {
-        Vector3[] contactTangent = new Vector3[2];
-        contactTangent[0] = new Vector3();
-        contactTangent[1] = new Vector3();
+    protected void calculateContactBasis(ContactScratch scratch) {
+        Vector3[] contactTangent = scratch.contactTangent;
 
         // Check whether the Z-axis is nearer to the X or Y axis
         if (Math.abs(contactNormal.getX()) > Math.abs(contactNormal.getY())) {
@@ -346,81 +381,97 @@ public class Contact {
 
     /**
      * Performs an inertia-weighted impulse based resolution of this
-     * contact alone.
+     * contact alone. The changes in velocity and rotation of each body
+     * are stored in the given vectors.
      */
-    protected void applyVelocityChange(Vector3 velocityChange[], Vector3 rotationChange[]) {
+    protected void applyVelocityChange(Vector3 velocityChange[], Vector3 rotationChange[], ContactScratch scratch) {
         // Get hold of the inverse mass and inverse inertia tensor, both in
         // world coordinates.
-        Matrix3[] inverseInertiaTensor = { new Matrix3(), new Matrix3() };
+        Matrix3[] inverseInertiaTensor = scratch.inverseInertiaTensor;
         body[0].getInverseInertiaTensorWorld(inverseInertiaTensor[0]);
         if (body[1] != null) {
             body[1].getInverseInertiaTensorWorld(inverseInertiaTensor[1]);
         }
 
         // We will calculate the impulse for each contact axis
-        Vector3 impulseContact;
+        Vector3 impulseContact = scratch.impulseContact;
 
         if (friction == 0.0) {
             // Use the short format for frictionless contacts
-            impulseContact = calculateFrictionlessImpulse(inverseInertiaTensor);
+            calculateFrictionlessImpulse(inverseInertiaTensor, impulseContact, scratch);
         } else {
             // Otherwise we may have impulses that aren't in the direction of the
             // contact, so we need the more complex version.
-            impulseContact = calculateFrictionImpulse(inverseInertiaTensor);
+            calculateFrictionImpulse(inverseInertiaTensor, impulseContact, scratch);
         }
 
         // Convert impulse to world coordinates
-        Vector3 impulse = contactToWorld.transform(impulseContact);
+        Vector3 impulse = scratch.impulse;
+        contactToWorld.transform(impulseContact, impulse);
 
         // Split in the impulse into linear and rotational components
-        Vector3 impulsiveTorque = relativeContactPosition[0].rest(impulse);
-        rotationChange[0] = inverseInertiaTensor[0].transform(impulsiveTorque);
+        Vector3 impulsiveTorque = scratch.vector;
+        impulsiveTorque.setVectorProduct(relativeContactPosition[0], impulse);
+        inverseInertiaTensor[0].transform(impulsiveTorque, rotationChange[0]);
         velocityChange[0].clear();
         velocityChange[0].addScaledVector(impulse, body[0].getInverseMass());
 
-        // Apply the changes
-        body[0].addVelocity(velocityChange[0]);
-        body[0].addRotation(rotationChange[0]);
+        // Apply the changes. Bodies that can't be moved are left
+        // untouched, so contacts resolved in parallel can share them.
+        if (body[0].getInverseMass() > 0) {
+            body[0].addVelocity(velocityChange[0]);
+            body[0].addRotation(rotationChange[0]);
+        } else {
+            velocityChange[0].clear();
+            rotationChange[0].clear();
+        }
 
         if (body[1] != null) {
             // Work out body one's linear and angular changes
-            impulsiveTorque = impulse.rest(relativeContactPosition[1]);
-            rotationChange[1] = inverseInertiaTensor[1].transform(impulsiveTorque);
+            impulsiveTorque.setVectorProduct(impulse, relativeContactPosition[1]);
+            inverseInertiaTensor[1].transform(impulsiveTorque, rotationChange[1]);
             velocityChange[1].clear();
             velocityChange[1].addScaledVector(impulse, -body[1].getInverseMass());
 
             // And apply them.
-            body[1].addVelocity(velocityChange[1]);
-            body[1].addRotation(rotationChange[1]);
+            if (body[1].getInverseMass() > 0) {
+                body[1].addVelocity(velocityChange[1]);
+                body[1].addRotation(rotationChange[1]);
+            } else {
+                velocityChange[1].clear();
+                rotationChange[1].clear();
+            }
         }
     }
 
     /**
      * Performs an inertia weighted penetration resolution of this
-     * contact alone.
+     * contact alone. The linear and angular changes of each body are
+     * stored in the given vectors.
      */
-    protected void applyPositionChange(Vector3 linearChange[], Vector3 angularChange[], double penetration) {
+    protected void applyPositionChange(Vector3 linearChange[], Vector3 angularChange[], double penetration, ContactScratch scratch) {
 
-        double[] angularMove = new double[2];
-        double[] linearMove = new double[2];
+        double[] angularMove = scratch.angularMove;
+        double[] linearMove = scratch.linearMove;
 
         double totalInertia = 0;
-        double[] linearInertia = new double[2];
-        double[] angularInertia = new double[2];
+        double[] linearInertia = scratch.linearInertia;
+        double[] angularInertia = scratch.angularInertia;
+        Matrix3[] inverseInertiaTensor = scratch.inverseInertiaTensor;
 
         // We need to work out the inertia of each object in the direction
         // of the contact normal, due to angular inertia only.
         for (int i = 0; i < 2; i++)
             if (body[i] != null) {
-                Matrix3 inverseInertiaTensor = new Matrix3();
-                body[i].getInverseInertiaTensorWorld(inverseInertiaTensor);
+                body[i].getInverseInertiaTensorWorld(inverseInertiaTensor[i]);
 
                 // Use the same procedure as for calculating frictionless
                 // velocity change to work out the angular inertia.
-                Vector3 angularInertiaWorld = relativeContactPosition[i].rest(contactNormal);
-                angularInertiaWorld = inverseInertiaTensor.transform(angularInertiaWorld);
-                angularInertiaWorld = angularInertiaWorld.rest(relativeContactPosition[i]);
-                angularInertia[i] = angularInertiaWorld.mult(contactNormal);
+                Vector3 angularInertiaWorld = scratch.vector;
+                angularInertiaWorld.setVectorProduct(relativeContactPosition[i], contactNormal);
+                inverseInertiaTensor[i].transform(angularInertiaWorld, angularInertiaWorld);
+                angularInertiaWorld.setVectorProduct(angularInertiaWorld, relativeContactPosition[i]);
+                angularInertia[i] = angularInertiaWorld.scalarProduct(contactNormal);
 
                 // The linear component is simply the inverse mass
                 linearInertia[i] = body[i].getInverseMass();
@@ -444,7 +495,8 @@ public class Contact {
 
                 // To avoid angular projections that are too great (when mass is large
                 // but inertia tensor is small) limit the angular move.
-                Vector3 projection = relativeContactPosition[i];
+                Vector3 projection = scratch.vector;
+                projection.set(relativeContactPosition[i]);
                 projection.addScaledVector(contactNormal, -relativeContactPosition[i].scalarProduct(contactNormal));
 
                 // Use the small angle approximation for the sine of the angle (i.e.
@@ -470,31 +522,37 @@ public class Contact {
                     angularChange[i].clear();
                 } else {
                     // Work out the direction we'd like to rotate in.
-                    Vector3 targetAngularDirection = relativeContactPosition[i].vectorProduct(contactNormal);
-
-                    Matrix3 inverseInertiaTensor = new Matrix3();
-                    body[i].getInverseInertiaTensorWorld(inverseInertiaTensor);
+                    Vector3 targetAngularDirection = scratch.vector;
+                    targetAngularDirection.setVectorProduct(relativeContactPosition[i], contactNormal);
 
                     // Work out the direction we'd need to rotate to achieve that
-                    angularChange[i] = inverseInertiaTensor.transform(targetAngularDirection).mult(angularMove[i] / angularInertia[i]);
+                    inverseInertiaTensor[i].transform(targetAngularDirection, angularChange[i]);
+                    angularChange[i].multToMe(angularMove[i] / angularInertia[i]);
                 }
 
                 // Velocity change is easier - it is just the linear movement
                 // along the contact normal.
-                linearChange[i] = contactNormal.mult(linearMove[i]);
+                linearChange[i].set(contactNormal);
+                linearChange[i].multToMe(linearMove[i]);
+
+                // Bodies that can't be moved are left untouched, so contacts
+                // resolved in parallel can share them.
+                if (linearMove[i] == 0 && angularMove[i] == 0) continue;
 
                 // Now we can start to apply the values we've calculated.
                 // Apply the linear movement
-                Vector3 pos = new Vector3();
-                body[i].getPosition(pos);
-                pos.addScaledVector(contactNormal, linearMove[i]);
-                body[i].setPosition(pos);
+                Vector3 pos = body[i].getPosition();
+                body[i].setPosition(pos.getX() + contactNormal.getX() * linearMove[i], pos.getY() + contactNormal.getY() * linearMove[i], pos.getZ() + contactNormal.getZ() * linearMove[i]);
 
                 // And the change in orientation
-                Quaternion q = new Quaternion();
-                body[i].getOrientation(q);
+                Quaternion q = scratch.orientation;
+                Quaternion current = body[i].getOrientation();
+                q.setR(current.getR());
+                q.setI(current.getI());
+                q.setJ(current.getJ());
+                q.setK(current.getK());
                 q.addScaledVector(angularChange[i], (1.0));
-                body[i].setOrientation(q);
+                body[i].setOrientation(q.getR(), q.getI(), q.getJ(), q.getK());
 
                 // We need to calculate the derived data for any body that is
                 // asleep, so that the changes are reflected in the object's
@@ -507,22 +565,24 @@ public class Contact {
 
     /**
      * Calculates the impulse needed to resolve this contact,
-     * given that the contact has no friction. A pair of inertia
+     * given that the contact has no friction, and stores it in the
+     * given vector. A pair of inertia
      * tensors - one for each contact object - is specified to
      * save calculation time: the calling function has access to
      * these anyway.
      */
-    protected Vector3 calculateFrictionlessImpulse(Matrix3[] inverseInertiaTensor) {
+    protected void calculateFrictionlessImpulse(Matrix3[] inverseInertiaTensor, Vector3 impulseContact, ContactScratch scratch) {
 
         // Build a vector that shows the change in velocity in
         // world space for a unit impulse in the direction of the contact
         // normal.
-        Vector3 deltaVelWorld = relativeContactPosition[0].rest(contactNormal);
-        deltaVelWorld = inverseInertiaTensor[0].transform(deltaVelWorld);
-        deltaVelWorld = deltaVelWorld.rest(relativeContactPosition[0]);
+        Vector3 deltaVelWorld = scratch.vector;
+        deltaVelWorld.setVectorProduct(relativeContactPosition[0], contactNormal);
+        inverseInertiaTensor[0].transform(deltaVelWorld, deltaVelWorld);
+        deltaVelWorld.setVectorProduct(deltaVelWorld, relativeContactPosition[0]);
 
         // Work out the change in velocity in contact coordiantes.
-        double deltaVelocity = deltaVelWorld.mult(contactNormal);
+        double deltaVelocity = deltaVelWorld.scalarProduct(contactNormal);
 
         // Add the linear component of velocity change
         deltaVelocity += body[0].getInverseMass();
@@ -530,45 +590,42 @@ public class Contact {
         // Check if we need to the second body's data
         if (body[1] != null) {
             // Go through the same transformation sequence again
-            deltaVelWorld = relativeContactPosition[1].rest(contactNormal);
-            deltaVelWorld = inverseInertiaTensor[1].transform(deltaVelWorld);
-            deltaVelWorld = deltaVelWorld.rest(relativeContactPosition[1]);
+            deltaVelWorld.setVectorProduct(relativeContactPosition[1], contactNormal);
+            inverseInertiaTensor[1].transform(deltaVelWorld, deltaVelWorld);
+            deltaVelWorld.setVectorProduct(deltaVelWorld, relativeContactPosition[1]);
 
             // Add the change in velocity due to rotation
-            deltaVelocity += deltaVelWorld.mult(contactNormal);
+            deltaVelocity += deltaVelWorld.scalarProduct(contactNormal);
 
             // Add the change in velocity due to linear motion
             deltaVelocity += body[1].getInverseMass();
         }
 
-        Vector3 impulseContact = new Vector3();
         // Calculate the required size of the impulse
-        impulseContact.setX(desiredDeltaVelocity / deltaVelocity);
-        impulseContact.setY(0);
-        impulseContact.setZ(0);
-        return impulseContact;
+        impulseContact.set(desiredDeltaVelocity / deltaVelocity, 0, 0);
     }
 
     /**
      * Calculates the impulse needed to resolve this contact,
      * given that the contact has a non-zero coefficient of
-     * friction. A pair of inertia tensors - one for each contact
+     * friction, and stores it in the given vector. A pair of inertia
+     * tensors - one for each contact
      * object - is specified to save calculation time: the calling
      * function has access to these anyway.
      */
-    protected Vector3 calculateFrictionImpulse(Matrix3[] inverseInertiaTensor) {
-        Vector3 impulseContact;
+    protected void calculateFrictionImpulse(Matrix3[] inverseInertiaTensor, Vector3 impulseContact, ContactScratch scratch) {
         double inverseMass = body[0].getInverseMass();
 
         // The equivalent of a cross product in matrices is multiplication
         // by a skew symmetric matrix - we build the matrix for converting
         // between linear and angular quantities.
-        Matrix3 impulseToTorque = new Matrix3();
+        Matrix3 impulseToTorque = scratch.impulseToTorque;
         impulseToTorque.setSkewSymmetric(relativeContactPosition[0]);
 
         // Build the matrix to convert contact impulse to change in velocity
         // in world coordinates.
-        Matrix3 deltaVelWorld = new Matrix3(impulseToTorque);
+        Matrix3 deltaVelWorld = scratch.deltaVelWorld;
+        deltaVelWorld.set(impulseToTorque);
         deltaVelWorld.multToMe(inverseInertiaTensor[0]);
         deltaVelWorld.multToMe(impulseToTorque);
         deltaVelWorld.multToMe(-1);
@@ -579,7 +636,8 @@ public class Contact {
             impulseToTorque.setSkewSymmetric(relativeContactPosition[1]);
 
             // Calculate the velocity change matrix
-            Matrix3 deltaVelWorld2 = impulseToTorque;
+            Matrix3 deltaVelWorld2 = scratch.impulseMatrix;
+            deltaVelWorld2.set(impulseToTorque);
             deltaVelWorld2.multToMe(inverseInertiaTensor[1]);
             deltaVelWorld2.multToMe(impulseToTorque);
             deltaVelWorld2.multToMe(-1);
@@ -592,7 +650,8 @@ public class Contact {
         }
 
         // Do a change of basis to convert into contact coordinates.
-        Matrix3 deltaVelocity = contactToWorld.transpose();
+        Matrix3 deltaVelocity = scratch.deltaVelocity;
+        deltaVelocity.setTranspose(contactToWorld);
         deltaVelocity.multToMe(deltaVelWorld);
         deltaVelocity.multToMe(contactToWorld);
 
@@ -601,14 +660,17 @@ public class Contact {
         deltaVelocity.data[4] += inverseMass;
         deltaVelocity.data[8] += inverseMass;
 
-        // Invert to get the impulse needed per unit velocity
-        Matrix3 impulseMatrix = deltaVelocity.inverse();
+        // Invert to get the impulse needed per unit velocity. The matrix
+        // is symmetric, so the cheaper closed form can be used.
+        Matrix3 impulseMatrix = scratch.impulseMatrix;
+        impulseMatrix.setSymmetricInverse(deltaVelocity);
 
         // Find the target velocities to kill
-        Vector3 velKill = new Vector3(desiredDeltaVelocity, -contactVelocity.getY(), -contactVelocity.getZ());
+        Vector3 velKill = scratch.vector;
+        velKill.set(desiredDeltaVelocity, -contactVelocity.getY(), -contactVelocity.getZ());
 
         // Find the impulse to kill target velocities
-        impulseContact = impulseMatrix.transform(velKill);
+        impulseMatrix.transform(velKill, impulseContact);
 
         // Check for exceeding friction
         double planarImpulse = Math.sqrt(impulseContact.getY() * impulseContact.getY() + impulseContact.getZ() * impulseContact.getZ());
@@ -622,7 +684,6 @@ public class Contact {
             impulseContact.setY(impulseContact.getY() * friction * impulseContact.getX());
             impulseContact.setZ(impulseContact.getZ() * friction * impulseContact.getX());
         }
-        return impulseContact;
     }
 
     public void warningContact(double duration) {
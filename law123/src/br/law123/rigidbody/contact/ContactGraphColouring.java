@@ -0,0 +1,195 @@
+package br.law123.rigidbody.contact;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * Splits a set of contacts into colours, so that no two contacts of
+ * the same colour share a body that can move. The contacts of one
+ * colour can then be resolved at the same time without any of them
+ * seeing the others' changes half way through.
+ *
+ * Bodies with zero inverse mass can't be moved by a contact, so any
+ * number of contacts of the same colour can share them.
+ *
+ * The colouring is greedy and only depends on the order of the
+ * contacts: each colour takes, in order, every contact not yet
+ * coloured whose bodies haven't been taken by that colour already.
+ * The same contacts in the same order always give the same colours.
+ *
+ * As well as the colours, the colouring holds the list of contacts
+ * touching each moving body, which the resolver uses to update the
+ * contacts affected by a resolution.
+ */
+class ContactGraphColouring {
+
+    /**
+     * Holds the index of each moving body.
+     */
+    private final Map<RigidBody, Integer> bodyIndex = new IdentityHashMap<RigidBody, Integer>();
+
+    /**
+     * Holds the number of moving bodies.
+     */
+    int bodyCount;
+
+    /**
+     * Holds the index of the first contact of the set.
+     */
+    int first;
+
+    /**
+     * Holds the number of contacts in the set.
+     */
+    int numContacts;
+
+    /**
+     * Holds the index of the two bodies of each contact, or -1 for
+     * bodies that can't move. The bodies of contact i (counted from
+     * the first contact) are at 2i and 2i + 1.
+     */
+    int[] contactBodies = new int[0];
+
+    /**
+     * Holds the number of colours.
+     */
+    int colourCount;
+
+    /**
+     * Holds the contacts of each colour, as indices into the contact
+     * array. The contacts of colour k are the entries from
+     * colourStart[k] to colourStart[k + 1].
+     */
+    int[] colourContacts = new int[0];
+
+    /**
+     * Holds where each colour starts in colourContacts.
+     */
+    int[] colourStart = new int[1];
+
+    /**
+     * Holds the contacts touching each body, as indices into the
+     * contact array. The contacts of body b are the entries from
+     * bodyContactStart[b] to bodyContactStart[b + 1].
+     */
+    int[] bodyContacts = new int[0];
+
+    /**
+     * Holds where each body starts in bodyContacts.
+     */
+    int[] bodyContactStart = new int[1];
+
+    /**
+     * Holds the colour each contact was given.
+     */
+    private int[] contactColour = new int[0];
+
+    /**
+     * Holds, for each body, the last colour that took one of its
+     * contacts.
+     */
+    private int[] bodyColour = new int[0];
+
+    /**
+     * Colours the given contacts of the array.
+     */
+    void build(Contact[] contacts, int first, int numContacts) {
+        this.first = first;
+        this.numContacts = numContacts;
+        int end = first + numContacts;
+
+        // Number the moving bodies in the order they are met.
+        bodyIndex.clear();
+        bodyCount = 0;
+        if (contactBodies.length < 2 * numContacts) {
+            contactBodies = new int[2 * numContacts];
+            contactColour = new int[numContacts];
+        }
+        for (int i = first; i < end; i++) {
+            RigidBody[] body = contacts[i].getBody();
+            for (int b = 0; b < 2; b++) {
+                contactBodies[2 * (i - first) + b] = indexOf(body[b]);
+            }
+        }
+
+        // Build the list of contacts of each body.
+        if (bodyContactStart.length < bodyCount + 1) {
+            bodyContactStart = new int[bodyCount + 1];
+            bodyColour = new int[bodyCount];
+        }
+        Arrays.fill(bodyContactStart, 0, bodyCount + 1, 0);
+        for (int i = 0; i < 2 * numContacts; i++) {
+            if (contactBodies[i] >= 0) bodyContactStart[contactBodies[i] + 1]++;
+        }
+        for (int b = 0; b < bodyCount; b++) {
+            bodyContactStart[b + 1] += bodyContactStart[b];
+        }
+        if (bodyContacts.length < bodyContactStart[bodyCount]) {
+            bodyContacts = new int[bodyContactStart[bodyCount]];
+        }
+        Arrays.fill(bodyColour, 0, bodyCount, 0);
+        for (int i = 0; i < numContacts; i++) {
+            for (int b = 0; b < 2; b++) {
+                int body = contactBodies[2 * i + b];
+                // Skip the second side of a contact of a body with itself.
+                if (body < 0 || (b == 1 && body == contactBodies[2 * i])) continue;
+                bodyContacts[bodyContactStart[body] + bodyColour[body]++] = first + i;
+            }
+        }
+
+        // The counts are no longer needed, so start with no colours.
+        for (int b = 0; b < bodyCount; b++) {
+            bodyColour[b] = -1;
+        }
+
+        // Colour the contacts, one colour at a time.
+        Arrays.fill(contactColour, 0, numContacts, -1);
+        if (colourContacts.length < numContacts) {
+            colourContacts = new int[numContacts];
+        }
+        int coloured = 0;
+        int firstUncoloured = 0;
+        colourCount = 0;
+        while (coloured < numContacts) {
+            int colour = colourCount++;
+            if (colourStart.length < colourCount + 1) {
+                colourStart = Arrays.copyOf(colourStart, 2 * (colourCount + 1));
+            }
+            colourStart[colour] = coloured;
+
+            for (int i = firstUncoloured; i < numContacts; i++) {
+                if (contactColour[i] >= 0) continue;
+
+                int one = contactBodies[2 * i];
+                int two = contactBodies[2 * i + 1];
+                if ((one >= 0 && bodyColour[one] == colour) || (two >= 0 && bodyColour[two] == colour)) continue;
+
+                contactColour[i] = colour;
+                if (one >= 0) bodyColour[one] = colour;
+                if (two >= 0) bodyColour[two] = colour;
+                colourContacts[coloured++] = first + i;
+            }
+            while (firstUncoloured < numContacts && contactColour[firstUncoloured] >= 0) {
+                firstUncoloured++;
+            }
+        }
+        colourStart[colourCount] = coloured;
+    }
+
+    /**
+     * Returns the index of the given body, giving it one if needed, or
+     * -1 if the body can't be moved by contacts.
+     */
+    private int indexOf(RigidBody body) {
+        if (body == null || body.getInverseMass() <= 0) return -1;
+        Integer index = bodyIndex.get(body);
+        if (index == null) {
+            index = bodyCount++;
+            bodyIndex.put(body, index);
+        }
+        return index;
+    }
+}
@@ -1,6 +1,9 @@
 package br.law123.rigidbody.contact;
 
+import java.util.Arrays;
+
 import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
 
 /**
  * The contact resolution routine. One resolver instance
@@ -49,6 +52,28 @@ import br.law123.core.Vector3;
  *             In general this resolver is not suitable for stacks of bodies,
  *             but is perfect for handling impact, explosive, and flat resting
  *             situations.
+ * 
+ * @subsection parallel Parallel Resolution
+ * 
+ *             When a worker pool is given, large sets of contacts are
+ *             resolved in parallel. The contacts are split into colours so
+ *             that contacts of the same colour share no moving body; then,
+ *             instead of always resolving the worst contact, the resolver
+ *             sweeps the colours in turn and resolves every contact of the
+ *             colour that needs it at once. The changes are then passed on
+ *             to the contacts touching the moved bodies, in a fixed order, so
+ *             the results don't depend on the number of threads or on how
+ *             they are scheduled.
+ * 
+ * @subsection budget Time Budget
+ * 
+ *             Contacts can also be resolved against a deadline, for when a
+ *             bounded frame time matters more than a perfect resolution.
+ *             Half of the time left after preparing the contacts goes to
+ *             penetration and the rest to velocity; each stage stops as soon
+ *             as its time is up, leaving the worst contacts it did get to
+ *             resolved. What is left unresolved is reported by
+ *             getResidualPenetration and getResidualVelocity.
  */
 public class ContactResolver {
 
@@ -94,11 +119,209 @@ public class ContactResolver {
      */
     private int positionIterationsUsed;
 
+    /**
+     * Holds the relative improvement of the worst contact below which
+     * a stage stops early, or zero to never stop early.
+     */
+    private double convergenceTolerance;
+
+    /**
+     * Holds the worst value at the start of the current convergence
+     * window, or a negative number before the first window.
+     */
+    private double windowResidual;
+
+    /**
+     * True if the current resolution has to stop at a deadline.
+     */
+    private boolean budgeted;
+
+    /**
+     * Holds the System.nanoTime values at which the position and
+     * velocity stages of the current resolution have to stop.
+     */
+    private long positionDeadline;
+
+    private long velocityDeadline;
+
+    /**
+     * True if the last resolution stopped because it ran out of time.
+     */
+    private boolean budgetExhausted;
+
+    /**
+     * Holds the largest penetration left after the last resolution.
+     */
+    private double residualPenetration;
+
+    /**
+     * Holds the largest desired change in velocity left after the last
+     * resolution.
+     */
+    private double residualVelocity;
+
     /**
      * Keeps track of whether the internal settings are valid.
      */
     private boolean validSettings;
 
+    /**
+     * Holds the worker threads used to resolve large sets of contacts,
+     * or null to always resolve contacts on the calling thread.
+     */
+    private WorkerPool workerPool;
+
+    /**
+     * Holds the smallest number of contacts that is resolved in
+     * parallel when a worker pool is set.
+     */
+    private int parallelThreshold = 256;
+
+    /**
+     * Holds the colours of the contacts being resolved in parallel.
+     */
+    private final ContactGraphColouring colouring = new ContactGraphColouring();
+
+    /**
+     * Holds the velocity (or linear position) changes of the last
+     * resolution of each contact being resolved in parallel, indexed
+     * from the first contact.
+     */
+    private Vector3[][] linearChanges = new Vector3[0][];
+
+    /**
+     * Holds the rotation (or angular position) changes of the last
+     * resolution of each contact being resolved in parallel.
+     */
+    private Vector3[][] angularChanges = new Vector3[0][];
+
+    /**
+     * Holds the contacts resolved together in the current colour.
+     */
+    private int[] selected = new int[0];
+
+    private int selectedCount;
+
+    /**
+     * Holds the contacts that need updating after the current colour
+     * was resolved.
+     */
+    private int[] affected = new int[0];
+
+    private int affectedCount;
+
+    /**
+     * Holds, for each moving body, the contact of the current colour
+     * that moved it and which of its two bodies it was.
+     */
+    private int[] changedBy = new int[0];
+
+    private int[] changedSide = new int[0];
+
+    /**
+     * Holds the pass in which each body was last moved and each
+     * contact was last added to the affected list, so these don't
+     * need clearing between passes.
+     */
+    private int[] bodyStamp = new int[0];
+
+    private int[] contactStamp = new int[0];
+
+    private int stamp;
+
+    /**
+     * Holds the contact array and duration of the current parallel
+     * resolution, for the worker tasks.
+     */
+    private Contact[] current;
+
+    private double currentDuration;
+
+    /**
+     * Holds the temporary values used to resolve contacts, one set for
+     * each thread, so resolution doesn't create any objects.
+     */
+    private ContactScratch[] scratch = { new ContactScratch() };
+
+    /**
+     * Holds the changes made by the last contact resolved with the
+     * worst-first algorithm.
+     */
+    private final Vector3[] linearChange = { new Vector3(), new Vector3() };
+
+    private final Vector3[] angularChange = { new Vector3(), new Vector3() };
+
+    private final WorkerPool.RangeTask prepareTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            int first = colouring.first;
+            for (int i = first + from; i < first + to; i++) {
+                current[i].calculateInternals(currentDuration, scratch[worker]);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask velocityTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int j = from; j < to; j++) {
+                int i = selected[j];
+                current[i].applyVelocityChange(linearChanges[i - colouring.first], angularChanges[i - colouring.first], scratch[worker]);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask positionTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int j = from; j < to; j++) {
+                int i = selected[j];
+                current[i].applyPositionChange(linearChanges[i - colouring.first], angularChanges[i - colouring.first], current[i].getPenetration(), scratch[worker]);
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask velocityUpdateTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int j = from; j < to; j++) {
+                int i = affected[j];
+                Contact c = current[i];
+                for (int b = 0; b < 2; b++) {
+                    int body = colouring.contactBodies[2 * (i - colouring.first) + b];
+                    if (body < 0 || bodyStamp[body] != stamp) continue;
+
+                    int source = changedBy[body] - colouring.first;
+                    int d = changedSide[body];
+                    c.updateVelocity(b, linearChanges[source][d], angularChanges[source][d], currentDuration, scratch[worker]);
+                }
+            }
+        }
+    };
+
+    private final WorkerPool.RangeTask positionUpdateTask = new WorkerPool.RangeTask() {
+
+        @Override
+        public void run(int worker, int from, int to) {
+            for (int j = from; j < to; j++) {
+                int i = affected[j];
+                Contact c = current[i];
+                for (int b = 0; b < 2; b++) {
+                    int body = colouring.contactBodies[2 * (i - colouring.first) + b];
+                    if (body < 0 || bodyStamp[body] != stamp) continue;
+
+                    int source = changedBy[body] - colouring.first;
+                    int d = changedSide[body];
+                    c.updatePenetration(b, linearChanges[source][d], angularChanges[source][d], scratch[worker]);
+                }
+            }
+        }
+    };
+
     /**
      * Creates a new contact resolver with the given number of iterations
      * per resolution call, and optional epsilon values.
@@ -135,7 +358,7 @@ public class ContactResolver {
     /**
      * Sets the number of iterations for each resolution stage.
      */
-    void setIterations(int velocityIterations, int positionIterations) {
+    public void setIterations(int velocityIterations, int positionIterations) {
         this.velocityIterations = velocityIterations;
         this.positionIterations = positionIterations;
     }
@@ -147,6 +370,77 @@ public class ContactResolver {
         setIterations(iterations, iterations);
     }
 
+    /**
+     * Sets the worker threads used to resolve large sets of contacts
+     * in parallel. Pass null to resolve every set on the calling
+     * thread with the worst-first algorithm.
+     */
+    public void setWorkerPool(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+
+        // Each thread needs its own scratch space.
+        int threads = workerPool == null ? 1 : workerPool.getThreadCount();
+        if (scratch.length < threads) {
+            ContactScratch[] newScratch = Arrays.copyOf(scratch, threads);
+            for (int i = scratch.length; i < threads; i++) {
+                newScratch[i] = new ContactScratch();
+            }
+            scratch = newScratch;
+        }
+    }
+
+    /**
+     * Gets the worker threads used to resolve large sets of contacts.
+     */
+    public WorkerPool getWorkerPool() {
+        return workerPool;
+    }
+
+    /**
+     * Sets the smallest number of contacts that is resolved in parallel
+     * when a worker pool is set. Smaller sets are resolved with the
+     * worst-first algorithm.
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Returns the number of velocity iterations used in the last call to
+     * resolve contacts.
+     */
+    public int getVelocityIterationsUsed() {
+        return velocityIterationsUsed;
+    }
+
+    /**
+     * Returns the number of position iterations used in the last call to
+     * resolve contacts.
+     */
+    public int getPositionIterationsUsed() {
+        return positionIterationsUsed;
+    }
+
+    /**
+     * Sets the relative improvement below which a stage stops early.
+     * Every time the stage has done as many iterations as there are
+     * contacts (or, when resolving in parallel, after each sweep through
+     * the colours), the worst contact is compared with the worst contact
+     * at the last check. If it has improved by less than this fraction,
+     * the stage is considered converged. Zero, the default, disables the
+     * check.
+     */
+    public void setConvergenceTolerance(double convergenceTolerance) {
+        this.convergenceTolerance = convergenceTolerance;
+    }
+
+    /**
+     * Gets the relative improvement below which a stage stops early.
+     */
+    public double getConvergenceTolerance() {
+        return convergenceTolerance;
+    }
+
     /**
      * Sets the tolerance value for both velocity and position.
      */
@@ -182,25 +476,156 @@ public class ContactResolver {
      *            This is used to compensate for forces applied.
      */
     public void resolveContacts(Contact[] contacts, int numContacts, double duration) {
+        resolveContacts(contacts, 0, numContacts, duration);
+    }
+
+    /**
+     * Resolves a set of contacts stored in part of an array, starting
+     * at the given index. This is used to resolve a single island of
+     * contacts without copying it out of the array holding the contacts
+     * of the whole world.
+     * 
+     * @see #resolveContacts(Contact[], int, double)
+     */
+    public void resolveContacts(Contact[] contacts, int firstContact, int numContacts, double duration) {
+        budgeted = false;
+        resolve(contacts, firstContact, numContacts, duration);
+    }
+
+    /**
+     * Resolves a set of contacts like resolveContacts, but stops as soon
+     * as the given deadline is reached, even if the iterations are not
+     * all used. The contacts are still resolved worst first, so the
+     * time that is available is spent on the contacts that need it
+     * most.
+     * 
+     * @param deadline The value of System.nanoTime at which the
+     *            resolution has to stop.
+     * 
+     * @see #wasBudgetExhausted()
+     * @see #getResidualPenetration()
+     * @see #getResidualVelocity()
+     */
+    public void resolveContacts(Contact[] contacts, int firstContact, int numContacts, double duration, long deadline) {
+        budgeted = true;
+        velocityDeadline = deadline;
+        resolve(contacts, firstContact, numContacts, duration);
+        budgeted = false;
+    }
+
+    /**
+     * Returns true if the last resolution stopped because its deadline
+     * was reached.
+     */
+    public boolean wasBudgetExhausted() {
+        return budgetExhausted;
+    }
+
+    /**
+     * Returns the largest penetration left unresolved by the last
+     * resolution, or zero if every contact was resolved.
+     */
+    public double getResidualPenetration() {
+        return residualPenetration;
+    }
+
+    /**
+     * Returns the largest desired change in velocity left unresolved by
+     * the last resolution, or zero if every contact was resolved.
+     */
+    public double getResidualVelocity() {
+        return residualVelocity;
+    }
+
+    private void resolve(Contact[] contacts, int firstContact, int numContacts, double duration) {
+        budgetExhausted = false;
+        residualPenetration = 0;
+        residualVelocity = 0;
+
         // Make sure we have something to do.
         if (numContacts == 0) return;
         if (!isValid()) return;
 
+        int end = firstContact + numContacts;
+
+        if (workerPool != null && numContacts >= parallelThreshold) {
+            resolveColoured(contacts, firstContact, numContacts, duration);
+            return;
+        }
+
         // Prepare the contacts for processing
-        prepareContacts(contacts, numContacts, duration);
+        prepareContacts(contacts, firstContact, end, duration);
+        splitBudget();
 
         // Resolve the interpenetration problems with the contacts.
-        adjustPositions(contacts, numContacts, duration);
+        adjustPositions(contacts, firstContact, end, duration);
 
         // Resolve the velocity problems with the contacts.
-        adjustVelocities(contacts, numContacts, duration);
+        adjustVelocities(contacts, firstContact, end, duration);
+
+        findResiduals(contacts, firstContact, end);
+        warningContact(contacts, firstContact, end, duration);
+    }
+
+    /**
+     * Gives half the time left before the deadline to the position
+     * stage, and the rest to the velocity stage.
+     */
+    private void splitBudget() {
+        if (!budgeted) return;
+        long now = System.nanoTime();
+        long left = velocityDeadline - now;
+        positionDeadline = left > 0 ? now + left / 2 : velocityDeadline;
+    }
 
-        warningContact(contacts, numContacts, duration);
+    /**
+     * Returns true, and notes that the budget ran out, if the current
+     * resolution has a deadline and it has been reached.
+     */
+    private boolean outOfTime(long deadline) {
+        if (budgeted && System.nanoTime() - deadline >= 0) {
+            budgetExhausted = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if the stage has stopped improving. This is called
+     * with the worst value found at each iteration, and compares it
+     * with the value of the last window once a window is complete.
+     */
+    private boolean converged(int iteration, int window, double residual) {
+        if (convergenceTolerance <= 0) return false;
+        if (iteration == 0) {
+            windowResidual = residual;
+            return false;
+        }
+        if (iteration % window != 0) return false;
+
+        boolean converged = windowResidual - residual < convergenceTolerance * windowResidual;
+        windowResidual = residual;
+        return converged;
+    }
+
+    /**
+     * Finds the largest penetration and desired change in velocity left
+     * after the resolution.
+     */
+    private void findResiduals(Contact[] contacts, int first, int end) {
+        double maxPenetration = 0;
+        double maxVelocity = 0;
+        for (int i = first; i < end; i++) {
+            if (contacts[i].getPenetration() > maxPenetration) maxPenetration = contacts[i].getPenetration();
+            if (contacts[i].desiredDeltaVelocity > maxVelocity) maxVelocity = contacts[i].desiredDeltaVelocity;
+        }
+        residualPenetration = maxPenetration;
+        residualVelocity = maxVelocity;
     }
 
-    private void warningContact(Contact[] contacts, int numContacts, double duration) {
+    private void warningContact(Contact[] contacts, int first, int end, double duration) {
 
-        for (int i = 0; i < numContacts; i++) {
+        for (int i = first; i < end; i++) {
             contacts[i].warningContact(duration);
         }
     }
@@ -210,11 +635,11 @@ public class ContactResolver {
      * internal data is configured correctly and the correct set of bodies
      * is made alive.
      */
-    private void prepareContacts(Contact[] contacts, int numContacts, double duration) {
+    private void prepareContacts(Contact[] contacts, int first, int end, double duration) {
         // Generate contact velocity and axis information.
-        for (int i = 0; i < numContacts; i++) {
+        for (int i = first; i < end; i++) {
             // Calculate the internal contact data (inertia, basis, etc).
-            contacts[i].calculateInternals(duration);
+            contacts[i].calculateInternals(duration, scratch[0]);
         }
     }
 
@@ -222,35 +647,37 @@ public class ContactResolver {
      * Resolves the velocity issues with the given array of constraints,
      * using the given number of iterations.
      */
-    private void adjustVelocities(Contact[] c, int numContacts, double duration) {
-        Vector3[] velocityChange = { new Vector3(), new Vector3() };
-        Vector3[] rotationChange = { new Vector3(), new Vector3() };
-        Vector3 deltaVel = new Vector3();
+    private void adjustVelocities(Contact[] c, int first, int end, double duration) {
+        Vector3[] velocityChange = linearChange;
+        Vector3[] rotationChange = angularChange;
 
         // iteratively handle impacts in order of severity.
         velocityIterationsUsed = 0;
         while (velocityIterationsUsed < velocityIterations) {
+            if (outOfTime(velocityDeadline)) break;
+
             // Find contact with maximum magnitude of probable velocity change.
             double max = velocityEpsilon;
-            int index = numContacts;
-            for (int i = 0; i < numContacts; i++) {
+            int index = end;
+            for (int i = first; i < end; i++) {
                 if (c[i].desiredDeltaVelocity > max) {
                     max = c[i].desiredDeltaVelocity;
                     index = i;
                 }
             }
-            if (index == numContacts) break;
+            if (index == end) break;
+            if (converged(velocityIterationsUsed, end - first, max)) break;
 
             // Match the awake state at the contact
             c[index].matchAwakeState();
 
             // Do the resolution on the contact that came out top.
-            c[index].applyVelocityChange(velocityChange, rotationChange);
+            c[index].applyVelocityChange(velocityChange, rotationChange, scratch[0]);
 
             // With the change in velocity of the two bodies, the update of
             // contact velocities means that some of the relative closing
             // velocities need recomputing.
-            for (int i = 0; i < numContacts; i++) {
+            for (int i = first; i < end; i++) {
                 // Check each body in the contact
                 for (int b = 0; b < 2; b++)
                     if (c[i].getBody()[b] != null) {
@@ -258,12 +685,7 @@ public class ContactResolver {
                         // resolved contact
                         for (int d = 0; d < 2; d++) {
                             if (c[i].getBody()[b] == c[index].getBody()[d]) {
-                                deltaVel = velocityChange[d].sum(rotationChange[d].vectorProduct(c[i].relativeContactPosition[b]));
-
-                                // The sign of the change is negative if we're dealing
-                                // with the second body in a contact.
-                                c[i].contactVelocity.sumToMe(c[i].getContactToWorld().transformTranspose(deltaVel).mult(b == 1 ? -1 : 1));
-                                c[i].calculateDesiredDeltaVelocity(duration);
+                                c[i].updateVelocity(b, velocityChange[d], rotationChange[d], duration, scratch[0]);
                             }
                         }
                     }
@@ -276,37 +698,37 @@ public class ContactResolver {
      * Resolves the positional issues with the given array of constraints,
      * using the given number of iterations.
      */
-    private void adjustPositions(Contact[] c, int numContacts, double duration) {
+    private void adjustPositions(Contact[] c, int first, int end, double duration) {
         int i;
         int index;
-        Vector3[] linearChange = new Vector3[2];
-        Vector3[] angularChange = { new Vector3(), new Vector3() };
         double max;
-        Vector3 deltaPosition;
 
         // iteratively resolve interpenetrations in order of severity.
         positionIterationsUsed = 0;
         while (positionIterationsUsed < positionIterations) {
+            if (outOfTime(positionDeadline)) break;
+
             // Find biggest penetration
             max = positionEpsilon;
-            index = numContacts;
-            for (i = 0; i < numContacts; i++) {
+            index = end;
+            for (i = first; i < end; i++) {
                 if (c[i].getPenetration() > max) {
                     max = c[i].getPenetration();
                     index = i;
                 }
             }
-            if (index == numContacts) break;
+            if (index == end) break;
+            if (converged(positionIterationsUsed, end - first, max)) break;
 
             // Match the awake state at the contact
             c[index].matchAwakeState();
 
             // Resolve the penetration.
-            c[index].applyPositionChange(linearChange, angularChange, max);
+            c[index].applyPositionChange(linearChange, angularChange, max, scratch[0]);
 
             // Again this action may have changed the penetration of other
             // bodies, so we update contacts.
-            for (i = 0; i < numContacts; i++) {
+            for (i = first; i < end; i++) {
                 // Check each body in the contact
                 for (int b = 0; b < 2; b++)
                     if (c[i].getBody()[b] != null) {
@@ -314,13 +736,7 @@ public class ContactResolver {
                         // resolved contact
                         for (int d = 0; d < 2; d++) {
                             if (c[i].getBody()[b] == c[index].getBody()[d]) {
-                                deltaPosition = linearChange[d].sum(angularChange[d].vectorProduct(c[i].relativeContactPosition[b]));
-
-                                // The sign of the change is positive if we're
-                                // dealing with the second body in a contact
-                                // and negative otherwise (because we're
-                                // subtracting the resolution)..
-                                c[i].setPenetration(c[i].getPenetration() + deltaPosition.scalarProduct(c[i].getContactNormal().mult(b == 1 ? 1 : -1)));
+                                c[i].updatePenetration(b, linearChange[d], angularChange[d], scratch[0]);
                             }
                         }
                     }
@@ -329,4 +745,186 @@ public class ContactResolver {
         }
     }
 
+    /**
+     * Resolves the given contacts in parallel, one colour at a time.
+     */
+    private void resolveColoured(Contact[] contacts, int firstContact, int numContacts, double duration) {
+        current = contacts;
+        currentDuration = duration;
+        colouring.first = firstContact;
+
+        // Prepare the contacts, and only then colour them, since
+        // preparing may swap the bodies of a contact.
+        workerPool.run(numContacts, 16, prepareTask);
+        colouring.build(contacts, firstContact, numContacts);
+        ensureCapacity(numContacts, colouring.bodyCount);
+        splitBudget();
+
+        adjustPositionsColoured(contacts, duration);
+        adjustVelocitiesColoured(contacts, duration);
+
+        findResiduals(contacts, firstContact, firstContact + numContacts);
+        warningContact(contacts, firstContact, firstContact + numContacts, duration);
+        current = null;
+    }
+
+    /**
+     * Makes sure the scratch data for parallel resolution can hold the
+     * given number of contacts and bodies.
+     */
+    private void ensureCapacity(int numContacts, int numBodies) {
+        if (linearChanges.length < numContacts) {
+            int size = Math.max(numContacts, 2 * linearChanges.length);
+            linearChanges = new Vector3[size][];
+            angularChanges = new Vector3[size][];
+            for (int i = 0; i < size; i++) {
+                linearChanges[i] = new Vector3[] { new Vector3(), new Vector3() };
+                angularChanges[i] = new Vector3[] { new Vector3(), new Vector3() };
+            }
+            selected = new int[size];
+            affected = new int[size];
+            contactStamp = new int[size];
+            stamp = 0;
+        }
+        if (changedBy.length < numBodies) {
+            int size = Math.max(numBodies, 2 * changedBy.length);
+            changedBy = new int[size];
+            changedSide = new int[size];
+            bodyStamp = new int[size];
+            stamp = 0;
+        }
+        if (stamp == 0) {
+            Arrays.fill(contactStamp, 0);
+            Arrays.fill(bodyStamp, 0);
+        }
+    }
+
+    /**
+     * Records the bodies moved by the selected contacts, and finds the
+     * contacts that touch them, in a fixed order.
+     */
+    private void findAffected() {
+        if (++stamp == Integer.MAX_VALUE) {
+            Arrays.fill(contactStamp, 0);
+            Arrays.fill(bodyStamp, 0);
+            stamp = 1;
+        }
+
+        int first = colouring.first;
+        affectedCount = 0;
+        for (int j = 0; j < selectedCount; j++) {
+            int i = selected[j];
+            for (int d = 0; d < 2; d++) {
+                int body = colouring.contactBodies[2 * (i - first) + d];
+                if (body < 0 || bodyStamp[body] == stamp) continue;
+
+                bodyStamp[body] = stamp;
+                changedBy[body] = i;
+                changedSide[body] = d;
+                for (int k = colouring.bodyContactStart[body]; k < colouring.bodyContactStart[body + 1]; k++) {
+                    int other = colouring.bodyContacts[k];
+                    if (contactStamp[other - first] == stamp) continue;
+
+                    contactStamp[other - first] = stamp;
+                    affected[affectedCount++] = other;
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves the velocity issues of the coloured contacts, sweeping
+     * the colours until no contact needs resolving or the iterations
+     * run out. Each resolved contact counts as one iteration.
+     */
+    private void adjustVelocitiesColoured(Contact[] c, double duration) {
+        velocityIterationsUsed = 0;
+        boolean resolved = true;
+        for (int round = 0; resolved && velocityIterationsUsed < velocityIterations; round++) {
+            if (converged(round, 1, worstVelocity(c))) return;
+            resolved = false;
+            for (int k = 0; k < colouring.colourCount && velocityIterationsUsed < velocityIterations; k++) {
+                if (outOfTime(velocityDeadline)) return;
+
+                // Pick the contacts of this colour that need resolving.
+                selectedCount = 0;
+                for (int j = colouring.colourStart[k]; j < colouring.colourStart[k + 1] && velocityIterationsUsed < velocityIterations; j++) {
+                    int i = colouring.colourContacts[j];
+                    if (c[i].desiredDeltaVelocity > velocityEpsilon) {
+                        // Match the awake state at the contact
+                        c[i].matchAwakeState();
+                        selected[selectedCount++] = i;
+                        velocityIterationsUsed++;
+                    }
+                }
+                if (selectedCount == 0) continue;
+                resolved = true;
+
+                // Resolve them together, then update the contacts
+                // touching the bodies they moved.
+                workerPool.run(selectedCount, 8, velocityTask);
+                findAffected();
+                workerPool.run(affectedCount, 16, velocityUpdateTask);
+            }
+        }
+    }
+
+    /**
+     * Resolves the positional issues of the coloured contacts, in the
+     * same way as the velocity issues.
+     */
+    private void adjustPositionsColoured(Contact[] c, double duration) {
+        positionIterationsUsed = 0;
+        boolean resolved = true;
+        for (int round = 0; resolved && positionIterationsUsed < positionIterations; round++) {
+            if (converged(round, 1, worstPenetration(c))) return;
+            resolved = false;
+            for (int k = 0; k < colouring.colourCount && positionIterationsUsed < positionIterations; k++) {
+                if (outOfTime(positionDeadline)) return;
+
+                selectedCount = 0;
+                for (int j = colouring.colourStart[k]; j < colouring.colourStart[k + 1] && positionIterationsUsed < positionIterations; j++) {
+                    int i = colouring.colourContacts[j];
+                    if (c[i].getPenetration() > positionEpsilon) {
+                        c[i].matchAwakeState();
+                        selected[selectedCount++] = i;
+                        positionIterationsUsed++;
+                    }
+                }
+                if (selectedCount == 0) continue;
+                resolved = true;
+
+                workerPool.run(selectedCount, 8, positionTask);
+                findAffected();
+                workerPool.run(affectedCount, 16, positionUpdateTask);
+            }
+        }
+    }
+
+    /**
+     * Returns the largest desired change in velocity of the coloured
+     * contacts, if it is needed to check for convergence.
+     */
+    private double worstVelocity(Contact[] c) {
+        if (convergenceTolerance <= 0) return 0;
+        double max = 0;
+        for (int i = colouring.first; i < colouring.first + colouring.numContacts; i++) {
+            if (c[i].desiredDeltaVelocity > max) max = c[i].desiredDeltaVelocity;
+        }
+        return max;
+    }
+
+    /**
+     * Returns the largest penetration of the coloured contacts, if it is
+     * needed to check for convergence.
+     */
+    private double worstPenetration(Contact[] c) {
+        if (convergenceTolerance <= 0) return 0;
+        double max = 0;
+        for (int i = colouring.first; i < colouring.first + colouring.numContacts; i++) {
+            if (c[i].getPenetration() > max) max = c[i].getPenetration();
+        }
+        return max;
+    }
+
 }
@@ -0,0 +1,66 @@
+package br.law123.rigidbody.contact;
+
+import br.law123.core.Matrix3;
+import br.law123.core.Quaternion;
+import br.law123.core.Vector3;
+
+/**
+ * Holds the temporary values used while resolving a contact, so that
+ * resolving contacts doesn't create any new objects. Each resolver
+ * keeps one of these for every thread it resolves contacts on; a
+ * scratch object must never be used by two threads at once.
+ */
+class ContactScratch {
+
+    /**
+     * Holds the inverse inertia tensor of each body of the contact, in
+     * world coordinates.
+     */
+    final Matrix3[] inverseInertiaTensor = { new Matrix3(), new Matrix3() };
+
+    /**
+     * Holds the matrices used to build the friction impulse.
+     */
+    final Matrix3 impulseToTorque = new Matrix3();
+
+    final Matrix3 deltaVelWorld = new Matrix3();
+
+    final Matrix3 deltaVelocity = new Matrix3();
+
+    final Matrix3 impulseMatrix = new Matrix3();
+
+    /**
+     * Holds the contact tangents while building the contact basis.
+     */
+    final Vector3[] contactTangent = { new Vector3(), new Vector3() };
+
+    /**
+     * Holds the impulse, in contact and world coordinates.
+     */
+    final Vector3 impulseContact = new Vector3();
+
+    final Vector3 impulse = new Vector3();
+
+    /**
+     * Holds general purpose vectors for intermediate results.
+     */
+    final Vector3 vector = new Vector3();
+
+    final Vector3 otherVector = new Vector3();
+
+    /**
+     * Holds the orientation of a body while it is being moved.
+     */
+    final Quaternion orientation = new Quaternion();
+
+    /**
+     * Holds the per-body values of a position change.
+     */
+    final double[] angularMove = new double[2];
+
+    final double[] linearMove = new double[2];
+
+    final double[] linearInertia = new double[2];
+
+    final double[] angularInertia = new double[2];
+}
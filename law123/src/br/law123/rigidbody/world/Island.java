@@ -0,0 +1,206 @@
+package br.law123.rigidbody.world;
+
+import java.util.Arrays;
+
+import br.law123.rigidbody.RigidBody;
+
+/**
+ * An island is a set of rigid bodies that are connected, directly or
+ * through other bodies, by contacts. Bodies of different islands cannot
+ * affect each other during contact resolution, so islands can be put to
+ * sleep, woken up and resolved independently.
+ *
+ * An island only goes to sleep when all of its bodies are ready to sleep,
+ * and it wakes up as a whole: a single body in a pile can't keep its
+ * neighbours half awake.
+ *
+ * Islands are built by the island manager at each frame. While they are
+ * being built they also act as the nodes of a disjoint set forest, which
+ * is why they hold a parent link.
+ *
+ * @see IslandManager
+ */
+public class Island {
+
+    /**
+     * Holds the bodies in the island. Only the first bodyCount entries are
+     * used.
+     */
+    private RigidBody[] bodies = new RigidBody[4];
+
+    /**
+     * Holds the number of bodies in the island.
+     */
+    private int bodyCount;
+
+    /**
+     * True if the island, and so all of its bodies, is asleep.
+     */
+    private boolean sleeping;
+
+    /**
+     * Holds the parent of this island in the disjoint set forest used
+     * while building islands. A root island is its own parent.
+     */
+    Island parent = this;
+
+    /**
+     * Holds the rank of the island in the disjoint set forest.
+     */
+    int rank;
+
+    /**
+     * Holds the position of the island in the list of awake islands of
+     * the current frame.
+     */
+    int index;
+
+    /**
+     * Holds the first contact of this island in the contact array,
+     * once the contacts have been sorted by island.
+     */
+    int firstContact;
+
+    /**
+     * Holds the number of contacts of this island.
+     */
+    int contactCount;
+
+    /**
+     * Returns the number of bodies in the island.
+     */
+    public int getBodyCount() {
+        return bodyCount;
+    }
+
+    /**
+     * Returns the body at the given position in the island.
+     */
+    public RigidBody getBody(int i) {
+        return bodies[i];
+    }
+
+    /**
+     * Returns the number of contacts that were generated for the island
+     * at the last frame.
+     */
+    public int getContactCount() {
+        return contactCount;
+    }
+
+    /**
+     * Returns true if the island is asleep.
+     */
+    public boolean isSleeping() {
+        return sleeping;
+    }
+
+    /**
+     * Wakes the island, and all its bodies, up.
+     */
+    public void setAwake() {
+        sleeping = false;
+        for (int i = 0; i < bodyCount; i++) {
+            if (!bodies[i].getAwake()) bodies[i].setAwake();
+        }
+    }
+
+    /**
+     * Puts the island, and all its bodies, to sleep.
+     */
+    void sleep() {
+        sleeping = true;
+        for (int i = 0; i < bodyCount; i++) {
+            if (bodies[i].getAwake()) bodies[i].setAwake(false);
+        }
+    }
+
+    /**
+     * Returns true if every body in the island is ready to sleep.
+     */
+    boolean isReadyToSleep() {
+        for (int i = 0; i < bodyCount; i++) {
+            if (!bodies[i].isReadyToSleep()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if any body in the island is awake. A body of a
+     * sleeping island can be woken up directly, for example by having a
+     * force applied to it.
+     */
+    boolean hasAwakeBody() {
+        for (int i = 0; i < bodyCount; i++) {
+            if (bodies[i].getAwake()) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Wakes up any body in the island that is asleep.
+     */
+    void wakeSleepingBodies() {
+        for (int i = 0; i < bodyCount; i++) {
+            if (!bodies[i].getAwake()) bodies[i].setAwake();
+        }
+    }
+
+    /**
+     * Empties the island and makes it a root of its own set, ready to be
+     * used again.
+     */
+    void reset() {
+        Arrays.fill(bodies, 0, bodyCount, null);
+        bodyCount = 0;
+        sleeping = false;
+        parent = this;
+        rank = 0;
+        contactCount = 0;
+    }
+
+    /**
+     * Adds the given body to the island.
+     */
+    void add(RigidBody body) {
+        if (bodyCount == bodies.length) {
+            bodies = Arrays.copyOf(bodies, bodyCount * 2);
+        }
+        bodies[bodyCount++] = body;
+    }
+
+    /**
+     * Finds the root of the set this island belongs to, compressing the
+     * path on the way.
+     */
+    Island find() {
+        Island root = this;
+        while (root.parent != root) {
+            root = root.parent;
+        }
+        Island node = this;
+        while (node.parent != root) {
+            Island next = node.parent;
+            node.parent = root;
+            node = next;
+        }
+        return root;
+    }
+
+    /**
+     * Merges the sets of this island and the given island.
+     */
+    void union(Island other) {
+        Island a = find();
+        Island b = other.find();
+        if (a == b) return;
+        if (a.rank < b.rank) {
+            a.parent = b;
+        } else if (a.rank > b.rank) {
+            b.parent = a;
+        } else {
+            b.parent = a;
+            a.rank++;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package br.law123.rigidbody.world;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import br.law123.rigidbody.RigidBody;
+import br.law123.rigidbody.contact.Contact;
+
+/**
+ * Builds the islands of a set of rigid bodies from the contacts
+ * between them, and decides which islands are put to sleep and
+ * which are woken up.
+ *
+ * Sleeping islands are kept untouched from frame to frame: their
+ * bodies aren't integrated and their contacts aren't resolved. At
+ * each update the awake bodies are grouped again, using a disjoint
+ * set forest over the contacts, so islands split and merge as the
+ * bodies move apart and come together.
+ *
+ * Bodies with infinite mass never join an island, since they would
+ * otherwise connect every body resting on them.
+ */
+public class IslandManager {
+
+    /**
+     * Holds island objects that can be reused.
+     */
+    private final List<Island> pool = new ArrayList<Island>();
+
+    /**
+     * Holds the islands found at the last update, both awake and asleep.
+     */
+    private List<Island> islands = new ArrayList<Island>();
+
+    /**
+     * Holds the islands being built in the current update.
+     */
+    private List<Island> building = new ArrayList<Island>();
+
+    /**
+     * Holds the awake islands of the last update, in the order their
+     * contacts appear in the contact array.
+     */
+    private final List<Island> awakeIslands = new ArrayList<Island>();
+
+    /**
+     * Holds scratch space used to sort the contacts by island.
+     */
+    private Contact[] sorted = new Contact[0];
+
+    /**
+     * Holds the island index of each contact while sorting.
+     */
+    private int[] contactIsland = new int[0];
+
+    /**
+     * Returns the number of awake islands found at the last update.
+     */
+    public int getAwakeIslandCount() {
+        return awakeIslands.size();
+    }
+
+    /**
+     * Returns the awake island at the given index. Its contacts are
+     * stored contiguously in the contact array given to the last update.
+     */
+    public Island getAwakeIsland(int index) {
+        return awakeIslands.get(index);
+    }
+
+    /**
+     * Returns the index of the first contact of the given island in the
+     * contact array given to the last update.
+     */
+    public int getFirstContact(Island island) {
+        return island.firstContact;
+    }
+
+    /**
+     * Returns the number of islands found at the last update, both awake
+     * and asleep.
+     */
+    public int getIslandCount() {
+        return islands.size();
+    }
+
+    /**
+     * Updates the islands of the given bodies using the given contacts,
+     * wakes up and puts to sleep whole islands as needed, and then
+     * reorders the contact array so that the contacts of each awake
+     * island are contiguous, in the order of the awake islands.
+     * Contacts that only involve sleeping bodies are moved to the end
+     * of the array.
+     *
+     * @return the number of contacts at the start of the array that
+     *         need to be resolved.
+     */
+    public int update(BodyRegistration firstBody, Contact[] contacts, int numContacts) {
+        // Any body of a sleeping island that was woken up directly (by
+        // having a force applied, for example) wakes its whole island.
+        for (Island island : islands) {
+            if (island.isSleeping() && island.hasAwakeBody()) island.setAwake();
+        }
+
+        // Sleeping islands touched by an awake body are woken up too.
+        // Waking one island may bring another into contact with an
+        // awake body, so we carry on until nothing changes.
+        boolean woken = true;
+        while (woken) {
+            woken = false;
+            for (int i = 0; i < numContacts; i++) {
+                RigidBody[] body = contacts[i].getBody();
+                if (wakeOnContact(body[0], body[1]) || wakeOnContact(body[1], body[0])) woken = true;
+            }
+        }
+
+        // Keep the sleeping islands as they are, recycle the others and
+        // give each awake dynamic body a fresh island of its own.
+        building.clear();
+        for (Island island : islands) {
+            if (island.isSleeping()) {
+                building.add(island);
+            } else {
+                island.reset();
+                pool.add(island);
+            }
+        }
+        for (BodyRegistration reg = firstBody; reg != null; reg = reg.getNext()) {
+            RigidBody body = reg.getBody();
+            if (body.getInverseMass() <= 0) {
+                body.setIsland(null);
+            } else if (body.getIsland() == null || !body.getIsland().isSleeping()) {
+                body.setIsland(obtain());
+            }
+        }
+
+        // Join the bodies that touch each other.
+        for (int i = 0; i < numContacts; i++) {
+            RigidBody[] body = contacts[i].getBody();
+            Island one = awakeIsland(body[0]);
+            Island two = awakeIsland(body[1]);
+            if (one != null && two != null) one.union(two);
+        }
+
+        // Gather the bodies into the root of their set. Islands that
+        // aren't roots are only needed until every body has been moved.
+        int firstNew = building.size();
+        for (BodyRegistration reg = firstBody; reg != null; reg = reg.getNext()) {
+            RigidBody body = reg.getBody();
+            Island node = awakeIsland(body);
+            if (node == null) continue;
+
+            Island root = node.find();
+            if (root.getBodyCount() == 0) building.add(root);
+            root.add(body);
+        }
+        for (BodyRegistration reg = firstBody; reg != null; reg = reg.getNext()) {
+            RigidBody body = reg.getBody();
+            Island node = awakeIsland(body);
+            if (node == null) continue;
+
+            Island root = node.find();
+            if (node != root) {
+                body.setIsland(root);
+                if (node.getBodyCount() == 0) {
+                    node.reset();
+                    pool.add(node);
+                }
+            }
+        }
+
+        // An island goes to sleep only if all of its bodies can sleep,
+        // otherwise any of its bodies that dozed off is woken up.
+        awakeIslands.clear();
+        for (int i = firstNew; i < building.size(); i++) {
+            Island island = building.get(i);
+            if (island.isReadyToSleep()) {
+                island.sleep();
+            } else {
+                island.wakeSleepingBodies();
+                island.index = awakeIslands.size();
+                awakeIslands.add(island);
+            }
+        }
+
+        List<Island> swap = islands;
+        islands = building;
+        building = swap;
+        building.clear();
+
+        return sortContacts(contacts, numContacts);
+    }
+
+    /**
+     * Wakes the island of the given body if it is asleep and the other
+     * body is an awake body that can move. Returns true if an island
+     * was woken up.
+     */
+    private boolean wakeOnContact(RigidBody body, RigidBody other) {
+        if (body == null || other == null) return false;
+        Island island = body.getIsland();
+        if (island == null || !island.isSleeping()) return false;
+        if (!other.getAwake() || other.getInverseMass() <= 0) return false;
+        island.setAwake();
+        return true;
+    }
+
+    /**
+     * Returns the island node of the given body if it takes part in the
+     * islands being built, or null if it doesn't.
+     */
+    private Island awakeIsland(RigidBody body) {
+        if (body == null) return null;
+        Island island = body.getIsland();
+        if (island == null || island.isSleeping()) return null;
+        return island;
+    }
+
+    /**
+     * Gets an empty island, reusing an old one if possible.
+     */
+    private Island obtain() {
+        if (pool.isEmpty()) return new Island();
+        return pool.remove(pool.size() - 1);
+    }
+
+    /**
+     * Reorders the contacts so the contacts of each awake island are
+     * contiguous, keeping their relative order. Returns the number of
+     * contacts that belong to awake islands.
+     */
+    private int sortContacts(Contact[] contacts, int numContacts) {
+        if (sorted.length < numContacts) {
+            sorted = new Contact[numContacts];
+            contactIsland = new int[numContacts];
+        }
+
+        int islandCount = awakeIslands.size();
+        for (Island island : awakeIslands) {
+            island.contactCount = 0;
+        }
+
+        // Find the island of each contact, and count the contacts of
+        // each island. Contacts with no awake island are left out.
+        int active = 0;
+        for (int i = 0; i < numContacts; i++) {
+            RigidBody[] body = contacts[i].getBody();
+            Island island = awakeIsland(body[0]);
+            if (island == null) island = awakeIsland(body[1]);
+
+            if (island == null) {
+                contactIsland[i] = -1;
+            } else {
+                contactIsland[i] = island.index;
+                island.contactCount++;
+                active++;
+            }
+        }
+
+        // Work out where the contacts of each island start.
+        int offset = 0;
+        for (int i = 0; i < islandCount; i++) {
+            Island island = awakeIslands.get(i);
+            island.firstContact = offset;
+            offset += island.contactCount;
+        }
+
+        // And place them, the inactive ones after all the others.
+        int inactive = active;
+        for (Island island : awakeIslands) {
+            island.contactCount = 0;
+        }
+        for (int i = 0; i < numContacts; i++) {
+            int index = contactIsland[i];
+            if (index < 0) {
+                sorted[inactive++] = contacts[i];
+            } else {
+                Island island = awakeIslands.get(index);
+                sorted[island.firstContact + island.contactCount++] = contacts[i];
+            }
+        }
+        System.arraycopy(sorted, 0, contacts, 0, numContacts);
+        for (int i = 0; i < numContacts; i++) {
+            sorted[i] = null;
+        }
+
+        return active;
+    }
+}
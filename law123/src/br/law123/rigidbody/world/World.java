@@ -1,6 +1,17 @@
 package br.law123.rigidbody.world;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import br.law123.core.AdaptiveIterationController;
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.forcegenerator.ForceRegistry;
+import br.law123.forcegenerator.field.ForceField;
+import br.law123.rigidbody.RigidBody;
 import br.law123.rigidbody.contact.Contact;
+import br.law123.rigidbody.contact.ContactGenerator;
 import br.law123.rigidbody.contact.ContactResolver;
 
 /**
@@ -26,6 +37,36 @@ public class World {
      */
     private BodyRegistration firstBody;
 
+    /**
+     * Holds the force generators for the bodies in this world.
+     */
+    private ForceRegistry registry = new ForceRegistry();
+
+    /**
+     * Holds the worker threads the force generators are run on, or null
+     * to run them on the calling thread.
+     */
+    private WorkerPool forceWorkerPool;
+
+    /**
+     * Holds the force fields, which act on every awake body.
+     */
+    private List<ForceField> forceFields = new ArrayList<ForceField>();
+
+    /**
+     * Holds the state of the bodies the force fields act on, and the
+     * forces of the fields, three values per body.
+     */
+    private RigidBody[] fieldBodies = new RigidBody[16];
+
+    private double[] fieldPosition = new double[48];
+
+    private double[] fieldVelocity = new double[48];
+
+    private double[] fieldInverseMass = new double[16];
+
+    private double[] fieldForce = new double[48];
+
     /**
      * Holds the resolver for sets of contacts.
      */
@@ -48,6 +89,35 @@ public class World {
      */
     private int maxContacts;
 
+    /**
+     * Holds the manager that groups the bodies into islands, so they
+     * can sleep and be resolved together.
+     */
+    private IslandManager islands = new IslandManager();
+
+    /**
+     * Holds the controllers that choose the number of velocity and
+     * position iterations of each island when the world calculates
+     * them, or null to use four times the number of contacts.
+     */
+    private AdaptiveIterationController velocityController;
+
+    private AdaptiveIterationController positionController;
+
+    /**
+     * Holds the time, in nanoseconds, that contact resolution may take
+     * at each frame, or zero for no limit.
+     */
+    private long timeBudget;
+
+    /**
+     * Holds the largest penetration and desired change in velocity
+     * left unresolved at the last frame, over all islands.
+     */
+    private double residualPenetration;
+
+    private double residualVelocity;
+
     /**
      * Creates a new simulator that can handle up to the given
      * number of contacts per frame. You can also optionally give
@@ -59,9 +129,114 @@ public class World {
         this.resolver = new ContactResolver(iterations);
         this.maxContacts = maxContacts;
         contacts = new Contact[maxContacts];
+        for (int i = 0; i < maxContacts; i++) {
+            contacts[i] = new Contact();
+        }
         calculateIterations = (iterations == 0);
     }
 
+    /**
+     * Registers the given body with the world, so it is integrated
+     * and takes part in the islands at each frame.
+     */
+    public void addBody(RigidBody body) {
+        firstBody = new BodyRegistration(body, firstBody);
+    }
+
+    /**
+     * Registers the given contact generator with the world.
+     */
+    public void addContactGenerator(ContactGenerator gen) {
+        firstContactGen = new ContactGenRegistration(gen, firstContactGen);
+    }
+
+    /**
+     * Sets the worker threads used to resolve islands with many
+     * contacts in parallel, or null to resolve them all on the calling
+     * thread.
+     */
+    public void setWorkerPool(WorkerPool workerPool) {
+        resolver.setWorkerPool(workerPool);
+    }
+
+    /**
+     * Sets the worker threads used to run the force generators, or null
+     * to run them on the calling thread, which is the default. Only do
+     * this when every registered generator can run on several threads
+     * at once; see {@link ForceRegistry#updateForces(double, WorkerPool)}
+     * for which can. The pool may be the one given to setWorkerPool.
+     */
+    public void setForceWorkerPool(WorkerPool forceWorkerPool) {
+        this.forceWorkerPool = forceWorkerPool;
+    }
+
+    public WorkerPool getForceWorkerPool() {
+        return forceWorkerPool;
+    }
+
+    /**
+     * Sets the controllers that choose the number of velocity and
+     * position iterations of each island, from the iterations that
+     * island needed in earlier frames. Islands are told apart by their
+     * first body. The controllers are only used when the world was
+     * created without a fixed number of iterations. Pass nulls to go
+     * back to four times the number of contacts.
+     */
+    public void setIterationControllers(AdaptiveIterationController velocityController, AdaptiveIterationController positionController) {
+        this.velocityController = velocityController;
+        this.positionController = positionController;
+    }
+
+    /**
+     * Gets the contact resolver.
+     */
+    public ContactResolver getResolver() {
+        return resolver;
+    }
+
+    /**
+     * Sets the time, in nanoseconds, that contact resolution may take
+     * at each frame. The time is shared between the islands in
+     * proportion to their number of contacts. Contacts that are left
+     * unresolved when the time is up are reported by
+     * getResidualPenetration and getResidualVelocity. A budget of zero
+     * removes the limit.
+     */
+    public void setTimeBudget(long timeBudget) {
+        this.timeBudget = timeBudget;
+    }
+
+    /**
+     * Gets the time, in nanoseconds, that contact resolution may take
+     * at each frame, or zero if there is no limit.
+     */
+    public long getTimeBudget() {
+        return timeBudget;
+    }
+
+    /**
+     * Gets the largest penetration left unresolved at the last frame.
+     */
+    public double getResidualPenetration() {
+        return residualPenetration;
+    }
+
+    /**
+     * Gets the largest desired change in velocity left unresolved at the
+     * last frame.
+     */
+    public double getResidualVelocity() {
+        return residualVelocity;
+    }
+
+    /**
+     * Gets the island manager of the world, which holds the islands
+     * found at the last frame.
+     */
+    public IslandManager getIslands() {
+        return islands;
+    }
+
     /**
      * Calls each of the registered contact generators to report
      * their contacts. Returns the number of generated contacts.
@@ -93,9 +268,10 @@ public class World {
     /**
      * Processes all the physics for the world.
      */
-    void runPhysics(double duration) {
-        // First apply the force generators
-        //registry.updateForces(duration);
+    public void runPhysics(double duration) {
+        // First apply the force generators and fields
+        registry.updateForces(duration, forceWorkerPool);
+        applyForceFields();
 
         // Then integrate the objects
         BodyRegistration reg = firstBody;
@@ -110,9 +286,115 @@ public class World {
         // Generate contacts
         int usedContacts = generateContacts();
 
-        // And process them
-        if (calculateIterations) resolver.setIterations(usedContacts * 4);
-        resolver.resolveContacts(contacts, usedContacts, duration);
+        // Group the bodies into islands, putting to sleep or waking
+        // whole islands. Only contacts of awake islands are kept.
+        usedContacts = islands.update(firstBody, contacts, usedContacts);
+
+        // And process them, one island at a time, since islands can't
+        // affect each other. With a time budget each island gets a share
+        // of the time left in proportion to its contacts.
+        long deadline = System.nanoTime() + timeBudget;
+        int contactsLeft = usedContacts;
+        residualPenetration = 0;
+        residualVelocity = 0;
+        for (int i = 0; i < islands.getAwakeIslandCount(); i++) {
+            Island island = islands.getAwakeIsland(i);
+            int numContacts = island.getContactCount();
+            if (numContacts == 0) continue;
+
+            int velocityIterations = numContacts * 4;
+            int positionIterations = numContacts * 4;
+            if (calculateIterations) {
+                if (velocityController != null) velocityIterations = velocityController.getIterations(island.getBody(0), numContacts);
+                if (positionController != null) positionIterations = positionController.getIterations(island.getBody(0), numContacts);
+                resolver.setIterations(velocityIterations, positionIterations);
+            }
+            if (timeBudget > 0) {
+                long now = System.nanoTime();
+                long share = Math.max(0, deadline - now) * numContacts / contactsLeft;
+                resolver.resolveContacts(contacts, islands.getFirstContact(island), numContacts, duration, now + share);
+            } else {
+                resolver.resolveContacts(contacts, islands.getFirstContact(island), numContacts, duration);
+            }
+            contactsLeft -= numContacts;
+
+            // A resolution cut short by the time budget says nothing about
+            // the iterations the island needs, so it isn't recorded.
+            boolean learn = calculateIterations && !resolver.wasBudgetExhausted();
+            if (learn && velocityController != null) {
+                velocityController.record(island.getBody(0), numContacts, resolver.getVelocityIterationsUsed(), velocityIterations);
+            }
+            if (learn && positionController != null) {
+                positionController.record(island.getBody(0), numContacts, resolver.getPositionIterationsUsed(), positionIterations);
+            }
+
+            residualPenetration = Math.max(residualPenetration, resolver.getResidualPenetration());
+            residualVelocity = Math.max(residualVelocity, resolver.getResidualVelocity());
+        }
+        if (velocityController != null) velocityController.endFrame();
+        if (positionController != null) positionController.endFrame();
+    }
+
+    /**
+     * Applies the force fields to every awake body of finite mass, all
+     * the bodies at once for each field.
+     */
+    private void applyForceFields() {
+        if (forceFields.isEmpty()) return;
+
+        int count = 0;
+        for (BodyRegistration reg = firstBody; reg != null; reg = reg.getNext()) {
+            RigidBody body = reg.getBody();
+            if (!body.getAwake() || body.getInverseMass() <= 0) continue;
+            if (count == fieldBodies.length) growFieldBuffers();
+            fieldBodies[count] = body;
+            Vector3 p = body.getPosition();
+            Vector3 v = body.getVelocity();
+            int k = 3 * count;
+            fieldPosition[k] = p.getX();
+            fieldPosition[k + 1] = p.getY();
+            fieldPosition[k + 2] = p.getZ();
+            fieldVelocity[k] = v.getX();
+            fieldVelocity[k + 1] = v.getY();
+            fieldVelocity[k + 2] = v.getZ();
+            fieldInverseMass[count] = body.getInverseMass();
+            fieldForce[k] = 0;
+            fieldForce[k + 1] = 0;
+            fieldForce[k + 2] = 0;
+            count++;
+        }
+
+        for (ForceField field : forceFields) {
+            field.apply(fieldPosition, fieldVelocity, fieldInverseMass, fieldForce, 0, count);
+        }
+        for (int i = 0; i < count; i++) {
+            fieldBodies[i].addForce(fieldForce[3 * i], fieldForce[3 * i + 1], fieldForce[3 * i + 2]);
+            fieldBodies[i] = null;
+        }
+    }
+
+    private void growFieldBuffers() {
+        int capacity = 2 * fieldBodies.length;
+        fieldBodies = Arrays.copyOf(fieldBodies, capacity);
+        fieldPosition = Arrays.copyOf(fieldPosition, 3 * capacity);
+        fieldVelocity = Arrays.copyOf(fieldVelocity, 3 * capacity);
+        fieldInverseMass = Arrays.copyOf(fieldInverseMass, capacity);
+        fieldForce = Arrays.copyOf(fieldForce, 3 * capacity);
+    }
+
+    /**
+     * Returns the force registry.
+     */
+    public ForceRegistry getForceRegistry() {
+        return registry;
+    }
+
+    /**
+     * Returns the list of force fields, which act on every awake body of
+     * finite mass after the force registry has run.
+     */
+    public List<ForceField> getForceFields() {
+        return forceFields;
     }
 
     /**
@@ -0,0 +1,100 @@
+package demos.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import br.law123.core.Matrix3;
+import br.law123.core.Vector3;
+import br.law123.rigidbody.RigidBody;
+import br.law123.rigidbody.contact.Contact;
+import br.law123.rigidbody.contact.ContactResolver;
+
+/**
+ * Checks that resolving contacts allocates nothing once it is warmed
+ * up: resolves a leaning stack of boxes over and over, and fails if the
+ * calling thread allocated any bytes inside resolveContacts after the
+ * warm-up.
+ *
+ * Needs a virtual machine whose ThreadMXBean can count allocated bytes,
+ * such as HotSpot.
+ *
+ * Usage: ContactAllocationCheck [boxes] [warmupSteps] [steps]
+ */
+public class ContactAllocationCheck {
+
+    public static void main(String[] args) {
+        int boxes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int steps = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            System.out.println("This virtual machine can't count allocated bytes");
+            return;
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+
+        RigidBody[] bodies = new RigidBody[boxes];
+        for (int i = 0; i < boxes; i++) {
+            bodies[i] = new RigidBody();
+            bodies[i].setMass(1);
+            bodies[i].setInertiaTensor(new Matrix3(1.0 / 6, 0, 0, 0, 1.0 / 6, 0, 0, 0, 1.0 / 6));
+            bodies[i].setDamping(0.95, 0.8);
+
+            // Contacts read the acceleration of the last frame, which a
+            // body only has once it has been integrated.
+            bodies[i].calculateDerivedData();
+            bodies[i].integrate(0.01);
+        }
+        Contact[] contacts = new Contact[boxes];
+        for (int i = 0; i < boxes; i++) {
+            contacts[i] = new Contact();
+            contacts[i].setContactPoint(new Vector3());
+        }
+        ContactResolver resolver = new ContactResolver(8 * boxes);
+
+        for (int i = 0; i < warmup; i++) {
+            setUp(bodies, contacts, i);
+            resolver.resolveContacts(contacts, boxes, 0.01);
+        }
+
+        long allocated = 0;
+        for (int i = 0; i < steps; i++) {
+            setUp(bodies, contacts, i);
+            long before = threads.getThreadAllocatedBytes(thread);
+            resolver.resolveContacts(contacts, boxes, 0.01);
+            allocated += threads.getThreadAllocatedBytes(thread) - before;
+        }
+
+        System.out.println(boxes + " contacts, " + steps + " steps, " + resolver.getVelocityIterationsUsed() + " velocity and " + resolver.getPositionIterationsUsed() + " position iterations in the last: " + allocated + " bytes allocated by resolveContacts");
+        if (allocated != 0) {
+            System.out.println("FAILED: resolving contacts allocates");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Puts the boxes back into a stack leaning a little to one side,
+     * sinking into each other and moving, and sets up a contact under
+     * each box.
+     */
+    private static void setUp(RigidBody[] bodies, Contact[] contacts, int step) {
+        double lean = 0.02 * (1 + step % 5);
+        for (int i = 0; i < bodies.length; i++) {
+            RigidBody body = bodies[i];
+            body.setPosition(lean * i, 0.5 + 0.99 * i, 0);
+            body.setOrientation(1, 0, 0, 0);
+            body.setVelocity(0.1, -1 - 0.05 * i, 0.05);
+            body.setRotation(0, 0.1, 0.2);
+            body.setAwake(true);
+            body.calculateDerivedData();
+
+            Contact contact = contacts[i];
+            contact.setBodyData(body, i == 0 ? null : bodies[i - 1], 0.6, 0.1);
+            contact.getContactPoint().set(lean * i + 0.3, 0.99 * i, 0.2);
+            contact.getContactNormal().set(0, 1, 0);
+            contact.setPenetration(0.05);
+        }
+    }
+}
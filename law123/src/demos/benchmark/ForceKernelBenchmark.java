@@ -0,0 +1,267 @@
+package demos.benchmark;
+
+import java.util.Random;
+
+import br.law123.core.Vector3;
+import br.law123.forcegenerator.ForceKernelCompiler;
+import br.law123.forcegenerator.ParticleForceKernel;
+import br.law123.forcegenerator.ParticleForceRegistry;
+import br.law123.forcegenerator.particle.BulkParticleForceGenerator;
+import br.law123.forcegenerator.particle.ParticleForceGenerator;
+import br.law123.particle.Particle;
+
+/**
+ * Times a ParticleForceRegistry against the ParticleForceKernel
+ * compiled from it, on a scene where every particle has generators of
+ * five classes, two of which take their particles in bulk, and checks
+ * that both give the same forces.
+ *
+ * Usage: ForceKernelBenchmark [particles] [rounds]
+ */
+public class ForceKernelBenchmark {
+
+    /**
+     * Gravity, which takes all its particles at once.
+     */
+    private static class BulkGravity implements BulkParticleForceGenerator {
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            if (particle.getInverseMass() <= 0) return;
+            particle.addForce(0, -9.81 * particle.getMass(), 0);
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+
+        @Override
+        public void updateForces(Particle[] particles, int[] indices, int from, int to, double duration) {
+            for (int i = from; i < to; i++) {
+                Particle particle = particles[indices[i]];
+                if (particle.getInverseMass() <= 0) continue;
+                particle.addForce(0, -9.81 * particle.getMass(), 0);
+            }
+        }
+    }
+
+    /**
+     * Drag, shared by all the particles, which takes all its particles
+     * at once.
+     */
+    private static class Drag implements BulkParticleForceGenerator {
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            Vector3 v = particle.getVelocity();
+            double speed = Math.sqrt(v.getX() * v.getX() + v.getY() * v.getY() + v.getZ() * v.getZ());
+            double k = 0.1 + 0.01 * speed;
+            particle.addForce(-k * v.getX(), -k * v.getY(), -k * v.getZ());
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+
+        @Override
+        public void updateForces(Particle[] particles, int[] indices, int from, int to, double duration) {
+            for (int i = from; i < to; i++) {
+                updateForce(particles[indices[i]], duration);
+            }
+        }
+    }
+
+    /**
+     * A spring to a fixed point, one for each particle.
+     */
+    private static class Anchor implements ParticleForceGenerator {
+
+        private final double x, y, z;
+
+        Anchor(double x, double y, double z) {
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            Vector3 p = particle.getPosition();
+            particle.addForce(2 * (x - p.getX()), 2 * (y - p.getY()), 2 * (z - p.getZ()));
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+    }
+
+    /**
+     * A swirl around the y axis, shared by all the particles.
+     */
+    private static class Swirl implements ParticleForceGenerator {
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            Vector3 p = particle.getPosition();
+            particle.addForce(-0.5 * p.getZ(), 0, 0.5 * p.getX());
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+    }
+
+    /**
+     * A steady push, one of a few shared between the particles.
+     */
+    private static class Push implements ParticleForceGenerator {
+
+        private final double x, z;
+
+        Push(double x, double z) {
+            this.x = x;
+            this.z = z;
+        }
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            particle.addForce(x, 0, z);
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        System.out.println(count + " particles, " + rounds + " rounds");
+        run("registered by class", count, rounds, true);
+        run("registered by particle", count, rounds, false);
+    }
+
+    private static void run(String name, int count, int rounds, boolean byClass) {
+        Particle[] particles = new Particle[count];
+        ParticleForceRegistry registry = createRegistry(particles, byClass);
+        ParticleForceKernel kernel = ForceKernelCompiler.compile(registry);
+
+        // Warm up both, then time them in turn.
+        for (int i = 0; i < rounds; i++) {
+            clear(particles);
+            registry.updateForces(0.01);
+            clear(particles);
+            kernel.updateForces(0.01);
+        }
+        double registryMs = 0, kernelMs = 0;
+        for (int i = 0; i < rounds; i++) {
+            clear(particles);
+            long start = System.nanoTime();
+            registry.updateForces(0.01);
+            registryMs += (System.nanoTime() - start) / 1e6;
+
+            clear(particles);
+            start = System.nanoTime();
+            kernel.updateForces(0.01);
+            kernelMs += (System.nanoTime() - start) / 1e6;
+        }
+        registryMs /= rounds;
+        kernelMs /= rounds;
+
+        clear(particles);
+        registry.updateForces(0.01);
+        double[] expected = forces(particles);
+        clear(particles);
+        kernel.updateForces(0.01);
+        double[] actual = forces(particles);
+        double error = 0;
+        for (int i = 0; i < expected.length; i++) {
+            error = Math.max(error, Math.abs(expected[i] - actual[i]));
+        }
+
+        System.out.println(name + ": " + registry.getRegistrations().size() + " registrations, " + (kernel.isGrouped() ? kernel.getBulkCount() + " bulk generators, " + kernel.getGroupCount() + " other classes" : "run in registration order"));
+        System.out.printf("  registry: %8.3f ms%n", registryMs);
+        System.out.printf("  kernel:   %8.3f ms  speedup %5.2f  largest force difference %.3g%n", kernelMs, registryMs / kernelMs, error);
+    }
+
+    /**
+     * Registers the generators either a class at a time, the way a
+     * scene is usually set up, or a particle at a time, with the
+     * classes mixed up in the registry.
+     */
+    private static ParticleForceRegistry createRegistry(Particle[] particles, boolean byClass) {
+        Random random = new Random(12345);
+        ParticleForceRegistry registry = new ParticleForceRegistry();
+        BulkGravity gravity = new BulkGravity();
+        Drag drag = new Drag();
+        Swirl swirl = new Swirl();
+        Push[] pushes = new Push[4];
+        for (int i = 0; i < pushes.length; i++) {
+            pushes[i] = new Push(uniform(random, 1), uniform(random, 1));
+        }
+        Anchor[] anchors = new Anchor[particles.length];
+        for (int i = 0; i < particles.length; i++) {
+            Particle p = new Particle();
+            p.setMass(0.5 + 1.5 * random.nextDouble());
+            p.setDamping(0.99);
+            p.setPosition(uniform(random, 50), 40 * random.nextDouble(), uniform(random, 50));
+            p.setVelocity(uniform(random, 5), uniform(random, 5), uniform(random, 5));
+            particles[i] = p;
+            anchors[i] = new Anchor(uniform(random, 50), 20, uniform(random, 50));
+        }
+
+        if (byClass) {
+            for (int i = 0; i < particles.length; i++) {
+                registry.add(particles[i], gravity);
+            }
+            for (int i = 0; i < particles.length; i++) {
+                registry.add(particles[i], drag);
+            }
+            for (int i = 0; i < particles.length; i++) {
+                registry.add(particles[i], anchors[i]);
+            }
+            for (int i = 0; i < particles.length; i += 3) {
+                registry.add(particles[i], swirl);
+            }
+            for (int i = 0; i < particles.length; i++) {
+                registry.add(particles[i], pushes[i % pushes.length]);
+            }
+        } else {
+            for (int i = 0; i < particles.length; i++) {
+                registry.add(particles[i], gravity);
+                registry.add(particles[i], drag);
+                registry.add(particles[i], anchors[i]);
+                if (i % 3 == 0) registry.add(particles[i], swirl);
+                registry.add(particles[i], pushes[i % pushes.length]);
+            }
+        }
+        return registry;
+    }
+
+    private static double uniform(Random random, double size) {
+        return size * (2 * random.nextDouble() - 1);
+    }
+
+    private static void clear(Particle[] particles) {
+        for (Particle p : particles) {
+            p.clearAccumulator();
+        }
+    }
+
+    private static double[] forces(Particle[] particles) {
+        double[] forces = new double[3 * particles.length];
+        for (int i = 0; i < particles.length; i++) {
+            Vector3 f = particles[i].getForceAccum();
+            forces[3 * i] = f.getX();
+            forces[3 * i + 1] = f.getY();
+            forces[3 * i + 2] = f.getZ();
+        }
+        return forces;
+    }
+}
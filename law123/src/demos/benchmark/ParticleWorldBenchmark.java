@@ -0,0 +1,133 @@
+package demos.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import br.law123.core.WorkerPool;
+import br.law123.forcegenerator.particle.ParticleForceGenerator;
+import br.law123.particle.Particle;
+import br.law123.particle.ParticleSystem;
+import br.law123.particle.world.GroundContacts;
+import br.law123.particle.world.ParticleWorld;
+
+/**
+ * Times the particle world step on 1 to N threads and checks that every
+ * thread count gives the same particles.
+ *
+ * Usage: ParticleWorldBenchmark [particles] [steps] [maxThreads]
+ */
+public class ParticleWorldBenchmark {
+
+    /**
+     * Gravity plus linear drag, written out here because the generators
+     * of the engine aren't visible outside their package.
+     */
+    private static class GravityAndDrag implements ParticleForceGenerator {
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            if (particle.getInverseMass() <= 0) return;
+            double mass = particle.getMass();
+            double vx = particle.getVelocity().getX();
+            double vy = particle.getVelocity().getY();
+            double vz = particle.getVelocity().getZ();
+            particle.addForce(-0.1 * vx, -9.81 * mass - 0.1 * vy, -0.1 * vz);
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+    }
+
+    private static final int GROUND_GENERATORS = 8;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println(count + " particles, " + steps + " steps");
+        double serial = 0;
+        double serialChecksum = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            WorkerPool pool = new WorkerPool(threads);
+            ParticleWorld world = createWorld(count);
+            world.setWorkerPool(pool);
+            world.setForceWorkerPool(pool);
+            world.setContactWorkerPool(pool);
+            world.setDeterministic(true);
+
+            // Warm up, then time.
+            for (int i = 0; i < steps / 4; i++) {
+                step(world);
+            }
+            world = createWorld(count);
+            world.setWorkerPool(pool);
+            world.setForceWorkerPool(pool);
+            world.setContactWorkerPool(pool);
+            world.setDeterministic(true);
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                step(world);
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / steps;
+            pool.shutdown();
+
+            double checksum = checksum(world);
+            if (threads == 1) {
+                serial = ms;
+                serialChecksum = checksum;
+            }
+            System.out.printf("%2d threads: %8.3f ms/step  speedup %5.2f  %s%n", threads, ms, serial / ms, checksum == serialChecksum ? "same" : "DIFFERENT");
+        }
+    }
+
+    private static void step(ParticleWorld world) {
+        world.startFrame();
+        world.runPhysics(0.01);
+    }
+
+    private static ParticleWorld createWorld(int count) {
+        ParticleWorld world = new ParticleWorld(count, 64);
+        ParticleSystem system = new ParticleSystem(count);
+        world.setParticleSystem(system);
+
+        Random random = new Random(12345);
+        GravityAndDrag force = new GravityAndDrag();
+        List<List<Particle>> ground = new ArrayList<List<Particle>>();
+        for (int g = 0; g < GROUND_GENERATORS; g++) {
+            ground.add(new ArrayList<Particle>());
+        }
+        for (int i = 0; i < count; i++) {
+            Particle p = system.createParticle();
+            p.setMass(0.5 + 1.5 * random.nextDouble());
+            p.setDamping(0.99);
+            p.setPosition(uniform(random, 50), 1 + 39 * random.nextDouble(), uniform(random, 50));
+            p.setVelocity(uniform(random, 5), uniform(random, 5), uniform(random, 5));
+            world.getParticles().add(p);
+            world.getForceRegistry().add(p, force);
+            ground.get(i % GROUND_GENERATORS).add(p);
+        }
+        for (List<Particle> particles : ground) {
+            GroundContacts contacts = new GroundContacts();
+            contacts.init(particles);
+            world.getContactGenerators().add(contacts);
+        }
+        return world;
+    }
+
+    private static double uniform(Random random, double size) {
+        return size * (2 * random.nextDouble() - 1);
+    }
+
+    private static double checksum(ParticleWorld world) {
+        double[] position = world.getParticleSystem().getPositions();
+        double sum = 0;
+        for (int i = 0; i < 3 * world.getParticleSystem().getSize(); i++) {
+            sum += position[i] * (1 + i % 7);
+        }
+        return sum;
+    }
+}
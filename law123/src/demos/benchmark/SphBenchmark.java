@@ -0,0 +1,142 @@
+package demos.benchmark;
+
+import br.law123.core.WorkerPool;
+import br.law123.forcegenerator.particle.ParticleForceGenerator;
+import br.law123.particle.Particle;
+import br.law123.particle.ParticleSystem;
+import br.law123.particle.fluid.SphFluid;
+import br.law123.particle.world.ParticleWorld;
+
+/**
+ * Times a block of SPH fluid collapsing in a tank on 1 to N threads, and
+ * checks that every thread count gives the same particles.
+ *
+ * Usage: SphBenchmark [particles] [steps] [maxThreads]
+ */
+public class SphBenchmark {
+
+    /**
+     * Holds the smoothing radius, and the spacing of the particles at
+     * rest.
+     */
+    private static final double RADIUS = 0.1;
+
+    private static final double SPACING = RADIUS / 2;
+
+    private static final double REST_DENSITY = 1000;
+
+    /**
+     * Gravity, plus stiff springs that keep the fluid inside the tank.
+     */
+    private static class Tank implements ParticleForceGenerator {
+
+        private final double size;
+
+        private final double stiffness = 20000;
+
+        Tank(double size) {
+            this.size = size;
+        }
+
+        @Override
+        public void updateForce(Particle particle, double duration) {
+            double mass = particle.getMass();
+            double x = particle.getPosition().getX();
+            double y = particle.getPosition().getY();
+            double z = particle.getPosition().getZ();
+            double fx = push(x, 0, size), fy = push(y, 0, Double.MAX_VALUE), fz = push(z, 0, size);
+            particle.addForce(fx * mass, fy * mass - 9.81 * mass, fz * mass);
+        }
+
+        private double push(double v, double min, double max) {
+            if (v < min) return stiffness * (min - v);
+            if (v > max) return stiffness * (max - v);
+            return 0;
+        }
+
+        @Override
+        public void updateForce(Particle particle) {
+            updateForce(particle, 0);
+        }
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        System.out.println(count + " fluid particles, " + steps + " steps");
+        double serial = 0;
+        double serialChecksum = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            WorkerPool pool = new WorkerPool(threads);
+            ParticleWorld world = createWorld(count);
+            world.setWorkerPool(pool);
+            world.setForceWorkerPool(pool);
+            world.setContactWorkerPool(pool);
+
+            // Warm up, then time.
+            for (int i = 0; i < steps / 4; i++) {
+                step(world);
+            }
+            world = createWorld(count);
+            world.setWorkerPool(pool);
+            world.setForceWorkerPool(pool);
+            world.setContactWorkerPool(pool);
+            long start = System.nanoTime();
+            for (int i = 0; i < steps; i++) {
+                step(world);
+            }
+            double ms = (System.nanoTime() - start) / 1e6 / steps;
+            pool.shutdown();
+
+            double checksum = checksum(world);
+            if (threads == 1) {
+                serial = ms;
+                serialChecksum = checksum;
+            }
+            System.out.printf("%2d threads: %8.3f ms/step  speedup %5.2f  %s%n", threads, ms, serial / ms, checksum == serialChecksum ? "same" : "DIFFERENT");
+        }
+    }
+
+    private static void step(ParticleWorld world) {
+        world.startFrame();
+        world.runPhysics(0.002);
+    }
+
+    /**
+     * Builds a block of fluid in one corner of a tank, with room to
+     * spread out to twice its width.
+     */
+    private static ParticleWorld createWorld(int count) {
+        ParticleWorld world = new ParticleWorld(count, 16);
+        ParticleSystem system = new ParticleSystem(count);
+        world.setParticleSystem(system);
+
+        int side = (int) Math.ceil(Math.cbrt(count));
+        Tank tank = new Tank(2 * side * SPACING);
+        SphFluid fluid = new SphFluid(RADIUS);
+        fluid.setRestDensity(REST_DENSITY);
+        double mass = REST_DENSITY * SPACING * SPACING * SPACING;
+        for (int i = 0; i < count; i++) {
+            Particle p = system.createParticle();
+            p.setMass(mass);
+            p.setDamping(0.999);
+            p.setPosition((0.5 + i % side) * SPACING, (0.5 + i / side / side) * SPACING, (0.5 + i / side % side) * SPACING);
+            world.getParticles().add(p);
+            world.getForceRegistry().add(p, tank);
+            fluid.add(p);
+        }
+        world.getForceStages().add(fluid);
+        return world;
+    }
+
+    private static double checksum(ParticleWorld world) {
+        double[] position = world.getParticleSystem().getPositions();
+        double sum = 0;
+        for (int i = 0; i < 3 * world.getParticleSystem().getSize(); i++) {
+            sum += position[i] * (1 + i % 7);
+        }
+        return sum;
+    }
+}
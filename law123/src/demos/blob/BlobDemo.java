@@ -30,7 +30,7 @@ class BlobDemo extends Application {
 
     private ParticleWorld world;
 
-    private BlobForceGenerator blobForceGenerator = new BlobForceGenerator();
+    private GridBlobForceGenerator blobForceGenerator = new GridBlobForceGenerator();
 
     /* The control for the x-axis. */
     float xAxis;
@@ -111,8 +111,8 @@ class BlobDemo extends Application {
             blobs[i].clearAccumulator();
 
             world.getParticles().add(blobs[i]);
-            world.getForceRegistry().add(blobs[i], blobForceGenerator);
         }
+        world.getForceStages().add(blobForceGenerator);
     }
 
     @Override
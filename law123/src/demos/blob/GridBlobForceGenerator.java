@@ -0,0 +1,136 @@
+package demos.blob;
+
+import br.law123.collide.HashGrid;
+import br.law123.core.Vector3;
+import br.law123.core.WorkerPool;
+import br.law123.particle.Particle;
+import br.law123.particle.world.ParticleForceStage;
+
+/**
+ * Applies the same proximal attraction as BlobForceGenerator, for all
+ * the blob particles at once.
+ *
+ * Particles only affect each other within maxDistance, so rather than
+ * comparing every particle with every other, the particles are put into
+ * a HashGrid once per step and only the pairs it finds closer than
+ * maxDistance are looked at. Each pair is worked out once and its force
+ * is added to both particles, equal and opposite, so a step takes time
+ * in proportion to the number of particles and their close neighbours.
+ */
+class GridBlobForceGenerator implements ParticleForceStage {
+
+    /**
+     * Holds the particles we might be attracting.
+     */
+    Particle[] particles;
+
+    /**
+     * The maximum force used to push the particles apart.
+     */
+    double maxReplusion;
+
+    /**
+     * The maximum force used to pull particles together.
+     */
+    double maxAttraction;
+
+    /**
+     * The separation between particles where there is no force.
+     */
+    double minNaturalDistance, maxNaturalDistance;
+
+    /**
+     * The force with which to float the head particle, if it is
+     * joined to others.
+     */
+    double floatHead;
+
+    /**
+     * The maximum number of particles in the blob before the head
+     * is floated at maximum force.
+     */
+    int maxFloat;
+
+    /**
+     * The separation between particles after which they 'break' apart and
+     * there is no force.
+     */
+    double maxDistance;
+
+    /**
+     * Holds the positions of the particles in the plane, and the force
+     * and number of joins of each, three values per particle.
+     */
+    private double[] position = new double[0];
+
+    private double[] force = new double[0];
+
+    private int[] joinCount = new int[0];
+
+    private final HashGrid grid = new HashGrid(1);
+
+    private final HashGrid.PairVisitor pairVisitor = new HashGrid.PairVisitor() {
+
+        @Override
+        public void visit(int i, int j, double distanceSquared) {
+            double distance = Math.sqrt(distanceSquared);
+            double scale;
+            if (distance < minNaturalDistance) {
+                // Use a repulsion force.
+                scale = -distance / minNaturalDistance * maxReplusion;
+            } else if (distance > maxNaturalDistance && distance < maxDistance) {
+                // Use an attraction force.
+                scale = (distance - maxNaturalDistance) / (maxDistance - maxNaturalDistance) * maxAttraction;
+            } else {
+                return;
+            }
+            joinCount[i]++;
+            joinCount[j]++;
+            if (distance == 0) return;
+
+            // The force on i points along the separation from i to j,
+            // and the force on j the other way.
+            scale /= distance;
+            double fx = (position[3 * j] - position[3 * i]) * scale;
+            double fy = (position[3 * j + 1] - position[3 * i + 1]) * scale;
+            force[3 * i] += fx;
+            force[3 * i + 1] += fy;
+            force[3 * j] -= fx;
+            force[3 * j + 1] -= fy;
+        }
+    };
+
+    @Override
+    public void updateForces(double duration, WorkerPool pool) {
+        int count = particles.length;
+        if (joinCount.length < count) {
+            position = new double[3 * count];
+            force = new double[3 * count];
+            joinCount = new int[count];
+        }
+
+        // The blobs live in the plane, so their depth is left out.
+        for (int i = 0; i < count; i++) {
+            Vector3 p = particles[i].getPosition();
+            position[3 * i] = p.getX();
+            position[3 * i + 1] = p.getY();
+            position[3 * i + 2] = 0;
+            force[3 * i] = force[3 * i + 1] = 0;
+            joinCount[i] = 0;
+        }
+        grid.setCellSize(maxDistance);
+        grid.build(position, count);
+        grid.findPairs(maxDistance, pairVisitor);
+
+        for (int i = 0; i < count; i++) {
+            particles[i].addForce(force[3 * i], force[3 * i + 1], 0);
+        }
+
+        // If the head has got a join count, then float it.
+        if (count > 0 && joinCount[0] > 0 && maxFloat > 0) {
+            double up = (joinCount[0] / maxFloat) * floatHead;
+            if (up > floatHead) up = floatHead;
+            particles[0].addForce(0, up, 0);
+        }
+    }
+}
@@ -9,10 +9,8 @@ import br.law123.core.Core;
 import br.law123.core.Matrix3;
 import br.law123.core.Matrix4;
 import br.law123.core.Vector3;
-import br.law123.forcegenerator.ForceRegistry;
-import br.law123.forcegenerator.rigidbody.Aero;
-import br.law123.forcegenerator.rigidbody.AeroControl;
-import br.law123.forcegenerator.rigidbody.AngledAero;
+import br.law123.forcegenerator.rigidbody.AeroBatch;
+import br.law123.forcegenerator.rigidbody.AeroModel;
 import br.law123.rigidbody.RigidBody;
 
 import com.sun.opengl.util.Animator;
@@ -29,14 +27,15 @@ public class FlightSimDemo extends Application {
     private Animator animator;
 
 
-    private AeroControl left_wing;
-    private AeroControl right_wing;
-    private AeroControl rudder;
-    private Aero tail;
+    private AeroModel model = new AeroModel();
+    private int left_wing;
+    private int right_wing;
+    private int rudder;
     private RigidBody aircraft = new RigidBody();
-    private ForceRegistry registry = new ForceRegistry();
+    private int plane;
 
     private Vector3 windspeed = new Vector3();
+    private AeroBatch aero = new AeroBatch(windspeed);
 
     float left_wing_control;
     float right_wing_control;
@@ -54,19 +53,19 @@ public class FlightSimDemo extends Application {
     public FlightSimDemo() {
         super();
 
-        right_wing = new AeroControl(new Matrix3(0, 0, 0, -1, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -0.995f, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -1.005f, -0.5f, 0, 0, 0, 0), new Vector3(-1.0f, 0.0f, 2.0f), windspeed);
+        right_wing = model.addControlSurface(new Matrix3(0, 0, 0, -1, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -0.995f, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -1.005f, -0.5f, 0, 0, 0, 0), new Vector3(-1.0f, 0.0f, 2.0f));
 
-        left_wing = new AeroControl(new Matrix3(0, 0, 0, -1, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -0.995f, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -1.005f, -0.5f, 0, 0, 0, 0), new Vector3(-1.0f, 0.0f, -2.0f), windspeed);
+        left_wing = model.addControlSurface(new Matrix3(0, 0, 0, -1, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -0.995f, -0.5f, 0, 0, 0, 0), new Matrix3(0, 0, 0, -1.005f, -0.5f, 0, 0, 0, 0), new Vector3(-1.0f, 0.0f, -2.0f));
 
-        rudder = new AeroControl(new Matrix3(0, 0, 0, 0, 0, 0, 0, 0, 0), new Matrix3(0, 0, 0, 0, 0, 0, 0.01f, 0, 0), new Matrix3(0, 0, 0, 0, 0, 0, -0.01f, 0, 0), new Vector3(2.0f, 0.5f, 0), windspeed);
+        rudder = model.addControlSurface(new Matrix3(0, 0, 0, 0, 0, 0, 0, 0, 0), new Matrix3(0, 0, 0, 0, 0, 0, 0.01f, 0, 0), new Matrix3(0, 0, 0, 0, 0, 0, -0.01f, 0, 0), new Vector3(2.0f, 0.5f, 0));
 
-        tail = new AngledAero(new Matrix3(0, 0, 0, -1, -0.5f, 0, 0, 0, -0.1f), new Vector3(2.0f, 0, 0), windspeed);
+        // The tail-plane was an AngledAero, which doesn't apply a force
+        // yet, so it isn't part of the model.
 
         left_wing_control = 0;
         right_wing_control = 0;
         rudder_control = 0;
 
-        windspeed = new Vector3(0, 0, 0);
         // Set up the aircraft rigid body.
         resetPlane();
 
@@ -83,10 +82,7 @@ public class FlightSimDemo extends Application {
         aircraft.setAwake();
         aircraft.setCanSleep(false);
 
-        registry.add(aircraft, left_wing);
-        registry.add(aircraft, right_wing);
-        registry.add(aircraft, rudder);
-        registry.add(aircraft, tail);
+        plane = aero.add(aircraft, model);
     }
 
     @Override
@@ -206,7 +202,7 @@ public class FlightSimDemo extends Application {
         aircraft.addForce(propulsion);
 
         // Add the forces acting on the aircraft.
-        registry.updateForces(duration);
+        aero.updateForces(duration);
 
         // Update the aircraft's physics.
         aircraft.integrate(duration);
@@ -287,9 +283,9 @@ public class FlightSimDemo extends Application {
         else if (rudder_control > 1.0f) rudder_control = 1.0f;
 
         // Update the control surfaces
-        left_wing.setControl(left_wing_control);
-        right_wing.setControl(right_wing_control);
-        rudder.setControl(rudder_control);
+        aero.setControl(plane, left_wing, left_wing_control);
+        aero.setControl(plane, right_wing, right_wing_control);
+        aero.setControl(plane, rudder, rudder_control);
     }
 
     public static void main(String[] args) {